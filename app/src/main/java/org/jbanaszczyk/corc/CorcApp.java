@@ -1,15 +1,28 @@
 package org.jbanaszczyk.corc;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
 import com.google.android.material.color.DynamicColors;
+import org.jbanaszczyk.corc.ble.core.AndroidLogSink;
+import org.jbanaszczyk.corc.ble.core.BleLog;
 import org.jbanaszczyk.corc.db.CorcDatabase;
 
 public class CorcApp extends Application {
 
+    private static final int EVENT_RING_CAPACITY = 1024;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        BleLog.setSink(new AndroidLogSink());
+        // Release builds skip debug messages entirely: a DEBUG ring would make isLoggable(DEBUG) true and have every
+        // guarded debug argument computed; the last INFO and above stay in the event ring for bug reports
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        BleLog.Level level = debuggable ? BleLog.Level.DEBUG : BleLog.Level.INFO;
+        BleLog.setMinLevel(level);
+        BleLog.setEventRing(EVENT_RING_CAPACITY, level);
         DynamicColors.applyToActivitiesIfAvailable(this);
-        CorcDatabase.getInstance(this);
+        // Opens and version-checks the database in the background; repository reads wait for it
+        CorcDatabase.getInstanceAsync(this);
     }
 }
@@ -15,19 +15,33 @@ import android.os.Looper;
 import android.os.ParcelUuid;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.jbanaszczyk.corc.BleConnectionListener;
+import org.jbanaszczyk.corc.ble.config.ConfigSyncEngine;
 import org.jbanaszczyk.corc.ble.core.AndroidScheduler;
 import org.jbanaszczyk.corc.ble.core.BleGattClient;
 import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.NotificationSubscriptions;
 import org.jbanaszczyk.corc.ble.core.OperationExecutor;
 import org.jbanaszczyk.corc.ble.core.OperationQueue;
 import org.jbanaszczyk.corc.ble.core.StandardGattOperationExecutor;
+import org.jbanaszczyk.corc.ble.metrics.AndroidTraceMirror;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.metrics.TraceRecorder;
 import org.jbanaszczyk.corc.ble.repo.BleDeviceRepository;
 import org.jbanaszczyk.corc.ble.repo.RoomBleDeviceRepository;
+import org.jbanaszczyk.corc.ble.session.SessionRecorder;
 
 public class BleController {
 
@@ -38,6 +52,9 @@ public class BleController {
     private static final UUID CMD_CHAR_UUID = UUID.fromString("B13A1001-9F2A-4F3B-9C8E-A7D4E3C8B125");
     private static final UUID RSP_CHAR_UUID = UUID.fromString("B13A1002-9F2A-4F3B-9C8E-A7D4E3C8B125");
 
+    // Scan results are collected for this long and then connected strongest signal first
+    private static final long CONNECT_RANKING_WINDOW_MS = 300L;
+
     private final Context appContext;
     private final BleConnectionListener listener;
     private final Handler connectionHandler = new Handler(Looper.getMainLooper());
@@ -45,11 +62,21 @@ public class BleController {
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final BleDeviceRepository deviceRepository;
     // ----- Operation queue infrastructure (single, minimal integration) -----
+    private final BleMetrics metrics = new BleMetrics();
+    private final TraceRecorder tracer = new TraceRecorder();
+    @Nullable
+    private SessionRecorder sessionRecorder;
     private final OperationQueue operationQueue;
     private final OperationExecutor operationExecutor;
     private final Handler operationHandler;
     private final BleGattClient gattClient;
+    private final CharacteristicCache characteristicCache = new CharacteristicCache();
     private final long operationTimeoutMillis = TimeUnit.SECONDS.toMillis(10); // default timeout per operation
+    // Accessed on the main looper only (scan callbacks and mainHandler); entries stay pinned while queued here
+    private final Map<BleDeviceAddress, ConnectCandidate> connectCandidates = new LinkedHashMap<>();
+    private final BleDevicesSnapshotPublisher snapshotPublisher;
+    private final ConfigSyncEngine configSync = new ConfigSyncEngine(this::sendCommand);
+    private final CommandOutbox commandOutbox;
     private boolean scanning = false;
     private BluetoothManager bluetoothManager;
     private BluetoothAdapter bluetoothAdapter;
@@ -76,29 +103,128 @@ public class BleController {
         this.deviceRepository = deviceRepository;
         this.operationHandler = operationHandler;
         this.operationExecutor = operationExecutor;
-        this.operationQueue = new OperationQueue(new AndroidScheduler(operationHandler), () -> operationTimeoutMillis);
-        this.gattClient = new BleGattClient(appContext, registry, deviceRepository, listener, operationQueue, operationExecutor);
+        var operationScheduler = new AndroidScheduler(operationHandler);
+        this.operationQueue = new OperationQueue(operationScheduler, () -> operationTimeoutMillis);
+        this.gattClient = new BleGattClient(appContext, registry, deviceRepository, listener, operationQueue, operationExecutor,
+                characteristicCache, operationScheduler);
+        this.snapshotPublisher = new BleDevicesSnapshotPublisher(
+                new AndroidScheduler(mainHandler),
+                () -> registry.snapshotDevices(operationQueue::depth),
+                System::currentTimeMillis);
+        registry.addChangeListener(snapshotPublisher::invalidate);
+        operationQueue.addChangeListener(snapshotPublisher::invalidate);
+        this.commandOutbox = new CommandOutbox(this::sendCommand,
+                device -> registry.getOrCreateContext(device.getAddress()).getState() == GattState.READY,
+                new AndroidScheduler(mainHandler));
+        registry.addStateListener((entry, from, to, timestampNanos) -> {
+            if (to == GattState.READY) {
+                commandOutbox.drain(entry.device());
+            }
+        });
+        operationQueue.setObserver(OperationQueue.Observer.both(metrics, tracer), metrics.clock());
+        gattClient.setMetrics(metrics);
+        tracer.setMirror(new AndroidTraceMirror());
+        gattClient.setTracer(tracer);
+        commandOutbox.setMetrics(metrics);
     }
 
     // ---- High level GATT convenience (delegates to queue) ----
+    /**
+     * Served from {@link CharacteristicCache} when a fresh enough value is known; concurrent reads share one GATT read.
+     */
     public CompletableFuture<byte[]> readCharacteristic(@NonNull BleDevice device, @NonNull UUID characteristicUuid) {
-        var future = gattClient.enqueue(device, BleOperation.read(device.getAddress(), characteristicUuid));
-        return future != null ? future : CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
+        return characteristicCache.read(device.getAddress(), characteristicUuid, () -> {
+            var future = gattClient.enqueue(device, BleOperation.read(device.getAddress(), characteristicUuid));
+            return future != null ? future : CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
+        });
+    }
+
+    /**
+     * Reads of the characteristic may be answered from values (read or notified) at most this old; 0 disables.
+     */
+    public void setCharacteristicMaxAge(@NonNull UUID characteristicUuid, long maxAgeMillis) {
+        characteristicCache.setMaxAge(characteristicUuid, maxAgeMillis);
+    }
+
+    /**
+     * Queue wait, execution and command round-trip histograms plus outcome counters, per device; for the debug
+     * screen.
+     */
+    @NonNull
+    public BleMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Span timeline of connections, queue operations and commands; disabled until the debug screen enables it.
+     */
+    @NonNull
+    public TraceRecorder getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Records every GATT operation and callback into {@code file} until {@link #stopSessionRecording()}, for replay
+     * on the JVM; a recording already running is stopped first.
+     */
+    public synchronized void startSessionRecording(@NonNull File file) throws IOException {
+        stopSessionRecording();
+        sessionRecorder = SessionRecorder.open(file.toPath());
+        gattClient.setSessionRecorder(sessionRecorder);
+        Log.i(LOG_TAG, "Session recording started: " + file);
+    }
+
+    public synchronized void stopSessionRecording() {
+        var recorder = sessionRecorder;
+        if (recorder == null) {
+            return;
+        }
+        gattClient.setSessionRecorder(null);
+        sessionRecorder = null;
+        try {
+            recorder.close();
+            Log.i(LOG_TAG, "Session recording stopped after " + recorder.events() + " events");
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing session recording", e);
+        }
+    }
+
+    @NonNull
+    public CharacteristicCache.Stats getCharacteristicCacheStats() {
+        return characteristicCache.stats();
     }
 
     public CompletableFuture<Void> writeCharacteristic(@NonNull BleDevice device, @NonNull UUID characteristicUuid, @NonNull byte[] payload) {
+        characteristicCache.invalidate(device.getAddress(), characteristicUuid);
         var future = gattClient.enqueue(device, BleOperation.write(device.getAddress(), characteristicUuid, payload));
         return future != null ? future : CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
     }
 
-    public CompletableFuture<Void> enableNotifications(@NonNull BleDevice device, @NonNull UUID characteristicUuid) {
-        var future = gattClient.enqueue(device, BleOperation.enableNotify(device.getAddress(), characteristicUuid));
+    /**
+     * Writes several characteristics (or one longer than MTU - 3) as a single reliable-write transaction: either
+     * every value is applied or none is.
+     */
+    public CompletableFuture<Void> reliableWrite(@NonNull BleDevice device, @NonNull List<BleOperation.WritePart> parts) {
+        for (BleOperation.WritePart part : parts) {
+            characteristicCache.invalidate(device.getAddress(), part.characteristicUuid());
+        }
+        var future = gattClient.enqueue(device, BleOperation.reliableWrite(device.getAddress(), parts));
         return future != null ? future : CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
     }
 
+    /**
+     * Adds a subscriber (see {@link NotificationSubscriptions}); only the first one writes the CCCD. Kept across
+     * reconnects; on a device that is not connected it completes at once and takes effect on the next connection.
+     */
+    public CompletableFuture<Void> enableNotifications(@NonNull BleDevice device, @NonNull UUID characteristicUuid) {
+        return gattClient.subscriptions().subscribe(device.getAddress(), characteristicUuid);
+    }
+
+    /**
+     * Removes a subscriber added by {@link #enableNotifications}; the last one disables notifications.
+     */
     public CompletableFuture<Void> disableNotifications(@NonNull BleDevice device, @NonNull UUID characteristicUuid) {
-        var future = gattClient.enqueue(device, BleOperation.disableNotify(device.getAddress(), characteristicUuid));
-        return future != null ? future : CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
+        return gattClient.subscriptions().unsubscribe(device.getAddress(), characteristicUuid);
     }
 
     public CompletableFuture<Integer> requestMtu(@NonNull BleDevice device, int mtu) {
@@ -110,6 +236,73 @@ public class BleController {
         return gattClient.sendCommand(device, CMD_CHAR_UUID, RSP_CHAR_UUID, opcode, payload);
     }
 
+    /**
+     * Like {@link #sendCommand}, but a command for a device that is not READY waits in the outbox (see
+     * {@link CommandOutbox}) and is sent as soon as the device becomes READY, instead of failing.
+     */
+    public CompletableFuture<byte[]> submitCommand(@NonNull BleDevice device, byte opcode, byte[] payload) {
+        return commandOutbox.submit(device, opcode, payload);
+    }
+
+    /**
+     * TTL and coalescing rule for commands of this opcode waiting in the outbox.
+     */
+    public void setCommandPolicy(byte opcode, @NonNull CommandOutbox.Policy policy) {
+        commandOutbox.setPolicy(opcode, policy);
+    }
+
+    @NonNull
+    public CommandOutbox.Stats getCommandOutboxStats() {
+        return commandOutbox.stats();
+    }
+
+    /**
+     * Pushes the device's configuration to the peripheral, sending only the entries changed since the last sync.
+     */
+    public CompletableFuture<ConfigSyncEngine.Result> syncConfiguration(@NonNull BleDevice device) {
+        return configSync.sync(device);
+    }
+
+    /**
+     * READY device with the strongest smoothed signal, e.g. the target of a broadcast-to-nearest command.
+     */
+    @Nullable
+    public BleDevice getNearestReadyDevice() {
+        return registry.nearest(GattState.READY);
+    }
+
+    /**
+     * Known devices ordered by smoothed signal strength, strongest first.
+     */
+    @NonNull
+    public List<BleDevice> getDevicesByProximity() {
+        return registry.byProximity();
+    }
+
+    /**
+     * Latest published snapshot of all devices; never blocks BLE threads.
+     */
+    @NonNull
+    public BleDevicesSnapshot getDevicesSnapshot() {
+        return snapshotPublisher.current();
+    }
+
+    /**
+     * Streams device snapshots to {@code consumer} on {@code executor}. Slow consumers skip intermediate
+     * snapshots; {@code minIntervalMillis} > 0 additionally rate-limits deliveries (e.g. for UI refresh).
+     */
+    @NonNull
+    public BleDevicesSnapshotPublisher.Subscription subscribeDevices(@NonNull Executor executor,
+                                                                    long minIntervalMillis,
+                                                                    @NonNull Consumer<BleDevicesSnapshot> consumer) {
+        return snapshotPublisher.subscribe(executor, minIntervalMillis, consumer);
+    }
+
+    @NonNull
+    public BleDeviceRegistry.Stats getRegistryStats() {
+        return registry.stats();
+    }
+
     public void initialize() {
         Log.d(LOG_TAG, "initialize()");
 
@@ -217,6 +410,10 @@ public class BleController {
 
             bluetoothLeScanner.stopScan(scanCallback);
             scanning = false;
+            int evicted = registry.evictTransient();
+            if (evicted > 0) {
+                Log.d(LOG_TAG, "stopScan(): evicted " + evicted + " transient devices, " + registry.stats());
+            }
             listener.onScanEnd(registry.size());
         } catch (SecurityException e) {
             Log.e(LOG_TAG, "Missing BLUETOOTH_SCAN permission at runtime", e);
@@ -232,9 +429,10 @@ public class BleController {
         for (BleDevice device : registry.all()) {
             try {
                 var ctx = registry.getContext(device.getAddress());
-                var gatt = ctx != null ? ctx.getGatt() : null;
-                if (gatt != null) {
-                    gatt.disconnect();
+                var connection = ctx != null ? ctx.getConnection() : null;
+                if (connection != null) {
+                    ctx.moveTo(GattState.DISCONNECTING);
+                    connection.disconnect();
                 }
             } catch (Exception e) {
                 Log.e(LOG_TAG, "Error while disconnecting GATT", e);
@@ -247,7 +445,12 @@ public class BleController {
     public void shutdown() {
         Log.d(LOG_TAG, "shutdown()");
         stopScan();
+        mainHandler.removeCallbacks(connectCandidatesRunnable);
+        clearConnectCandidates();
         disconnectAllDevices();
+        commandOutbox.clearAll();
+        stopSessionRecording();
+        deviceRepository.flush();
         connectionHandler.removeCallbacksAndMessages(null);
         bluetoothLeScanner = null;
         bluetoothAdapter = null;
@@ -263,58 +466,118 @@ public class BleController {
         BluetoothDevice bluetoothDevice = result.getDevice();
         if (bluetoothDevice == null) return;
 
-        BleDeviceAddress address = new BleDeviceAddress(bluetoothDevice.getAddress());
-        if (BleDeviceAddress.isEmpty(address.getValue())) return;
+        long packedAddress = BleDeviceAddress.pack(bluetoothDevice.getAddress());
+        if (packedAddress == BleDeviceAddress.INVALID) return;
 
-        var device = registry.ensure(address);
-        var ctx = registry.getOrCreateContext(address);
-        if (ctx.getState() != BleConnectionContext.GattState.DISCONNECTED) return;
+        var entry = registry.getOrCreateEntry(packedAddress);
+        if (entry.address().isEmpty()) return;
+        var ctx = entry.context();
+        ctx.recordRssi(result.getRssi(), System.currentTimeMillis());
+        if (ctx.getState() != GattState.DISCONNECTED) return;
 
-        Log.d(LOG_TAG, "handleScanResult(): scheduling connect to " + address);
-        ctx.setState(BleConnectionContext.GattState.CONNECTING);
-        connectionHandler.post(() -> connectToDevice(device, bluetoothDevice));
+        var queued = connectCandidates.get(entry.address());
+        if (queued != null) {
+            connectCandidates.put(entry.address(), new ConnectCandidate(queued.entry(), bluetoothDevice));
+            return;
+        }
+        // Evicted since the lookup above; the next scan result brings it back
+        if (!registry.pin(entry)) return;
+        if (connectCandidates.isEmpty()) {
+            mainHandler.postDelayed(connectCandidatesRunnable, CONNECT_RANKING_WINDOW_MS);
+        }
+        connectCandidates.put(entry.address(), new ConnectCandidate(entry, bluetoothDevice));
     }
 
-    private void startReconnectToPersistedDevices() {
-        new Thread(() -> {
+    private record ConnectCandidate(@NonNull BleDeviceRegistry.Entry entry, @NonNull BluetoothDevice bluetoothDevice) {
+    }
+
+    private final Runnable connectCandidatesRunnable = this::connectCandidatesBySignal;
+
+    private void connectCandidatesBySignal() {
+        List<ConnectCandidate> ranked = new ArrayList<>(connectCandidates.values());
+        connectCandidates.clear();
+        BleDeviceRegistry.sortBySignalStrength(ranked, candidate -> candidate.entry().device());
+
+        for (var candidate : ranked) {
+            var entry = candidate.entry();
+            BleDevice device = entry.device();
             try {
-                if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-                    Log.w(LOG_TAG, "Skipping persisted reconnect – adapter not ready or disabled");
-                    return;
-                }
+                // CAS: a concurrent persisted-device reconnect may already own this device
+                if (!entry.context().transition(GattState.DISCONNECTED, GattState.CONNECTING)) continue;
+            } finally {
+                // From CONNECTING on the state keeps the entry from being evicted
+                registry.unpin(entry);
+            }
+
+            Log.d(LOG_TAG, "handleScanResult(): scheduling connect to " + entry.address() + ", rssi=" + device.getRssi());
+            connectionHandler.post(() -> connectToDevice(device, candidate.bluetoothDevice()));
+        }
+    }
 
-                List<BleDevice> persisted = deviceRepository.loadAll();
-                Log.d(LOG_TAG, "Attempting reconnect for " + persisted.size() + " persisted devices");
-
-                var devicesToConnect = registry.registerPersistedDevices(persisted);
-
-                for (BleDevice device : devicesToConnect) {
-                    BleDeviceAddress address = device.getAddress();
-                    try {
-                        BluetoothDevice bluetoothDevice = bluetoothAdapter.getRemoteDevice(address.getValue());
-                        if (bluetoothDevice == null) {
-                            Log.w(LOG_TAG, "getRemoteDevice returned null for " + address);
-                            continue;
-                        }
-
-                        registry.getOrCreateContext(address).setState(BleConnectionContext.GattState.CONNECTING);
-                        connectionHandler.post(() -> connectToDevice(device, bluetoothDevice));
-                    } catch (IllegalArgumentException exception) {
-                        Log.e(LOG_TAG, "Invalid Bluetooth address: " + address, exception);
-                    } catch (Exception exception) {
-                        Log.e(LOG_TAG, "Failed scheduling reconnect for " + address, exception);
+    private void clearConnectCandidates() {
+        for (var candidate : connectCandidates.values()) {
+            registry.unpin(candidate.entry());
+        }
+        connectCandidates.clear();
+    }
+
+    private void startReconnectToPersistedDevices() {
+        // Snapshot first (no Room involved), then the authoritative list once the database is open and
+        // version-checked; devices already connecting from the snapshot are skipped by the state CAS
+        deviceRepository
+                .loadCachedAsync()
+                .exceptionally(t -> {
+                    Log.e(LOG_TAG, "Loading device snapshot failed", t);
+                    return List.of();
+                })
+                .thenAcceptAsync(this::reconnectToPersistedDevices, mainHandler::post);
+        deviceRepository
+                .loadAllAsync()
+                .exceptionally(t -> {
+                    Log.e(LOG_TAG, "Loading persisted devices failed", t);
+                    return List.of();
+                })
+                .thenAcceptAsync(this::reconnectToPersistedDevices, mainHandler::post);
+    }
+
+    private void reconnectToPersistedDevices(@NonNull List<BleDevice> persisted) {
+        try {
+            if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+                Log.w(LOG_TAG, "Skipping persisted reconnect – adapter not ready or disabled");
+                return;
+            }
+
+            Log.d(LOG_TAG, "Attempting reconnect for " + persisted.size() + " persisted devices");
+
+            var devicesToConnect = registry.registerPersistedDevices(persisted);
+
+            for (BleDevice device : devicesToConnect) {
+                BleDeviceAddress address = device.getAddress();
+                try {
+                    BluetoothDevice bluetoothDevice = bluetoothAdapter.getRemoteDevice(address.getValue());
+                    if (bluetoothDevice == null) {
+                        Log.w(LOG_TAG, "getRemoteDevice returned null for " + address);
+                        continue;
                     }
-                }
 
-                mainHandler.post(() -> {
-                    if (!scanning) {
-                        startScan();
+                    if (!registry.getOrCreateContext(address).transition(GattState.DISCONNECTED, GattState.CONNECTING)) {
+                        Log.d(LOG_TAG, "Skipping persisted reconnect for " + address + " – connection already in progress");
+                        continue;
                     }
-                });
-            } catch (Throwable t) {
-                Log.e(LOG_TAG, "Persisted devices reconnect routine failed", t);
+                    connectionHandler.post(() -> connectToDevice(device, bluetoothDevice));
+                } catch (IllegalArgumentException exception) {
+                    Log.e(LOG_TAG, "Invalid Bluetooth address: " + address, exception);
+                } catch (Exception exception) {
+                    Log.e(LOG_TAG, "Failed scheduling reconnect for " + address, exception);
+                }
             }
-        }, "corc-ble-reconnect").start();
+
+            if (!scanning) {
+                startScan();
+            }
+        } catch (Throwable t) {
+            Log.e(LOG_TAG, "Persisted devices reconnect routine failed", t);
+        }
     }
 
     @SuppressLint("MissingPermission")
@@ -323,7 +586,7 @@ public class BleController {
     }
 
     private void handleConnectionFailure(@NonNull BleDevice device, @NonNull String message) {
-        registry.getOrCreateContext(device.getAddress()).setState(BleConnectionContext.GattState.DISCONNECTED);
+        registry.getOrCreateContext(device.getAddress()).moveTo(GattState.DISCONNECTED);
         listener.onScanError(message);
     }
 
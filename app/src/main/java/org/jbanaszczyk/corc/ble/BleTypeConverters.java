@@ -1,11 +1,15 @@
 package org.jbanaszczyk.corc.ble;
 
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.room.TypeConverter;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
 
 public class BleTypeConverters {
 
+    private static final String LOG_TAG = "CORC:Converters";
+
     // ===== BleDeviceAddress converters =====
     @TypeConverter
     @NonNull
@@ -18,4 +22,22 @@ public class BleTypeConverters {
     public static BleDeviceAddress toBleDeviceAddress(@Nullable String address) {
         return new BleDeviceAddress(address);
     }
+
+    // ===== DeviceConfiguration converters =====
+    @TypeConverter
+    @NonNull
+    public static byte[] fromDeviceConfiguration(@Nullable DeviceConfiguration configuration) {
+        return configuration == null ? DeviceConfiguration.EMPTY.toByteArray() : configuration.toByteArray();
+    }
+
+    @TypeConverter
+    @NonNull
+    public static DeviceConfiguration toDeviceConfiguration(@Nullable byte[] bytes) {
+        try {
+            return DeviceConfiguration.fromBytes(bytes);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Dropping unreadable device configuration", e);
+            return DeviceConfiguration.EMPTY;
+        }
+    }
 }
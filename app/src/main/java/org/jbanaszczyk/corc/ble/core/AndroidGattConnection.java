@@ -0,0 +1,68 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothGatt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+/**
+ * {@link GattConnection} backed by a {@link BluetoothGatt}; one instance per {@code connectGatt()}.
+ */
+public final class AndroidGattConnection implements GattConnection {
+
+    @NonNull
+    private final BluetoothGatt gatt;
+    @NonNull
+    private final BleDeviceAddress address;
+
+    public AndroidGattConnection(@NonNull BluetoothGatt gatt) {
+        this.gatt = gatt;
+        this.address = BleDeviceAddress.fromLong(packAddress(gatt));
+    }
+
+    @NonNull
+    public BluetoothGatt gatt() {
+        return gatt;
+    }
+
+    @NonNull
+    @Override
+    public BleDeviceAddress address() {
+        return address;
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void disconnect() {
+        gatt.disconnect();
+    }
+
+    /**
+     * The {@link BluetoothGatt} behind a connection created by this class.
+     */
+    @NonNull
+    public static BluetoothGatt gattOf(@NonNull GattConnection connection) {
+        if (!(connection instanceof AndroidGattConnection android)) {
+            throw new IllegalArgumentException("Not an Android GATT connection: " + connection);
+        }
+        return android.gatt;
+    }
+
+    /**
+     * Whether the connection wraps exactly this {@link BluetoothGatt}.
+     */
+    public static boolean wraps(@Nullable GattConnection connection, @NonNull BluetoothGatt gatt) {
+        return connection instanceof AndroidGattConnection android && android.gatt == gatt;
+    }
+
+    /**
+     * Allocation-free address lookup for GATT callback paths.
+     *
+     * @return packed address, or the packed empty address when the GATT has no device
+     */
+    public static long packAddress(@NonNull BluetoothGatt gatt) {
+        var device = gatt.getDevice();
+        return BleDeviceAddress.packOrEmpty(device == null ? null : device.getAddress());
+    }
+}
@@ -0,0 +1,21 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Forwards {@link BleLog} to {@code android.util.Log}.
+ */
+public final class AndroidLogSink implements BleLog.Sink {
+
+    @Override
+    public void log(@NonNull BleLog.Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable throwable) {
+        switch (level) {
+            case DEBUG -> Log.d(tag, message, throwable);
+            case INFO -> Log.i(tag, message, throwable);
+            case WARN -> Log.w(tag, message, throwable);
+            case ERROR -> Log.e(tag, message, throwable);
+        }
+    }
+}
@@ -9,16 +9,21 @@ import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
-import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import org.jbanaszczyk.corc.BleConnectionListener;
 import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.CharacteristicCache;
 import org.jbanaszczyk.corc.ble.BleDeviceAddress;
 import org.jbanaszczyk.corc.ble.BleDeviceRegistry;
-import org.jbanaszczyk.corc.ble.BleConnectionContext;
+import org.jbanaszczyk.corc.ble.GattState;
 import org.jbanaszczyk.corc.ble.repo.BleDeviceRepository;
 import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
 import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.metrics.TraceRecorder;
+import org.jbanaszczyk.corc.ble.session.SessionEvent;
+import org.jbanaszczyk.corc.ble.session.SessionRecorder;
 
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -29,12 +34,10 @@ import java.util.stream.Collectors;
  */
 public final class BleGattClient {
     private static final String LOG_TAG = "CORC:BleGattClient";
-    public static final int GATT_WRITE_OVERHEAD = 3;
-    public static final int MIN_MTU = 23;
     private static final int DEFAULT_MTU =
             BleCommandResponseManager.MAX_PAYLOAD_SIZE
             + BleCommandResponseManager.PAYLOAD_HEADER_SIZE
-            + GATT_WRITE_OVERHEAD;
+            + GattConnection.GATT_WRITE_OVERHEAD;
 
     private static final UUID CMD_CHAR_UUID = UUID.fromString("B13A1001-9F2A-4F3B-9C8E-A7D4E3C8B125");
     private static final UUID RSP_CHAR_UUID = UUID.fromString("B13A1002-9F2A-4F3B-9C8E-A7D4E3C8B125");
@@ -45,20 +48,34 @@ public final class BleGattClient {
     private final BleConnectionListener listener;
     private final OperationQueue operationQueue;
     private final OperationExecutor operationExecutor;
+    private final CharacteristicCache characteristicCache;
     private final BleCommandResponseManager commandResponseManager = new BleCommandResponseManager();
+    private final NotificationSubscriptions subscriptions;
+    private final CommandChannel commandChannel;
+    @Nullable
+    private volatile TraceRecorder tracer;
+    @Nullable
+    private volatile SessionRecorder sessionRecorder;
 
     public BleGattClient(@NonNull Context context,
                          @NonNull BleDeviceRegistry registry,
                          @NonNull BleDeviceRepository deviceRepository,
                          @NonNull BleConnectionListener listener,
                          @NonNull OperationQueue operationQueue,
-                         @NonNull OperationExecutor operationExecutor) {
+                         @NonNull OperationExecutor operationExecutor,
+                         @NonNull CharacteristicCache characteristicCache,
+                         @NonNull Scheduler scheduler) {
         this.appContext = context.getApplicationContext();
         this.registry = registry;
         this.deviceRepository = deviceRepository;
         this.listener = listener;
         this.operationQueue = operationQueue;
         this.operationExecutor = operationExecutor;
+        this.characteristicCache = characteristicCache;
+        this.commandChannel = new CommandChannel(commandResponseManager, this::enqueue, scheduler);
+        this.subscriptions = new NotificationSubscriptions(this::writeNotificationState);
+        // Command responses arrive as RSP notifications on every connection
+        this.subscriptions.pin(RSP_CHAR_UUID);
         // Provide default executor to the queue so it can run pending ops when READY
         this.operationQueue.setExecutor(operationExecutor);
     }
@@ -68,79 +85,164 @@ public final class BleGattClient {
      * or device has no active GATT instance.
      */
     public <T> CompletableFuture<T> enqueue(@NonNull BleDevice device, @NonNull BleOperation<T> operation) {
-        var ctx = registry.getOrCreateContext(device.getAddress());
-        BluetoothGatt gatt = ctx.getGatt();
-        if (gatt == null) return null;
-        if (ctx.getState() != BleConnectionContext.GattState.READY) return null;
+        var ctx = registry.getOrCreateEntry(device.getAddress()).context();
+        GattConnection connection = ctx.getConnection();
+        if (connection == null) return null;
+        if (ctx.getState() != GattState.READY) return null;
 
-        return operationQueue.enqueue(operation, gatt, operationExecutor);
+        return issue(operation, connection);
+    }
+
+    @NonNull
+    public NotificationSubscriptions subscriptions() {
+        return subscriptions;
+    }
+
+    // Runs before READY as well, when subscriptions are restored on a new connection
+    @NonNull
+    private CompletableFuture<Void> writeNotificationState(@NonNull BleDeviceAddress address, @NonNull UUID uuid, boolean enable) {
+        var ctx = registry.getContext(address);
+        GattConnection connection = ctx != null ? ctx.getConnection() : null;
+        if (connection == null) {
+            return CompletableFuture.failedFuture(new RuntimeException("GATT not connected"));
+        }
+        var operation = enable ? BleOperation.enableNotify(address, uuid) : BleOperation.disableNotify(address, uuid);
+        return issue(operation, connection);
+    }
+
+    // Every operation reaches the queue here, so a session recording sees all of them
+    @NonNull
+    private <T> CompletableFuture<T> issue(@NonNull BleOperation<T> operation, @NonNull GattConnection connection) {
+        var recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.recordOperation(operation);
+        }
+        return operationQueue.enqueue(operation, connection, operationExecutor);
     }
 
     /**
      * Sends command; awaits response via command manager
      */
     public CompletableFuture<byte[]> sendCommand(@NonNull BleDevice device, UUID cmdUuid, UUID rspUuid, byte opcode, byte[] payload) {
-        var request = commandResponseManager.createRequest(opcode, payload);
-        CompletableFuture<byte[]> responseFuture = new CompletableFuture<>();
-        
-        // 1. Enqueue Write to CMD characteristic
-        var writeOp = BleOperation.write(device.getAddress(), cmdUuid, request.data());
-        var writeFuture = enqueue(device, writeOp);
-        
-        if (writeFuture == null) {
-            return CompletableFuture.failedFuture(new RuntimeException("GATT not ready"));
-        }
+        return commandChannel.send(device, cmdUuid, opcode, payload);
+    }
 
-        writeFuture.handle((result, throwable) -> {
-            if (throwable != null) {
-                responseFuture.completeExceptionally(throwable);
-            } else {
-                // Write succeeded at transport level, now wait for notification
-                commandResponseManager.setPendingResponse(request.requestId(), opcode, responseFuture);
-            }
-            return null;
-        });
+    /**
+     * Times every command round trip into {@code metrics}; {@code null} stops timing.
+     */
+    public void setMetrics(@Nullable BleMetrics metrics) {
+        commandChannel.setMetrics(metrics);
+    }
 
-        return responseFuture;
+    /**
+     * Records connection phases and commands into {@code tracer} while it is enabled; {@code null} stops it.
+     */
+    public void setTracer(@Nullable TraceRecorder tracer) {
+        this.tracer = tracer;
+        commandChannel.setTracer(tracer);
+    }
+
+    /**
+     * Records every operation and GATT callback into {@code recorder}; {@code null} stops recording.
+     * Closing the recorder stays with the caller.
+     */
+    public void setSessionRecorder(@Nullable SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
     }
 
+    /**
+     * Starts connectGatt for a device whose context the caller has already moved to CONNECTING.
+     * Any failure to start moves it back to DISCONNECTED so the device can be retried.
+     */
     @SuppressLint("MissingPermission")
     public void connect(@NonNull BleDevice device, @NonNull BluetoothDevice bluetoothDevice) {
         final BleDeviceAddress address = device.getAddress();
-        Log.d(LOG_TAG, "connect(): " + address);
+        BleLog.d(LOG_TAG, "connect(): {}", address);
 
         // Connects to device; handles errors; updates connection context
+        var ctx = registry.getOrCreateEntry(address).context();
+        beginSpan(TraceRecorder.Span.SETUP, address);
+        beginSpan(TraceRecorder.Span.CONNECT, address);
         try {
             BluetoothGatt gatt = bluetoothDevice.connectGatt(appContext, false, gattCallback, BluetoothDevice.TRANSPORT_LE);
             if (gatt == null) {
-                Log.e(LOG_TAG, "connectGatt() returned null for " + address);
+                BleLog.e(LOG_TAG, "connectGatt() returned null for {}", address);
+                ctx.moveTo(GattState.DISCONNECTED);
                 listener.onScanError("Failed to connect to " + address);
                 return;
             }
-            var ctx = registry.getOrCreateContext(address);
-            ctx.setGatt(gatt);
-            ctx.setState(BleConnectionContext.GattState.CONNECTING);
+            ctx.setConnection(new AndroidGattConnection(gatt));
         } catch (SecurityException e) {
-            Log.e(LOG_TAG, "Missing BLUETOOTH_CONNECT permission when connecting to " + address, e);
+            BleLog.e(LOG_TAG, "Missing BLUETOOTH_CONNECT permission when connecting to {}", address, e);
+            ctx.moveTo(GattState.DISCONNECTED);
             listener.onScanError("Missing BLUETOOTH_CONNECT permission");
         } catch (NullPointerException ignore) {
             // Defensive – some Android stacks may throw
+            ctx.moveTo(GattState.DISCONNECTED);
         } catch (Exception e) {
-            Log.e(LOG_TAG, "connect() failed for " + address, e);
+            BleLog.e(LOG_TAG, "connect() failed for {}", address, e);
+            ctx.moveTo(GattState.DISCONNECTED);
             listener.onScanError("Failed to connect to " + address + ": " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
         }
     }
 
+    @SuppressLint("MissingPermission")
+    private void discoverServices(@NonNull BluetoothGatt gatt, @NonNull BleDeviceAddress address) {
+        beginSpan(TraceRecorder.Span.DISCOVERY, address);
+        gatt.discoverServices();
+    }
+
+    private void beginSpan(@NonNull TraceRecorder.Span span, @NonNull BleDeviceAddress address) {
+        var tracer = this.tracer;
+        if (tracer != null) {
+            tracer.begin(span, address);
+        }
+    }
+
+    private void endSpan(@NonNull TraceRecorder.Span span, @NonNull BleDeviceAddress address, int status) {
+        var tracer = this.tracer;
+        if (tracer != null) {
+            tracer.end(span, address, status);
+        }
+    }
+
+    private void recordCallback(@NonNull SessionEvent.Kind kind, @NonNull BluetoothGatt gatt, @Nullable UUID uuid,
+                                @Nullable Integer status, @Nullable Integer number, @Nullable byte[] value) {
+        var recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.recordCallback(kind, BleDeviceAddress.fromLong(AndroidGattConnection.packAddress(gatt)),
+                    uuid, status, number, value);
+        }
+    }
+
+    /**
+     * Entry of the device a callback is about. Callbacks only come for connections this client opened, so the
+     * device is registered already; nothing is created for an address that does not pack.
+     */
+    @Nullable
+    private BleDeviceRegistry.Entry registeredEntry(@NonNull BluetoothGatt gatt, @NonNull String callback) {
+        long packedAddress = AndroidGattConnection.packAddress(gatt);
+        if (packedAddress == BleDeviceAddress.INVALID) {
+            BleLog.w(LOG_TAG, "{}(): invalid address – ignoring", callback);
+            return null;
+        }
+        var entry = registry.findEntry(packedAddress);
+        if (entry == null) {
+            BleLog.w(LOG_TAG, "{}(): {} is not registered – ignoring", callback, BleDeviceAddress.fromLong(packedAddress));
+        }
+        return entry;
+    }
+
     @SuppressLint("MissingPermission")
     private void safeCloseGatt(@NonNull BluetoothGatt gatt) {
-        var address = BleDeviceAddress.getAddressFromGatt(gatt);
+        var entry = registry.findEntry(AndroidGattConnection.packAddress(gatt));
         try {
             gatt.close();
         } catch (Exception e) {
-            Log.e(LOG_TAG, "Error closing GATT", e);
+            BleLog.e(LOG_TAG, "Error closing GATT", e);
         } finally {
-            if (!address.isEmpty()) {
-                operationQueue.clear(address);
+            if (entry != null && !entry.address().isEmpty()) {
+                operationQueue.clear(entry.address());
             }
         }
     }
@@ -148,34 +250,44 @@ public final class BleGattClient {
     private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @Override
         public void onServicesDiscovered(@NonNull BluetoothGatt gatt, int status) {
-            BleDeviceAddress address = BleDeviceAddress.getAddressFromGatt(gatt);
-            if (address.isEmpty()) {
-                Log.w(LOG_TAG, "onServicesDiscovered(): invalid address – ignoring");
-                return;
-            }
+            recordCallback(SessionEvent.Kind.SERVICES_DISCOVERED, gatt, null, status, null, null);
+            var entry = registeredEntry(gatt, "onServicesDiscovered");
+            if (entry == null) return;
+            BleDeviceAddress address = entry.address();
+            endSpan(TraceRecorder.Span.DISCOVERY, address, status);
             if (status != BluetoothGatt.GATT_SUCCESS) {
-                Log.e(LOG_TAG, "onServicesDiscovered(): GATT error " + status + " for " + address);
+                BleLog.e(LOG_TAG, "onServicesDiscovered(): GATT error {} for {}", status, address);
                 listener.onScanError("Service discovery failed for " + address + " (status " + status + ")");
                 return;
             }
 
             var serviceUuids = gatt.getServices().stream().map(BluetoothGattService::getUuid).collect(Collectors.toSet());
-            Log.d(LOG_TAG, "onServicesDiscovered(): address=" + address + ", services=" + serviceUuids);
+            BleLog.d(LOG_TAG, "onServicesDiscovered(): address={}, services={}", address, serviceUuids);
 
-            var device = registry.ensure(address);
+            var device = entry.device();
             device.setServices(serviceUuids);
             deviceRepository.save(device);
-            var ctx = registry.getOrCreateContext(address);
-            ctx.setState(BleConnectionContext.GattState.READY);
-            operationQueue.tryExecuteNext(ctx.getGatt());
+            registry.markPersisted(address);
+            var ctx = entry.context();
+            if (ctx.getState() != GattState.SERVICES_DISCOVERING) {
+                BleLog.w(LOG_TAG, "onServicesDiscovered(): {} is {}, not discovering – ignoring", address, ctx.getState());
+                return;
+            }
+            // Restored ahead of anything sent on READY (e.g. the command outbox replay), so no response is missed
+            var responses = subscriptions.onConnected(address);
+            if (!ctx.transition(GattState.SERVICES_DISCOVERING, GattState.READY)) {
+                BleLog.w(LOG_TAG, "onServicesDiscovered(): {} is {}, not discovering – ignoring", address, ctx.getState());
+                return;
+            }
+            operationQueue.tryExecuteNext(ctx.getConnection());
 
-            enqueue(device, BleOperation.enableNotify(address, RSP_CHAR_UUID))
+            responses
                     .thenCompose(v -> sendCommand(device, CMD_CHAR_UUID, RSP_CHAR_UUID, BleOpcode.VERSION, null))
                     .thenAccept(payload -> {
                         if (payload.length >= 3) {
                             String ver = payload[0] + "." + payload[1] + "." + payload[2];
                             ctx.setVersion(ver);
-                            Log.i(LOG_TAG, "Peripheral Version: " + ver);
+                            BleLog.i(LOG_TAG, "Peripheral Version: {}", ver);
                         }
                     })
                     .thenCompose(v -> sendCommand(device, CMD_CHAR_UUID, RSP_CHAR_UUID, BleOpcode.GET_DATA_MAX_LEN, null))
@@ -183,13 +295,15 @@ public final class BleGattClient {
                         if (payload.length >= 1) {
                             int maxLen = Byte.toUnsignedInt(payload[0]);
                             ctx.setDataMaxLen(maxLen);
-                            Log.i(LOG_TAG, "Data Max Len: " + maxLen);
+                            BleLog.i(LOG_TAG, "Data Max Len: {}", maxLen);
                         }
                     })
+                    .thenRun(() -> deviceRepository.recordConnection(device, System.currentTimeMillis()))
                     .exceptionally(t -> {
-                        Log.e(LOG_TAG, "Failed to query device info", t);
+                        BleLog.e(LOG_TAG, "Failed to query device info", t);
                         return null;
-                    });
+                    })
+                    .thenRun(() -> endSpan(TraceRecorder.Span.SETUP, address, BluetoothGatt.GATT_SUCCESS));
 
             listener.onDeviceReady(device);
         }
@@ -197,31 +311,62 @@ public final class BleGattClient {
         @SuppressLint("MissingPermission")
         @Override
         public void onConnectionStateChange(@NonNull BluetoothGatt gatt, int status, int newState) {
-            var address = BleDeviceAddress.getAddressFromGatt(gatt);
-            Log.d(LOG_TAG, "onConnectionStateChange(): address=" + address + ", status=" + status + ", newState=" + newState);
+            recordCallback(SessionEvent.Kind.CONNECTION_STATE, gatt, null, status, newState, null);
+            var entry = registeredEntry(gatt, "onConnectionStateChange");
+            if (entry == null) {
+                // Not a connection this client tracks, nothing to hand it to
+                gatt.close();
+                return;
+            }
+            var address = entry.address();
+            BleLog.d(LOG_TAG, "onConnectionStateChange(): address={}, status={}, newState={}", address, status, newState);
 
-            var device = registry.ensure(address);
-            var ctx = registry.getOrCreateContext(address);
+            var device = entry.device();
+            var ctx = entry.context();
             switch (newState) {
                 case BluetoothProfile.STATE_CONNECTED -> {
-                    ctx.setGatt(gatt);
-                    ctx.setState(BleConnectionContext.GattState.SERVICES_DISCOVERING);
+                    if (!ctx.transition(GattState.CONNECTING, GattState.SERVICES_DISCOVERING)) {
+                        // Not a connection we started (e.g. stale GATT after disconnectAllDevices) or a duplicate callback
+                        BleLog.w(LOG_TAG, "onConnectionStateChange(): unexpected STATE_CONNECTED for {} in {}", address, ctx.getState());
+                        if (!AndroidGattConnection.wraps(ctx.getConnection(), gatt)) {
+                            gatt.disconnect();
+                        }
+                        return;
+                    }
+                    var connection = ctx.getConnection();
+                    if (!AndroidGattConnection.wraps(connection, gatt)) {
+                        connection = new AndroidGattConnection(gatt);
+                        ctx.setConnection(connection);
+                    }
+                    endSpan(TraceRecorder.Span.CONNECT, address, status);
                     listener.onConnectionStateChanged(device, true);
-                    operationQueue.enqueue(BleOperation.requestMtu(address, DEFAULT_MTU), gatt, operationExecutor)
-                            .thenRun(gatt::discoverServices)
+                    issue(BleOperation.requestMtu(address, DEFAULT_MTU), connection)
+                            .thenRun(() -> discoverServices(gatt, address))
                             .exceptionally(t -> {
-                                Log.e(LOG_TAG, "MTU request failed, proceeding with service discovery", t);
-                                gatt.discoverServices();
+                                BleLog.e(LOG_TAG, "MTU request failed, proceeding with service discovery", t);
+                                discoverServices(gatt, address);
                                 return null;
                             });
                 }
                 case BluetoothProfile.STATE_DISCONNECTED -> {
-                    ctx.setState(BleConnectionContext.GattState.DISCONNECTED);
+                    var current = ctx.getConnection();
+                    if (current != null && !AndroidGattConnection.wraps(current, gatt)) {
+                        // Late callback of an earlier connection; the context already tracks a newer one
+                        gatt.close();
+                        return;
+                    }
+                    ctx.moveTo(GattState.DISCONNECTED);
+                    var tracer = BleGattClient.this.tracer;
+                    if (tracer != null) {
+                        tracer.endAll(address, status);
+                    }
+                    characteristicCache.clear(address);
+                    subscriptions.onDisconnected(address);
                     safeCloseGatt(gatt);
                     listener.onConnectionStateChanged(device, false);
                 }
-                case BluetoothProfile.STATE_DISCONNECTING -> Log.d(LOG_TAG, "onConnectionStateChange(): STATE_DISCONNECTING");
-                case BluetoothProfile.STATE_CONNECTING -> Log.d(LOG_TAG, "onConnectionStateChange(): STATE_CONNECTING");
+                case BluetoothProfile.STATE_DISCONNECTING -> BleLog.d(LOG_TAG, "onConnectionStateChange(): STATE_DISCONNECTING");
+                case BluetoothProfile.STATE_CONNECTING -> BleLog.d(LOG_TAG, "onConnectionStateChange(): STATE_CONNECTING");
             }
         }
 
@@ -230,6 +375,7 @@ public final class BleGattClient {
                                          @NonNull BluetoothGattCharacteristic characteristic,
                                          @NonNull byte[] value,
                                          int status) {
+            recordCallback(SessionEvent.Kind.CHARACTERISTIC_READ, gatt, characteristic.getUuid(), status, null, value);
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 operationQueue.onOperationFinished(value);
             } else {
@@ -241,17 +387,32 @@ public final class BleGattClient {
         public void onCharacteristicWrite(@NonNull BluetoothGatt gatt,
                                           @NonNull BluetoothGattCharacteristic characteristic,
                                           int status) {
+            // The API 33+ write does not store the value in the characteristic and the prepare-write echo is not
+            // handed to the app: the status is all there is to go by
+            recordCallback(SessionEvent.Kind.CHARACTERISTIC_WRITE, gatt, characteristic.getUuid(), status, null, null);
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                operationQueue.onOperationFinished(null);
+                // A part of a reliable write continues with the next part
+                operationQueue.onStepFinished(null);
             } else {
                 operationQueue.onOperationFailed(new RuntimeException("GATT Write failed with status: " + status));
             }
         }
 
+        @Override
+        public void onReliableWriteCompleted(@NonNull BluetoothGatt gatt, int status) {
+            recordCallback(SessionEvent.Kind.RELIABLE_WRITE_COMPLETED, gatt, null, status, null, null);
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                operationQueue.onOperationFinished(null);
+            } else {
+                operationQueue.onOperationFailed(new RuntimeException("GATT Reliable Write failed with status: " + status));
+            }
+        }
+
         @Override
         public void onDescriptorWrite(@NonNull BluetoothGatt gatt,
                                       @NonNull BluetoothGattDescriptor descriptor,
                                       int status) {
+            recordCallback(SessionEvent.Kind.DESCRIPTOR_WRITE, gatt, descriptor.getCharacteristic().getUuid(), status, null, null);
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 operationQueue.onOperationFinished(null);
             } else {
@@ -261,11 +422,11 @@ public final class BleGattClient {
 
         @Override
         public void onMtuChanged(@NonNull BluetoothGatt gatt, int mtu, int status) {
-            var address = BleDeviceAddress.getAddressFromGatt(gatt);
-            Log.d(LOG_TAG, "onMtuChanged(): address=" + address + ", mtu=" + mtu + ", status=" + status);
-            var ctx = registry.getOrCreateContext(address);
+            recordCallback(SessionEvent.Kind.MTU_CHANGED, gatt, null, status, mtu, null);
+            var entry = registeredEntry(gatt, "onMtuChanged");
+            BleLog.d(LOG_TAG, "onMtuChanged(): address={}, mtu={}, status={}", entry == null ? null : entry.address(), mtu, status);
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                ctx.setMtu(mtu);
+                if (entry != null) entry.context().setMtu(mtu);
                 operationQueue.onOperationFinished(mtu);
             } else {
                 operationQueue.onOperationFailed(new RuntimeException("GATT MTU change failed with status: " + status));
@@ -276,7 +437,15 @@ public final class BleGattClient {
         public void onCharacteristicChanged(@NonNull BluetoothGatt gatt,
                                             @NonNull BluetoothGattCharacteristic characteristic,
                                             @NonNull byte[] value) {
-            commandResponseManager.handleNotification(value);
+            recordCallback(SessionEvent.Kind.CHARACTERISTIC_CHANGED, gatt, characteristic.getUuid(), null, null, value);
+            if (RSP_CHAR_UUID.equals(characteristic.getUuid())) {
+                commandResponseManager.handleNotification(value);
+                return;
+            }
+            var entry = registry.findEntry(AndroidGattConnection.packAddress(gatt));
+            if (entry != null) {
+                characteristicCache.onNotification(entry.address(), characteristic.getUuid(), value);
+            }
         }
     };
 }
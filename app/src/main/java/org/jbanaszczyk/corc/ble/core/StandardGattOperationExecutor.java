@@ -5,12 +5,11 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
-import android.util.Log;
 import androidx.annotation.NonNull;
 import java.util.UUID;
 
 /**
- * Default executor that performs standard GATT operations on the provided BluetoothGatt.
+ * Default executor that performs standard GATT operations on the {@link BluetoothGatt} of an {@link AndroidGattConnection}.
  */
 public final class StandardGattOperationExecutor implements OperationExecutor {
     private static final String LOG_TAG = "CORC:GattExec";
@@ -18,11 +17,12 @@ public final class StandardGattOperationExecutor implements OperationExecutor {
 
     @SuppressLint("MissingPermission")
     @Override
-    public void execute(@NonNull BluetoothGatt gatt, @NonNull BleOperation<?> operation) {
+    public void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+        BluetoothGatt gatt = AndroidGattConnection.gattOf(connection);
         if (operation.getType() == BleOperation.BleOperationType.REQUEST_MTU) {
             var mtu = operation.getMtu();
             if (mtu != null) {
-                Log.d(LOG_TAG, "requestMtu(" + mtu + ")");
+                BleLog.d(LOG_TAG, "requestMtu({})", mtu);
                 boolean ok = gatt.requestMtu(mtu);
                 if (!ok) {
                     throw new RuntimeException("gatt.requestMtu() returned false");
@@ -30,10 +30,14 @@ public final class StandardGattOperationExecutor implements OperationExecutor {
             }
             return;
         }
+        if (operation.getType() == BleOperation.BleOperationType.RELIABLE_WRITE) {
+            reliableWriteStep(gatt, operation);
+            return;
+        }
 
         BluetoothGattCharacteristic characteristic = findCharacteristic(gatt, operation.getCharacteristicUuid());
         if (characteristic == null) {
-            Log.w(LOG_TAG, "Characteristic not found: " + operation.getCharacteristicUuid());
+            BleLog.w(LOG_TAG, "Characteristic not found: {}", operation.getCharacteristicUuid());
             // OperationQueue timeout will handle it if we don't finish
             return;
         }
@@ -68,14 +72,53 @@ public final class StandardGattOperationExecutor implements OperationExecutor {
                 throw new RuntimeException("GATT operation " + operation.getType() + " failed");
             }
         } catch (SecurityException se) {
-            Log.e(LOG_TAG, "Missing BLUETOOTH_CONNECT permission during execute", se);
+            BleLog.e(LOG_TAG, "Missing BLUETOOTH_CONNECT permission during execute", se);
             throw se;
         } catch (Exception e) {
-            Log.e(LOG_TAG, "GATT execute failed: " + e.getMessage(), e);
+            BleLog.e(LOG_TAG, "GATT execute failed: {}", e.getMessage(), e);
             throw e;
         }
     }
 
+    @SuppressLint("MissingPermission")
+    @Override
+    public void abort(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+        if (operation.getType() == BleOperation.BleOperationType.RELIABLE_WRITE) {
+            BleLog.w(LOG_TAG, "abortReliableWrite() at step {}", operation.getStep());
+            AndroidGattConnection.gattOf(connection).abortReliableWrite();
+        }
+    }
+
+    // One step per GATT callback: begin + first part, further parts, then execute
+    @SuppressLint("MissingPermission")
+    private static void reliableWriteStep(@NonNull BluetoothGatt gatt, @NonNull BleOperation<?> operation) {
+        var parts = operation.getParts();
+        int step = operation.getStep();
+        if (step == 0) {
+            // Fail before the transaction starts rather than half way through it
+            for (BleOperation.WritePart part : parts) {
+                if (findCharacteristic(gatt, part.characteristicUuid()) == null) {
+                    throw new IllegalStateException("Characteristic not found: " + part.characteristicUuid());
+                }
+            }
+            if (!gatt.beginReliableWrite()) {
+                throw new RuntimeException("gatt.beginReliableWrite() returned false");
+            }
+        }
+        if (step < parts.size()) {
+            var part = parts.get(step);
+            int status = gatt.writeCharacteristic(
+                    findCharacteristic(gatt, part.characteristicUuid()),
+                    part.value(),
+                    BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                throw new RuntimeException("Reliable write of " + part.characteristicUuid() + " failed with status " + status);
+            }
+        } else if (!gatt.executeReliableWrite()) {
+            throw new RuntimeException("gatt.executeReliableWrite() returned false");
+        }
+    }
+
     private static BluetoothGattCharacteristic findCharacteristic(BluetoothGatt gatt, UUID uuid) {
         for (BluetoothGattService service : gatt.getServices()) {
             BluetoothGattCharacteristic c = service.getCharacteristic(uuid);
@@ -91,7 +134,7 @@ public final class StandardGattOperationExecutor implements OperationExecutor {
         if (ccc != null) {
             gatt.writeDescriptor(ccc, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
         } else if (!ok) {
-            Log.w(LOG_TAG, "setCharacteristicNotification failed and CCCD missing for enable");
+            BleLog.w(LOG_TAG, "setCharacteristicNotification failed and CCCD missing for enable");
         }
     }
 
@@ -102,7 +145,7 @@ public final class StandardGattOperationExecutor implements OperationExecutor {
         if (ccc != null) {
             gatt.writeDescriptor(ccc, BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
         } else if (!ok) {
-            Log.w(LOG_TAG, "setCharacteristicNotification failed and CCCD missing for disable");
+            BleLog.w(LOG_TAG, "setCharacteristicNotification failed and CCCD missing for disable");
         }
     }
 }
@@ -0,0 +1,25 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import android.os.Trace;
+import androidx.annotation.NonNull;
+
+/**
+ * Mirrors {@link TraceRecorder} spans into {@code android.os.Trace} async sections, so they show up next to
+ * the Bluetooth stack in a system trace (Perfetto, {@code atrace}). Costs nothing while no trace is captured.
+ */
+public final class AndroidTraceMirror implements TraceRecorder.Mirror {
+
+    @Override
+    public void begin(@NonNull String name, int cookie) {
+        if (Trace.isEnabled()) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+    }
+
+    @Override
+    public void end(@NonNull String name, int cookie) {
+        if (Trace.isEnabled()) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+}
@@ -5,13 +5,46 @@ import org.jbanaszczyk.corc.ble.BleDevice;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface BleDeviceRepository {
 
+    /**
+     * Persists the device if it is dirty. Implementations may defer and batch the write; see {@link #flush()}.
+     */
     void save(@NonNull BleDevice device);
 
     void saveAll(@NonNull Collection<BleDevice> devices);
 
+    /**
+     * Blocking read; must not be called on the main thread.
+     */
     @NonNull
     List<BleDevice> loadAll();
+
+    /**
+     * Loads all devices once the underlying storage is ready, without blocking the caller.
+     */
+    @NonNull
+    CompletableFuture<List<BleDevice>> loadAllAsync();
+
+    /**
+     * Remembers the connection profile (MTU, data max len) and makes the device the most recently connected one.
+     */
+    void recordConnection(@NonNull BleDevice device, long timestampMillis);
+
+    /**
+     * Fast, possibly stale list of known devices (most recently connected first) that is available before
+     * the authoritative store is open. May be empty; {@link #loadAllAsync()} follows with the full list.
+     */
+    @NonNull
+    CompletableFuture<List<BleDevice>> loadCachedAsync();
+
+    /**
+     * Writes all deferred saves now.
+     *
+     * @return completes once they are on disk
+     */
+    @NonNull
+    CompletableFuture<Void> flush();
 }
@@ -0,0 +1,186 @@
+package org.jbanaszczyk.corc.ble.repo;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary copy of the known devices, read at startup before Room is open.
+ * <p>
+ * Layout (big endian): magic, format version, entry count, entries in MRU order, CRC32 of everything before it.
+ * Each entry: packed MAC (8), MTU (2), data max len (2), last connected millis (8),
+ * configuration (4 + {@link DeviceConfiguration} bytes).
+ * <p>
+ * Written to a temporary file and renamed over the old one, so a reader sees either the old or the new snapshot.
+ * Anything unexpected on read (short file, bad magic or CRC) is reported as "no snapshot"; Room stays authoritative.
+ */
+public final class DeviceSnapshotFile {
+
+    private static final String LOG_TAG = "CORC:Snapshot";
+
+    static final int MAGIC = 0x434F5244; // "CORD"
+    static final short FORMAT_VERSION = 2;
+    static final int MAX_FILE_SIZE = 256 * 1024;
+
+    private static final int HEADER_SIZE = 4 + 2 + 2;
+    private static final int ENTRY_FIXED_SIZE = 8 + 2 + 2 + 8 + 4;
+    private static final int CRC_SIZE = 4;
+
+    /**
+     * Connection profile of one device.
+     */
+    public record Entry(@NonNull BleDeviceAddress address,
+                        int mtu,
+                        int dataMaxLen,
+                        long lastConnectedMillis,
+                        @NonNull DeviceConfiguration configuration) {
+    }
+
+    @NonNull
+    private final File file;
+
+    public DeviceSnapshotFile(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the whole snapshot with a single read.
+     *
+     * @return entries in MRU order, or null when the file is missing or corrupt
+     */
+    @Nullable
+    public List<Entry> read() {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + CRC_SIZE || size > MAX_FILE_SIZE) {
+                Log.w(LOG_TAG, "Ignoring snapshot of unexpected size " + size);
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+            return decode(buffer);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Failed to read snapshot " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot atomically.
+     */
+    public void write(@NonNull List<Entry> entries) throws IOException {
+        ByteBuffer buffer = encode(entries);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete() {
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Failed to delete snapshot " + file);
+        }
+    }
+
+    @NonNull
+    static ByteBuffer encode(@NonNull List<Entry> entries) {
+        List<byte[]> configurations = new ArrayList<>(entries.size());
+        int size = HEADER_SIZE + CRC_SIZE;
+        for (Entry entry : entries) {
+            byte[] configuration = entry.configuration().toByteArray();
+            configurations.add(configuration);
+            size += ENTRY_FIXED_SIZE + configuration.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(FORMAT_VERSION);
+        buffer.putShort((short) entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            byte[] configuration = configurations.get(i);
+            buffer.putLong(entry.address().toLong());
+            buffer.putShort((short) entry.mtu());
+            buffer.putShort((short) entry.dataMaxLen());
+            buffer.putLong(entry.lastConnectedMillis());
+            buffer.putInt(configuration.length);
+            buffer.put(configuration);
+        }
+        buffer.putInt((int) crc(buffer.array(), buffer.position()));
+        buffer.flip();
+        return buffer;
+    }
+
+    @Nullable
+    static List<Entry> decode(@NonNull ByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + CRC_SIZE) return null;
+        int storedCrc = buffer.getInt(limit - CRC_SIZE);
+        if (storedCrc != (int) crc(buffer.array(), limit - CRC_SIZE)) {
+            Log.w(LOG_TAG, "Snapshot CRC mismatch");
+            return null;
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                Log.w(LOG_TAG, "Unknown snapshot format");
+                return null;
+            }
+            int count = Short.toUnsignedInt(buffer.getShort());
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long packed = buffer.getLong();
+                int mtu = Short.toUnsignedInt(buffer.getShort());
+                int dataMaxLen = Short.toUnsignedInt(buffer.getShort());
+                long lastConnectedMillis = buffer.getLong();
+                int configurationLength = buffer.getInt();
+                if (configurationLength < 0 || configurationLength > limit - CRC_SIZE - buffer.position()) {
+                    return null;
+                }
+                byte[] configurationBytes = new byte[configurationLength];
+                buffer.get(configurationBytes);
+                DeviceConfiguration configuration = DeviceConfiguration.fromBytes(configurationBytes);
+
+                var address = BleDeviceAddress.fromLong(packed);
+                if (address.isEmpty()) continue;
+                entries.add(new Entry(address, mtu, dataMaxLen, lastConnectedMillis, configuration));
+            }
+            if (buffer.position() != limit - CRC_SIZE) {
+                return null;
+            }
+            return entries;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+}
@@ -5,80 +5,232 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import org.jbanaszczyk.corc.ble.BleConnectionContext;
 import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
 import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+import org.jbanaszczyk.corc.db.BleDeviceDao;
 import org.jbanaszczyk.corc.db.CorcDatabase;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
+/**
+ * Room-backed repository with a write-behind layer: saves of dirty devices are collected per device for
+ * {@link #WRITE_BEHIND_WINDOW_MS} and written as one {@code upsertAll} transaction. Saves of clean devices
+ * (e.g. on every reconnect) never reach the database.
+ * <p>
+ * Known devices and their connection profiles are mirrored in a {@link DeviceSnapshotFile}, rewritten in the
+ * same flush when they change, so {@link #loadCachedAsync()} can serve startup without waiting for Room.
+ */
 public final class RoomBleDeviceRepository implements BleDeviceRepository {
 
     private static final String LOG_TAG = "CORC:BleRepo";
+    private static final String SNAPSHOT_FILE_NAME = "devices.snapshot";
 
+    static final long WRITE_BEHIND_WINDOW_MS = 500L;
+
+    private static final Comparator<DeviceSnapshotFile.Entry> MOST_RECENT_FIRST =
+            Comparator.comparingLong(DeviceSnapshotFile.Entry::lastConnectedMillis).reversed();
+
+    @NonNull
+    private final Supplier<BleDeviceDao> dao;
     @NonNull
-    private final Context appContext;
+    private final Supplier<CompletableFuture<BleDeviceDao>> daoAsync;
     @NonNull
-    private final ExecutorService ioExecutor;
+    private final ScheduledExecutorService ioExecutor;
+    // Latest instance per device waiting for the next flush
+    private final Map<BleDeviceAddress, BleDevice> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    @NonNull
+    private final DeviceSnapshotFile snapshotFile;
+    // Contents of the snapshot file
+    private final Map<BleDeviceAddress, DeviceSnapshotFile.Entry> profiles = new ConcurrentHashMap<>();
+    private final AtomicBoolean snapshotDirty = new AtomicBoolean(false);
 
     public RoomBleDeviceRepository(@NonNull Context context) {
-        this.appContext = context.getApplicationContext();
-        this.ioExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "corc-db-exec"));
+        this(() -> CorcDatabase.getInstance(context.getApplicationContext()).bleDeviceDao(),
+                () -> CorcDatabase.getInstanceAsync(context.getApplicationContext()).thenApply(CorcDatabase::bleDeviceDao),
+                Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "corc-db-exec")),
+                new DeviceSnapshotFile(new File(context.getApplicationContext().getFilesDir(), SNAPSHOT_FILE_NAME)));
+    }
+
+    /**
+     * @param ioExecutor runs every database and file access; must execute one task at a time
+     */
+    RoomBleDeviceRepository(@NonNull Supplier<BleDeviceDao> dao,
+                            @NonNull Supplier<CompletableFuture<BleDeviceDao>> daoAsync,
+                            @NonNull ScheduledExecutorService ioExecutor,
+                            @NonNull DeviceSnapshotFile snapshotFile) {
+        this.dao = dao;
+        this.daoAsync = daoAsync;
+        this.ioExecutor = ioExecutor;
+        this.snapshotFile = snapshotFile;
     }
 
     @Override
     public void save(@NonNull BleDevice device) {
         Objects.requireNonNull(device, "device");
-        ioExecutor.execute(() -> {
-            try {
-                var entity = toEntity(device);
-                CorcDatabase
-                        .getInstance(appContext)
-                        .bleDeviceDao()
-                        .upsert(entity);
-            } catch (Throwable t) {
-                Log.e(LOG_TAG, "Failed to persist device " + device.getAddress(), t);
-            }
-        });
+        if (!device.isDirty()) {
+            return;
+        }
+        pending.put(device.getAddress(), device);
+        scheduleFlush();
     }
 
     @Override
     public void saveAll(@NonNull Collection<BleDevice> devices) {
-        if (devices.isEmpty()) return;
-        ioExecutor.execute(() -> {
-            try {
-                List<BleDevicePersistent> entities = new ArrayList<>(devices.size());
-                for (BleDevice device : devices) {
-                    if (device == null) continue;
-                    entities.add(toEntity(device));
-                }
-                if (entities.isEmpty()) return;
-                CorcDatabase
-                        .getInstance(appContext)
-                        .bleDeviceDao()
-                        .upsertAll(entities);
-            } catch (Throwable t) {
-                Log.e(LOG_TAG, "Failed to persist devices batch (" + devices.size() + ")", t);
+        boolean added = false;
+        for (BleDevice device : devices) {
+            if (device == null || !device.isDirty()) continue;
+            pending.put(device.getAddress(), device);
+            added = true;
+        }
+        if (added) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes the row only when the profile changed, and the snapshot only when the profile changed or the
+     * device was not already the most recent one, so reconnect churn to the same device costs no I/O.
+     */
+    @Override
+    public void recordConnection(@NonNull BleDevice device, long timestampMillis) {
+        device.recordConnectionProfile(timestampMillis);
+        save(device);
+
+        var address = device.getAddress();
+        var updated = toSnapshotEntry(device);
+        boolean wasMostRecent = isMostRecent(address);
+        var previous = profiles.put(address, updated);
+        boolean changed = previous == null
+                || !wasMostRecent
+                || previous.mtu() != updated.mtu()
+                || previous.dataMaxLen() != updated.dataMaxLen()
+                || !previous.configuration().equals(updated.configuration());
+        if (changed) {
+            snapshotDirty.set(true);
+            scheduleFlush();
+        }
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(this::writePending, ioExecutor);
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            ioExecutor.schedule(this::writePending, WRITE_BEHIND_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Runs on ioExecutor only
+    private void writePending() {
+        flushScheduled.set(false);
+        writePendingDevices();
+        writeSnapshot();
+    }
+
+    private void writePendingDevices() {
+        if (pending.isEmpty()) return;
+
+        List<BleDevice> batch = new ArrayList<>(pending.size());
+        List<BleDevicePersistent> entities = new ArrayList<>(pending.size());
+        for (BleDeviceAddress address : pending.keySet()) {
+            BleDevice device = pending.remove(address);
+            if (device == null || !device.isDirty()) continue;
+            device.markClean();
+            batch.add(device);
+            entities.add(toEntity(device));
+        }
+        if (entities.isEmpty()) return;
+
+        try {
+            dao.get().upsertAll(entities);
+            Log.d(LOG_TAG, "Flushed " + entities.size() + " devices");
+            for (BleDevicePersistent entity : entities) {
+                mergeProfile(entity);
+            }
+        } catch (Throwable t) {
+            Log.e(LOG_TAG, "Failed to persist devices batch (" + entities.size() + ")", t);
+            // Keep them dirty so the next save retries
+            for (BleDevice device : batch) {
+                device.markDirty();
             }
-        });
+        }
+    }
+
+    private void writeSnapshot() {
+        if (!snapshotDirty.getAndSet(false)) return;
+        try {
+            snapshotFile.write(profilesByRecency());
+        } catch (Throwable t) {
+            // Room is authoritative; a stale or missing snapshot only slows down the next start
+            Log.w(LOG_TAG, "Failed to write device snapshot", t);
+            snapshotFile.delete();
+        }
+    }
+
+    /**
+     * Devices from the snapshot file, most recently connected first. Empty when the file is missing or
+     * corrupt; {@link #loadAllAsync()} then provides the devices from Room and rewrites the snapshot.
+     */
+    @NonNull
+    @Override
+    public CompletableFuture<List<BleDevice>> loadCachedAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            List<DeviceSnapshotFile.Entry> entries = snapshotFile.read();
+            if (entries == null) {
+                Log.i(LOG_TAG, "No usable device snapshot – waiting for Room");
+                return List.of();
+            }
+            List<BleDevice> devices = new ArrayList<>(entries.size());
+            for (DeviceSnapshotFile.Entry entry : entries) {
+                profiles.putIfAbsent(entry.address(), entry);
+                var persistent = new BleDevicePersistent(entry.address(), entry.configuration());
+                persistent.setMtu(entry.mtu());
+                persistent.setDataMaxLen(entry.dataMaxLen());
+                persistent.setLastConnectedMillis(entry.lastConnectedMillis());
+                devices.add(fromEntity(persistent));
+            }
+            Log.d(LOG_TAG, "Loaded " + devices.size() + " devices from snapshot in "
+                    + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us");
+            return devices;
+        }, ioExecutor);
     }
 
+    /**
+     * Devices from Room, most recently connected first. Brings the snapshot in line with Room.
+     */
     @NonNull
     @Override
     public List<BleDevice> loadAll() {
         try {
-            List<BleDevicePersistent> entities = CorcDatabase
-                    .getInstance(appContext)
-                    .bleDeviceDao()
-                    .getAll();
+            List<BleDevicePersistent> entities = dao.get().getAll();
             List<BleDevice> devices = new ArrayList<>(entities.size());
             for (BleDevicePersistent entity : entities) {
                 if (entity == null) continue;
+                mergeProfile(entity);
                 devices.add(fromEntity(entity));
             }
+            devices.sort(Comparator.comparingLong((BleDevice device) -> lastConnectedMillis(device.getAddress())).reversed());
+            if (snapshotDirty.get()) {
+                scheduleFlush();
+            }
             Log.d(LOG_TAG, "Loaded " + devices.size() + " devices from DB");
             return devices;
         } catch (Throwable t) {
@@ -87,16 +239,71 @@ public final class RoomBleDeviceRepository implements BleDeviceRepository {
         }
     }
 
+    @NonNull
+    @Override
+    public CompletableFuture<List<BleDevice>> loadAllAsync() {
+        return daoAsync.get().thenApplyAsync(ready -> loadAll(), ioExecutor);
+    }
+
+    // Room is authoritative for the profile; the snapshot may only know a later connection time
+    private void mergeProfile(@NonNull BleDevicePersistent entity) {
+        var address = entity.getAddress();
+        var previous = profiles.get(address);
+        long lastConnected = previous == null
+                ? entity.getLastConnectedMillis()
+                : Math.max(previous.lastConnectedMillis(), entity.getLastConnectedMillis());
+        var merged = new DeviceSnapshotFile.Entry(
+                address, entity.getMtu(), entity.getDataMaxLen(), lastConnected, entity.getConfiguration());
+        if (merged.equals(previous)) return;
+        profiles.put(address, merged);
+        snapshotDirty.set(true);
+    }
+
+    private boolean isMostRecent(@NonNull BleDeviceAddress address) {
+        long own = lastConnectedMillis(address);
+        for (DeviceSnapshotFile.Entry entry : profiles.values()) {
+            if (entry.lastConnectedMillis() > own) return false;
+        }
+        return profiles.containsKey(address);
+    }
+
+    private long lastConnectedMillis(@NonNull BleDeviceAddress address) {
+        var entry = profiles.get(address);
+        return entry != null ? entry.lastConnectedMillis() : 0L;
+    }
+
+    @NonNull
+    private List<DeviceSnapshotFile.Entry> profilesByRecency() {
+        List<DeviceSnapshotFile.Entry> result = new ArrayList<>(profiles.values());
+        result.sort(MOST_RECENT_FIRST);
+        return result;
+    }
+
     @NonNull
     private static BleDevicePersistent toEntity(@NonNull BleDevice device) {
-        return new BleDevicePersistent(
+        var entity = new BleDevicePersistent(
                 device.getAddress(),
                 device.getConfiguration()
         );
+        entity.setMtu(device.getLastMtu());
+        entity.setDataMaxLen(device.getLastDataMaxLen());
+        entity.setLastConnectedMillis(device.getLastConnectedMillis());
+        return entity;
+    }
+
+    @NonNull
+    private static DeviceSnapshotFile.Entry toSnapshotEntry(@NonNull BleDevice device) {
+        return new DeviceSnapshotFile.Entry(
+                device.getAddress(),
+                device.getLastMtu(),
+                device.getLastDataMaxLen(),
+                device.getLastConnectedMillis(),
+                device.getConfiguration());
     }
 
     @NonNull
     private static BleDevice fromEntity(@NonNull BleDevicePersistent entity) {
+        entity.markClean();
         return new BleDevice(entity, new BleConnectionContext());
     }
 }
@@ -1,6 +1,5 @@
 package org.jbanaszczyk.corc.db;
 
-import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.room.Dao;
@@ -8,6 +7,7 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import org.jbanaszczyk.corc.ble.core.BleLog;
 import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
 
 import java.util.List;
@@ -37,28 +37,28 @@ public abstract class BleDeviceDao {
     @NonNull
     public List<BleDevicePersistent> getAll() {
         var result = getAllImpl();
-        Log.d(LOG_TAG, "BleDeviceDao.getAll -> " + result.size() + " devices");
+        BleLog.d(LOG_TAG, "BleDeviceDao.getAll -> {} devices", result.size());
         return result;
     }
 
     public void upsert(@NonNull BleDevicePersistent device) {
-        Log.d(LOG_TAG, "BleDeviceDao.upsert address=" + device.getAddress().getValue());
+        BleLog.d(LOG_TAG, "BleDeviceDao.upsert address={}", device.getAddress());
         upsertImpl(device);
     }
 
     public void upsertAll(@Nullable List<BleDevicePersistent> devices) {
         if (devices == null ) return;
-        Log.d(LOG_TAG, "BleDeviceDao.upsertAll count=" + devices.size());
+        BleLog.d(LOG_TAG, "BleDeviceDao.upsertAll count={}", devices.size());
         upsertAllImpl(devices);
     }
 
     public void delete(@NonNull BleDevicePersistent device) {
-        Log.d(LOG_TAG, "BleDeviceDao.delete address=" + device.getAddress().getValue());
+        BleLog.d(LOG_TAG, "BleDeviceDao.delete address={}", device.getAddress());
         deleteImpl(device);
     }
 
     public void deleteAll() {
-        Log.d(LOG_TAG, "BleDeviceDao.deleteAll");
+        BleLog.d(LOG_TAG, "BleDeviceDao.deleteAll");
         deleteAllImpl();
     }
 }
@@ -13,25 +13,29 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 import org.jbanaszczyk.corc.ble.BleTypeConverters;
 import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 @Database(
         entities = {
                 BleDevicePersistent.class,
                 VersionEntity.class
         },
-        version = 2,
-        exportSchema = false
+        version = CorcDatabase.CURRENT_DB_VERSION,
+        exportSchema = true
 )
 @TypeConverters({BleTypeConverters.class})
 public abstract class CorcDatabase extends RoomDatabase {
 
-    public static final int CURRENT_DB_VERSION = 2;
+    public static final int CURRENT_DB_VERSION = 4;
     private static final String LOG_TAG = "CORC:DB";
 
     // Enum-based singleton holder for thread-safe, serialization-safe singleton
     private enum DbSingleton {
         INSTANCE;
 
-        private volatile CorcDatabase db;
+        private final SharedInit<CorcDatabase> init =
+                new SharedInit<>(task -> new Thread(task, "corc-db-init").start());
 
         @NonNull
         private CorcDatabase build(@NonNull Context context) {
@@ -45,7 +49,7 @@ public abstract class CorcDatabase extends RoomDatabase {
                         @Override
                         public void onCreate(@NonNull SupportSQLiteDatabase db) {
                             Log.i(LOG_TAG, "Room onCreate: initializing version table to " + CURRENT_DB_VERSION + ".");
-                            db.execSQL("INSERT OR REPLACE INTO version (id, db_version) VALUES (1, " + CURRENT_DB_VERSION + ")");
+                            CorcMigrations.setVersion(db, CURRENT_DB_VERSION);
                         }
 
                         @Override
@@ -53,42 +57,38 @@ public abstract class CorcDatabase extends RoomDatabase {
                             Log.d(LOG_TAG, "Room onOpen invoked.");
                         }
                     })
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(CorcMigrations.ALL)
+                    // Version 1 predates exported schemas; there is nothing to migrate from
+                    .fallbackToDestructiveMigrationFrom(1)
                     .build();
         }
 
+        /**
+         * Opens the database and checks its version on a background thread, once. Every caller gets the
+         * same future, which completes only after migrations and the version check are done. A failed
+         * initialization is retried by the next caller.
+         */
         @NonNull
-        synchronized CorcDatabase get(@NonNull Context context) {
-            if (db == null) {
-                db = build(context);
-                // Run version check off the main thread to avoid main-thread Room access
-                new Thread(() -> {
+        CompletableFuture<CorcDatabase> initAsync(@NonNull Context context) {
+            Context appContext = context.getApplicationContext();
+            return init.get(() -> {
+                try {
+                    long start = System.nanoTime();
+                    CorcDatabase db = build(appContext);
                     try {
-                        ensureVersion(context, this);
-                    } catch (Throwable t) {
-                        Log.e(LOG_TAG, "Background database version check failed", t);
+                        // Room opens and migrates on this first query: a failed open or migration surfaces here
+                        ensureVersion(db);
+                    } catch (RuntimeException e) {
+                        db.close();
+                        throw e;
                     }
-                }, "corc-db-version-check").start();
-            }
-            return db;
-        }
-
-        synchronized void recreate(@NonNull Context context) {
-            CorcDatabase oldDb = db;
-            if (oldDb != null) {
-                Log.i(LOG_TAG, "Closing current DB instance before recreation.");
-                try {
-                    oldDb.close();
-                } catch (Exception e) {
-                    Log.e(LOG_TAG, "Error closing database during recreation", e);
+                    Log.i(LOG_TAG, "Database ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                    return db;
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Database initialization failed", e);
+                    throw e;
                 }
-            }
-            Log.w(LOG_TAG, "Deleting database file 'corc.db' and recreating from scratch.");
-            context.deleteDatabase("corc.db");
-            db = build(context);
-            // Initialize version row in the new database
-            db.runInTransaction(() -> db.versionDao().insertOrReplace(new VersionEntity(CURRENT_DB_VERSION)));
-            Log.i(LOG_TAG, "Database recreated and version initialized to " + CURRENT_DB_VERSION + ".");
+            });
         }
     }
 
@@ -96,41 +96,42 @@ public abstract class CorcDatabase extends RoomDatabase {
 
     public abstract VersionDao versionDao();
 
+    /**
+     * Starts (or joins) asynchronous database initialization; safe to call from the main thread.
+     * The future completes once the database is open and its version has been verified.
+     */
+    @NonNull
+    public static CompletableFuture<CorcDatabase> getInstanceAsync(@NonNull Context context) {
+        return DbSingleton.INSTANCE.initAsync(context);
+    }
+
+    /**
+     * Blocks until the database is ready. Must not be called on the main thread.
+     */
     @NonNull
     public static CorcDatabase getInstance(@NonNull Context context) {
-        return DbSingleton.INSTANCE.get(context);
+        return getInstanceAsync(context).join();
     }
 
-    private static void ensureVersion(@NonNull Context context, @NonNull DbSingleton holder) {
-        CorcDatabase currentDb = holder.db;
-        if (currentDb == null) {
-            Log.w(LOG_TAG, "ensureVersion: currentDb is null, skipping check.");
+    private static void ensureVersion(@NonNull CorcDatabase currentDb) {
+        VersionDao versionDao = currentDb.versionDao();
+        VersionEntity version = versionDao.getSingleton();
+        if (version == null) {
+            // Fresh database: set version and ensure empty devices list
+            Log.i(LOG_TAG, "Fresh database detected. Initializing version to " + CURRENT_DB_VERSION + " and clearing devices table.");
+            currentDb.runInTransaction(() -> {
+                currentDb.bleDeviceDao().deleteAll();
+                currentDb.versionDao().insertOrReplace(new VersionEntity(CURRENT_DB_VERSION));
+            });
             return;
         }
 
-        try {
-            VersionDao versionDao = currentDb.versionDao();
-            VersionEntity version = versionDao.getSingleton();
-            if (version == null) {
-                // Fresh database: set version and ensure empty devices list
-                Log.i(LOG_TAG, "Fresh database detected. Initializing version to " + CURRENT_DB_VERSION + " and clearing devices table.");
-                currentDb.runInTransaction(() -> {
-                    currentDb.bleDeviceDao().deleteAll();
-                    currentDb.versionDao().insertOrReplace(new VersionEntity(CURRENT_DB_VERSION));
-                });
-                return;
-            }
-
-            if (version.getDbVersion() != CURRENT_DB_VERSION) {
-                // Version mismatch: remove the entire database file and recreate from scratch
-                Log.w(LOG_TAG, "Database version mismatch detected: stored=" + version.getDbVersion() + ", expected=" + CURRENT_DB_VERSION + ". Triggering recreation.");
-                holder.recreate(context);
-            } else {
-                Log.d(LOG_TAG, "Database version check passed: " + version.getDbVersion());
-            }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Error during database version check", e);
-            // Optionally we could trigger recreate(context) here if we suspect the database is corrupted
+        if (version.getDbVersion() != CURRENT_DB_VERSION) {
+            // Room has already migrated the schema when it opened the database; only the marker row is stale
+            Log.w(LOG_TAG, "Database version marker mismatch: stored=" + version.getDbVersion() + ", expected=" + CURRENT_DB_VERSION + ". Updating marker.");
+            currentDb.versionDao().insertOrReplace(new VersionEntity(CURRENT_DB_VERSION));
+        } else {
+            Log.d(LOG_TAG, "Database version check passed: " + version.getDbVersion());
         }
     }
 }
@@ -0,0 +1,81 @@
+package org.jbanaszczyk.corc.db;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+
+/**
+ * Schema migrations of {@link CorcDatabase}. Every schema change adds a step here and bumps
+ * {@link CorcDatabase#CURRENT_DB_VERSION}; exported schemas live in {@code app/schemas}.
+ */
+public final class CorcMigrations {
+
+    private static final String LOG_TAG = "CORC:DB";
+
+    /**
+     * Adds the connection profile (MTU, data max length, last connection time) to {@code ble_devices}.
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            Log.i(LOG_TAG, "Migrating database 2 -> 3");
+            db.execSQL("ALTER TABLE `ble_devices` ADD COLUMN `mtu` INTEGER NOT NULL DEFAULT 23");
+            db.execSQL("ALTER TABLE `ble_devices` ADD COLUMN `data_max_len` INTEGER NOT NULL DEFAULT 20");
+            db.execSQL("ALTER TABLE `ble_devices` ADD COLUMN `last_connected` INTEGER NOT NULL DEFAULT 0");
+            setVersion(db, 3);
+        }
+    };
+
+    /**
+     * Turns the free-form JSON {@code configuration} text into a binary {@link DeviceConfiguration} blob.
+     * Existing JSON is kept verbatim under {@link DeviceConfiguration#KEY_LEGACY_JSON}; JSON too large for a
+     * configuration blob is dropped with a warning rather than failing the migration.
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            Log.i(LOG_TAG, "Migrating database 3 -> 4");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `ble_devices_new` (`address` TEXT NOT NULL, `configuration` BLOB NOT NULL, "
+                    + "`mtu` INTEGER NOT NULL DEFAULT 23, `data_max_len` INTEGER NOT NULL DEFAULT 20, "
+                    + "`last_connected` INTEGER NOT NULL DEFAULT 0, PRIMARY KEY(`address`))");
+            try (Cursor cursor = db.query("SELECT `address`, `configuration`, `mtu`, `data_max_len`, `last_connected` FROM `ble_devices`")) {
+                while (cursor.moveToNext()) {
+                    byte[] configuration = legacyConfiguration(cursor.getString(0), cursor.getString(1));
+                    db.execSQL("INSERT INTO `ble_devices_new` (`address`, `configuration`, `mtu`, `data_max_len`, `last_connected`) "
+                                    + "VALUES (?, ?, ?, ?, ?)",
+                            new Object[]{cursor.getString(0), configuration, cursor.getInt(2), cursor.getInt(3), cursor.getLong(4)});
+                }
+            }
+            db.execSQL("DROP TABLE `ble_devices`");
+            db.execSQL("ALTER TABLE `ble_devices_new` RENAME TO `ble_devices`");
+            setVersion(db, 4);
+        }
+    };
+
+    @NonNull
+    private static byte[] legacyConfiguration(@NonNull String address, String json) {
+        try {
+            return DeviceConfiguration.fromLegacyJson(json).toByteArray();
+        } catch (IllegalStateException e) {
+            Log.w(LOG_TAG, "Dropping legacy configuration of " + address + ": " + e.getMessage());
+            return DeviceConfiguration.EMPTY.toByteArray();
+        }
+    }
+
+    public static final Migration[] ALL = {
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+    };
+
+    private CorcMigrations() {
+    }
+
+    static void setVersion(@NonNull SupportSQLiteDatabase db, int version) {
+        db.execSQL("INSERT OR REPLACE INTO version (id, db_version) VALUES (1, " + version + ")");
+    }
+}
@@ -0,0 +1,49 @@
+package org.jbanaszczyk.corc.db;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs an initialization once, in the background, and hands every caller the same future. A failed run is
+ * forgotten, so the next caller starts a new one; a successful one is kept for good.
+ */
+final class SharedInit<T> {
+
+    @NonNull
+    private final Executor executor;
+    // Guarded by this
+    private CompletableFuture<T> ready;
+
+    SharedInit(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param init runs on the executor, only if no run is in flight or done
+     */
+    @NonNull
+    synchronized CompletableFuture<T> get(@NonNull Supplier<T> init) {
+        CompletableFuture<T> current = ready;
+        if (current != null) {
+            return current;
+        }
+        current = CompletableFuture.supplyAsync(init, executor);
+        ready = current;
+        CompletableFuture<T> started = current;
+        current.whenComplete((value, error) -> {
+            if (error != null) {
+                resetFailed(started);
+            }
+        });
+        return current;
+    }
+
+    private synchronized void resetFailed(@NonNull CompletableFuture<T> failed) {
+        if (ready == failed) {
+            ready = null;
+        }
+    }
+}
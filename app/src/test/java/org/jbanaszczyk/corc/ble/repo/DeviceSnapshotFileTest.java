@@ -0,0 +1,75 @@
+package org.jbanaszczyk.corc.ble.repo;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DeviceSnapshotFileTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshot").toFile();
+        file = new File(dir, "devices.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRoundTripKeepsMruOrder() throws IOException {
+        var entries = List.of(
+                new DeviceSnapshotFile.Entry(new BleDeviceAddress("AA:BB:CC:DD:EE:01"), 263, 240, 2_000L,
+                        DeviceConfiguration.builder().putInt(1, 42).putString(2, "a").build()),
+                new DeviceSnapshotFile.Entry(new BleDeviceAddress("AA:BB:CC:DD:EE:02"), 23, 20, 1_000L, DeviceConfiguration.EMPTY));
+        var snapshot = new DeviceSnapshotFile(file);
+
+        snapshot.write(entries);
+
+        assertEquals(entries, snapshot.read());
+        assertFalse(new File(dir, "devices.snapshot.tmp").exists());
+    }
+
+    @Test
+    public void testMissingFileReadsAsNoSnapshot() {
+        assertNull(new DeviceSnapshotFile(file).read());
+    }
+
+    @Test
+    public void testCorruptFileReadsAsNoSnapshot() throws IOException {
+        var snapshot = new DeviceSnapshotFile(file);
+        snapshot.write(List.of(
+                new DeviceSnapshotFile.Entry(new BleDeviceAddress("AA:BB:CC:DD:EE:01"), 263, 240, 2_000L, DeviceConfiguration.EMPTY)));
+
+        try (var raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(10);
+            raf.write(0x5A);
+        }
+        assertNull(snapshot.read());
+
+        try (var raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(6);
+        }
+        assertNull(snapshot.read());
+    }
+}
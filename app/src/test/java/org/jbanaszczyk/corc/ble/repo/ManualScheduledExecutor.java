@@ -0,0 +1,143 @@
+package org.jbanaszczyk.corc.ble.repo;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded {@link ScheduledExecutorService} driven by the test: tasks run on the calling thread in
+ * {@link #runDue()} and {@link #advanceBy}, in due time order. Only one-shot {@code Runnable}s can be scheduled.
+ */
+final class ManualScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final class Task extends FutureTask<Void> implements ScheduledFuture<Void> {
+        final long dueMillis;
+        final long sequence;
+
+        Task(@NonNull Runnable runnable, long dueMillis) {
+            super(runnable, null);
+            this.dueMillis = dueMillis;
+            this.sequence = nextSequence++;
+        }
+
+        @Override
+        public long getDelay(@NonNull TimeUnit unit) {
+            return unit.convert(dueMillis - nowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(@NonNull Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static final Comparator<Task> DUE_ORDER =
+            Comparator.<Task>comparingLong(task -> task.dueMillis).thenComparingLong(task -> task.sequence);
+
+    private final List<Task> tasks = new ArrayList<>();
+    private long nowMillis;
+    private long nextSequence;
+    private boolean shutdown;
+
+    /**
+     * Runs every task due by now, including those they post.
+     *
+     * @return tasks run
+     */
+    int runDue() {
+        int ran = 0;
+        while (true) {
+            Task next = null;
+            for (Task task : tasks) {
+                if (task.dueMillis <= nowMillis && (next == null || DUE_ORDER.compare(task, next) < 0)) {
+                    next = task;
+                }
+            }
+            if (next == null) {
+                return ran;
+            }
+            tasks.remove(next);
+            next.run();
+            ran++;
+        }
+    }
+
+    int advanceBy(long millis) {
+        nowMillis += millis;
+        return runDue();
+    }
+
+    int pending() {
+        return tasks.size();
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    @Override
+    public ScheduledFuture<?> schedule(@NonNull Runnable command, long delay, @NonNull TimeUnit unit) {
+        if (shutdown) throw new IllegalStateException("Shut down");
+        var task = new Task(command, nowMillis + unit.toMillis(delay));
+        tasks.add(task);
+        return task;
+    }
+
+    @NonNull
+    @Override
+    public <V> ScheduledFuture<V> schedule(@NonNull Callable<V> callable, long delay, @NonNull TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(@NonNull Runnable command, long initialDelay, long period, @NonNull TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(@NonNull Runnable command, long initialDelay, long delay, @NonNull TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @NonNull
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> dropped = new ArrayList<>(tasks);
+        tasks.clear();
+        return dropped;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+        return isTerminated();
+    }
+}
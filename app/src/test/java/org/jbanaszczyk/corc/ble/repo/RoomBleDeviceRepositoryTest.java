@@ -0,0 +1,164 @@
+package org.jbanaszczyk.corc.ble.repo;
+
+import org.jbanaszczyk.corc.ble.BleConnectionContext;
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+import org.jbanaszczyk.corc.db.BleDeviceDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoomBleDeviceRepositoryTest {
+
+    private static final long WINDOW = RoomBleDeviceRepository.WRITE_BEHIND_WINDOW_MS;
+
+    private static final class FakeDao extends BleDeviceDao {
+        final List<List<BleDevicePersistent>> batches = new ArrayList<>();
+        int failures;
+
+        @Override
+        protected List<BleDevicePersistent> getAllImpl() {
+            return List.of();
+        }
+
+        @Override
+        protected void upsertImpl(BleDevicePersistent device) {
+            upsertAllImpl(List.of(device));
+        }
+
+        @Override
+        protected void upsertAllImpl(List<BleDevicePersistent> devices) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("disk I/O error");
+            }
+            batches.add(List.copyOf(devices));
+        }
+
+        @Override
+        protected void deleteImpl(BleDevicePersistent device) {
+        }
+
+        @Override
+        protected void deleteAllImpl() {
+        }
+    }
+
+    private final FakeDao dao = new FakeDao();
+    private final ManualScheduledExecutor io = new ManualScheduledExecutor();
+    private File dir;
+    private RoomBleDeviceRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("repo").toFile();
+        repository = new RoomBleDeviceRepository(() -> dao, () -> CompletableFuture.completedFuture(dao), io,
+                new DeviceSnapshotFile(new File(dir, "devices.snapshot")));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static BleDevice device(int i) {
+        var address = new BleDeviceAddress(String.format("AA:BB:CC:DD:EE:%02X", i));
+        return new BleDevice(new BleDevicePersistent(address, DeviceConfiguration.EMPTY), new BleConnectionContext());
+    }
+
+    private static DeviceConfiguration configuration(int value) {
+        return DeviceConfiguration.builder().putInt(1, value).build();
+    }
+
+    @Test
+    public void testSavesWithinTheWindowAreBatched() {
+        var first = device(1);
+        var second = device(2);
+
+        repository.save(first);
+        first.setConfiguration(configuration(1));
+        repository.save(first);
+        repository.save(second);
+        io.advanceBy(WINDOW - 1);
+        assertTrue(dao.batches.isEmpty());
+
+        io.advanceBy(1);
+
+        assertEquals(1, dao.batches.size());
+        assertEquals(2, dao.batches.get(0).size());
+        assertFalse(first.isDirty());
+        assertFalse(second.isDirty());
+        // The latest state of a device coalesced into one row
+        var written = dao.batches.get(0).stream()
+                .filter(entity -> entity.getAddress().equals(first.getAddress()))
+                .toList();
+        assertEquals(List.of(configuration(1)), written.stream().map(BleDevicePersistent::getConfiguration).toList());
+    }
+
+    @Test
+    public void testCleanDevicesAreNotWritten() {
+        var device = device(1);
+        device.markClean();
+
+        repository.save(device);
+        repository.saveAll(List.of(device));
+
+        assertEquals(0, io.pending());
+        io.advanceBy(WINDOW);
+        assertTrue(dao.batches.isEmpty());
+    }
+
+    @Test
+    public void testFailedFlushKeepsDevicesDirtyForTheNextSave() {
+        var device = device(1);
+        dao.failures = 1;
+
+        repository.save(device);
+        io.advanceBy(WINDOW);
+
+        assertTrue(dao.batches.isEmpty());
+        assertTrue(device.isDirty());
+
+        repository.save(device);
+        io.advanceBy(WINDOW);
+
+        assertEquals(1, dao.batches.size());
+        assertFalse(device.isDirty());
+    }
+
+    @Test
+    public void testFlushWritesPendingSavesWithoutWaitingForTheWindow() {
+        var first = device(1);
+        var second = device(2);
+        repository.saveAll(List.of(first, second));
+
+        // What BleController.shutdown does
+        var flushed = repository.flush();
+        io.runDue();
+
+        assertTrue(flushed.isDone());
+        assertEquals(1, dao.batches.size());
+        assertEquals(2, dao.batches.get(0).size());
+
+        // The write-behind task still fires, but has nothing left to write
+        io.advanceBy(WINDOW);
+        assertEquals(1, dao.batches.size());
+    }
+}
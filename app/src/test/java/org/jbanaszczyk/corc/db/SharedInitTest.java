@@ -0,0 +1,121 @@
+package org.jbanaszczyk.corc.db;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedInitTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final SharedInit<String> init = new SharedInit<>(tasks::add);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private String open() {
+        runs.incrementAndGet();
+        return "db";
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void testCallersShareOneInitialization() {
+        var first = init.get(this::open);
+        var second = init.get(this::open);
+        assertSame(first, second);
+
+        runTasks();
+
+        assertEquals(1, runs.get());
+        assertEquals("db", second.join());
+        assertSame(first, init.get(this::open));
+        runTasks();
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneInitialization() throws InterruptedException {
+        var shared = new SharedInit<String>(Runnable::run);
+        var start = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                var future = shared.get(this::open);
+                synchronized (futures) {
+                    futures.add(future);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, runs.get());
+        assertEquals(8, futures.size());
+        for (var future : futures) {
+            assertSame(futures.get(0), future);
+        }
+    }
+
+    @Test
+    public void testFailedInitializationIsRetriedByTheNextCaller() {
+        var failed = init.get(() -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("disk full");
+        });
+        runTasks();
+        assertTrue(failed.isCompletedExceptionally());
+
+        var retried = init.get(this::open);
+        assertNotSame(failed, retried);
+        runTasks();
+
+        assertEquals(2, runs.get());
+        assertEquals("db", retried.join());
+    }
+
+    @Test
+    public void testFailureOfTheFirstQueryFailsTheSharedFuture() {
+        // Like Room: building succeeds, the open and migrations run on the first query
+        Supplier<String> firstQuery = () -> {
+            runs.incrementAndGet();
+            if (runs.get() == 1) throw new IllegalStateException("Migration didn't properly handle devices");
+            return "db";
+        };
+        var failed = init.get(firstQuery);
+        var joined = init.get(firstQuery);
+        runTasks();
+
+        assertSame(failed, joined);
+        assertTrue(joined.isCompletedExceptionally());
+        var retried = init.get(firstQuery);
+        runTasks();
+        assertEquals("db", retried.join());
+        assertEquals(2, runs.get());
+    }
+}
@@ -0,0 +1,110 @@
+// JMH benchmarks for the :ble-core hot paths.
+//   ./gradlew :ble-bench:jmh               run everything, results in build/results/jmh/results.json
+//   ./gradlew :ble-bench:jmhBaseline       store the last results as baselines/jmh.json (commit it)
+//   ./gradlew :ble-bench:jmhCompare        compare the last results against the baseline
+//   ./gradlew :ble-bench:loadScenario      simulated multi-device load, report in build/reports/load/report.json
+//   ./gradlew :ble-bench:replaySession -PreplayArgs="file=gatt.session speed=4"   replay a recorded GATT session
+// Pass -PjmhInclude=<regex> to run a subset, -PloadArgs="devices=8 interval=200 storm=10000" to shape the load.
+import groovy.json.JsonSlurper
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
+dependencies {
+    implementation(testFixtures(project(":ble-core")))
+    jmh(project(":ble-core"))
+    // Android's own JSON parser, the baseline of DeviceConfigurationBenchmark
+    jmh("org.json:json:20240303")
+}
+
+val resultsJson = layout.buildDirectory.file("results/jmh/results.json")
+val baselineJson = layout.projectDirectory.file("baselines/jmh.json")
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    timeUnit.set("ns")
+    benchmarkMode.set(listOf("avgt"))
+    // gc.alloc.rate.norm (bytes/op) is the number to watch: it is stable across machines
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(resultsJson)
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.set(listOf(it)) }
+}
+
+tasks.register<Copy>("jmhBaseline") {
+    description = "Stores the last JMH results as the checked-in baseline."
+    from(resultsJson)
+    into(baselineJson.asFile.parentFile)
+    rename { baselineJson.asFile.name }
+}
+
+tasks.register("jmhCompare") {
+    description = "Compares the last JMH results with the baseline; fails when allocation per operation grew."
+    inputs.file(resultsJson)
+    doLast {
+        val baselineFile = baselineJson.asFile
+        if (!baselineFile.exists()) {
+            throw GradleException("No baseline yet, run :ble-bench:jmh and :ble-bench:jmhBaseline first")
+        }
+        fun load(file: File): Map<String, Map<String, Double>> {
+            @Suppress("UNCHECKED_CAST")
+            val runs = JsonSlurper().parse(file) as List<Map<String, Any?>>
+            return runs.associate { run ->
+                val params = (run["params"] as Map<*, *>?)?.entries?.joinToString(",", "(", ")") { "${it.key}=${it.value}" } ?: ""
+                val primary = run["primaryMetric"] as Map<*, *>
+                val secondary = run["secondaryMetrics"] as Map<*, *>
+                val alloc = secondary["gc.alloc.rate.norm"] as Map<*, *>?
+                "${run["benchmark"]}$params" to mapOf(
+                    "score" to (primary["score"] as Number).toDouble(),
+                    "alloc" to ((alloc?.get("score") as Number?)?.toDouble() ?: 0.0)
+                )
+            }
+        }
+        val baseline = load(baselineFile)
+        val current = load(resultsJson.get().asFile)
+        val regressions = mutableListOf<String>()
+        current.toSortedMap().forEach { (name, now) ->
+            val before = baseline[name]
+            if (before == null) {
+                logger.lifecycle("%-90s %10.1f ns/op %8.1f B/op (new)".format(name, now["score"], now["alloc"]))
+                return@forEach
+            }
+            val scoreDelta = (now["score"]!! / before["score"]!! - 1) * 100
+            logger.lifecycle("%-90s %10.1f ns/op (%+6.1f%%) %8.1f B/op (was %.1f)".format(
+                name, now["score"], scoreDelta, now["alloc"], before["alloc"]))
+            // Allocation is deterministic up to a few bytes of profiler noise; timings are only reported
+            if (now["alloc"]!! > before["alloc"]!! + 8) {
+                regressions += name
+            }
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Allocation per operation grew in: " + regressions.joinToString())
+        }
+    }
+}
+
+tasks.register<JavaExec>("loadScenario") {
+    description = "Runs the simulated multi-device load scenario and writes a JSON latency report."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.jbanaszczyk.corc.ble.sim.LoadScenarioMain")
+    val report = layout.buildDirectory.file("reports/load/report.json")
+    args((providers.gradleProperty("loadArgs").orNull ?: "").split(" ").filter { it.isNotBlank() })
+    argumentProviders.add(CommandLineArgumentProvider { listOf("out=" + report.get().asFile.path) })
+}
+
+tasks.register<JavaExec>("replaySession") {
+    description = "Replays a recorded GATT session through the operation queue and command protocol."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.jbanaszczyk.corc.ble.session.SessionReplayMain")
+    args((providers.gradleProperty("replayArgs").orNull ?: "").split(" ").filter { it.isNotBlank() })
+}
@@ -0,0 +1,39 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class BleDeviceAddressBenchmark {
+
+    private final String text = "AA:BB:CC:DD:EE:01";
+    private final BleDeviceAddress address = new BleDeviceAddress(text);
+    private final BleDeviceAddress sameAddress = new BleDeviceAddress(text);
+    private final long packed = address.toLong();
+
+    @Benchmark
+    public BleDeviceAddress fromString() {
+        return new BleDeviceAddress(text);
+    }
+
+    @Benchmark
+    public BleDeviceAddress fromLong() {
+        return BleDeviceAddress.fromLong(packed);
+    }
+
+    @Benchmark
+    public long pack() {
+        return BleDeviceAddress.pack(text);
+    }
+
+    @Benchmark
+    public boolean equalsOther() {
+        return address.equals(sameAddress);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return address.hashCode();
+    }
+}
@@ -0,0 +1,54 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Lookups of known devices from several threads at once, as GATT callbacks and the UI do.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class BleDeviceRegistryBenchmark {
+
+    private static final int DEVICES = 64;
+
+    private final BleDeviceRegistry registry =
+            new BleDeviceRegistry(DEVICES * 2, BleDeviceRegistry.DEFAULT_TRANSIENT_TTL_MILLIS, System::currentTimeMillis);
+    private final BleDeviceAddress[] addresses = new BleDeviceAddress[DEVICES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            next = (next + 1) & (DEVICES - 1);
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < DEVICES; i++) {
+            addresses[i] = BleDeviceAddress.fromLong(0x0011_2233_4400L + i);
+            registry.ensure(addresses[i]);
+        }
+    }
+
+    @Benchmark
+    public BleDevice ensure(Cursor cursor) {
+        return registry.ensure(addresses[cursor.advance()]);
+    }
+
+    @Benchmark
+    public BleConnectionContext getOrCreateContext(Cursor cursor) {
+        return registry.getOrCreateContext(addresses[cursor.advance()]);
+    }
+
+    @Benchmark
+    public BleDeviceRegistry.Entry findEntryPacked(Cursor cursor) {
+        return registry.findEntry(addresses[cursor.advance()].toLong());
+    }
+}
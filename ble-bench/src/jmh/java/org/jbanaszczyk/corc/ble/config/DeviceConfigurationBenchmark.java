@@ -0,0 +1,77 @@
+package org.jbanaszczyk.corc.ble.config;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Loading a stored {@link DeviceConfiguration} and reading one value, against the free-form JSON it replaced
+ * (parsed with org.json, the parser Android ships).
+ */
+@State(Scope.Thread)
+public class DeviceConfigurationBenchmark {
+
+    @Param({"8", "64"})
+    public int entries;
+
+    private byte[] stored;
+    private DeviceConfiguration configuration;
+    private String json;
+    private int intKey;
+    private int stringKey;
+
+    @Setup
+    public void setUp() throws JSONException {
+        var builder = DeviceConfiguration.builder();
+        var object = new JSONObject();
+        for (int key = 0; key < entries; key++) {
+            if ((key & 1) == 0) {
+                builder.putInt(key, key * 1_000);
+                object.put(Integer.toString(key), key * 1_000);
+            } else {
+                builder.putString(key, "channel-" + key + "-calibration");
+                object.put(Integer.toString(key), "channel-" + key + "-calibration");
+            }
+        }
+        configuration = builder.build();
+        stored = configuration.toByteArray();
+        json = object.toString();
+        // Past the middle, so neither side finds it first by luck
+        intKey = entries * 3 / 4 & ~1;
+        stringKey = intKey + 1;
+    }
+
+    @Benchmark
+    public int binaryLoadAndGetInt() {
+        return DeviceConfiguration.fromBytes(stored).getInt(intKey, -1);
+    }
+
+    @Benchmark
+    public int jsonLoadAndGetInt() throws JSONException {
+        return new JSONObject(json).getInt(Integer.toString(intKey));
+    }
+
+    @Benchmark
+    public String binaryLoadAndGetString() {
+        return DeviceConfiguration.fromBytes(stored).getString(stringKey);
+    }
+
+    @Benchmark
+    public String jsonLoadAndGetString() throws JSONException {
+        return new JSONObject(json).getString(Integer.toString(stringKey));
+    }
+
+    @Benchmark
+    public int binaryGetInt() {
+        return configuration.getInt(intKey, -1);
+    }
+
+    @Benchmark
+    public String binaryGetString() {
+        return configuration.getString(stringKey);
+    }
+}
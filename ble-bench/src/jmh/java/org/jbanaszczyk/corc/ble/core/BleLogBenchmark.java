@@ -0,0 +1,48 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A debug message on the notification path: suppressed by the level guard, captured by the event ring, and
+ * formatted into a sink. The first two should not allocate.
+ */
+@State(Scope.Thread)
+public class BleLogBenchmark {
+
+    private static final String TAG = "CORC:Bench";
+
+    @Param({"SUPPRESSED", "RING", "SINK"})
+    public String mode;
+
+    private final BleDeviceAddress address = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private int length = 17;
+
+    @Setup
+    public void setUp() {
+        BleLog.setSink((level, tag, message, throwable) -> { });
+        BleLog.setMinLevel("SINK".equals(mode) ? BleLog.Level.DEBUG : BleLog.Level.INFO);
+        BleLog.setEventRing("RING".equals(mode) ? 1024 : 0, BleLog.Level.DEBUG);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BleLog.setSink(null);
+        BleLog.setEventRing(0, BleLog.Level.DEBUG);
+    }
+
+    @Benchmark
+    public void parameterized() {
+        BleLog.d(TAG, "Data too short ({} < {})", length, 6);
+    }
+
+    @Benchmark
+    public void parameterizedObject() {
+        BleLog.d(TAG, "Notification from {} of {} bytes", address, length);
+    }
+}
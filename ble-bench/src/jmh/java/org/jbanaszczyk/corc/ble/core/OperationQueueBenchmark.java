@@ -0,0 +1,82 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+
+/**
+ * Full enqueue, execute, finish cycles. The executor does nothing, so the numbers are the queue's own
+ * bookkeeping (record, timeout task, future, change listeners) per GATT operation.
+ */
+@State(Scope.Thread)
+public class OperationQueueBenchmark {
+
+    private static final int BURST = 16;
+    private static final UUID CHARACTERISTIC = UUID.fromString("0000aaaa-0000-1000-8000-00805f9b34fb");
+
+    // Runs posted tasks inline, timeouts never fire
+    private static final class InlineScheduler implements Scheduler {
+        @Override
+        public void post(Runnable task) { task.run(); }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) { }
+
+        @Override
+        public void removeCallbacks(Runnable task) { }
+    }
+
+    private record Connection(@NonNull BleDeviceAddress address) implements GattConnection {
+        @Override
+        public void disconnect() { }
+    }
+
+    @Param({"1", "16"})
+    public int devices;
+
+    private final OperationExecutor executor = (connection, operation) -> { };
+    private OperationQueue queue;
+    private Connection[] connections;
+
+    @Setup
+    public void setUp() {
+        queue = new OperationQueue(new InlineScheduler(), () -> 5_000);
+        queue.addChangeListener(() -> { });
+        connections = new Connection[devices];
+        for (int i = 0; i < devices; i++) {
+            connections[i] = new Connection(BleDeviceAddress.fromLong(0x0011_2233_4400L + i));
+        }
+    }
+
+    @Benchmark
+    public Object singleOperation() {
+        Connection connection = connections[0];
+        var future = queue.enqueue(BleOperation.read(connection.address(), CHARACTERISTIC), connection, executor);
+        queue.onOperationFinished(null);
+        return future;
+    }
+
+    /**
+     * {@value #BURST} operations spread over the devices are queued up first and then finished one by one.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst(Blackhole blackhole) {
+        for (int i = 0; i < BURST; i++) {
+            Connection connection = connections[i % devices];
+            blackhole.consume(queue.enqueue(BleOperation.read(connection.address(), CHARACTERISTIC), connection, executor));
+        }
+        for (int i = 0; i < BURST; i++) {
+            queue.onOperationFinished(null);
+        }
+    }
+}
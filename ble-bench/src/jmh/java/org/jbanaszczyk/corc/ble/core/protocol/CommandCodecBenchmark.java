@@ -0,0 +1,54 @@
+package org.jbanaszczyk.corc.ble.core.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CMD framing and RSP parsing/correlation of {@link BleCommandResponseManager}.
+ */
+@State(Scope.Thread)
+public class CommandCodecBenchmark {
+
+    private static final byte REQUEST_ID = 5;
+
+    @Param({"0", "16", "244"})
+    public int payloadSize;
+
+    private final BleCommandResponseManager manager = new BleCommandResponseManager();
+    private byte[] payload;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        payload = new byte[payloadSize];
+        response = ByteBuffer.allocate(BleCommandResponseManager.PAYLOAD_HEADER_SIZE + 1 + payloadSize)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) BleCommandResponseManager.PROTOCOL_MAGIC)
+                .put(REQUEST_ID)
+                .put(BleOpcode.VERSION)
+                .put(BleResult.OK.getValue())
+                .put((byte) payloadSize)
+                .put(payload)
+                .array();
+    }
+
+    @Benchmark
+    public BleCommandResponseManager.CommandRequest encode() {
+        return manager.createRequest(BleOpcode.VERSION, payload);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        var future = new CompletableFuture<byte[]>();
+        manager.setPendingResponse(REQUEST_ID, BleOpcode.VERSION, future);
+        manager.handleNotification(response);
+        return future.getNow(null);
+    }
+}
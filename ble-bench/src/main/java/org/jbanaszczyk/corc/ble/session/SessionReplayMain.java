@@ -0,0 +1,59 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Replays a recorded GATT session ({@link SessionRecorder}) and prints the outcome and per-device latencies.
+ * <p>
+ * Arguments are {@code key=value}: file (required), speed (default 1), realtime (pace against the wall clock,
+ * default false) and timeout (operation timeout in ms, default 10000 like the app).
+ */
+public final class SessionReplayMain {
+
+    private SessionReplayMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path file = null;
+        double speed = 1;
+        boolean realTime = false;
+        long timeoutMillis = 10_000;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            String value = arg.substring(split + 1);
+            switch (arg.substring(0, split)) {
+                case "file" -> file = Path.of(value);
+                case "speed" -> speed = Double.parseDouble(value);
+                case "realtime" -> realTime = Boolean.parseBoolean(value);
+                case "timeout" -> timeoutMillis = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Missing file=<session log>");
+        }
+
+        var session = SessionReader.read(file);
+        var scheduler = new VirtualTimeScheduler();
+        var metrics = new BleMetrics(() -> scheduler.now() * 1_000_000);
+        var replay = new SessionReplay(session, scheduler, speed, timeoutMillis);
+        replay.setMetrics(metrics);
+        System.out.println("Replaying " + session.events().size() + " events from " + file + " at x" + speed);
+
+        var result = realTime ? replay.runRealTime() : replay.run();
+
+        System.out.println(result);
+        for (var device : metrics.snapshot().devices()) {
+            System.out.println(device.address());
+            device.operations().forEach((type, stats) -> System.out.println("  " + type + " " + stats));
+            device.commands().forEach((opcode, stats) -> System.out.printf("  opcode 0x%02X %s%n", opcode, stats));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs one {@link LoadScenario} and writes its JSON report.
+ * <p>
+ * Arguments are {@code key=value}: devices, duration, interval, storm (interval in ms, 0 = none), stormPercent,
+ * loss, connectionInterval, seed and out (report file; stdout when missing).
+ */
+public final class LoadScenarioMain {
+
+    private LoadScenarioMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        var builder = LoadScenario.Config.builder();
+        LinkProfile link = LinkProfile.DEFAULT;
+        long storm = 0;
+        int stormPercent = 50;
+        long seed = 1;
+        double loss = 0.0;
+        Path out = null;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            String value = arg.substring(split + 1);
+            switch (arg.substring(0, split)) {
+                case "devices" -> builder.devices(Integer.parseInt(value));
+                case "duration" -> builder.duration(Long.parseLong(value));
+                case "interval" -> builder.meanInterval(Long.parseLong(value));
+                case "storm" -> storm = Long.parseLong(value);
+                case "stormPercent" -> stormPercent = Integer.parseInt(value);
+                case "loss" -> loss = Double.parseDouble(value);
+                case "connectionInterval" -> link = link.withConnectionInterval(Long.parseLong(value));
+                case "seed" -> seed = Long.parseLong(value);
+                case "out" -> out = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        var config = builder
+                .link(link.withLossRate(loss, seed))
+                .reconnectStorms(storm, stormPercent, 1_000)
+                .seed(seed)
+                .build();
+
+        String json = LoadScenario.run(config).toJson();
+        if (out == null) {
+            System.out.print(json);
+        } else {
+            Files.createDirectories(out.toAbsolutePath().getParent());
+            Files.writeString(out, json, StandardCharsets.UTF_8);
+            System.out.println("Report written to " + out);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+// Platform-neutral BLE engines: operation queue, protocol codec, correlation, registry.
+// No Android dependencies, so everything here runs, is tested and can be benchmarked on a plain JVM.
+plugins {
+    `java-library`
+    // Simulated peripheral and virtual time, shared by the tests here and by :ble-bench
+    `java-test-fixtures`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
+dependencies {
+    api("androidx.annotation:annotation:1.9.1")
+    api("org.jspecify:jspecify:1.0.0")
+    // Entity annotations of BleDevicePersistent; Room itself is set up in :app
+    compileOnly("androidx.room:room-common:2.6.1")
+
+    testImplementation("junit:junit:4.13.2")
+}
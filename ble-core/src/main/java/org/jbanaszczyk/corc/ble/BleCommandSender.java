@@ -0,0 +1,15 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends one CMD/RSP command, e.g. {@code BleController::sendCommand}.
+ */
+@FunctionalInterface
+public interface BleCommandSender {
+    @NonNull
+    CompletableFuture<byte[]> send(@NonNull BleDevice device, byte opcode, @Nullable byte[] payload);
+}
@@ -0,0 +1,157 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Runtime connection context for a BLE device. Holds the GATT connection,
+ * connection state, negotiated MTU and signal history. Keeps runtime separate from persistent device data.
+ * <p>
+ * Fields are written from binder callback threads, the main looper and the reconnect thread, hence volatile.
+ * The connection state itself lives in a {@link GattStateMachine}; runtime fields are reset when it reaches
+ * {@link GattState#DISCONNECTED}, unless another thread has already started the next connection, and again
+ * when it leaves DISCONNECTED, before the new connection is set. Changes of MTU, version and RSSI are reported
+ * to a single change listener (installed by the registry) so snapshots can be republished.
+ */
+public final class BleConnectionContext {
+
+    @Nullable
+    private volatile GattConnection connection;
+    @NonNull
+    private final GattStateMachine stateMachine;
+    private volatile int mtu = GattConnection.MIN_MTU;
+    private volatile int dataMaxLen = GattConnection.MIN_MTU - GattConnection.GATT_WRITE_OVERHEAD;
+    @NonNull
+    private volatile String version = "unknown";
+    @NonNull
+    private volatile Set<UUID> services = Set.of();
+    @NonNull
+    private final RssiHistory rssiHistory = new RssiHistory();
+    private volatile long lastAccessMillis;
+    @NonNull
+    private volatile Runnable changeListener = () -> {
+    };
+
+    public BleConnectionContext() {
+        this(System::nanoTime);
+    }
+
+    BleConnectionContext(@NonNull LongSupplier nanoClock) {
+        stateMachine = new GattStateMachine(nanoClock);
+        stateMachine.addListener((from, to, timestampNanos) -> {
+            if (to == GattState.DISCONNECTED) {
+                resetRuntimeState();
+            } else if (from == GattState.DISCONNECTED) {
+                resetLinkParameters();
+            }
+        });
+    }
+
+    @Nullable
+    public GattConnection getConnection() { return connection; }
+
+    public synchronized void setConnection(@Nullable GattConnection connection) { this.connection = connection; }
+
+    @NonNull
+    public GattState getState() { return stateMachine.get(); }
+
+    @NonNull
+    public GattStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * @see GattStateMachine#transition(GattState, GattState)
+     */
+    public boolean transition(@NonNull GattState expected, @NonNull GattState next) {
+        return stateMachine.transition(expected, next);
+    }
+
+    /**
+     * @see GattStateMachine#moveTo(GattState)
+     */
+    public boolean moveTo(@NonNull GattState next) {
+        return stateMachine.moveTo(next);
+    }
+
+    // A thread that won DISCONNECTED -> CONNECTING meanwhile may already have set its connection; leave it alone
+    private synchronized void resetRuntimeState() {
+        if (stateMachine.get() != GattState.DISCONNECTED) {
+            return;
+        }
+        connection = null;
+        resetLinkParameters();
+    }
+
+    private synchronized void resetLinkParameters() {
+        mtu = GattConnection.MIN_MTU;
+        dataMaxLen = GattConnection.MIN_MTU - GattConnection.GATT_WRITE_OVERHEAD;
+        version = "unknown";
+        services = Set.of();
+    }
+
+    public int getMtu() { return mtu; }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+        changeListener.run();
+    }
+
+    public int getDataMaxLen() {
+        return dataMaxLen;
+    }
+
+    public void setDataMaxLen(int dataMaxLen) {
+        this.dataMaxLen = dataMaxLen;
+        changeListener.run();
+    }
+
+    @NonNull
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(@NonNull String version) {
+        this.version = version;
+        changeListener.run();
+    }
+
+    @NonNull
+    public Set<UUID> getServices() {
+        return services;
+    }
+
+    public void setServices(@Nullable Set<UUID> services) {
+        this.services = services == null ? Set.of() : Set.copyOf(services);
+    }
+
+    @NonNull
+    public RssiHistory getRssiHistory() {
+        return rssiHistory;
+    }
+
+    public void recordRssi(int rssi, long tsMillis) {
+        rssiHistory.record(rssi, tsMillis);
+        changeListener.run();
+    }
+
+    void setChangeListener(@NonNull Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Last time the device was reported by a scan or looked up by the registry; drives eviction.
+     */
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    public void touch(long nowMillis) {
+        this.lastAccessMillis = nowMillis;
+    }
+}
@@ -0,0 +1,120 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+
+import java.util.Set;
+import java.util.UUID;
+
+public class BleDevice {
+    @NonNull
+    private final BleDevicePersistent persistent;
+    @NonNull
+    private final BleConnectionContext context;
+
+    public BleDevice(@NonNull BleDevicePersistent persistent, @NonNull BleConnectionContext context) {
+        this.persistent = persistent;
+        this.context = context;
+    }
+
+    @NonNull
+    public BleDeviceAddress getAddress() {
+        return persistent.getAddress();
+    }
+
+    /**
+     * Immutable; change it with {@code setConfiguration(getConfiguration().edit()...build())}.
+     */
+    @NonNull
+    public DeviceConfiguration getConfiguration() {
+        return persistent.getConfiguration();
+    }
+
+    public BleDevice setConfiguration(@Nullable DeviceConfiguration configuration) {
+        persistent.setConfiguration(configuration);
+        return this;
+    }
+
+    /**
+     * MTU negotiated on the last successful connection (persisted).
+     */
+    public int getLastMtu() {
+        return persistent.getMtu();
+    }
+
+    /**
+     * Data max length reported on the last successful connection (persisted).
+     */
+    public int getLastDataMaxLen() {
+        return persistent.getDataMaxLen();
+    }
+
+    public long getLastConnectedMillis() {
+        return persistent.getLastConnectedMillis();
+    }
+
+    /**
+     * Stores the current connection's MTU and data max length as the persisted connection profile.
+     */
+    public BleDevice recordConnectionProfile(long timestampMillis) {
+        persistent.setMtu(context.getMtu());
+        persistent.setDataMaxLen(context.getDataMaxLen());
+        persistent.setLastConnectedMillis(timestampMillis);
+        return this;
+    }
+
+    /**
+     * Takes over configuration and connection profile of another instance of the same device.
+     */
+    public BleDevice copyPersistentFrom(@NonNull BleDevice other) {
+        persistent.copyFrom(other.persistent);
+        return this;
+    }
+
+    /**
+     * True when persisted data (address, configuration) changed since it was last written or loaded.
+     */
+    public boolean isDirty() {
+        return persistent.isDirty();
+    }
+
+    public void markDirty() {
+        persistent.markDirty();
+    }
+
+    public void markClean() {
+        persistent.markClean();
+    }
+
+    @NonNull
+    public Set<UUID> getServices() {
+        return context.getServices();
+    }
+
+    public BleDevice setServices(@Nullable Set<UUID> services) {
+        context.setServices(services);
+        return this;
+    }
+
+    public int getMtu() {
+        return context.getMtu();
+    }
+
+    public int getDataMaxLen() {
+        return context.getDataMaxLen();
+    }
+
+    @NonNull
+    public String getVersion() {
+        return context.getVersion();
+    }
+
+    /**
+     * Smoothed RSSI in dBm, or {@link RssiHistory#NO_RSSI} when the device has not been seen by a scan.
+     */
+    public int getRssi() {
+        return context.getRssiHistory().getSmoothed();
+    }
+}
@@ -0,0 +1,142 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Bluetooth MAC address. Kept both as the canonical {@code XX:XX:XX:XX:XX:XX} string and packed into
+ * the low 48 bits of a {@code long}, which is what equality, hashing and registry lookups use.
+ */
+public final class BleDeviceAddress {
+
+    /**
+     * Returned by {@link #pack(String)} for strings that are not valid Bluetooth addresses.
+     */
+    public static final long INVALID = -1L;
+
+    private static final String EMPTY_ADDRESS = "FF:FF:FF:FF:FF:FF";
+    private static final long EMPTY_PACKED = 0xFFFF_FFFF_FFFFL;
+    private static final int ADDRESS_LENGTH = 17;
+    private static final int OCTETS = 6;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final BleDeviceAddress EMPTY = new BleDeviceAddress();
+
+    @NonNull
+    private final String address;
+    private final long packed;
+
+    private BleDeviceAddress(@NonNull String address, long packed) {
+        this.address = address;
+        this.packed = packed;
+    }
+
+    public BleDeviceAddress() {
+        this(EMPTY_ADDRESS, EMPTY_PACKED);
+    }
+
+    public BleDeviceAddress(@Nullable String address) {
+        this(normalizeAddress(address), packOrEmpty(address));
+    }
+
+    public BleDeviceAddress(@Nullable BleDeviceAddress other) {
+        this(other == null ? EMPTY_ADDRESS : other.address, other == null ? EMPTY_PACKED : other.packed);
+    }
+
+    @NonNull
+    public static BleDeviceAddress fromLong(long packed) {
+        if (packed < 0 || packed >= EMPTY_PACKED) {
+            return EMPTY;
+        }
+        char[] chars = new char[ADDRESS_LENGTH];
+        for (int octet = 0; octet < OCTETS; octet++) {
+            int value = (int) (packed >>> (8 * (OCTETS - 1 - octet))) & 0xFF;
+            int pos = octet * 3;
+            chars[pos] = HEX_DIGITS[value >>> 4];
+            chars[pos + 1] = HEX_DIGITS[value & 0x0F];
+            if (octet < OCTETS - 1) chars[pos + 2] = ':';
+        }
+        return new BleDeviceAddress(new String(chars), packed);
+    }
+
+    /**
+     * Parses {@code XX:XX:XX:XX:XX:XX} (upper case hex, as accepted by
+     * {@code BluetoothAdapter.checkBluetoothAddress}) into the low 48 bits of a long without allocating.
+     *
+     * @return packed address or {@link #INVALID}
+     */
+    public static long pack(@Nullable String address) {
+        if (address == null || address.length() != ADDRESS_LENGTH) {
+            return INVALID;
+        }
+        long result = 0L;
+        for (int octet = 0; octet < OCTETS; octet++) {
+            int pos = octet * 3;
+            int high = hexValue(address.charAt(pos));
+            int low = hexValue(address.charAt(pos + 1));
+            if (high < 0 || low < 0) return INVALID;
+            if (octet < OCTETS - 1 && address.charAt(pos + 2) != ':') return INVALID;
+            result = (result << 8) | (high << 4) | low;
+        }
+        return result;
+    }
+
+    @NonNull
+    public static String normalizeAddress(@Nullable String address) {
+        return pack(address) == INVALID
+                ? EMPTY_ADDRESS
+                : address;
+    }
+
+    public static boolean isEmpty(@Nullable String address) {
+        return packOrEmpty(address) == EMPTY_PACKED;
+    }
+
+    public boolean isEmpty() {
+        return packed == EMPTY_PACKED;
+    }
+
+    @NonNull
+    public String getValue() {
+        return address;
+    }
+
+    /**
+     * Address packed into the low 48 bits; never negative.
+     */
+    public long toLong() {
+        return packed;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof BleDeviceAddress that)) return false;
+        return packed == that.packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return address;
+    }
+
+    /**
+     * Like {@link #pack(String)}, but maps anything invalid (or null) to the packed empty address; never allocates.
+     */
+    public static long packOrEmpty(@Nullable String address) {
+        long result = pack(address);
+        return result == INVALID ? EMPTY_PACKED : result;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
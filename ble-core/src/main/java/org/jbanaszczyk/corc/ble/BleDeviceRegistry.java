@@ -0,0 +1,501 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+import org.jbanaszczyk.corc.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Devices seen by scans or restored from the repository, together with their connection contexts.
+ * <p>
+ * One {@link Entry} per device holds both the {@link BleDevice} and its {@link BleConnectionContext}.
+ * Entries are keyed by the packed 48-bit MAC ({@link BleDeviceAddress#toLong()}) in a primitive
+ * open-addressing map. Lookups of existing entries take a single optimistic read and do not allocate,
+ * so GATT callbacks can resolve their device straight from the packed address ({@link BleDeviceAddress#packOrEmpty}).
+ * <p>
+ * The registry is bounded: transient entries (not persisted and DISCONNECTED) expire after a TTL and
+ * are evicted least-recently-seen first once there are more than the configured maximum.
+ * Persisted devices and devices with a connection in any state other than DISCONNECTED are pinned; a caller
+ * about to connect a DISCONNECTED device pins it with {@link #pin} until its state CAS is done. Eviction
+ * checks all of this under the write lock, so it cannot race a pin.
+ */
+public final class BleDeviceRegistry {
+
+    public static final int DEFAULT_MAX_TRANSIENT_DEVICES = 32;
+    public static final long DEFAULT_TRANSIENT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private record Ranked<T>(T item, int rssi) {
+    }
+
+    private final StampedLock lock = new StampedLock();
+    // Guarded by lock
+    private final LongObjectHashMap<Entry> entries = new LongObjectHashMap<>(DEFAULT_MAX_TRANSIENT_DEVICES);
+    // Entries not persisted, guarded by lock; connected ones are included, so it only bounds the transient count
+    private int notPersisted;
+    private final int maxTransientDevices;
+    private final long transientTtlMillis;
+    @NonNull
+    private final LongSupplier clock;
+    private final AtomicLong expiredEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    private final List<StateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    public BleDeviceRegistry() {
+        this(DEFAULT_MAX_TRANSIENT_DEVICES, DEFAULT_TRANSIENT_TTL_MILLIS, System::currentTimeMillis);
+    }
+
+    public BleDeviceRegistry(int maxTransientDevices, long transientTtlMillis, @NonNull LongSupplier clock) {
+        this.maxTransientDevices = maxTransientDevices;
+        this.transientTtlMillis = transientTtlMillis;
+        this.clock = clock;
+    }
+
+    @NonNull
+    public Collection<BleDevice> registerPersistedDevices(@NonNull Collection<BleDevice> persistedDevices) {
+        List<BleDevice> result = new ArrayList<>();
+        for (BleDevice stored : persistedDevices) {
+            if (stored == null) continue;
+            BleDeviceAddress address = stored.getAddress();
+            if (address.isEmpty()) continue;
+
+            Entry entry = persist(address);
+            entry.device.copyPersistentFrom(stored);
+            // Matches the repository now
+            entry.device.markClean();
+            result.add(entry.device);
+        }
+        fireChanged();
+        return result;
+    }
+
+    /**
+     * Receives every connection state transition of every device in the registry.
+     */
+    public void addStateListener(@NonNull StateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    public void removeStateListener(@NonNull StateListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * Called on any change visible in {@link #snapshotDevices}: devices added or evicted, state, MTU,
+     * version or RSSI updates. Runs on the thread making the change, so it must be cheap.
+     */
+    public void addChangeListener(@NonNull Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(@NonNull Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Pins the device: it has been written to the repository and must never be evicted.
+     */
+    public void markPersisted(@NonNull BleDeviceAddress address) {
+        Entry entry = findEntry(address.toLong());
+        if (entry == null || !entry.persisted) {
+            persist(address);
+            fireChanged();
+        }
+    }
+
+    /**
+     * Keeps a DISCONNECTED entry from being evicted while a connect to it is arranged. Pin before the
+     * DISCONNECTED -&gt; CONNECTING CAS and {@link #unpin} once it is done; a connecting entry is pinned by its
+     * state from then on.
+     *
+     * @return false if the entry was evicted in the meantime; look the device up again
+     */
+    public boolean pin(@NonNull Entry entry) {
+        long stamp = lock.readLock();
+        try {
+            if (entries.get(entry.device.getAddress().toLong()) != entry) {
+                return false;
+            }
+            entry.pins.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void unpin(@NonNull Entry entry) {
+        entry.pins.decrementAndGet();
+    }
+
+    public boolean isPersisted(@NonNull BleDeviceAddress address) {
+        Entry entry = findEntry(address.toLong());
+        return entry != null && entry.persisted;
+    }
+
+    /**
+     * Looks up an existing entry; never allocates.
+     *
+     * @param packedAddress {@link BleDeviceAddress#toLong()} or {@link BleDeviceAddress#packOrEmpty}
+     */
+    @Nullable
+    public Entry findEntry(long packedAddress) {
+        long stamp = lock.tryOptimisticRead();
+        Entry entry = entries.get(packedAddress);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = entries.get(packedAddress);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (entry != null) {
+            entry.context.touch(clock.getAsLong());
+        }
+        return entry;
+    }
+
+    /**
+     * Single lookup for existing devices; creates the entry (and its address object) only on first sight.
+     */
+    @NonNull
+    public Entry getOrCreateEntry(long packedAddress) {
+        Entry existing = findEntry(packedAddress);
+        if (existing != null) {
+            return existing;
+        }
+        return create(BleDeviceAddress.fromLong(packedAddress));
+    }
+
+    @NonNull
+    public Entry getOrCreateEntry(@NonNull BleDeviceAddress address) {
+        Entry existing = findEntry(address.toLong());
+        if (existing != null) {
+            return existing;
+        }
+        return create(address);
+    }
+
+    @NonNull
+    public BleDevice ensure(@NonNull BleDeviceAddress address) {
+        return getOrCreateEntry(address).device;
+    }
+
+    @NonNull
+    public Collection<BleDevice> all() {
+        List<BleDevice> result = new ArrayList<>();
+        for (Entry entry : entries()) {
+            result.add(entry.device);
+        }
+        return result;
+    }
+
+    /**
+     * Devices ordered by {@link #sortBySignalStrength}.
+     */
+    @NonNull
+    public List<BleDevice> byProximity() {
+        List<BleDevice> result = new ArrayList<>(all());
+        sortBySignalStrength(result, Function.identity());
+        return result;
+    }
+
+    /**
+     * Sorts {@code items} strongest smoothed signal first; devices never seen by a scan go last.
+     * <p>
+     * Scans keep updating the RSSI, so it is read once per item before sorting: a comparator reading it live
+     * could see a value change mid-sort and break the comparator contract.
+     */
+    public static <T> void sortBySignalStrength(@NonNull List<T> items, @NonNull Function<? super T, BleDevice> device) {
+        List<Ranked<T>> ranked = new ArrayList<>(items.size());
+        for (T item : items) {
+            ranked.add(new Ranked<>(item, device.apply(item).getRssi()));
+        }
+        ranked.sort(Comparator.comparingInt((Ranked<T> r) -> r.rssi()).reversed());
+        for (int i = 0; i < ranked.size(); i++) {
+            items.set(i, ranked.get(i).item());
+        }
+    }
+
+    /**
+     * Device with the strongest smoothed signal among those in the given state, or null if none.
+     */
+    @Nullable
+    public BleDevice nearest(@NonNull GattState state) {
+        BleDevice best = null;
+        int bestRssi = RssiHistory.NO_RSSI;
+        for (Entry entry : entries()) {
+            if (entry.context.getState() != state) continue;
+            int rssi = entry.device.getRssi();
+            if (rssi == RssiHistory.NO_RSSI) continue;
+            if (best == null || rssi > bestRssi) {
+                best = entry.device;
+                bestRssi = rssi;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Immutable per-device view for {@link BleDevicesSnapshot}.
+     *
+     * @param queueDepth operations pending for a device
+     */
+    @NonNull
+    public List<BleDevicesSnapshot.Device> snapshotDevices(@NonNull ToIntFunction<BleDeviceAddress> queueDepth) {
+        List<Entry> current = entries();
+        List<BleDevicesSnapshot.Device> result = new ArrayList<>(current.size());
+        for (Entry entry : current) {
+            var ctx = entry.context;
+            result.add(new BleDevicesSnapshot.Device(
+                    entry.address(),
+                    ctx.getState(),
+                    ctx.getMtu(),
+                    ctx.getDataMaxLen(),
+                    ctx.getVersion(),
+                    ctx.getRssiHistory().getSmoothed(),
+                    queueDepth.applyAsInt(entry.address()),
+                    entry.persisted));
+        }
+        return result;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Drops expired transient entries, then the least recently seen ones above the capacity bound.
+     *
+     * @return number of evicted devices
+     */
+    public int evictTransient() {
+        long now = clock.getAsLong();
+        List<Entry> candidates = new ArrayList<>();
+        for (Entry entry : entries()) {
+            if (entry.isEvictable()) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.context.getLastAccessMillis()));
+
+        int transientCount = candidates.size();
+        int evicted = 0;
+        for (Entry entry : candidates) {
+            boolean expired = now - entry.context.getLastAccessMillis() > transientTtlMillis;
+            if (!expired && transientCount - evicted <= maxTransientDevices) break;
+            if (!evict(entry)) continue;
+
+            evicted++;
+            (expired ? expiredEvictions : capacityEvictions).incrementAndGet();
+        }
+        if (evicted > 0) {
+            fireChanged();
+        }
+        return evicted;
+    }
+
+    @NonNull
+    public Stats stats() {
+        int size = 0;
+        int persisted = 0;
+        for (Entry entry : entries()) {
+            size++;
+            if (entry.persisted) persisted++;
+        }
+        return new Stats(size, persisted, expiredEvictions.get(), capacityEvictions.get());
+    }
+
+    public void clearAll() {
+        long stamp = lock.writeLock();
+        try {
+            entries.clear();
+            notPersisted = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireChanged();
+    }
+
+    @NonNull
+    public BleConnectionContext getOrCreateContext(@NonNull BleDeviceAddress address) {
+        return getOrCreateEntry(address).context;
+    }
+
+    @Nullable
+    public BleConnectionContext getContext(@NonNull BleDeviceAddress address) {
+        Entry entry = findEntry(address.toLong());
+        return entry != null ? entry.context : null;
+    }
+
+    @NonNull
+    public Collection<BleConnectionContext> allContexts() {
+        List<BleConnectionContext> result = new ArrayList<>();
+        for (Entry entry : entries()) {
+            result.add(entry.context);
+        }
+        return result;
+    }
+
+    @NonNull
+    private List<Entry> entries() {
+        long stamp = lock.readLock();
+        try {
+            return entries.values();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @NonNull
+    private Entry create(@NonNull BleDeviceAddress address) {
+        Entry created;
+        boolean overCapacity;
+        long stamp = lock.writeLock();
+        try {
+            Entry race = entries.get(address.toLong());
+            if (race != null) {
+                return race;
+            }
+            var ctx = new BleConnectionContext();
+            ctx.touch(clock.getAsLong());
+            var entry = new Entry(new BleDevice(new BleDevicePersistent(address), ctx), ctx);
+            ctx.getStateMachine().addListener((from, to, timestampNanos) -> {
+                for (StateListener listener : stateListeners) {
+                    listener.onStateChanged(entry, from, to, timestampNanos);
+                }
+                fireChanged();
+            });
+            ctx.setChangeListener(this::fireChanged);
+            entries.put(address.toLong(), entry);
+            created = entry;
+            notPersisted++;
+            overCapacity = notPersisted > maxTransientDevices;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        fireChanged();
+        // Cheap pre-check above; evictTransient() only counts entries that are actually evictable
+        if (overCapacity) {
+            evictTransient();
+        }
+        return created;
+    }
+
+    // Sets the persisted flag under the write lock, so an entry is never evicted while being pinned this way
+    @NonNull
+    private Entry persist(@NonNull BleDeviceAddress address) {
+        while (true) {
+            Entry entry = getOrCreateEntry(address);
+            long stamp = lock.writeLock();
+            try {
+                if (entries.get(address.toLong()) != entry) {
+                    // Evicted between lookup and lock
+                    continue;
+                }
+                if (!entry.persisted) {
+                    entry.persisted = true;
+                    notPersisted--;
+                }
+                return entry;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private boolean evict(@NonNull Entry entry) {
+        long key = entry.device.getAddress().toLong();
+        long stamp = lock.writeLock();
+        try {
+            if (entries.get(key) != entry || !entry.isEvictable()) {
+                return false;
+            }
+            entries.remove(key);
+            notPersisted--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    public interface StateListener {
+        void onStateChanged(@NonNull Entry entry, @NonNull GattState from, @NonNull GattState to, long timestampNanos);
+    }
+
+    /**
+     * Everything the stack knows about one device.
+     */
+    public static final class Entry {
+        @NonNull
+        private final BleDevice device;
+        @NonNull
+        private final BleConnectionContext context;
+        // Written under the registry write lock
+        private volatile boolean persisted;
+        private final AtomicInteger pins = new AtomicInteger();
+
+        private Entry(@NonNull BleDevice device, @NonNull BleConnectionContext context) {
+            this.device = device;
+            this.context = context;
+        }
+
+        @NonNull
+        public BleDeviceAddress address() {
+            return device.getAddress();
+        }
+
+        @NonNull
+        public BleDevice device() {
+            return device;
+        }
+
+        @NonNull
+        public BleConnectionContext context() {
+            return context;
+        }
+
+        public boolean isPersisted() {
+            return persisted;
+        }
+
+        private boolean isEvictable() {
+            return !persisted && pins.get() == 0 && context.getState() == GattState.DISCONNECTED;
+        }
+    }
+
+    /**
+     * Registry size and eviction counters since creation.
+     */
+    public record Stats(int size, int persisted, long expiredEvictions, long capacityEvictions) {
+
+        public long totalEvictions() {
+            return expiredEvictions + capacityEvictions;
+        }
+    }
+}
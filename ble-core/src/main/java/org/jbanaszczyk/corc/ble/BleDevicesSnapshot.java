@@ -0,0 +1,44 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Immutable, versioned view of all devices in the registry. Built off the BLE threads and handed to
+ * consumers as a whole, so readers never touch live registry or context state.
+ *
+ * @param version         increases by one with every published snapshot
+ * @param timestampMillis when the snapshot was built
+ */
+public record BleDevicesSnapshot(long version, long timestampMillis, @NonNull List<Device> devices) {
+
+    public static final BleDevicesSnapshot EMPTY = new BleDevicesSnapshot(0L, 0L, List.of());
+
+    public BleDevicesSnapshot {
+        devices = List.copyOf(devices);
+    }
+
+    @Nullable
+    public Device find(@NonNull BleDeviceAddress address) {
+        for (Device device : devices) {
+            if (device.address().equals(address)) return device;
+        }
+        return null;
+    }
+
+    /**
+     * @param queueDepth operations queued or in flight for this device
+     * @param rssi       smoothed RSSI, or {@link RssiHistory#NO_RSSI}
+     */
+    public record Device(@NonNull BleDeviceAddress address,
+                         @NonNull GattState state,
+                         int mtu,
+                         int dataMaxLen,
+                         @NonNull String version,
+                         int rssi,
+                         int queueDepth,
+                         boolean persisted) {
+    }
+}
@@ -0,0 +1,132 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Publishes {@link BleDevicesSnapshot}s. Changes only mark the snapshot stale; a rebuild is posted to the
+ * scheduler once per burst of changes. Each subscriber is conflated: while a delivery is pending or being
+ * rate-limited, newer snapshots replace the pending one, so a slow consumer only ever sees the latest state.
+ */
+public final class BleDevicesSnapshotPublisher {
+
+    public interface Subscription {
+        void cancel();
+    }
+
+    @NonNull
+    private final Scheduler scheduler;
+    @NonNull
+    private final Supplier<List<BleDevicesSnapshot.Device>> source;
+    @NonNull
+    private final LongSupplier clock;
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+    private final AtomicLong version = new AtomicLong();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    @NonNull
+    private volatile BleDevicesSnapshot current = BleDevicesSnapshot.EMPTY;
+
+    public BleDevicesSnapshotPublisher(@NonNull Scheduler scheduler,
+                                       @NonNull Supplier<List<BleDevicesSnapshot.Device>> source,
+                                       @NonNull LongSupplier clock) {
+        this.scheduler = scheduler;
+        this.source = source;
+        this.clock = clock;
+    }
+
+    /**
+     * Marks the snapshot stale. Cheap and safe to call from any thread on every change.
+     */
+    public void invalidate() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            scheduler.post(this::rebuild);
+        }
+    }
+
+    @NonNull
+    public BleDevicesSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Delivers the current snapshot immediately and every later one on {@code executor},
+     * at most once per {@code minIntervalMillis} (0 disables rate limiting).
+     */
+    @NonNull
+    public Subscription subscribe(@NonNull Executor executor,
+                                  long minIntervalMillis,
+                                  @NonNull Consumer<BleDevicesSnapshot> consumer) {
+        var subscriber = new Subscriber(executor, minIntervalMillis, consumer);
+        subscribers.add(subscriber);
+        subscriber.offer(current);
+        return subscriber;
+    }
+
+    private void rebuild() {
+        rebuildPending.set(false);
+        var snapshot = new BleDevicesSnapshot(version.incrementAndGet(), clock.getAsLong(), source.get());
+        current = snapshot;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(snapshot);
+        }
+    }
+
+    private final class Subscriber implements Subscription {
+        private final Executor executor;
+        private final long minIntervalMillis;
+        private final Consumer<BleDevicesSnapshot> consumer;
+        private final AtomicReference<BleDevicesSnapshot> pending = new AtomicReference<>();
+        private final Runnable drain = this::drain;
+        private final Runnable dispatch = this::dispatch;
+        private volatile boolean active = true;
+        private volatile long lastDeliveryMillis = Long.MIN_VALUE;
+
+        Subscriber(Executor executor, long minIntervalMillis, Consumer<BleDevicesSnapshot> consumer) {
+            this.executor = executor;
+            this.minIntervalMillis = minIntervalMillis;
+            this.consumer = consumer;
+        }
+
+        void offer(@NonNull BleDevicesSnapshot snapshot) {
+            if (pending.getAndSet(snapshot) != null) {
+                return; // a delivery is already scheduled and will pick this one up
+            }
+            long delay = lastDeliveryMillis == Long.MIN_VALUE
+                    ? 0L
+                    : lastDeliveryMillis + minIntervalMillis - clock.getAsLong();
+            if (delay > 0L) {
+                scheduler.postDelayed(dispatch, delay);
+            } else {
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            executor.execute(drain);
+        }
+
+        private void drain() {
+            BleDevicesSnapshot snapshot = pending.getAndSet(null);
+            if (snapshot == null || !active) return;
+            lastDeliveryMillis = clock.getAsLong();
+            consumer.accept(snapshot);
+        }
+
+        @Override
+        public void cancel() {
+            active = false;
+            subscribers.remove(this);
+            scheduler.removeCallbacks(dispatch);
+        }
+    }
+}
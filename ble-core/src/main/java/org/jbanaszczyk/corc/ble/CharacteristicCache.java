@@ -0,0 +1,188 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Last known characteristic values of connected devices, fed by reads and notifications.
+ * <p>
+ * A read within the characteristic's max age is served from the cache without touching the operation queue.
+ * Concurrent reads of the same characteristic share one GATT read. Values are dropped when the device disconnects
+ * or the characteristic is written. Characteristics without a policy are never served from the cache, only coalesced.
+ * <p>
+ * Every invalidation and notification bumps the generation of the characteristic: a read that was in flight
+ * across it is not cached, so an older read never overwrites a newer value. Later reads do not join a read that
+ * was in flight across an invalidation.
+ */
+public final class CharacteristicCache {
+
+    private record Key(@NonNull BleDeviceAddress address, @NonNull UUID uuid) {
+    }
+
+    private record Value(@NonNull byte[] bytes, long timestampMillis) {
+    }
+
+    /**
+     * Counters since creation.
+     */
+    public record Stats(long hits, long misses, long coalesced, long notifications) {
+
+        /**
+         * Share of reads that did not go over the air (cache hits and coalesced reads).
+         */
+        public double hitRatio() {
+            long total = hits + misses + coalesced;
+            return total == 0 ? 0.0 : (double) (hits + coalesced) / total;
+        }
+    }
+
+    @NonNull
+    private final LongSupplier clock;
+    private final Map<UUID, Long> maxAgeMillis = new ConcurrentHashMap<>();
+    private final Map<Key, Value> values = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    // Never removed, a key falling back to generation 0 would accept a stale read; bounded by the keys ever read
+    private final Map<Key, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong notifications = new AtomicLong();
+
+    public CharacteristicCache() {
+        this(System::currentTimeMillis);
+    }
+
+    public CharacteristicCache(@NonNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Serve reads of {@code uuid} from values at most {@code maxAgeMillis} old; 0 disables caching.
+     */
+    public void setMaxAge(@NonNull UUID uuid, long maxAgeMillis) {
+        if (maxAgeMillis < 0) throw new IllegalArgumentException("Max age must not be negative");
+        if (maxAgeMillis == 0) this.maxAgeMillis.remove(uuid);
+        else this.maxAgeMillis.put(uuid, maxAgeMillis);
+    }
+
+    /**
+     * @param gattRead starts the over-the-air read; called only on a miss
+     */
+    @NonNull
+    public CompletableFuture<byte[]> read(@NonNull BleDeviceAddress address,
+                                          @NonNull UUID uuid,
+                                          @NonNull Supplier<CompletableFuture<byte[]>> gattRead) {
+        var key = new Key(address, uuid);
+        var cached = fresh(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached.clone());
+        }
+
+        CompletableFuture<byte[]> started = new CompletableFuture<>();
+        var existing = inFlight.putIfAbsent(key, started);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.thenApply(byte[]::clone);
+        }
+        misses.incrementAndGet();
+        long generation = generations.getOrDefault(key, 0L);
+        CompletableFuture<byte[]> read;
+        try {
+            read = gattRead.get();
+        } catch (RuntimeException e) {
+            read = CompletableFuture.failedFuture(e);
+        }
+        read.whenComplete((bytes, throwable) -> {
+            inFlight.remove(key, started);
+            if (throwable != null) {
+                started.completeExceptionally(throwable);
+                return;
+            }
+            if (bytes != null) store(key, generation, bytes);
+            started.complete(bytes);
+        });
+        return started.thenApply(bytes -> bytes == null ? null : bytes.clone());
+    }
+
+    /**
+     * Records a value pushed by the device.
+     */
+    public void onNotification(@NonNull BleDeviceAddress address, @NonNull UUID uuid, @NonNull byte[] value) {
+        notifications.incrementAndGet();
+        var key = new Key(address, uuid);
+        var bytes = value.clone();
+        generations.compute(key, (k, current) -> {
+            values.put(key, new Value(bytes, clock.getAsLong()));
+            return current == null ? 1 : current + 1;
+        });
+    }
+
+    public void invalidate(@NonNull BleDeviceAddress address, @NonNull UUID uuid) {
+        invalidate(new Key(address, uuid));
+    }
+
+    /**
+     * Drops all values of the device, e.g. when it disconnects.
+     */
+    public void clear(@NonNull BleDeviceAddress address) {
+        for (Key key : keys()) {
+            if (key.address().equals(address)) invalidate(key);
+        }
+    }
+
+    public void clearAll() {
+        for (Key key : keys()) {
+            invalidate(key);
+        }
+    }
+
+    @NonNull
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), coalesced.get(), notifications.get());
+    }
+
+    // The generations lock of the key orders the store against invalidate and notifications
+    private void store(@NonNull Key key, long generation, @NonNull byte[] bytes) {
+        generations.compute(key, (k, current) -> {
+            if (current == null ? generation == 0 : current == generation) {
+                values.put(key, new Value(bytes.clone(), clock.getAsLong()));
+            }
+            return current;
+        });
+    }
+
+    private void invalidate(@NonNull Key key) {
+        generations.compute(key, (k, current) -> {
+            values.remove(key);
+            inFlight.remove(key);
+            return current == null ? 1 : current + 1;
+        });
+    }
+
+    @NonNull
+    private Set<Key> keys() {
+        Set<Key> keys = new HashSet<>(values.keySet());
+        keys.addAll(inFlight.keySet());
+        return keys;
+    }
+
+    @Nullable
+    private byte[] fresh(@NonNull Key key) {
+        Long maxAge = maxAgeMillis.get(key.uuid());
+        if (maxAge == null) return null;
+        var value = values.get(key);
+        if (value == null || clock.getAsLong() - value.timestampMillis() > maxAge) return null;
+        return value.bytes();
+    }
+}
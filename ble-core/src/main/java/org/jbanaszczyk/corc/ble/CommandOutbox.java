@@ -0,0 +1,226 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.core.BleLog;
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Holds commands for devices that are not READY and replays them in order once they are.
+ * <p>
+ * Every command lives at most its opcode's TTL in the outbox; when it expires its future fails with
+ * {@link TimeoutException}. A {@link Coalescing#LAST_VALUE_WINS} opcode keeps only the newest queued command per
+ * device, in the place of the first one; superseded futures complete with the result of the command that replaced
+ * them. Commands to a READY device with an empty outbox are sent straight through.
+ * <p>
+ * In memory only: the callers' futures do not survive a restart either.
+ */
+public final class CommandOutbox {
+
+    private static final String LOG_TAG = "CORC:CommandOutbox";
+
+    public static final int DEFAULT_CAPACITY_PER_DEVICE = 32;
+    public static final Policy DEFAULT_POLICY = new Policy(TimeUnit.SECONDS.toMillis(30), Coalescing.NONE);
+
+    public enum Coalescing {
+        /** Every command is sent. */
+        NONE,
+        /** Only the newest queued command is sent, e.g. commands that set a state. */
+        LAST_VALUE_WINS
+    }
+
+    public record Policy(long ttlMillis, @NonNull Coalescing coalescing) {
+        public Policy {
+            if (ttlMillis <= 0) throw new IllegalArgumentException("TTL must be positive");
+        }
+    }
+
+    /**
+     * Counters since creation.
+     */
+    public record Stats(int pending, long queued, long replayed, long expired, long coalesced, long rejected) {
+    }
+
+    private final class Pending implements Runnable {
+        @NonNull
+        final BleDeviceAddress address;
+        final byte opcode;
+        @Nullable
+        final byte[] payload;
+        @NonNull
+        final Policy policy;
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        Pending(@NonNull BleDeviceAddress address, byte opcode, @Nullable byte[] payload, @NonNull Policy policy) {
+            this.address = address;
+            this.opcode = opcode;
+            this.payload = payload;
+            this.policy = policy;
+        }
+
+        // Expiry
+        @Override
+        public void run() {
+            synchronized (CommandOutbox.this) {
+                var queue = outbox.get(address);
+                if (queue == null || !queue.remove(this)) return;
+                if (queue.isEmpty()) outbox.remove(address);
+                expired++;
+            }
+            BleLog.d(LOG_TAG, "Command 0x{x} for {} expired", opcode & 0xFF, address);
+            future.completeExceptionally(new TimeoutException(
+                    "Command 0x" + Integer.toHexString(opcode & 0xFF) + " expired before " + address + " was ready"));
+        }
+    }
+
+    @NonNull
+    private final BleCommandSender sender;
+    @NonNull
+    private final Predicate<BleDevice> ready;
+    @NonNull
+    private final Scheduler scheduler;
+    private final int capacityPerDevice;
+    private final Map<Byte, Policy> policies = new HashMap<>();
+    // Guarded by this
+    private final Map<BleDeviceAddress, List<Pending>> outbox = new HashMap<>();
+    private long queued;
+    private long replayed;
+    private long expired;
+    private long coalesced;
+    private long rejected;
+    @Nullable
+    private volatile BleMetrics metrics;
+
+    public CommandOutbox(@NonNull BleCommandSender sender, @NonNull Predicate<BleDevice> ready, @NonNull Scheduler scheduler) {
+        this(sender, ready, scheduler, DEFAULT_CAPACITY_PER_DEVICE);
+    }
+
+    public CommandOutbox(@NonNull BleCommandSender sender,
+                         @NonNull Predicate<BleDevice> ready,
+                         @NonNull Scheduler scheduler,
+                         int capacityPerDevice) {
+        this.sender = sender;
+        this.ready = ready;
+        this.scheduler = scheduler;
+        this.capacityPerDevice = capacityPerDevice;
+    }
+
+    public synchronized void setPolicy(byte opcode, @NonNull Policy policy) {
+        policies.put(opcode, policy);
+    }
+
+    @NonNull
+    public synchronized Policy getPolicy(byte opcode) {
+        return policies.getOrDefault(opcode, DEFAULT_POLICY);
+    }
+
+    /**
+     * Sends the command now if the device is READY, otherwise keeps it until {@link #drain(BleDevice)}.
+     * Fails with {@link IllegalStateException} when the device's outbox is full.
+     */
+    @NonNull
+    public synchronized CompletableFuture<byte[]> submit(@NonNull BleDevice device, byte opcode, @Nullable byte[] payload) {
+        var address = device.getAddress();
+        var queue = outbox.get(address);
+        if (queue == null && ready.test(device)) {
+            return sender.send(device, opcode, payload);
+        }
+
+        var policy = getPolicy(opcode);
+        var pending = new Pending(address, opcode, payload, policy);
+        if (queue == null) {
+            queue = new ArrayList<>();
+            outbox.put(address, queue);
+        }
+        if (policy.coalescing() == Coalescing.LAST_VALUE_WINS) {
+            for (int i = 0; i < queue.size(); i++) {
+                var previous = queue.get(i);
+                if (previous.opcode != opcode) continue;
+                scheduler.removeCallbacks(previous);
+                queue.set(i, pending);
+                pending.future.whenComplete((result, throwable) -> {
+                    if (throwable != null) previous.future.completeExceptionally(throwable);
+                    else previous.future.complete(result);
+                });
+                coalesced++;
+                queued++;
+                scheduler.postDelayed(pending, policy.ttlMillis());
+                return pending.future;
+            }
+        }
+        if (queue.size() >= capacityPerDevice) {
+            rejected++;
+            return CompletableFuture.failedFuture(new IllegalStateException("Command outbox full for " + address));
+        }
+        queue.add(pending);
+        queued++;
+        scheduler.postDelayed(pending, policy.ttlMillis());
+        return pending.future;
+    }
+
+    /**
+     * Counts every replayed command as a retry of its opcode; {@code null} stops it.
+     */
+    public void setMetrics(@Nullable BleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends everything queued for the device, in submission order. Call when it becomes READY.
+     */
+    public synchronized void drain(@NonNull BleDevice device) {
+        var queue = outbox.remove(device.getAddress());
+        if (queue == null) return;
+        BleLog.d(LOG_TAG, "Replaying {} commands for {}", queue.size(), device.getAddress());
+        // Sent under the lock so that a concurrent submit cannot overtake the replayed commands
+        for (Pending pending : queue) {
+            scheduler.removeCallbacks(pending);
+            replayed++;
+            var metrics = this.metrics;
+            if (metrics != null) metrics.recordRetry(device.getAddress(), pending.opcode);
+            sender.send(device, pending.opcode, pending.payload).whenComplete((result, throwable) -> {
+                if (throwable != null) pending.future.completeExceptionally(throwable);
+                else pending.future.complete(result);
+            });
+        }
+    }
+
+    /**
+     * Fails all queued commands, e.g. on shutdown.
+     */
+    public void clearAll() {
+        List<Pending> dropped = new ArrayList<>();
+        synchronized (this) {
+            outbox.values().forEach(dropped::addAll);
+            outbox.clear();
+        }
+        for (Pending pending : dropped) {
+            scheduler.removeCallbacks(pending);
+            pending.future.completeExceptionally(new IllegalStateException("Command outbox cleared"));
+        }
+    }
+
+    public synchronized int pending(@NonNull BleDeviceAddress address) {
+        var queue = outbox.get(address);
+        return queue == null ? 0 : queue.size();
+    }
+
+    @NonNull
+    public synchronized Stats stats() {
+        int pending = 0;
+        for (List<Pending> queue : outbox.values()) {
+            pending += queue.size();
+        }
+        return new Stats(pending, queued, replayed, expired, coalesced, rejected);
+    }
+}
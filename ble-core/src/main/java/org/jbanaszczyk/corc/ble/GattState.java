@@ -0,0 +1,32 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Connection states of a GATT client together with the table of legal transitions.
+ */
+public enum GattState {
+    DISCONNECTED,
+    CONNECTING,
+    SERVICES_DISCOVERING,
+    READY,
+
+    DISCONNECTING;
+
+    static {
+        DISCONNECTED.successors = EnumSet.of(CONNECTING);
+        CONNECTING.successors = EnumSet.of(SERVICES_DISCOVERING, DISCONNECTING, DISCONNECTED);
+        SERVICES_DISCOVERING.successors = EnumSet.of(READY, DISCONNECTING, DISCONNECTED);
+        READY.successors = EnumSet.of(DISCONNECTING, DISCONNECTED);
+        DISCONNECTING.successors = EnumSet.of(DISCONNECTED);
+    }
+
+    private Set<GattState> successors;
+
+    public boolean canTransitionTo(@NonNull GattState next) {
+        return successors.contains(next);
+    }
+}
@@ -0,0 +1,94 @@
+package org.jbanaszczyk.corc.ble;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free connection state holder. Every change is a compare-and-set along an edge of the
+ * {@link GattState} transition table, so two threads racing for the same edge (e.g. two scan results
+ * both trying DISCONNECTED -> CONNECTING) cannot both win. Illegal transitions are rejected.
+ * <p>
+ * Successful transitions are published to listeners on the thread that made them, stamped at the
+ * compare-and-set. Only the transitions of one thread arrive in order: another thread may move the machine on
+ * before a listener sees the previous transition, so listeners must not assume the state is still {@code to}.
+ * Has no Android dependencies.
+ */
+public final class GattStateMachine {
+
+    public interface Listener {
+        void onTransition(@NonNull GattState from, @NonNull GattState to, long timestampNanos);
+    }
+
+    private final AtomicReference<GattState> state = new AtomicReference<>(GattState.DISCONNECTED);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    @NonNull
+    private final LongSupplier nanoClock;
+
+    public GattStateMachine() {
+        this(System::nanoTime);
+    }
+
+    public GattStateMachine(@NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    @NonNull
+    public GattState get() {
+        return state.get();
+    }
+
+    /**
+     * Moves from {@code expected} to {@code next} if the machine is still in {@code expected}
+     * and the edge is legal.
+     *
+     * @return true if this call performed the transition
+     */
+    public boolean transition(@NonNull GattState expected, @NonNull GattState next) {
+        if (!expected.canTransitionTo(next)) {
+            return false;
+        }
+        if (!state.compareAndSet(expected, next)) {
+            return false;
+        }
+        publish(expected, next, nanoClock.getAsLong());
+        return true;
+    }
+
+    /**
+     * Moves from whatever the current state is to {@code next}, retrying if another thread changes
+     * the state concurrently.
+     *
+     * @return true if this call performed the transition; false if {@code next} is not reachable
+     * from the current state (including when already in {@code next})
+     */
+    public boolean moveTo(@NonNull GattState next) {
+        while (true) {
+            GattState current = state.get();
+            if (!current.canTransitionTo(next)) {
+                return false;
+            }
+            if (state.compareAndSet(current, next)) {
+                publish(current, next, nanoClock.getAsLong());
+                return true;
+            }
+        }
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(@NonNull GattState from, @NonNull GattState to, long timestamp) {
+        for (Listener listener : listeners) {
+            listener.onTransition(from, to, timestamp);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jbanaszczyk.corc.ble;
+
+/**
+ * Per-device signal history. Keeps an exponentially smoothed RSSI so that connect candidates can be ranked
+ * by proximity and the nearest device can be picked.
+ * Survives disconnects: proximity is a property of the device, not of the connection.
+ */
+public final class RssiHistory {
+
+    public static final int NO_RSSI = Integer.MIN_VALUE;
+
+    // Weight of the newest sample in the exponential moving average
+    private static final double SMOOTHING_FACTOR = 0.3;
+
+    private double smoothed = Double.NaN;
+    private long lastSeenMillis = 0L;
+
+    public synchronized void record(int rssi, long timestampMillis) {
+        smoothed = Double.isNaN(smoothed)
+                ? rssi
+                : smoothed + SMOOTHING_FACTOR * (rssi - smoothed);
+        lastSeenMillis = timestampMillis;
+    }
+
+    /**
+     * Latest smoothed RSSI in dBm, or {@link #NO_RSSI} when the device has never been seen.
+     */
+    public synchronized int getSmoothed() {
+        return Double.isNaN(smoothed) ? NO_RSSI : (int) Math.round(smoothed);
+    }
+
+    public synchronized long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    public synchronized boolean isEmpty() {
+        return Double.isNaN(smoothed);
+    }
+}
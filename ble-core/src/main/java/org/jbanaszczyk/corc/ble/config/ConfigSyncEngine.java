@@ -0,0 +1,292 @@
+package org.jbanaszczyk.corc.ble.config;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.BleCommandSender;
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleLog;
+import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.core.protocol.BleRemoteException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Pushes a device's {@link DeviceConfiguration} to the peripheral as deltas.
+ * <p>
+ * Both sides identify a configuration by {@link #hash(DeviceConfiguration)}. The engine remembers what it last
+ * synced per device and sends only changed entries as {@link BleOpcode#CONFIG_PATCH} commands, each carrying the
+ * hash it applies to; the peripheral rejects a patch whose base hash is not its current one. Only then (or when
+ * nothing is known about the device and {@link BleOpcode#CONFIG_GET_HASH} disagrees) the configuration is sent in
+ * full: {@link BleOpcode#CONFIG_RESET} followed by patches from the empty configuration. Transport failures
+ * (timeout, disconnect, device not ready) fail the sync instead; the next sync finds out where the device stands.
+ * <p>
+ * Syncs of one device are serialized.
+ */
+public final class ConfigSyncEngine {
+
+    private static final String LOG_TAG = "CORC:ConfigSync";
+
+    static final int HASH_SIZE = Integer.BYTES;
+    static final int OP_HEADER_SIZE = 2 + 1 + 1;
+    static final int OP_DELETE = 0xFF;
+
+    /**
+     * @param fullResend   whether the configuration had to be sent in full
+     * @param commands     commands exchanged
+     * @param airtimeBytes request frame bytes sent, headers included
+     * @param hash         configuration hash now on the device
+     */
+    public record Result(boolean fullResend, int commands, int airtimeBytes, long hash) {
+    }
+
+    // The device answered with a hash other than the one the update should have produced
+    private static final class HashMismatchException extends IllegalStateException {
+        HashMismatchException() {
+            super("Configuration hash mismatch after update");
+        }
+    }
+
+    private record Op(int key, @Nullable DeviceConfiguration.Type type, @NonNull byte[] value) {
+
+        int encodedSize() {
+            return OP_HEADER_SIZE + value.length;
+        }
+    }
+
+    // Mutated only by the sequential stages of one sync
+    private static final class Counters {
+        int commands;
+        int airtimeBytes;
+        boolean fullResend;
+    }
+
+    @NonNull
+    private final BleCommandSender sender;
+    // What each device is known to hold after the last successful sync
+    private final Map<BleDeviceAddress, DeviceConfiguration> synced = new ConcurrentHashMap<>();
+    private final Map<BleDeviceAddress, CompletableFuture<Result>> tails = new ConcurrentHashMap<>();
+
+    public ConfigSyncEngine(@NonNull BleCommandSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * CRC32 of the canonical encoding; the peripheral computes the same over its own copy.
+     */
+    public static long hash(@NonNull DeviceConfiguration configuration) {
+        CRC32 crc = new CRC32();
+        crc.update(configuration.toByteArray());
+        return crc.getValue();
+    }
+
+    /**
+     * Brings the peripheral in line with {@link BleDevice#getConfiguration()} as of this call.
+     */
+    @NonNull
+    public CompletableFuture<Result> sync(@NonNull BleDevice device) {
+        var address = device.getAddress();
+        var target = device.getConfiguration();
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        tails.compute(address, (key, previous) -> {
+            CompletableFuture<?> start = previous == null
+                    ? CompletableFuture.completedFuture(null)
+                    : previous.handle((r, t) -> null);
+            start.thenCompose(v -> syncNow(device, target))
+                    .whenComplete((r, t) -> {
+                        if (t != null) result.completeExceptionally(unwrap(t));
+                        else result.complete(r);
+                    });
+            return result;
+        });
+        result.whenComplete((r, t) -> tails.remove(address, result));
+        return result;
+    }
+
+    /**
+     * Forgets what the device holds, e.g. after it was reset or configured elsewhere.
+     */
+    public void invalidate(@NonNull BleDeviceAddress address) {
+        synced.remove(address);
+    }
+
+    @NonNull
+    private CompletableFuture<Result> syncNow(@NonNull BleDevice device, @NonNull DeviceConfiguration target) {
+        var counters = new Counters();
+        var known = synced.get(device.getAddress());
+        if (known == null) {
+            return send(device, BleOpcode.CONFIG_GET_HASH, null, counters).thenCompose(response -> {
+                if (readHash(response) == hash(target)) {
+                    synced.put(device.getAddress(), target);
+                    return CompletableFuture.completedFuture(result(target, counters));
+                }
+                return fullResend(device, target, counters);
+            });
+        }
+        if (known.equals(target)) {
+            return CompletableFuture.completedFuture(result(target, counters));
+        }
+        return sendPatches(device, known, diff(known, target), counters)
+                .handle((r, t) -> {
+                    if (t == null) return CompletableFuture.completedFuture(r);
+                    var cause = unwrap(t);
+                    if (!(cause instanceof HashMismatchException) && !(cause instanceof BleRemoteException)) {
+                        return CompletableFuture.<Result>failedFuture(cause);
+                    }
+                    BleLog.w(LOG_TAG, "Delta sync failed for {} – sending full configuration: {}", device.getAddress(), cause.getMessage());
+                    synced.remove(device.getAddress());
+                    return fullResend(device, target, counters);
+                })
+                .thenCompose(f -> f);
+    }
+
+    @NonNull
+    private CompletableFuture<Result> fullResend(@NonNull BleDevice device,
+                                                 @NonNull DeviceConfiguration target,
+                                                 @NonNull Counters counters) {
+        counters.fullResend = true;
+        return send(device, BleOpcode.CONFIG_RESET, null, counters).thenCompose(response -> {
+            expectHash(response, DeviceConfiguration.EMPTY);
+            synced.put(device.getAddress(), DeviceConfiguration.EMPTY);
+            return sendPatches(device, DeviceConfiguration.EMPTY, diff(DeviceConfiguration.EMPTY, target), counters);
+        });
+    }
+
+    // Sends ops in as few CONFIG_PATCH commands as the device's data max length allows
+    @NonNull
+    private CompletableFuture<Result> sendPatches(@NonNull BleDevice device,
+                                                  @NonNull DeviceConfiguration base,
+                                                  @NonNull List<Op> ops,
+                                                  @NonNull Counters counters) {
+        int budget = Math.min(BleCommandResponseManager.MAX_PAYLOAD_SIZE,
+                device.getDataMaxLen() - BleCommandResponseManager.PAYLOAD_HEADER_SIZE) - HASH_SIZE;
+
+        List<List<Op>> chunks = new ArrayList<>();
+        List<Op> chunk = new ArrayList<>();
+        int used = 0;
+        for (Op op : ops) {
+            if (op.encodedSize() > budget) {
+                return CompletableFuture.failedFuture(new IllegalStateException(
+                        "Configuration entry " + op.key() + " (" + op.value().length + " bytes) does not fit into one patch"));
+            }
+            if (used + op.encodedSize() > budget) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                used = 0;
+            }
+            chunk.add(op);
+            used += op.encodedSize();
+        }
+        if (!chunk.isEmpty()) chunks.add(chunk);
+
+        CompletableFuture<DeviceConfiguration> stage = CompletableFuture.completedFuture(base);
+        for (List<Op> part : chunks) {
+            stage = stage.thenCompose(current -> {
+                var next = apply(current, part);
+                return send(device, BleOpcode.CONFIG_PATCH, encodePatch(hash(current), part), counters)
+                        .thenApply(response -> {
+                            expectHash(response, next);
+                            synced.put(device.getAddress(), next);
+                            return next;
+                        });
+            });
+        }
+        return stage.thenApply(done -> result(done, counters));
+    }
+
+    @NonNull
+    private CompletableFuture<byte[]> send(@NonNull BleDevice device, byte opcode, @Nullable byte[] payload,
+                                           @NonNull Counters counters) {
+        counters.commands++;
+        counters.airtimeBytes += BleCommandResponseManager.PAYLOAD_HEADER_SIZE + (payload == null ? 0 : payload.length);
+        return sender.send(device, opcode, payload);
+    }
+
+    @NonNull
+    private static Result result(@NonNull DeviceConfiguration configuration, @NonNull Counters counters) {
+        return new Result(counters.fullResend, counters.commands, counters.airtimeBytes, hash(configuration));
+    }
+
+    @NonNull
+    private static List<Op> diff(@NonNull DeviceConfiguration from, @NonNull DeviceConfiguration to) {
+        List<Op> ops = new ArrayList<>();
+        for (int key : from.keys()) {
+            if (!to.contains(key)) {
+                ops.add(new Op(key, null, new byte[0]));
+            }
+        }
+        for (int key : to.keys()) {
+            byte[] value = to.rawValue(key);
+            var type = to.typeOf(key);
+            if (value == null || type == null) continue;
+            if (type != from.typeOf(key) || !Arrays.equals(value, from.rawValue(key))) {
+                ops.add(new Op(key, type, value));
+            }
+        }
+        ops.sort((a, b) -> Integer.compare(a.key(), b.key()));
+        return ops;
+    }
+
+    @NonNull
+    private static DeviceConfiguration apply(@NonNull DeviceConfiguration base, @NonNull List<Op> ops) {
+        var builder = base.edit();
+        for (Op op : ops) {
+            if (op.type() == null) builder.remove(op.key());
+            else builder.put(op.key(), op.type(), op.value());
+        }
+        return builder.build();
+    }
+
+    @NonNull
+    private static byte[] encodePatch(long baseHash, @NonNull List<Op> ops) {
+        var out = new ByteArrayOutputStream();
+        writeU32(out, baseHash);
+        for (Op op : ops) {
+            out.write(op.key() & 0xFF);
+            out.write(op.key() >>> 8);
+            out.write(op.type() == null ? OP_DELETE : op.type().ordinal());
+            out.write(op.value().length);
+            out.write(op.value(), 0, op.value().length);
+        }
+        return out.toByteArray();
+    }
+
+    static long readHash(@Nullable byte[] response) {
+        if (response == null || response.length < HASH_SIZE) {
+            throw new IllegalStateException("Malformed configuration hash response");
+        }
+        return (response[0] & 0xFFL)
+                | (response[1] & 0xFFL) << 8
+                | (response[2] & 0xFFL) << 16
+                | (response[3] & 0xFFL) << 24;
+    }
+
+    private static void expectHash(@Nullable byte[] response, @NonNull DeviceConfiguration expected) {
+        long actual = readHash(response);
+        if (actual != hash(expected)) {
+            throw new HashMismatchException();
+        }
+    }
+
+    private static void writeU32(@NonNull ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < HASH_SIZE; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+
+    @NonNull
+    private static Throwable unwrap(@NonNull Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+}
@@ -0,0 +1,391 @@
+package org.jbanaszczyk.corc.ble.config;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, versioned binary device configuration: a set of typed values under 16-bit keys.
+ * <p>
+ * Layout (little endian, like the BLE protocol):
+ * <pre>
+ * header: magic u16, format version u8, entry count u16
+ * index:  count x (key u16, type u8, offset u16, length u16), sorted by key; offsets are relative to the data area
+ * data:   values back to back
+ * </pre>
+ * Getters binary-search the index inside the blob and decode only the requested value; decoded strings are
+ * cached per instance. {@link #fromBytes(byte[])} validates the header and index but does not decode values.
+ */
+public final class DeviceConfiguration {
+
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Pre-binary free-form JSON configuration, kept verbatim by the database migration.
+     */
+    public static final int KEY_LEGACY_JSON = 0xFFFF;
+
+    public static final int MAX_SIZE = 0xFFFF;
+
+    private static final int MAGIC = 0xC0F6;
+    private static final int HEADER_SIZE = 2 + 1 + 2;
+    private static final int INDEX_ENTRY_SIZE = 2 + 1 + 2 + 2;
+
+    public static final DeviceConfiguration EMPTY = builder().build();
+
+    public enum Type {
+        BOOL, INT, LONG, STRING, BYTES;
+
+        private static final Type[] VALUES = values();
+
+        @Nullable
+        static Type fromCode(int code) {
+            return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+        }
+    }
+
+    @NonNull
+    private final byte[] blob;
+    private final int count;
+    private final int dataStart;
+    // Decoded STRING values by index position; racy but only ever holds equal immutable values
+    @NonNull
+    private final Object[] decoded;
+
+    private DeviceConfiguration(@NonNull byte[] blob, int count) {
+        this.blob = blob;
+        this.count = count;
+        this.dataStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+        this.decoded = new Object[count];
+    }
+
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param bytes serialized form; null or empty means {@link #EMPTY}
+     * @throws IllegalArgumentException when the header or index is malformed
+     */
+    @NonNull
+    public static DeviceConfiguration fromBytes(@Nullable byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return EMPTY;
+        }
+        if (bytes.length < HEADER_SIZE || u16(bytes, 0) != MAGIC) {
+            throw new IllegalArgumentException("Not a device configuration");
+        }
+        if (u8(bytes, 2) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported configuration format " + u8(bytes, 2));
+        }
+        int count = u16(bytes, 3);
+        int dataStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+        if (dataStart > bytes.length) {
+            throw new IllegalArgumentException("Truncated configuration index");
+        }
+        int previousKey = -1;
+        for (int i = 0; i < count; i++) {
+            int pos = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            int key = u16(bytes, pos);
+            if (key <= previousKey) throw new IllegalArgumentException("Configuration keys not sorted");
+            if (Type.fromCode(u8(bytes, pos + 2)) == null) throw new IllegalArgumentException("Unknown value type");
+            if (dataStart + u16(bytes, pos + 3) + u16(bytes, pos + 5) > bytes.length) {
+                throw new IllegalArgumentException("Configuration value out of bounds");
+            }
+            previousKey = key;
+        }
+        return new DeviceConfiguration(bytes.clone(), count);
+    }
+
+    /**
+     * Wraps a pre-binary JSON configuration under {@link #KEY_LEGACY_JSON}.
+     */
+    @NonNull
+    public static DeviceConfiguration fromLegacyJson(@Nullable String json) {
+        if (json == null || json.isBlank()) {
+            return EMPTY;
+        }
+        return builder().putString(KEY_LEGACY_JSON, json).build();
+    }
+
+    @NonNull
+    public byte[] toByteArray() {
+        return blob.clone();
+    }
+
+    /**
+     * Serialized size in bytes.
+     */
+    public int byteSize() {
+        return blob.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean contains(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Nullable
+    public Type typeOf(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : typeAt(index);
+    }
+
+    @NonNull
+    public int[] keys() {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = keyAt(i);
+        }
+        return keys;
+    }
+
+    public boolean getBoolean(int key, boolean defaultValue) {
+        int index = find(key, Type.BOOL);
+        return index < 0 ? defaultValue : blob[valueOffset(index)] != 0;
+    }
+
+    public int getInt(int key, int defaultValue) {
+        int index = find(key, Type.INT);
+        return index < 0 ? defaultValue : i32(blob, valueOffset(index));
+    }
+
+    public long getLong(int key, long defaultValue) {
+        int index = find(key, Type.LONG);
+        if (index < 0) return defaultValue;
+        int pos = valueOffset(index);
+        return (i32(blob, pos) & 0xFFFF_FFFFL) | ((long) i32(blob, pos + 4) << 32);
+    }
+
+    @Nullable
+    public String getString(int key) {
+        int index = find(key, Type.STRING);
+        if (index < 0) return null;
+        Object cached = decoded[index];
+        if (cached != null) return (String) cached;
+        String value = new String(blob, valueOffset(index), valueLength(index), StandardCharsets.UTF_8);
+        decoded[index] = value;
+        return value;
+    }
+
+    @Nullable
+    public byte[] getBytes(int key) {
+        int index = find(key, Type.BYTES);
+        if (index < 0) return null;
+        int offset = valueOffset(index);
+        return Arrays.copyOfRange(blob, offset, offset + valueLength(index));
+    }
+
+    /**
+     * Encoded value bytes of the key, whatever its type; null when absent.
+     */
+    @Nullable
+    byte[] rawValue(int key) {
+        int index = indexOf(key);
+        if (index < 0) return null;
+        int offset = valueOffset(index);
+        return Arrays.copyOfRange(blob, offset, offset + valueLength(index));
+    }
+
+    @Nullable
+    public String getLegacyJson() {
+        return getString(KEY_LEGACY_JSON);
+    }
+
+    /**
+     * Builder pre-filled with this configuration.
+     */
+    @NonNull
+    public Builder edit() {
+        Builder builder = new Builder();
+        for (int i = 0; i < count; i++) {
+            int offset = valueOffset(i);
+            builder.put(keyAt(i), typeAt(i), Arrays.copyOfRange(blob, offset, offset + valueLength(i)));
+        }
+        return builder;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof DeviceConfiguration that)) return false;
+        return Arrays.equals(blob, that.blob);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(blob);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DeviceConfiguration{entries=" + count + ", bytes=" + blob.length + "}";
+    }
+
+    // ---- index access ----
+
+    private int find(int key, @NonNull Type type) {
+        int index = indexOf(key);
+        if (index < 0) return -1;
+        Type actual = typeAt(index);
+        if (actual != type) {
+            throw new IllegalArgumentException("Key " + key + " holds " + actual + ", not " + type);
+        }
+        return index;
+    }
+
+    private int indexOf(int key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = keyAt(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int keyAt(int index) {
+        return u16(blob, HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+    }
+
+    @NonNull
+    private Type typeAt(int index) {
+        return Type.VALUES[u8(blob, HEADER_SIZE + index * INDEX_ENTRY_SIZE + 2)];
+    }
+
+    private int valueOffset(int index) {
+        return dataStart + u16(blob, HEADER_SIZE + index * INDEX_ENTRY_SIZE + 3);
+    }
+
+    private int valueLength(int index) {
+        return u16(blob, HEADER_SIZE + index * INDEX_ENTRY_SIZE + 5);
+    }
+
+    private static int u8(byte[] bytes, int pos) {
+        return bytes[pos] & 0xFF;
+    }
+
+    private static int u16(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8;
+    }
+
+    private static int i32(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF)
+                | (bytes[pos + 1] & 0xFF) << 8
+                | (bytes[pos + 2] & 0xFF) << 16
+                | (bytes[pos + 3] & 0xFF) << 24;
+    }
+
+    public static final class Builder {
+
+        private record Value(@NonNull Type type, @NonNull byte[] bytes) {
+        }
+
+        private final Map<Integer, Value> values = new TreeMap<>();
+
+        private Builder() {
+        }
+
+        @NonNull
+        public Builder putBoolean(int key, boolean value) {
+            return put(key, Type.BOOL, new byte[]{(byte) (value ? 1 : 0)});
+        }
+
+        @NonNull
+        public Builder putInt(int key, int value) {
+            return put(key, Type.INT, new byte[]{
+                    (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+        }
+
+        @NonNull
+        public Builder putLong(int key, long value) {
+            byte[] bytes = new byte[8];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (value >>> (8 * i));
+            }
+            return put(key, Type.LONG, bytes);
+        }
+
+        @NonNull
+        public Builder putString(int key, @NonNull String value) {
+            return put(key, Type.STRING, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @NonNull
+        public Builder putBytes(int key, @NonNull byte[] value) {
+            return put(key, Type.BYTES, value.clone());
+        }
+
+        @NonNull
+        public Builder remove(int key) {
+            values.remove(key);
+            return this;
+        }
+
+        @NonNull
+        Builder put(int key, @NonNull Type type, @NonNull byte[] bytes) {
+            if (key < 0 || key > 0xFFFF) throw new IllegalArgumentException("Key out of range: " + key);
+            values.put(key, new Value(type, bytes));
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException when the encoded configuration would exceed {@link #MAX_SIZE}
+         */
+        @NonNull
+        public DeviceConfiguration build() {
+            int count = values.size();
+            int dataStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+            int size = dataStart;
+            for (Value value : values.values()) {
+                size += value.bytes().length;
+            }
+            if (size > MAX_SIZE) {
+                throw new IllegalStateException("Configuration too large: " + size + " bytes");
+            }
+
+            byte[] blob = new byte[size];
+            putU16(blob, 0, MAGIC);
+            blob[2] = (byte) FORMAT_VERSION;
+            putU16(blob, 3, count);
+            int indexPos = HEADER_SIZE;
+            int dataOffset = 0;
+            for (Map.Entry<Integer, Value> entry : values.entrySet()) {
+                byte[] bytes = entry.getValue().bytes();
+                putU16(blob, indexPos, entry.getKey());
+                blob[indexPos + 2] = (byte) entry.getValue().type().ordinal();
+                putU16(blob, indexPos + 3, dataOffset);
+                putU16(blob, indexPos + 5, bytes.length);
+                System.arraycopy(bytes, 0, blob, dataStart + dataOffset, bytes.length);
+                indexPos += INDEX_ENTRY_SIZE;
+                dataOffset += bytes.length;
+            }
+            return new DeviceConfiguration(blob, count);
+        }
+
+        private static void putU16(byte[] bytes, int pos, int value) {
+            bytes[pos] = (byte) value;
+            bytes[pos + 1] = (byte) (value >>> 8);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging facade of the BLE engines, so they run on a plain JVM. Silent until a {@link Sink} is installed;
+ * the app installs one that forwards to {@code android.util.Log}.
+ * <p>
+ * Hot paths use the parameterized forms: {@code {}} in the pattern is replaced by the next argument and
+ * {@code {x}} by its hexadecimal value. The message is only formatted when its level passes
+ * {@link #setMinLevel}, and {@code long} overloads avoid boxing, so a suppressed call costs a volatile read or
+ * two and allocates nothing.
+ * <p>
+ * An optional event ring ({@link #setEventRing}) keeps the last events unformatted: timestamp, level, tag,
+ * pattern and arguments in preallocated arrays. Only immutable arguments (strings, boxed primitives, enums,
+ * UUIDs, addresses) are kept by reference; any other object is recorded as its class and identity hash, so the
+ * ring neither keeps devices or payloads alive nor shows their state at dump time instead of at log time. It
+ * records below the sink's level as well and is formatted only by {@link #dumpEvents}, e.g. when a bug report
+ * is taken.
+ */
+public final class BleLog {
+
+    /**
+     * Receives every message; must be thread safe.
+     */
+    public interface Sink {
+        void log(@NonNull Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable throwable);
+    }
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final Sink NONE = (level, tag, message, throwable) -> {
+    };
+    private static final Level[] LEVELS = Level.values();
+    // Levels nothing passes: sink or ring switched off
+    private static final int OFF = LEVELS.length;
+    private static final int MAX_ARGS = 4;
+    // Which argument positions hold a long rather than an object
+    private static final boolean[] LONGS_1 = {true, false, false, false};
+    private static final boolean[] LONGS_2ND = {false, true, false, false};
+    private static final boolean[] LONGS_2 = {true, true, false, false};
+    private static final boolean[] LONGS_4 = {true, true, true, true};
+
+    @NonNull
+    private static volatile Sink sink = NONE;
+    private static volatile int minLevel = Level.DEBUG.ordinal();
+    private static volatile int sinkLevel = OFF;
+    @Nullable
+    private static volatile EventRing ring;
+    private static volatile int ringLevel = OFF;
+
+    private BleLog() {
+    }
+
+    /**
+     * @param newSink null silences logging
+     */
+    public static void setSink(@Nullable Sink newSink) {
+        sink = newSink != null ? newSink : NONE;
+        sinkLevel = newSink != null ? minLevel : OFF;
+    }
+
+    /**
+     * Messages below {@code level} are neither formatted nor passed to the sink; e.g. INFO in release builds.
+     */
+    public static void setMinLevel(@NonNull Level level) {
+        minLevel = level.ordinal();
+        sinkLevel = sink != NONE ? minLevel : OFF;
+    }
+
+    /**
+     * True when a message at {@code level} reaches the sink or the event ring; guards expensive arguments.
+     */
+    public static boolean isLoggable(@NonNull Level level) {
+        return level.ordinal() >= Math.min(sinkLevel, ringLevel);
+    }
+
+    /**
+     * Keeps the last {@code capacity} events at {@code level} or above in memory; 0 removes the ring.
+     */
+    public static void setEventRing(int capacity, @NonNull Level level) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        ringLevel = OFF;
+        ring = capacity > 0 ? new EventRing(capacity) : null;
+        ringLevel = capacity > 0 ? level.ordinal() : OFF;
+    }
+
+    /**
+     * Writes the events of the ring, oldest first, one line each. Events logged meanwhile may be torn.
+     */
+    public static void dumpEvents(@NonNull Appendable out) throws IOException {
+        EventRing current = ring;
+        if (current != null) {
+            current.dump(out);
+        }
+    }
+
+    public static void d(@NonNull String tag, @NonNull String message) {
+        log(Level.DEBUG, tag, message, null, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, @Nullable Object a) {
+        log(Level.DEBUG, tag, pattern, null, 1, a, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, long a) {
+        log(Level.DEBUG, tag, pattern, null, 1, null, null, null, null, a, 0, 0, 0, LONGS_1);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b) {
+        log(Level.DEBUG, tag, pattern, null, 2, a, b, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, @Nullable Object a, long b) {
+        log(Level.DEBUG, tag, pattern, null, 2, a, null, null, null, 0, b, 0, 0, LONGS_2ND);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, long a, long b) {
+        log(Level.DEBUG, tag, pattern, null, 2, null, null, null, null, a, b, 0, 0, LONGS_2);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b, @Nullable Object c) {
+        log(Level.DEBUG, tag, pattern, null, 3, a, b, c, null, 0, 0, 0, 0, null);
+    }
+
+    public static void d(@NonNull String tag, @NonNull String pattern, long a, long b, long c, long d) {
+        log(Level.DEBUG, tag, pattern, null, 4, null, null, null, null, a, b, c, d, LONGS_4);
+    }
+
+    public static void i(@NonNull String tag, @NonNull String message) {
+        log(Level.INFO, tag, message, null, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void i(@NonNull String tag, @NonNull String pattern, @Nullable Object a) {
+        log(Level.INFO, tag, pattern, null, 1, a, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void i(@NonNull String tag, @NonNull String pattern, long a) {
+        log(Level.INFO, tag, pattern, null, 1, null, null, null, null, a, 0, 0, 0, LONGS_1);
+    }
+
+    public static void i(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b) {
+        log(Level.INFO, tag, pattern, null, 2, a, b, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void i(@NonNull String tag, @NonNull String pattern, @Nullable Object a, long b) {
+        log(Level.INFO, tag, pattern, null, 2, a, null, null, null, 0, b, 0, 0, LONGS_2ND);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String message) {
+        log(Level.WARN, tag, message, null, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String message, @Nullable Throwable throwable) {
+        log(Level.WARN, tag, message, throwable, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String pattern, @Nullable Object a) {
+        log(Level.WARN, tag, pattern, null, 1, a, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b) {
+        log(Level.WARN, tag, pattern, null, 2, a, b, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String pattern, @Nullable Object a, long b) {
+        log(Level.WARN, tag, pattern, null, 2, a, null, null, null, 0, b, 0, 0, LONGS_2ND);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b, @Nullable Object c) {
+        log(Level.WARN, tag, pattern, null, 3, a, b, c, null, 0, 0, 0, 0, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String message) {
+        log(Level.ERROR, tag, message, null, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String message, @Nullable Throwable throwable) {
+        log(Level.ERROR, tag, message, throwable, 0, null, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String pattern, @Nullable Object a) {
+        log(Level.ERROR, tag, pattern, null, 1, a, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String pattern, long a) {
+        log(Level.ERROR, tag, pattern, null, 1, null, null, null, null, a, 0, 0, 0, LONGS_1);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b) {
+        log(Level.ERROR, tag, pattern, null, 2, a, b, null, null, 0, 0, 0, 0, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Object b, @Nullable Object c) {
+        log(Level.ERROR, tag, pattern, null, 3, a, b, c, null, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * Parameterized message with a throwable, which is passed to the sink and not formatted into the message.
+     */
+    public static void e(@NonNull String tag, @NonNull String pattern, @Nullable Object a, @Nullable Throwable throwable) {
+        log(Level.ERROR, tag, pattern, throwable, 1, a, null, null, null, 0, 0, 0, 0, null);
+    }
+
+    private static void log(@NonNull Level level, @NonNull String tag, @NonNull String pattern, @Nullable Throwable throwable,
+                            int count, @Nullable Object a, @Nullable Object b, @Nullable Object c, @Nullable Object d,
+                            long la, long lb, long lc, long ld, @Nullable boolean[] longs) {
+        int ordinal = level.ordinal();
+        if (ordinal >= ringLevel) {
+            EventRing current = ring;
+            if (current != null) {
+                current.add(ordinal, tag, pattern, count, a, b, c, d, la, lb, lc, ld, longs);
+            }
+        }
+        if (ordinal >= sinkLevel) {
+            String message = count == 0 ? pattern : format(pattern, count, a, b, c, d, la, lb, lc, ld, longs);
+            sink.log(level, tag, message, throwable);
+        }
+    }
+
+    @NonNull
+    static String format(@NonNull String pattern, int count, @Nullable Object a, @Nullable Object b, @Nullable Object c,
+                         @Nullable Object d, long la, long lb, long lc, long ld, @Nullable boolean[] longs) {
+        StringBuilder out = new StringBuilder(pattern.length() + 16 * count);
+        int arg = 0;
+        int from = 0;
+        while (true) {
+            int open = pattern.indexOf('{', from);
+            if (open < 0 || arg == count) {
+                break;
+            }
+            boolean hex = pattern.startsWith("{x}", open);
+            if (!hex && !pattern.startsWith("{}", open)) {
+                out.append(pattern, from, open + 1);
+                from = open + 1;
+                continue;
+            }
+            out.append(pattern, from, open);
+            boolean isLong = longs != null && longs[arg];
+            long value = switch (arg) {
+                case 0 -> la;
+                case 1 -> lb;
+                case 2 -> lc;
+                default -> ld;
+            };
+            Object object = switch (arg) {
+                case 0 -> a;
+                case 1 -> b;
+                case 2 -> c;
+                default -> d;
+            };
+            if (isLong) {
+                out.append(hex ? Long.toHexString(value).toUpperCase(Locale.ROOT) : Long.toString(value));
+            } else if (hex && object instanceof Number number) {
+                out.append(Long.toHexString(number.longValue()).toUpperCase(Locale.ROOT));
+            } else {
+                out.append(object);
+            }
+            arg++;
+            from = open + (hex ? 3 : 2);
+        }
+        return out.append(pattern, from, pattern.length()).toString();
+    }
+
+    /**
+     * Last events in columns, written lock-free; a slot is claimed by incrementing the cursor.
+     */
+    private static final class EventRing {
+        private final int mask;
+        private final long startNanos = System.nanoTime();
+        private final long[] times;
+        private final byte[] levels;
+        private final String[] tags;
+        private final String[] patterns;
+        private final byte[] counts;
+        private final boolean[][] longs;
+        // Immutable argument, or the class of a mutable one whose identity hash is in values
+        private final Object[] objects;
+        private final boolean[] identities;
+        private final long[] values;
+        private final AtomicLong cursor = new AtomicLong();
+
+        EventRing(int capacity) {
+            int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            mask = size - 1;
+            times = new long[size];
+            levels = new byte[size];
+            tags = new String[size];
+            patterns = new String[size];
+            counts = new byte[size];
+            longs = new boolean[size][];
+            objects = new Object[size * MAX_ARGS];
+            identities = new boolean[size * MAX_ARGS];
+            values = new long[size * MAX_ARGS];
+        }
+
+        void add(int level, String tag, String pattern, int count, Object a, Object b, Object c, Object d,
+                 long la, long lb, long lc, long ld, boolean[] longKinds) {
+            int slot = (int) (cursor.getAndIncrement() & mask);
+            int base = slot * MAX_ARGS;
+            times[slot] = System.nanoTime();
+            levels[slot] = (byte) level;
+            tags[slot] = tag;
+            patterns[slot] = pattern;
+            counts[slot] = (byte) count;
+            longs[slot] = longKinds;
+            values[base] = la;
+            values[base + 1] = lb;
+            values[base + 2] = lc;
+            values[base + 3] = ld;
+            capture(base, a);
+            capture(base + 1, b);
+            capture(base + 2, c);
+            capture(base + 3, d);
+        }
+
+        private void capture(int index, @Nullable Object argument) {
+            boolean identity = argument != null && !isImmutable(argument);
+            identities[index] = identity;
+            if (identity) {
+                objects[index] = argument.getClass();
+                values[index] = System.identityHashCode(argument);
+            } else {
+                objects[index] = argument;
+            }
+        }
+
+        private static boolean isImmutable(@NonNull Object argument) {
+            return argument instanceof String
+                    || argument instanceof Integer
+                    || argument instanceof Long
+                    || argument instanceof Short
+                    || argument instanceof Byte
+                    || argument instanceof Boolean
+                    || argument instanceof Character
+                    || argument instanceof Double
+                    || argument instanceof Float
+                    || argument instanceof Enum
+                    || argument instanceof UUID
+                    || argument instanceof BleDeviceAddress;
+        }
+
+        @Nullable
+        private Object argument(int index) {
+            if (!identities[index]) {
+                return objects[index];
+            }
+            return ((Class<?>) objects[index]).getSimpleName() + '@' + Integer.toHexString((int) values[index]);
+        }
+
+        void dump(@NonNull Appendable out) throws IOException {
+            long end = cursor.get();
+            for (long i = Math.max(0, end - (mask + 1)); i < end; i++) {
+                int slot = (int) (i & mask);
+                int base = slot * MAX_ARGS;
+                long micros = (times[slot] - startNanos) / 1_000;
+                out.append(String.format(Locale.ROOT, "%d.%03d ", micros / 1_000, micros % 1_000))
+                        .append(LEVELS[levels[slot]].name().charAt(0)).append(' ')
+                        .append(tags[slot]).append(": ")
+                        .append(format(patterns[slot], counts[slot],
+                                argument(base), argument(base + 1), argument(base + 2), argument(base + 3),
+                                values[base], values[base + 1], values[base + 2], values[base + 3], longs[slot]))
+                        .append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.UUID;
+
+/**
+ * Describes a single GATT operation. Immutable, except for the step cursor of a {@link BleOperationType#RELIABLE_WRITE},
+ * which only the operation queue advances.
+ */
+public final class BleOperation<T> {
+    public enum BleOperationType {
+        READ,
+        WRITE,
+        ENABLE_NOTIFY,
+        DISABLE_NOTIFY,
+        REQUEST_MTU,
+        /** Prepared writes of one or more characteristics, applied together by executeReliableWrite or not at all. */
+        RELIABLE_WRITE
+    }
+
+    /**
+     * Largest attribute value (Core spec, Vol 3, Part F, 3.2.9); longer values cannot be written even as a long write.
+     */
+    public static final int MAX_ATTRIBUTE_LENGTH = 512;
+
+    /**
+     * One characteristic value of a {@link BleOperationType#RELIABLE_WRITE}; may be longer than MTU - 3.
+     */
+    public record WritePart(@NonNull UUID characteristicUuid, @NonNull byte[] value) {
+    }
+
+    private final BleDeviceAddress address;
+    private final BleOperationType bleOperationType;
+    private final UUID characteristicUuid;
+    @Nullable
+    private final byte[] payload;
+    @Nullable
+    private final Integer mtu;
+    @NonNull
+    private final List<WritePart> parts;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    // Touched only by the queue thread
+    private int step;
+
+    private BleOperation(BleDeviceAddress address, BleOperationType bleOperationType, @Nullable UUID uuid, @Nullable byte[] payload, @Nullable Integer mtu) {
+        this(address, bleOperationType, uuid, payload, mtu, List.of());
+    }
+
+    private BleOperation(BleDeviceAddress address, BleOperationType bleOperationType, @Nullable UUID uuid, @Nullable byte[] payload,
+                         @Nullable Integer mtu, @NonNull List<WritePart> parts) {
+        this.address = address;
+        this.bleOperationType = bleOperationType;
+        this.characteristicUuid = uuid;
+        this.payload = payload;
+        this.mtu = mtu;
+        this.parts = parts;
+    }
+
+    public static BleOperation<byte[]> read(BleDeviceAddress address, UUID uuid) {
+        return new BleOperation<>(address, BleOperationType.READ, uuid, null, null);
+    }
+
+    public static BleOperation<Void> write(BleDeviceAddress address, UUID uuid, byte[] payload) {
+        return new BleOperation<>(address, BleOperationType.WRITE, uuid, payload, null);
+    }
+
+    public static BleOperation<Void> enableNotify(BleDeviceAddress address, UUID uuid) {
+        return new BleOperation<>(address, BleOperationType.ENABLE_NOTIFY, uuid, null, null);
+    }
+
+    public static BleOperation<Void> disableNotify(BleDeviceAddress address, UUID uuid) {
+        return new BleOperation<>(address, BleOperationType.DISABLE_NOTIFY, uuid, null, null);
+    }
+
+    public static BleOperation<Integer> requestMtu(BleDeviceAddress address, int mtu) {
+        return new BleOperation<>(address, BleOperationType.REQUEST_MTU, null, null, mtu);
+    }
+
+    /**
+     * Writes all parts in one reliable-write transaction: each is a prepared write, and nothing is applied unless
+     * the stack reported success for every part. Android does not hand the prepare-write echo to the app, so the
+     * values are not compared; read them back after the operation if they must be verified. Values are used as
+     * given, not copied.
+     */
+    public static BleOperation<Void> reliableWrite(BleDeviceAddress address, @NonNull List<WritePart> parts) {
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("Reliable write needs at least one part");
+        }
+        for (WritePart part : parts) {
+            if (part.value().length > MAX_ATTRIBUTE_LENGTH) {
+                throw new IllegalArgumentException("Value of " + part.characteristicUuid() + " exceeds " + MAX_ATTRIBUTE_LENGTH + " bytes");
+            }
+        }
+        return new BleOperation<>(address, BleOperationType.RELIABLE_WRITE, parts.get(0).characteristicUuid(), null, null,
+                List.copyOf(parts));
+    }
+
+    public BleDeviceAddress getAddress() {
+        return address;
+    }
+
+    public BleOperationType getType() {
+        return bleOperationType;
+    }
+
+    public UUID getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    @Nullable
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    @Nullable
+    public Integer getMtu() {
+        return mtu;
+    }
+
+    @NonNull
+    public List<WritePart> getParts() {
+        return parts;
+    }
+
+    /**
+     * Step in progress of a multi-step operation: for a reliable write, the index of the part being written, or
+     * {@code getParts().size()} while the transaction executes.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    boolean hasNextStep() {
+        return bleOperationType == BleOperationType.RELIABLE_WRITE && step < parts.size();
+    }
+
+    void nextStep() {
+        step++;
+    }
+
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void complete(@Nullable Object result) {
+        try {
+            future.complete((T) result);
+        } catch (ClassCastException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    public void completeExceptionally(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+}
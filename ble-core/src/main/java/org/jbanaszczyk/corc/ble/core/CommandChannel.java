@@ -0,0 +1,133 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.metrics.TraceRecorder;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CMD/RSP command path: frames the command, writes it to the CMD characteristic through the operation queue
+ * and waits for the correlated RSP notification. Used by {@code BleGattClient} and by the JVM simulation.
+ * <p>
+ * Commands do not wait for each other: every one waits for the response to its own request ID, at most the
+ * response timeout after its write went through, and then fails with {@link TimeoutException}.
+ */
+public final class CommandChannel {
+
+    public static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 5_000;
+
+    @FunctionalInterface
+    public interface WriteQueue {
+        /**
+         * @return {@code null} when the device cannot take operations right now
+         */
+        @Nullable
+        CompletableFuture<Void> enqueue(@NonNull BleDevice device, @NonNull BleOperation<Void> write);
+    }
+
+    private final BleCommandResponseManager responseManager;
+    private final WriteQueue writeQueue;
+    private final Scheduler scheduler;
+    private final long responseTimeoutMillis;
+    @Nullable
+    private volatile BleMetrics metrics;
+    @Nullable
+    private volatile TraceRecorder tracer;
+
+    public CommandChannel(@NonNull BleCommandResponseManager responseManager,
+                          @NonNull WriteQueue writeQueue,
+                          @NonNull Scheduler scheduler) {
+        this(responseManager, writeQueue, scheduler, DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+    }
+
+    public CommandChannel(@NonNull BleCommandResponseManager responseManager,
+                          @NonNull WriteQueue writeQueue,
+                          @NonNull Scheduler scheduler,
+                          long responseTimeoutMillis) {
+        if (responseTimeoutMillis <= 0) throw new IllegalArgumentException("Response timeout must be positive");
+        this.responseManager = responseManager;
+        this.writeQueue = writeQueue;
+        this.scheduler = scheduler;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+    }
+
+    /**
+     * Records the round trip of every command from now on; {@code null} stops it.
+     */
+    public void setMetrics(@Nullable BleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records a span per command while {@code tracer} is enabled; {@code null} stops it.
+     */
+    public void setTracer(@Nullable TraceRecorder tracer) {
+        this.tracer = tracer;
+    }
+
+    @NonNull
+    public CompletableFuture<byte[]> send(@NonNull BleDevice device, @NonNull UUID cmdUuid, byte opcode, @Nullable byte[] payload) {
+        var metrics = this.metrics;
+        var tracer = this.tracer;
+        long metricsStart = metrics != null ? metrics.clock().getAsLong() : 0;
+        boolean traced = tracer != null && tracer.isEnabled();
+        long traceStart = traced ? tracer.now() : 0;
+        var response = sendUntimed(device, cmdUuid, opcode, payload);
+        if (metrics != null) {
+            response.whenComplete((result, throwable) ->
+                    metrics.recordCommand(device.getAddress(), opcode, throwable == null, metrics.clock().getAsLong() - metricsStart));
+        }
+        if (traced) {
+            int cookie = System.identityHashCode(response);
+            tracer.beginCommand(opcode, cookie);
+            response.whenComplete((result, throwable) ->
+                    tracer.endCommand(device.getAddress(), opcode, cookie, throwable == null, traceStart));
+        }
+        return response;
+    }
+
+    @NonNull
+    private CompletableFuture<byte[]> sendUntimed(@NonNull BleDevice device, @NonNull UUID cmdUuid, byte opcode, @Nullable byte[] payload) {
+        var request = responseManager.createRequest(opcode, payload);
+        var requestId = request.requestId();
+        CompletableFuture<byte[]> responseFuture = new CompletableFuture<>();
+
+        // 1. Wait for the response before writing: the RSP notification may overtake the write callback
+        responseManager.setPendingResponse(requestId, opcode, responseFuture);
+
+        // 2. Enqueue Write to CMD characteristic
+        var writeOp = BleOperation.write(device.getAddress(), cmdUuid, request.data());
+        var writeFuture = writeQueue.enqueue(device, writeOp);
+
+        if (writeFuture == null) {
+            fail(requestId, responseFuture, new RuntimeException("GATT not ready"));
+            return responseFuture;
+        }
+
+        writeFuture.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                fail(requestId, responseFuture, throwable);
+                return;
+            }
+            // 3. Write succeeded at transport level, the response has the timeout to arrive
+            Runnable timeout = () -> fail(requestId, responseFuture, new TimeoutException(
+                    "No response to command 0x" + Integer.toHexString(opcode & 0xFF) + " within " + responseTimeoutMillis + " ms"));
+            scheduler.postDelayed(timeout, responseTimeoutMillis);
+            responseFuture.whenComplete((response, error) -> scheduler.removeCallbacks(timeout));
+        });
+
+        return responseFuture;
+    }
+
+    private void fail(byte requestId, @NonNull CompletableFuture<byte[]> responseFuture, @NonNull Throwable throwable) {
+        responseManager.removePendingResponse(requestId, responseFuture);
+        responseFuture.completeExceptionally(throwable);
+    }
+}
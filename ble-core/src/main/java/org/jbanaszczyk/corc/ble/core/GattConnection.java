@@ -0,0 +1,22 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+/**
+ * One GATT connection as seen by the operation queue; on Android it wraps a {@code BluetoothGatt}.
+ * The {@link OperationExecutor} knows the concrete type and performs the operations on it.
+ */
+public interface GattConnection {
+
+    int MIN_MTU = 23;
+    int GATT_WRITE_OVERHEAD = 3;
+
+    @NonNull
+    BleDeviceAddress address();
+
+    /**
+     * Drops the link, e.g. after an operation timed out.
+     */
+    void disconnect();
+}
@@ -0,0 +1,176 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference-counted notification subscriptions with the CCCD state of each connection.
+ * <p>
+ * Subscriptions outlive connections; the CCCD state does not. Only a change of the wanted state (first subscriber,
+ * last unsubscriber, or a new connection with subscribers) writes the descriptor, and writes for one characteristic
+ * are serialized, so a quick subscribe/unsubscribe ends in the right state. Pinned characteristics (the command
+ * response channel) count as always subscribed.
+ */
+public final class NotificationSubscriptions {
+
+    private static final String LOG_TAG = "CORC:Subscriptions";
+
+    /**
+     * Enables or disables notifications on the connected device (setCharacteristicNotification + CCCD write).
+     */
+    public interface DescriptorWriter {
+        @NonNull
+        CompletableFuture<Void> write(@NonNull BleDeviceAddress address, @NonNull UUID characteristicUuid, boolean enable);
+    }
+
+    private static final class DeviceState {
+        final Map<UUID, Integer> references = new HashMap<>();
+        // Per connection
+        final Set<UUID> enabled = new HashSet<>();
+        final Map<UUID, CompletableFuture<Void>> tails = new HashMap<>();
+        boolean connected;
+        long connection;
+    }
+
+    @NonNull
+    private final DescriptorWriter writer;
+    private final Set<UUID> pinned = new HashSet<>();
+    // Guarded by this
+    private final Map<BleDeviceAddress, DeviceState> devices = new HashMap<>();
+    private final AtomicLong descriptorWrites = new AtomicLong();
+
+    public NotificationSubscriptions(@NonNull DescriptorWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Treats the characteristic as subscribed on every device.
+     */
+    public synchronized void pin(@NonNull UUID characteristicUuid) {
+        pinned.add(characteristicUuid);
+    }
+
+    /**
+     * Adds a subscriber. Completes once notifications are enabled, or immediately when the device is not connected
+     * (they are enabled on the next {@link #onConnected}).
+     */
+    @NonNull
+    public synchronized CompletableFuture<Void> subscribe(@NonNull BleDeviceAddress address, @NonNull UUID characteristicUuid) {
+        var state = state(address);
+        state.references.merge(characteristicUuid, 1, Integer::sum);
+        return reconcile(address, state, characteristicUuid);
+    }
+
+    /**
+     * Removes a subscriber; the last one disables notifications.
+     */
+    @NonNull
+    public synchronized CompletableFuture<Void> unsubscribe(@NonNull BleDeviceAddress address, @NonNull UUID characteristicUuid) {
+        var state = state(address);
+        Integer references = state.references.get(characteristicUuid);
+        if (references == null) {
+            BleLog.w(LOG_TAG, "unsubscribe(): {} of {} has no subscribers", characteristicUuid, address);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (references > 1) state.references.put(characteristicUuid, references - 1);
+        else state.references.remove(characteristicUuid);
+        return reconcile(address, state, characteristicUuid);
+    }
+
+    /**
+     * Enables every subscribed and pinned characteristic on the new connection.
+     */
+    @NonNull
+    public synchronized CompletableFuture<Void> onConnected(@NonNull BleDeviceAddress address) {
+        var state = state(address);
+        state.connected = true;
+        state.connection++;
+        state.enabled.clear();
+        state.tails.clear();
+        Set<UUID> wanted = new HashSet<>(pinned);
+        wanted.addAll(state.references.keySet());
+        List<CompletableFuture<Void>> restored = new ArrayList<>();
+        for (UUID uuid : wanted) {
+            restored.add(reconcile(address, state, uuid));
+        }
+        return CompletableFuture.allOf(restored.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Forgets the CCCD state of the connection; subscriptions are kept.
+     */
+    public synchronized void onDisconnected(@NonNull BleDeviceAddress address) {
+        var state = devices.get(address);
+        if (state == null) return;
+        state.connected = false;
+        state.connection++;
+        state.enabled.clear();
+        state.tails.clear();
+        if (state.references.isEmpty()) devices.remove(address);
+    }
+
+    public synchronized int subscribers(@NonNull BleDeviceAddress address, @NonNull UUID characteristicUuid) {
+        var state = devices.get(address);
+        return state == null ? 0 : state.references.getOrDefault(characteristicUuid, 0);
+    }
+
+    /**
+     * Whether notifications are currently enabled on the connection.
+     */
+    public synchronized boolean isEnabled(@NonNull BleDeviceAddress address, @NonNull UUID characteristicUuid) {
+        var state = devices.get(address);
+        return state != null && state.enabled.contains(characteristicUuid);
+    }
+
+    public long descriptorWrites() {
+        return descriptorWrites.get();
+    }
+
+    @NonNull
+    private DeviceState state(@NonNull BleDeviceAddress address) {
+        return devices.computeIfAbsent(address, key -> new DeviceState());
+    }
+
+    // Queues a step that brings the CCCD to the wanted state as of when it runs
+    @NonNull
+    private CompletableFuture<Void> reconcile(@NonNull BleDeviceAddress address, @NonNull DeviceState state, @NonNull UUID uuid) {
+        long connection = state.connection;
+        var tail = state.tails.getOrDefault(uuid, CompletableFuture.completedFuture(null));
+        var next = tail.handle((v, t) -> null).thenCompose(v -> step(address, state, uuid, connection));
+        state.tails.put(uuid, next);
+        return next;
+    }
+
+    @NonNull
+    private CompletableFuture<Void> step(@NonNull BleDeviceAddress address, @NonNull DeviceState state,
+                                         @NonNull UUID uuid, long connection) {
+        boolean wanted;
+        synchronized (this) {
+            if (!state.connected || state.connection != connection) {
+                return CompletableFuture.completedFuture(null);
+            }
+            wanted = pinned.contains(uuid) || state.references.containsKey(uuid);
+            if (wanted == state.enabled.contains(uuid)) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        descriptorWrites.incrementAndGet();
+        return writer.write(address, uuid, wanted).thenRun(() -> {
+            synchronized (this) {
+                if (state.connection != connection) return;
+                if (wanted) state.enabled.add(uuid);
+                else state.enabled.remove(uuid);
+            }
+        });
+    }
+}
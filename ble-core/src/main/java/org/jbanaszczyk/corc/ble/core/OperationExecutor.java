@@ -0,0 +1,18 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+
+public interface OperationExecutor {
+    void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation);
+
+    /**
+     * Undoes a started multi-step operation that failed or timed out, e.g. aborts a reliable write.
+     */
+    default void abort(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+    }
+
+    static OperationExecutor logOnly() {
+        return (g, op) -> BleLog.w("CORC:BleController",
+                "OperationExecutor not set. Ignoring op {} for {}", op.getType(), op.getCharacteristicUuid());
+    }
+}
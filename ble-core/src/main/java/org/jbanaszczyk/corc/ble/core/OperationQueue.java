@@ -0,0 +1,389 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Single-threaded BLE operation queue with per-operation timeout.
+ */
+public final class OperationQueue {
+    public static final int QUEUE_CAPACITY = 64;
+    private static final String LOG_TAG = "CORC:OpQueue";
+
+    private record EnqueuedOperation(BleOperation<?> operation, GattConnection connection,
+                                     OperationExecutor executor, long enqueuedNanos) {
+    }
+
+    /**
+     * How an operation left the queue, see {@link Observer}.
+     */
+    public enum Outcome {
+        COMPLETED, FAILED, TIMED_OUT, CLEARED
+    }
+
+    /**
+     * Instrumentation hook, called on the queue's thread; must be cheap and must not call back into the queue.
+     */
+    public interface Observer {
+        void onEnqueued(@NonNull BleOperation<?> operation, int depth);
+
+        /**
+         * @param queueWaitNanos time from enqueue until the executor was called
+         */
+        void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos);
+
+        /**
+         * @param executionNanos time from the executor call until the outcome; 0 when it never started
+         */
+        void onFinished(@NonNull BleOperation<?> operation, @NonNull Outcome outcome, long executionNanos);
+
+        /**
+         * @param depth operations queued plus the one in flight, all devices together
+         */
+        void onDepthChanged(int depth);
+
+        /**
+         * Both observers, {@code first} called first.
+         */
+        @NonNull
+        static Observer both(@NonNull Observer first, @NonNull Observer second) {
+            return new Observer() {
+                @Override
+                public void onEnqueued(@NonNull BleOperation<?> operation, int depth) {
+                    first.onEnqueued(operation, depth);
+                    second.onEnqueued(operation, depth);
+                }
+
+                @Override
+                public void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos) {
+                    first.onStarted(operation, queueWaitNanos);
+                    second.onStarted(operation, queueWaitNanos);
+                }
+
+                @Override
+                public void onFinished(@NonNull BleOperation<?> operation, @NonNull Outcome outcome, long executionNanos) {
+                    first.onFinished(operation, outcome, executionNanos);
+                    second.onFinished(operation, outcome, executionNanos);
+                }
+
+                @Override
+                public void onDepthChanged(int depth) {
+                    first.onDepthChanged(depth);
+                    second.onDepthChanged(depth);
+                }
+            };
+        }
+    }
+
+    private static final Observer NO_OBSERVER = new Observer() {
+        @Override
+        public void onEnqueued(@NonNull BleOperation<?> operation, int depth) {
+        }
+
+        @Override
+        public void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos) {
+        }
+
+        @Override
+        public void onFinished(@NonNull BleOperation<?> operation, @NonNull Outcome outcome, long executionNanos) {
+        }
+
+        @Override
+        public void onDepthChanged(int depth) {
+        }
+    };
+
+    private final Queue<EnqueuedOperation> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean inProgress = new AtomicBoolean(false);
+    private final Scheduler scheduler;
+    private final TimeoutProvider timeoutProvider;
+    private final AtomicReference<EnqueuedOperation> currentOperation = new AtomicReference<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    // Reused for every step of a multi-step operation
+    private final Runnable stepTask = this::executeCurrentStep;
+    private OperationExecutor defaultExecutor;
+    private Runnable timeoutTask;
+    private volatile Observer observer = NO_OBSERVER;
+    private volatile LongSupplier nanoClock = () -> 0L;
+    private long currentStartedNanos;
+
+    public OperationQueue(Scheduler scheduler, TimeoutProvider timeoutProvider) {
+        this.scheduler = scheduler;
+        this.timeoutProvider = timeoutProvider;
+    }
+
+    /**
+     * Sets a default executor used when tryExecuteNext(...) is invoked without an explicit executor.
+     * This is typically configured once by the GATT client.
+     */
+    public void setExecutor(OperationExecutor executor) {
+        this.defaultExecutor = executor;
+    }
+
+    /**
+     * Called whenever operations are added, completed or dropped; must be cheap.
+     */
+    public void addChangeListener(@NonNull Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(@NonNull Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Installs the instrumentation hook; {@code null} removes it.
+     *
+     * @param nanoClock time source of the reported durations, e.g. {@code System::nanoTime}
+     */
+    public void setObserver(@Nullable Observer observer, @NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.observer = observer != null ? observer : NO_OBSERVER;
+    }
+
+    public <T> CompletableFuture<T> enqueue(BleOperation<T> op, GattConnection connection, OperationExecutor executor) {
+        queue.add(new EnqueuedOperation(op, connection, executor, nanoClock.getAsLong()));
+        observer.onEnqueued(op, depth());
+        fireChanged();
+        tryExecuteNext();
+        return op.getFuture();
+    }
+
+    /**
+     * Operations queued or in flight for the device.
+     */
+    public int depth(@NonNull BleDeviceAddress address) {
+        int depth = 0;
+        for (EnqueuedOperation enqueued : queue) {
+            if (enqueued.operation.getAddress().equals(address)) depth++;
+        }
+        EnqueuedOperation current = currentOperation.get();
+        if (current != null && current.operation.getAddress().equals(address)) depth++;
+        return depth;
+    }
+
+    public void tryExecuteNext() {
+        tryExecuteNextInternal(null, null);
+    }
+
+    public void tryExecuteNext(GattConnection connection) {
+        tryExecuteNextInternal(connection, null);
+    }
+
+    public void onOperationFinished(@Nullable Object result) {
+        EnqueuedOperation enqueued = currentOperation.getAndSet(null);
+        if (enqueued != null) {
+            finished(enqueued, Outcome.COMPLETED);
+            enqueued.operation.complete(result);
+        }
+        inProgress.set(false);
+        cancelTimeout();
+        fireChanged();
+        tryExecuteNext();
+    }
+
+    /**
+     * Completes one GATT callback of the current operation: a multi-step operation (reliable write) continues with
+     * its next step, anything else finishes with {@code result}.
+     */
+    public void onStepFinished(@Nullable Object result) {
+        EnqueuedOperation current = currentOperation.get();
+        if (current == null || !current.operation.hasNextStep()) {
+            onOperationFinished(result);
+            return;
+        }
+        current.operation.nextStep();
+        scheduleTimeout(current.connection);
+        scheduler.post(stepTask);
+    }
+
+    public void onOperationFailed(Throwable throwable) {
+        EnqueuedOperation enqueued = currentOperation.getAndSet(null);
+        if (enqueued != null) {
+            abort(enqueued);
+            finished(enqueued, Outcome.FAILED);
+            enqueued.operation.completeExceptionally(throwable);
+        }
+        inProgress.set(false);
+        cancelTimeout();
+        fireChanged();
+        tryExecuteNext();
+    }
+
+    public void clear(@NonNull BleDeviceAddress address) {
+        queue.removeIf(enqueued -> {
+            if (enqueued.operation.getAddress().equals(address)) {
+                observer.onFinished(enqueued.operation, Outcome.CLEARED, 0);
+                enqueued.operation.completeExceptionally(new RuntimeException("Queue cleared for " + address));
+                return true;
+            }
+            return false;
+        });
+
+        EnqueuedOperation current = currentOperation.get();
+        if (current != null && current.operation.getAddress().equals(address)) {
+            if (currentOperation.compareAndSet(current, null)) {
+                finished(current, Outcome.CLEARED);
+                current.operation.completeExceptionally(new RuntimeException("Queue cleared for " + address));
+                inProgress.set(false);
+                cancelTimeout();
+                tryExecuteNext();
+            }
+        }
+        fireChanged();
+    }
+
+    public void clearAll() {
+        queue.forEach(enqueued -> {
+            observer.onFinished(enqueued.operation, Outcome.CLEARED, 0);
+            enqueued.operation.completeExceptionally(new RuntimeException("Queue cleared"));
+        });
+        queue.clear();
+        EnqueuedOperation enqueued = currentOperation.getAndSet(null);
+        if (enqueued != null) {
+            finished(enqueued, Outcome.CLEARED);
+            enqueued.operation.completeExceptionally(new RuntimeException("Queue cleared"));
+        }
+        inProgress.set(false);
+        cancelTimeout();
+        fireChanged();
+    }
+
+    private void tryExecuteNextInternal(GattConnection explicitConnection, OperationExecutor explicitExecutor) {
+        if (inProgress.get()) {
+            return;
+        }
+
+        EnqueuedOperation next = queue.poll();
+        if (next == null) {
+            return;
+        }
+
+        GattConnection connection = explicitConnection != null ? explicitConnection : next.connection;
+        if (connection == null) {
+            // Should not happen if enqueued correctly, but let's be safe
+            observer.onFinished(next.operation, Outcome.FAILED, 0);
+            next.operation.completeExceptionally(new IllegalStateException("No connection for operation"));
+            fireChanged();
+            tryExecuteNext();
+            return;
+        }
+
+        OperationExecutor executor = explicitExecutor != null
+                ? explicitExecutor
+                : (next.executor != null ? next.executor : defaultExecutor);
+
+        if (executor == null) {
+            // Put it back or fail it? Let's fail it to avoid infinite loop if executor is missing
+            observer.onFinished(next.operation, Outcome.FAILED, 0);
+            next.operation.completeExceptionally(new IllegalStateException("No executor for operation"));
+            fireChanged();
+            tryExecuteNext();
+            return;
+        }
+
+        currentOperation.set(new EnqueuedOperation(next.operation, connection, executor, next.enqueuedNanos));
+        inProgress.set(true);
+        currentStartedNanos = nanoClock.getAsLong();
+        observer.onStarted(next.operation, currentStartedNanos - next.enqueuedNanos);
+        scheduleTimeout(connection);
+        BleLog.i(LOG_TAG, "Starting operation: {} for {}", next.operation.getType(), next.operation.getAddress());
+        scheduler.post(() -> {
+            try {
+                executor.execute(connection, next.operation);
+            } catch (Exception e) {
+                BleLog.e(LOG_TAG, "Executor failed for {}: {}", next.operation.getType(), e.getMessage());
+                onOperationFailed(e);
+            }
+        });
+    }
+
+    private void executeCurrentStep() {
+        EnqueuedOperation current = currentOperation.get();
+        if (current == null) {
+            return;
+        }
+        try {
+            current.executor.execute(current.connection, current.operation);
+        } catch (Exception e) {
+            BleLog.e(LOG_TAG, "Executor failed for {} step {}: {}", current.operation.getType(), current.operation.getStep(), e.getMessage());
+            onOperationFailed(e);
+        }
+    }
+
+    private static void abort(@NonNull EnqueuedOperation enqueued) {
+        if (enqueued.executor == null || enqueued.connection == null) {
+            return;
+        }
+        try {
+            enqueued.executor.abort(enqueued.connection, enqueued.operation);
+        } catch (Exception e) {
+            BleLog.w(LOG_TAG, "Abort failed for {}: {}", enqueued.operation.getType(), e);
+        }
+    }
+
+    private void scheduleTimeout(GattConnection connection) {
+        cancelTimeout();
+        long timeoutMs = Math.max(1000, timeoutProvider.get());
+        timeoutTask = () -> {
+            try {
+                BleLog.e(LOG_TAG, "GATT operation timed out after {} ms", timeoutMs);
+                EnqueuedOperation enqueued = currentOperation.getAndSet(null);
+                if (enqueued != null) {
+                    abort(enqueued);
+                    finished(enqueued, Outcome.TIMED_OUT);
+                    enqueued.operation.completeExceptionally(new RuntimeException("GATT operation timed out"));
+                }
+                try {
+                    connection.disconnect();
+                } catch (SecurityException se) {
+                    BleLog.w(LOG_TAG, "Missing BLUETOOTH_CONNECT permission while disconnecting on timeout", se);
+                } catch (Exception ignore) {
+                    // ignore other runtime issues while attempting to disconnect on timeout
+                }
+            } finally {
+                inProgress.set(false);
+                fireChanged();
+                tryExecuteNext();
+            }
+        };
+        scheduler.postDelayed(timeoutTask, timeoutMs);
+    }
+
+    private void cancelTimeout() {
+        if (timeoutTask != null) {
+            scheduler.removeCallbacks(timeoutTask);
+            timeoutTask = null;
+        }
+    }
+
+    private void finished(@NonNull EnqueuedOperation enqueued, @NonNull Outcome outcome) {
+        observer.onFinished(enqueued.operation, outcome, nanoClock.getAsLong() - currentStartedNanos);
+    }
+
+    private int depth() {
+        return queue.size() + (currentOperation.get() != null ? 1 : 0);
+    }
+
+    private void fireChanged() {
+        observer.onDepthChanged(depth());
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    public interface TimeoutProvider {
+        long get();
+    }
+}
@@ -1,6 +1,6 @@
 package org.jbanaszczyk.corc.ble.core.protocol;
 
-import android.util.Log;
+import org.jbanaszczyk.corc.ble.core.BleLog;
 import org.jbanaszczyk.corc.utils.Utils;
 
 import java.nio.ByteBuffer;
@@ -26,9 +26,8 @@ public final class BleCommandResponseManager {
     private static final int RESPONSE_HEADER_SIZE = PAYLOAD_HEADER_SIZE + RESULT_VALUE_SIZE;
     private final AtomicInteger requestIdCounter = new AtomicInteger(0);
     private final Utils.ByteSequence byteSequence = new Utils.ByteSequence(requestIdCounter::getAndIncrement);
-    private CompletableFuture<byte[]> pendingResponseFuture;
-    private byte pendingRequestId;
-    private byte pendingOpcode;
+    // Indexed by unsigned request ID; IDs wrap after 256 requests, far more than are ever in flight
+    private final Pending[] pending = new Pending[1 << (Byte.SIZE * REQUEST_ID_SIZE)];
 
     public CommandRequest createRequest(byte opcode, byte[] payload) {
         var safePayload = Utils.nonNullContainer(payload);
@@ -46,20 +45,30 @@ public final class BleCommandResponseManager {
         return new CommandRequest(requestId, buffer.array());
     }
 
+    /**
+     * Waits for the response to {@code requestId}; any number of requests, of any device, can wait at once.
+     */
     public synchronized void setPendingResponse(byte requestId, byte opcode, CompletableFuture<byte[]> future) {
-        this.pendingRequestId = requestId;
-        this.pendingOpcode = opcode;
-        this.pendingResponseFuture = future;
+        var previous = pending[Byte.toUnsignedInt(requestId)];
+        pending[Byte.toUnsignedInt(requestId)] = new Pending(opcode, future);
+        if (previous != null && !previous.future().isDone()) {
+            previous.future().completeExceptionally(new IllegalStateException("Request " + requestId + " reused while pending"));
+        }
     }
 
-    public synchronized void handleNotification(byte[] data) {
-        if (pendingResponseFuture == null || pendingResponseFuture.isDone()) {
-            Log.d(LOG_TAG, "handleNotification: No pending response future or already done");
-            return;
+    /**
+     * Stops waiting for {@code requestId} if it is still {@code future}'s, e.g. when its write failed or timed out.
+     */
+    public synchronized void removePendingResponse(byte requestId, CompletableFuture<byte[]> future) {
+        var current = pending[Byte.toUnsignedInt(requestId)];
+        if (current != null && current.future() == future) {
+            pending[Byte.toUnsignedInt(requestId)] = null;
         }
+    }
 
+    public synchronized void handleNotification(byte[] data) {
         if (data.length < RESPONSE_HEADER_SIZE) {
-            Log.d(LOG_TAG, "handleNotification: Data too short (" + data.length + " < " + RESPONSE_HEADER_SIZE + ")");
+            BleLog.d(LOG_TAG, "handleNotification: Data too short ({} < {})", data.length, RESPONSE_HEADER_SIZE);
             return;
         }
 
@@ -69,7 +78,7 @@ public final class BleCommandResponseManager {
 
         var magic = Short.toUnsignedInt(buffer.getShort());
         if (magic != PROTOCOL_MAGIC) {
-            Log.d(LOG_TAG, String.format("handleNotification: Magic mismatch (0x%04X != 0x%04X)", magic, PROTOCOL_MAGIC));
+            BleLog.d(LOG_TAG, "handleNotification: Magic mismatch (0x{x} != 0x{x})", magic, PROTOCOL_MAGIC);
             return;
         }
 
@@ -78,32 +87,45 @@ public final class BleCommandResponseManager {
         var resultValue = buffer.get();
         var len = Byte.toUnsignedInt(buffer.get());
 
-        if (requestId != pendingRequestId || opcode != pendingOpcode) {
-            Log.d(LOG_TAG, String.format("handleNotification: Correlation mismatch (reqId: %d != %d, opcode: %d != %d)", requestId, pendingRequestId, opcode, pendingOpcode));
+        var request = pending[Byte.toUnsignedInt(requestId)];
+        if (request == null || request.future().isDone()) {
+            BleLog.d(LOG_TAG, "handleNotification: No pending response for reqId {}", requestId);
+            return;
+        }
+        if (opcode != request.opcode()) {
+            BleLog.d(LOG_TAG, "handleNotification: Correlation mismatch (reqId: {}, opcode: {} != {})", requestId, opcode, request.opcode());
             return;
         }
 
         if (data.length < RESPONSE_HEADER_SIZE + len) {
-            Log.d(LOG_TAG, "handleNotification: Data length mismatch (length: " + data.length + " < " + (RESPONSE_HEADER_SIZE + len) + ")");
+            BleLog.d(LOG_TAG, "handleNotification: Data length mismatch (length: {} < {})", data.length, RESPONSE_HEADER_SIZE + len);
             return;
         }
 
+        pending[Byte.toUnsignedInt(requestId)] = null;
         if (resultValue == BleResult.OK.getValue()) {
             var payload = new byte[len];
             buffer.get(payload);
-            pendingResponseFuture.complete(payload);
+            request.future().complete(payload);
         } else {
-            pendingResponseFuture.completeExceptionally(new BleRemoteException(resultValue));
+            request.future().completeExceptionally(new BleRemoteException(resultValue));
         }
-
-        pendingResponseFuture = null;
     }
 
+    /**
+     * Fails every request still waiting for its response.
+     */
     public synchronized void cancelPendingResponse(Throwable throwable) {
-        if (pendingResponseFuture != null && !pendingResponseFuture.isDone()) {
-            pendingResponseFuture.completeExceptionally(throwable);
+        for (int i = 0; i < pending.length; i++) {
+            var request = pending[i];
+            pending[i] = null;
+            if (request != null && !request.future().isDone()) {
+                request.future().completeExceptionally(throwable);
+            }
         }
-        pendingResponseFuture = null;
+    }
+
+    private record Pending(byte opcode, CompletableFuture<byte[]> future) {
     }
 
     public record CommandRequest(byte requestId, byte[] data) {
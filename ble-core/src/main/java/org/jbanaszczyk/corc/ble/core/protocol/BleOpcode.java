@@ -0,0 +1,19 @@
+package org.jbanaszczyk.corc.ble.core.protocol;
+
+public final class BleOpcode {
+    public static final byte PING = 0x01;
+    public static final byte VERSION = 0x02;
+    public static final byte GET_DATA_MAX_LEN = 0x03;
+
+    // Configuration sync, see ConfigSyncEngine. Hashes are CRC32 (u32 LE) of the canonical DeviceConfiguration bytes.
+    /** Request: empty. Response: hash. */
+    public static final byte CONFIG_GET_HASH = 0x10;
+    /** Request: base hash, then ops (key u16, type u8 or 0xFF = delete, len u8, value). Response: new hash. */
+    public static final byte CONFIG_PATCH = 0x11;
+    /** Request: empty. Clears the configuration. Response: hash of the empty configuration. */
+    public static final byte CONFIG_RESET = 0x12;
+
+    private BleOpcode() {
+        throw new AssertionError("Constants only");
+    }
+}
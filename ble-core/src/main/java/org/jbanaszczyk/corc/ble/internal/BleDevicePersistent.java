@@ -0,0 +1,143 @@
+package org.jbanaszczyk.corc.ble.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.room.*;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.config.DeviceConfiguration;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+@RestrictTo(LIBRARY_GROUP)
+@Entity(tableName = "ble_devices")
+public class BleDevicePersistent {
+
+    public static final int DEFAULT_MTU = 23;
+    public static final int DEFAULT_DATA_MAX_LEN = DEFAULT_MTU - 3;
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "address")
+    private final BleDeviceAddress address;
+
+    // Binary DeviceConfiguration (schema version 4; JSON text before)
+    @ColumnInfo(name = "configuration", typeAffinity = ColumnInfo.BLOB)
+    @NonNull
+    private DeviceConfiguration configuration;
+
+    // Connection profile of the last successful connection (schema version 3)
+    @ColumnInfo(name = "mtu", defaultValue = "" + DEFAULT_MTU)
+    private int mtu = DEFAULT_MTU;
+
+    @ColumnInfo(name = "data_max_len", defaultValue = "" + DEFAULT_DATA_MAX_LEN)
+    private int dataMaxLen = DEFAULT_DATA_MAX_LEN;
+
+    @ColumnInfo(name = "last_connected", defaultValue = "0")
+    private long lastConnectedMillis;
+
+    // Set when the persisted columns differ from what was last written or loaded
+    @Ignore
+    private volatile boolean dirty = true;
+
+    public BleDevicePersistent(
+            @Nullable BleDeviceAddress address,
+            @Nullable DeviceConfiguration configuration
+    ) {
+        this.address = normalizeAddress(address);
+        this.configuration = normalizeConfiguration(configuration);
+    }
+
+    @Ignore
+    public BleDevicePersistent(@Nullable BleDeviceAddress address) {
+        this(address, null);
+    }
+
+    @NonNull
+    private static BleDeviceAddress normalizeAddress(@Nullable BleDeviceAddress address) {
+        return new BleDeviceAddress(address);
+    }
+
+    @NonNull
+    public BleDeviceAddress getAddress() {
+        return address;
+    }
+
+    @NonNull
+    private static DeviceConfiguration normalizeConfiguration(@Nullable DeviceConfiguration configuration) {
+        return configuration == null
+                ? DeviceConfiguration.EMPTY
+                : configuration;
+    }
+
+    @NonNull
+    public DeviceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public void setConfiguration(@Nullable DeviceConfiguration configuration) {
+        DeviceConfiguration normalized = normalizeConfiguration(configuration);
+        if (!normalized.equals(this.configuration)) {
+            this.configuration = normalized;
+            dirty = true;
+        }
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public void setMtu(int mtu) {
+        if (this.mtu != mtu) {
+            this.mtu = mtu;
+            dirty = true;
+        }
+    }
+
+    public int getDataMaxLen() {
+        return dataMaxLen;
+    }
+
+    public void setDataMaxLen(int dataMaxLen) {
+        if (this.dataMaxLen != dataMaxLen) {
+            this.dataMaxLen = dataMaxLen;
+            dirty = true;
+        }
+    }
+
+    public long getLastConnectedMillis() {
+        return lastConnectedMillis;
+    }
+
+    /**
+     * Does not mark the entity dirty: the timestamp alone is not worth a write and is stored with the next one.
+     */
+    public void setLastConnectedMillis(long lastConnectedMillis) {
+        this.lastConnectedMillis = lastConnectedMillis;
+    }
+
+    /**
+     * Copies all persisted columns except the address; keeps the later of the two connection timestamps.
+     */
+    public void copyFrom(@NonNull BleDevicePersistent other) {
+        setConfiguration(other.configuration);
+        setMtu(other.mtu);
+        setDataMaxLen(other.dataMaxLen);
+        setLastConnectedMillis(Math.max(lastConnectedMillis, other.lastConnectedMillis));
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Call before reading the columns to write, so a concurrent change re-marks the entity.
+     */
+    public void markClean() {
+        dirty = false;
+    }
+}
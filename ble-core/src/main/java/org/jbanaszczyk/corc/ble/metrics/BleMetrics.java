@@ -0,0 +1,264 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import androidx.annotation.NonNull;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency and outcome metrics per device and per {@link BleOperation.BleOperationType} or command opcode:
+ * queue wait, execution (executor call to GATT callback), command round trip, outcome counters, and queue depth.
+ * Latencies are kept in {@link LatencyHistogram}s in microseconds. Recording is lock-free and, once a
+ * device/type pair has been seen, allocation-free; {@link #snapshot()} copies everything for a debug screen or a
+ * test assertion.
+ * <p>
+ * Fed by {@link OperationQueue} (as its {@link OperationQueue.Observer}), by {@code CommandChannel} and by
+ * {@code CommandOutbox}.
+ */
+public final class BleMetrics implements OperationQueue.Observer {
+
+    /**
+     * Queue depth samples kept, newest first to go.
+     */
+    public static final int DEPTH_SAMPLES = 256;
+
+    private static final int OPCODES = 256;
+    private static final int TYPES = BleOperation.BleOperationType.values().length;
+
+    public record OperationStats(long completed, long failed, long timedOut, long cleared,
+                                 @NonNull LatencyHistogram.Snapshot queueWaitMicros,
+                                 @NonNull LatencyHistogram.Snapshot executionMicros) {
+    }
+
+    /**
+     * @param retries sends of a command that waited for the device and was replayed
+     */
+    public record CommandStats(long completed, long failed, long retries,
+                               @NonNull LatencyHistogram.Snapshot roundTripMicros) {
+    }
+
+    /**
+     * @param pending operations queued or in flight for the device right now
+     * @param maxPending most ever seen
+     */
+    public record DeviceStats(@NonNull BleDeviceAddress address, int pending, int maxPending,
+                              @NonNull Map<BleOperation.BleOperationType, OperationStats> operations,
+                              @NonNull Map<Integer, CommandStats> commands) {
+    }
+
+    /**
+     * @param elapsedMillis time of the sample relative to the creation of the metrics
+     */
+    public record DepthSample(long elapsedMillis, int depth) {
+    }
+
+    /**
+     * @param depthHistory oldest first, at most {@link #DEPTH_SAMPLES}
+     */
+    public record Snapshot(@NonNull List<DeviceStats> devices, int maxDepth, @NonNull List<DepthSample> depthHistory) {
+    }
+
+    private static final class OperationSeries {
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram execution = new LatencyHistogram();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final AtomicLong cleared = new AtomicLong();
+
+        OperationStats snapshot() {
+            return new OperationStats(completed.get(), failed.get(), timedOut.get(), cleared.get(),
+                    queueWait.snapshot(), execution.snapshot());
+        }
+    }
+
+    private static final class CommandSeries {
+        final LatencyHistogram roundTrip = new LatencyHistogram();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+
+        CommandStats snapshot() {
+            return new CommandStats(completed.get(), failed.get(), retries.get(), roundTrip.snapshot());
+        }
+    }
+
+    private static final class DeviceSeries {
+        final AtomicReferenceArray<OperationSeries> operations = new AtomicReferenceArray<>(TYPES);
+        final AtomicReferenceArray<CommandSeries> commands = new AtomicReferenceArray<>(OPCODES);
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger maxPending = new AtomicInteger();
+
+        OperationSeries operation(@NonNull BleOperation.BleOperationType type) {
+            int index = type.ordinal();
+            OperationSeries series = operations.get(index);
+            if (series == null) {
+                operations.compareAndSet(index, null, new OperationSeries());
+                series = operations.get(index);
+            }
+            return series;
+        }
+
+        CommandSeries command(byte opcode) {
+            int index = Byte.toUnsignedInt(opcode);
+            CommandSeries series = commands.get(index);
+            if (series == null) {
+                commands.compareAndSet(index, null, new CommandSeries());
+                series = commands.get(index);
+            }
+            return series;
+        }
+    }
+
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final Map<BleDeviceAddress, DeviceSeries> devices = new ConcurrentHashMap<>();
+    private final long[] depthTimes = new long[DEPTH_SAMPLES];
+    private final int[] depths = new int[DEPTH_SAMPLES];
+    private final AtomicLong depthCursor = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile int lastDepth = -1;
+
+    public BleMetrics() {
+        this(System::nanoTime);
+    }
+
+    public BleMetrics(@NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Time source of all recorded durations; pass it to {@link OperationQueue#setObserver}.
+     */
+    @NonNull
+    public LongSupplier clock() {
+        return nanoClock;
+    }
+
+    @Override
+    public void onEnqueued(@NonNull BleOperation<?> operation, int depth) {
+        DeviceSeries device = device(operation.getAddress());
+        max(device.maxPending, device.pending.incrementAndGet());
+    }
+
+    @Override
+    public void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos) {
+        device(operation.getAddress()).operation(operation.getType()).queueWait.record(queueWaitNanos / 1_000);
+    }
+
+    @Override
+    public void onFinished(@NonNull BleOperation<?> operation, @NonNull OperationQueue.Outcome outcome, long executionNanos) {
+        DeviceSeries device = device(operation.getAddress());
+        // Never below zero, also for operations enqueued before a reset()
+        device.pending.updateAndGet(pending -> Math.max(0, pending - 1));
+        OperationSeries series = device.operation(operation.getType());
+        switch (outcome) {
+            case COMPLETED -> {
+                series.completed.incrementAndGet();
+                series.execution.record(executionNanos / 1_000);
+            }
+            case FAILED -> series.failed.incrementAndGet();
+            case TIMED_OUT -> series.timedOut.incrementAndGet();
+            case CLEARED -> series.cleared.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onDepthChanged(int depth) {
+        // Listeners fire on every change, also when only another device's entry moved
+        if (depth == lastDepth) {
+            return;
+        }
+        lastDepth = depth;
+        max(maxDepth, depth);
+        int slot = (int) (depthCursor.getAndIncrement() % DEPTH_SAMPLES);
+        depthTimes[slot] = nanoClock.getAsLong();
+        depths[slot] = depth;
+    }
+
+    /**
+     * @param roundTripNanos from handing the command to the queue until the response or the error
+     */
+    public void recordCommand(@NonNull BleDeviceAddress address, byte opcode, boolean success, long roundTripNanos) {
+        CommandSeries series = device(address).command(opcode);
+        if (success) {
+            series.completed.incrementAndGet();
+            series.roundTrip.record(roundTripNanos / 1_000);
+        } else {
+            series.failed.incrementAndGet();
+        }
+    }
+
+    public void recordRetry(@NonNull BleDeviceAddress address, byte opcode) {
+        device(address).command(opcode).retries.incrementAndGet();
+    }
+
+    @NonNull
+    public Snapshot snapshot() {
+        List<DeviceStats> deviceStats = new ArrayList<>();
+        devices.forEach((address, device) -> {
+            Map<BleOperation.BleOperationType, OperationStats> operations = new EnumMap<>(BleOperation.BleOperationType.class);
+            for (BleOperation.BleOperationType type : BleOperation.BleOperationType.values()) {
+                OperationSeries series = device.operations.get(type.ordinal());
+                if (series != null) operations.put(type, series.snapshot());
+            }
+            Map<Integer, CommandStats> commands = new TreeMap<>();
+            for (int opcode = 0; opcode < OPCODES; opcode++) {
+                CommandSeries series = device.commands.get(opcode);
+                if (series != null) commands.put(opcode, series.snapshot());
+            }
+            deviceStats.add(new DeviceStats(address, device.pending.get(), device.maxPending.get(), operations, commands));
+        });
+        deviceStats.sort((a, b) -> Long.compare(a.address().toLong(), b.address().toLong()));
+        return new Snapshot(Collections.unmodifiableList(deviceStats), maxDepth.get(), depthHistory());
+    }
+
+    /**
+     * Drops all recorded values, e.g. when a debug screen starts a new measurement.
+     */
+    public void reset() {
+        devices.clear();
+        depthCursor.set(0);
+        maxDepth.set(0);
+        lastDepth = -1;
+    }
+
+    @NonNull
+    private List<DepthSample> depthHistory() {
+        long end = depthCursor.get();
+        long start = Math.max(0, end - DEPTH_SAMPLES);
+        List<DepthSample> history = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            int slot = (int) (i % DEPTH_SAMPLES);
+            history.add(new DepthSample((depthTimes[slot] - startNanos) / 1_000_000, depths[slot]));
+        }
+        return history;
+    }
+
+    @NonNull
+    private DeviceSeries device(@NonNull BleDeviceAddress address) {
+        DeviceSeries device = devices.get(address);
+        return device != null ? device : devices.computeIfAbsent(address, key -> new DeviceSeries());
+    }
+
+    private static void max(@NonNull AtomicInteger target, int value) {
+        int seen = target.get();
+        while (value > seen && !target.compareAndSet(seen, value)) {
+            seen = target.get();
+        }
+    }
+}
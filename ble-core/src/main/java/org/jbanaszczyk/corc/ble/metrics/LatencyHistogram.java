@@ -0,0 +1,118 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram with log-spaced buckets: 8 buckets per power of two, so every bucket is at most 12.5%
+ * wide. Values 0..15 get a bucket each; anything above {@link #MAX_VALUE} lands in the last bucket.
+ * {@link #record} is lock-free and never allocates; readers get a consistent enough {@link Snapshot}.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * Largest value with its own bucket: about 25 days in microseconds.
+     */
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    /**
+     * Percentiles are reported as the upper bound of their bucket.
+     */
+    public record Snapshot(long count, long sum, long max, long p50, long p90, long p99) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+
+        public double mean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value non-negative; negative values are counted as 0
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(Math.min(clamped, MAX_VALUE)));
+        count.incrementAndGet();
+        sum.addAndGet(clamped);
+        long seen = max.get();
+        while (clamped > seen && !max.compareAndSet(seen, clamped)) {
+            seen = max.get();
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    @NonNull
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        if (total == 0) {
+            return Snapshot.EMPTY;
+        }
+        long maxValue = max.get();
+        return new Snapshot(total, sum.get(), maxValue,
+                percentile(copy, total, 0.50, maxValue),
+                percentile(copy, total, 0.90, maxValue),
+                percentile(copy, total, 0.99, maxValue));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long maxValue) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    static long upperBound(int bucket) {
+        return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1 : MAX_VALUE;
+    }
+}
@@ -0,0 +1,412 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Timeline of connection phases, queue operations and commands, one track per device, for finding out where a
+ * slow reconnect spent its time. Spans go into a preallocated ring of primitive arrays, so recording never
+ * allocates; the oldest spans are overwritten. Each slot carries the sequence number of the span in it, so an
+ * export skips slots being written concurrently instead of reading a torn span. {@link #writeChromeTrace} exports them as Chrome trace-event
+ * JSON, which opens in Perfetto ({@code ui.perfetto.dev}) and {@code chrome://tracing}.
+ * <p>
+ * Off by default: while disabled every call returns after one volatile read. An optional {@link Mirror} also
+ * sees each span live, e.g. to show it as an {@code android.os.Trace} section in a system trace.
+ */
+public final class TraceRecorder implements OperationQueue.Observer {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    /**
+     * Spans begun with {@link #begin} and not yet ended, all devices together; more are dropped.
+     */
+    static final int OPEN_SPANS = 64;
+    private static final long WRITING = -1;
+
+    public enum Span {
+        /** {@code connectGatt} until STATE_CONNECTED; status is the GATT status. */
+        CONNECT("connection", "connectGatt"),
+        /** {@code discoverServices} until {@code onServicesDiscovered}; status is the GATT status. */
+        DISCOVERY("connection", "discoverServices"),
+        /** Whole connection setup, {@code connectGatt} until the device info has been read. */
+        SETUP("connection", "setup"),
+        /** Time in the queue; arg is the operation type. */
+        QUEUE_WAIT("queue", "queued"),
+        /** Executor call until the GATT callback; arg is the operation type, status the outcome. */
+        OPERATION("queue", null),
+        /** Command sent until its response; arg is the opcode, status 0 on success. */
+        COMMAND("command", null);
+
+        final String category;
+        @Nullable
+        final String label;
+
+        Span(String category, @Nullable String label) {
+            this.category = category;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Receives spans as they begin and end; called on the recording thread, must be cheap. {@code cookie}
+     * pairs the two calls of one span.
+     */
+    public interface Mirror {
+        void begin(@NonNull String name, int cookie);
+
+        void end(@NonNull String name, int cookie);
+    }
+
+    private static final Span[] SPANS = Span.values();
+    private static final BleOperation.BleOperationType[] TYPES = BleOperation.BleOperationType.values();
+    private static final OperationQueue.Outcome[] OUTCOMES = OperationQueue.Outcome.values();
+    private static final String[] OPCODE_NAMES = new String[256];
+
+    static {
+        for (int opcode = 0; opcode < OPCODE_NAMES.length; opcode++) {
+            OPCODE_NAMES[opcode] = String.format(Locale.ROOT, "CMD 0x%02X", opcode);
+        }
+    }
+
+    private final LongSupplier nanoClock;
+    private final long originNanos;
+    private final int mask;
+    private final long[] starts;
+    private final long[] durations;
+    private final long[] addresses;
+    private final byte[] spans;
+    private final short[] args;
+    private final int[] statuses;
+    // Sequence number of the span in each slot, WRITING while the slot is being written
+    private final AtomicLongArray sequences;
+    private final AtomicLong cursor = new AtomicLong();
+    private final long[] openKeys = new long[OPEN_SPANS];
+    private final long[] openStarts = new long[OPEN_SPANS];
+    private volatile boolean enabled;
+    @Nullable
+    private volatile Mirror mirror;
+
+    public TraceRecorder() {
+        this(DEFAULT_CAPACITY, System::nanoTime);
+    }
+
+    /**
+     * @param capacity spans kept, rounded up to a power of two
+     */
+    public TraceRecorder(int capacity, @NonNull LongSupplier nanoClock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.starts = new long[size];
+        this.durations = new long[size];
+        this.addresses = new long[size];
+        this.spans = new byte[size];
+        this.args = new short[size];
+        this.statuses = new int[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, WRITING);
+        }
+        this.nanoClock = nanoClock;
+        this.originNanos = nanoClock.getAsLong();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops recording; spans open while disabled are dropped.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            Arrays.fill(openKeys, 0);
+        }
+    }
+
+    public void setMirror(@Nullable Mirror mirror) {
+        this.mirror = mirror;
+    }
+
+    /**
+     * Clock of all timestamps; spans recorded with {@link #record} must use it.
+     */
+    public long now() {
+        return nanoClock.getAsLong();
+    }
+
+    /**
+     * Opens a span that ends in another callback; at most one per device and span kind is open at a time, a
+     * second begin restarts it.
+     */
+    public void begin(@NonNull Span span, @NonNull BleDeviceAddress address) {
+        if (!enabled) {
+            return;
+        }
+        long key = key(span, address);
+        long start = nanoClock.getAsLong();
+        synchronized (this) {
+            int free = -1;
+            for (int i = 0; i < OPEN_SPANS; i++) {
+                if (openKeys[i] == key) {
+                    free = i;
+                    break;
+                }
+                if (free < 0 && openKeys[i] == 0) {
+                    free = i;
+                }
+            }
+            if (free < 0) {
+                return;
+            }
+            openKeys[free] = key;
+            openStarts[free] = start;
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.begin(name(span, 0), cookie(key));
+        }
+    }
+
+    /**
+     * Closes a span opened by {@link #begin}; nothing happens when it is not open.
+     */
+    public void end(@NonNull Span span, @NonNull BleDeviceAddress address, int status) {
+        if (!enabled) {
+            return;
+        }
+        long key = key(span, address);
+        long start = 0;
+        boolean found = false;
+        synchronized (this) {
+            for (int i = 0; i < OPEN_SPANS; i++) {
+                if (openKeys[i] == key) {
+                    openKeys[i] = 0;
+                    start = openStarts[i];
+                    found = true;
+                    break;
+                }
+            }
+        }
+        if (!found) {
+            return;
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.end(name(span, 0), cookie(key));
+        }
+        record(span, address, 0, status, start, nanoClock.getAsLong());
+    }
+
+    /**
+     * Closes every open span of the device, e.g. on disconnect.
+     */
+    public void endAll(@NonNull BleDeviceAddress address, int status) {
+        if (!enabled) {
+            return;
+        }
+        for (Span span : SPANS) {
+            end(span, address, status);
+        }
+    }
+
+    /**
+     * Records a finished span; for spans whose start the caller kept itself.
+     */
+    public void record(@NonNull Span span, @NonNull BleDeviceAddress address, int arg, int status,
+                       long startNanos, long endNanos) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        sequences.set(slot, WRITING);
+        VarHandle.storeStoreFence();
+        starts[slot] = startNanos;
+        durations[slot] = Math.max(0, endNanos - startNanos);
+        addresses[slot] = address.toLong();
+        spans[slot] = (byte) span.ordinal();
+        args[slot] = (short) arg;
+        statuses[slot] = status;
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Spans recorded since the last {@link #clear}, including overwritten ones.
+     */
+    public long recorded() {
+        return cursor.get();
+    }
+
+    public void clear() {
+        cursor.set(0);
+        for (int i = 0; i <= mask; i++) {
+            sequences.set(i, WRITING);
+        }
+    }
+
+    /**
+     * Marks the start of a command for the {@link Mirror}; the span itself is recorded at the end.
+     */
+    public void beginCommand(byte opcode, int cookie) {
+        Mirror m = mirror;
+        if (enabled && m != null) {
+            m.begin(OPCODE_NAMES[Byte.toUnsignedInt(opcode)], cookie);
+        }
+    }
+
+    public void endCommand(@NonNull BleDeviceAddress address, byte opcode, int cookie, boolean success, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        Mirror m = mirror;
+        if (m != null) {
+            m.end(OPCODE_NAMES[Byte.toUnsignedInt(opcode)], cookie);
+        }
+        record(Span.COMMAND, address, Byte.toUnsignedInt(opcode), success ? 0 : 1, startNanos, nanoClock.getAsLong());
+    }
+
+    @Override
+    public void onEnqueued(@NonNull BleOperation<?> operation, int depth) {
+    }
+
+    @Override
+    public void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos) {
+        if (!enabled) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        int type = operation.getType().ordinal();
+        record(Span.QUEUE_WAIT, operation.getAddress(), type, 0, now - queueWaitNanos, now);
+        Mirror m = mirror;
+        if (m != null) {
+            m.begin(TYPES[type].name(), System.identityHashCode(operation));
+        }
+    }
+
+    @Override
+    public void onFinished(@NonNull BleOperation<?> operation, @NonNull OperationQueue.Outcome outcome, long executionNanos) {
+        if (!enabled || (executionNanos == 0 && outcome == OperationQueue.Outcome.CLEARED)) {
+            // Cleared before it started: there was no execution to show
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        Mirror m = mirror;
+        if (m != null) {
+            m.end(operation.getType().name(), System.identityHashCode(operation));
+        }
+        record(Span.OPERATION, operation.getAddress(), operation.getType().ordinal(), outcome.ordinal(),
+                now - executionNanos, now);
+    }
+
+    @Override
+    public void onDepthChanged(int depth) {
+    }
+
+    /**
+     * Writes the retained spans, oldest first, as a Chrome trace-event JSON object with one thread track per
+     * device. Spans recorded meanwhile may or may not appear; slots overwritten while being read are skipped.
+     */
+    public void writeChromeTrace(@NonNull Writer out) throws IOException {
+        long end = cursor.get();
+        long first = Math.max(0, end - (mask + 1));
+        Map<Long, Integer> tracks = new LinkedHashMap<>();
+        StringBuilder events = new StringBuilder();
+        for (long i = first; i < end; i++) {
+            int slot = (int) (i & mask);
+            if (sequences.get(slot) != i) {
+                continue;
+            }
+            long address = addresses[slot];
+            long start = starts[slot];
+            long duration = durations[slot];
+            Span span = SPANS[spans[slot]];
+            int arg = args[slot] & 0xFFFF;
+            int status = statuses[slot];
+            VarHandle.loadLoadFence();
+            if (sequences.get(slot) != i) {
+                // Overwritten while being read
+                continue;
+            }
+            Integer track = tracks.get(address);
+            if (track == null) {
+                track = tracks.size() + 1;
+                tracks.put(address, track);
+            }
+            events.append(",\n{\"ph\":\"X\",\"pid\":1,\"tid\":").append(track)
+                    .append(",\"cat\":\"").append(span.category)
+                    .append("\",\"name\":\"").append(name(span, arg))
+                    .append("\",\"ts\":");
+            appendMicros(events, Math.max(0, start - originNanos));
+            events.append(",\"dur\":");
+            appendMicros(events, duration);
+            events.append(",\"args\":{\"status\":\"").append(status(span, status)).append("\"}}");
+        }
+
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        out.write("{\"ph\":\"M\",\"pid\":1,\"name\":\"process_name\",\"args\":{\"name\":\"CORC BLE\"}}");
+        for (Map.Entry<Long, Integer> track : tracks.entrySet()) {
+            out.write(",\n{\"ph\":\"M\",\"pid\":1,\"tid\":" + track.getValue()
+                    + ",\"name\":\"thread_name\",\"args\":{\"name\":\"" + BleDeviceAddress.fromLong(track.getKey()) + "\"}}");
+        }
+        out.write(events.toString());
+        out.write("\n]}\n");
+        out.flush();
+    }
+
+    @NonNull
+    private static String name(@NonNull Span span, int arg) {
+        if (span.label != null) {
+            return span.label;
+        }
+        if (span == Span.COMMAND) {
+            return OPCODE_NAMES[arg & 0xFF];
+        }
+        // Two writers lapping the ring on one slot can still leave it mixed; never fail the export for that
+        return arg < TYPES.length ? TYPES[arg].name() : Integer.toString(arg);
+    }
+
+    @NonNull
+    private static String status(@NonNull Span span, int status) {
+        return switch (span) {
+            case OPERATION -> status >= 0 && status < OUTCOMES.length ? OUTCOMES[status].name() : Integer.toString(status);
+            case COMMAND -> status == 0 ? "OK" : "FAILED";
+            case QUEUE_WAIT -> "";
+            default -> Integer.toString(status);
+        };
+    }
+
+    private static void appendMicros(@NonNull StringBuilder out, long nanos) {
+        out.append(nanos / 1_000).append('.');
+        long fraction = nanos % 1_000;
+        if (fraction < 100) out.append('0');
+        if (fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    // Never 0, which marks a free slot of the open span table
+    private static long key(@NonNull Span span, @NonNull BleDeviceAddress address) {
+        return ((long) (span.ordinal() + 1) << 48) | address.toLong();
+    }
+
+    private static int cookie(long key) {
+        return Long.hashCode(key);
+    }
+}
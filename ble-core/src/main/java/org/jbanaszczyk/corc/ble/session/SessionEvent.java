@@ -0,0 +1,84 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One entry of a recorded GATT session: an operation handed to the queue or a GATT callback.
+ *
+ * @param timeNanos     since the start of the recording
+ * @param operationType {@link Kind#OPERATION} only
+ * @param uuid          characteristic or descriptor's characteristic, if the event has one
+ * @param status        GATT status of a callback
+ * @param number        MTU of {@link Kind#MTU_CHANGED} and of an MTU request, new state of
+ *                      {@link Kind#CONNECTION_STATE}
+ * @param value         written or received bytes
+ * @param parts         parts of a reliable write operation
+ */
+public record SessionEvent(long timeNanos, @NonNull Kind kind, @NonNull BleDeviceAddress address,
+                           @Nullable BleOperation.BleOperationType operationType, @Nullable UUID uuid,
+                           int status, int number, @Nullable byte[] value,
+                           @NonNull List<BleOperation.WritePart> parts) {
+
+    public enum Kind {
+        /** An operation handed to the queue. */
+        OPERATION,
+        CHARACTERISTIC_READ,
+        CHARACTERISTIC_WRITE,
+        DESCRIPTOR_WRITE,
+        RELIABLE_WRITE_COMPLETED,
+        MTU_CHANGED,
+        CHARACTERISTIC_CHANGED,
+        CONNECTION_STATE,
+        SERVICES_DISCOVERED;
+
+        /**
+         * True for the callbacks that finish a step of the operation in flight.
+         */
+        public boolean completesOperation() {
+            return switch (this) {
+                case CHARACTERISTIC_READ, CHARACTERISTIC_WRITE, DESCRIPTOR_WRITE, RELIABLE_WRITE_COMPLETED, MTU_CHANGED -> true;
+                default -> false;
+            };
+        }
+    }
+
+    public SessionEvent {
+        if (kind == Kind.OPERATION && operationType == null) {
+            throw new IllegalArgumentException("Operation event without operation type");
+        }
+        parts = List.copyOf(parts);
+    }
+
+    @NonNull
+    static SessionEvent callback(long timeNanos, @NonNull Kind kind, @NonNull BleDeviceAddress address,
+                                 @Nullable UUID uuid, int status, int number, @Nullable byte[] value) {
+        return new SessionEvent(timeNanos, kind, address, null, uuid, status, number, value, List.of());
+    }
+
+    /**
+     * A fresh operation equal to the recorded one, for replay.
+     *
+     * @throws IllegalStateException when this is not an {@link Kind#OPERATION}
+     */
+    @NonNull
+    public BleOperation<?> toOperation() {
+        if (operationType == null) {
+            throw new IllegalStateException(kind + " is not an operation");
+        }
+        return switch (operationType) {
+            case READ -> BleOperation.read(address, uuid);
+            case WRITE -> BleOperation.write(address, uuid, value);
+            case ENABLE_NOTIFY -> BleOperation.enableNotify(address, uuid);
+            case DISABLE_NOTIFY -> BleOperation.disableNotify(address, uuid);
+            case REQUEST_MTU -> BleOperation.requestMtu(address, number);
+            case RELIABLE_WRITE -> BleOperation.reliableWrite(address, parts);
+        };
+    }
+}
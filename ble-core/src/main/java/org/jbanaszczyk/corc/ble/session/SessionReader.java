@@ -0,0 +1,135 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleLog;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads a log written by {@link SessionRecorder}. A record cut short at the end of the file, left by a process
+ * that died while recording, ends the session; everything before it is returned.
+ */
+public final class SessionReader {
+
+    private static final String LOG_TAG = "CORC:SessionReader";
+
+    /**
+     * @param startMillis wall-clock time the recording started
+     * @param events      in recording order
+     */
+    public record Session(long startMillis, @NonNull List<SessionEvent> events) {
+    }
+
+    private SessionReader() {
+    }
+
+    /**
+     * @throws IOException when the file cannot be read or is not a session log of a supported version
+     */
+    @NonNull
+    public static Session read(@NonNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SessionRecorder.HEADER_SIZE) {
+                throw new IOException("Not a session log: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != SessionRecorder.MAGIC) {
+                throw new IOException("Not a session log: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != SessionRecorder.FORMAT_VERSION) {
+                throw new IOException("Unsupported session log version " + version + ": " + file);
+            }
+            long startMillis = buffer.getLong();
+            return new Session(startMillis, Collections.unmodifiableList(readEvents(buffer, file)));
+        }
+    }
+
+    @NonNull
+    private static List<SessionEvent> readEvents(@NonNull ByteBuffer buffer, @NonNull Path file) throws IOException {
+        SessionEvent.Kind[] kinds = SessionEvent.Kind.values();
+        BleOperation.BleOperationType[] types = BleOperation.BleOperationType.values();
+        List<SessionEvent> events = new ArrayList<>();
+        long micros = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            try {
+                int kindIndex = Byte.toUnsignedInt(buffer.get());
+                if (kindIndex >= kinds.length) {
+                    throw new IOException("Unknown event kind " + kindIndex + " at " + start + ": " + file);
+                }
+                micros += getVarLong(buffer);
+                BleDeviceAddress address = BleDeviceAddress.fromLong(buffer.getLong());
+                int flags = buffer.get();
+                BleOperation.BleOperationType type = null;
+                if ((flags & SessionRecorder.HAS_OPERATION_TYPE) != 0) {
+                    int typeIndex = Byte.toUnsignedInt(buffer.get());
+                    if (typeIndex >= types.length) {
+                        throw new IOException("Unknown operation type " + typeIndex + " at " + start + ": " + file);
+                    }
+                    type = types[typeIndex];
+                }
+                UUID uuid = (flags & SessionRecorder.HAS_UUID) != 0 ? getUuid(buffer) : null;
+                int status = (flags & SessionRecorder.HAS_STATUS) != 0 ? Short.toUnsignedInt(buffer.getShort()) : 0;
+                int number = (flags & SessionRecorder.HAS_NUMBER) != 0 ? (int) getVarLong(buffer) : 0;
+                byte[] value = (flags & SessionRecorder.HAS_VALUE) != 0 ? getValue(buffer) : null;
+                List<BleOperation.WritePart> parts = List.of();
+                if ((flags & SessionRecorder.HAS_PARTS) != 0) {
+                    int count = (int) getVarLong(buffer);
+                    parts = new ArrayList<>(Math.min(count, 64));
+                    for (int i = 0; i < count; i++) {
+                        parts.add(new BleOperation.WritePart(getUuid(buffer), getValue(buffer)));
+                    }
+                }
+                events.add(new SessionEvent(micros * 1_000, kinds[kindIndex], address, type, uuid, status, number,
+                        value, parts));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                BleLog.w(LOG_TAG, "Session log {} truncated at byte {}", file, (long) start);
+                break;
+            }
+        }
+        return events;
+    }
+
+    @NonNull
+    private static UUID getUuid(@NonNull ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    @NonNull
+    private static byte[] getValue(@NonNull ByteBuffer buffer) {
+        long length = getVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] value = new byte[(int) length];
+        buffer.get(value);
+        return value;
+    }
+
+    static long getVarLong(@NonNull ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,230 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleLog;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes a GATT session, every operation handed to the queue and every GATT callback, to a compact binary log
+ * that {@link SessionReader} reads back for replay.
+ * <p>
+ * Layout (big endian): magic, format version, wall-clock start millis; then one record per event: kind (1),
+ * time since the previous record in microseconds (varint), packed MAC (8), flags (1), then only the fields the
+ * flags announce: operation type (1), UUID (16), status (2), number (varint), value (varint length + bytes),
+ * reliable write parts (varint count, each UUID + value).
+ * <p>
+ * Records are collected in a direct buffer and written with one channel write per 64 KiB. Callable from any
+ * thread. A write error stops the recording instead of disturbing the connection.
+ */
+public final class SessionRecorder implements Closeable {
+
+    private static final String LOG_TAG = "CORC:SessionRecorder";
+
+    static final int MAGIC = 0x43534553; // "CSES"
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 8;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int HAS_OPERATION_TYPE = 1;
+    static final int HAS_UUID = 1 << 1;
+    static final int HAS_STATUS = 1 << 2;
+    static final int HAS_NUMBER = 1 << 3;
+    static final int HAS_VALUE = 1 << 4;
+    static final int HAS_PARTS = 1 << 5;
+
+    private static final int MAX_VARINT = 5;
+    private static final int MAX_VARLONG = 10;
+
+    private final FileChannel channel;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long lastMicros;
+    private long events;
+    private boolean closed;
+
+    SessionRecorder(@NonNull FileChannel channel, @NonNull LongSupplier nanoClock, long startMillis) throws IOException {
+        this.channel = channel;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putLong(startMillis);
+        flushBuffer();
+    }
+
+    /**
+     * Starts a new recording, replacing {@code file}.
+     */
+    @NonNull
+    public static SessionRecorder open(@NonNull Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new SessionRecorder(channel, System::nanoTime, System.currentTimeMillis());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * An operation handed to the queue.
+     */
+    public void recordOperation(@NonNull BleOperation<?> operation) {
+        Integer mtu = operation.getMtu();
+        append(SessionEvent.Kind.OPERATION, operation.getAddress(), operation.getType(), operation.getCharacteristicUuid(),
+                null, mtu, operation.getPayload(), operation.getParts());
+    }
+
+    /**
+     * A GATT callback; pass {@code null} for what the callback does not report.
+     *
+     * @param number MTU of {@link SessionEvent.Kind#MTU_CHANGED}, new state of {@link SessionEvent.Kind#CONNECTION_STATE}
+     */
+    public void recordCallback(@NonNull SessionEvent.Kind kind, @NonNull BleDeviceAddress address, @Nullable UUID uuid,
+                               @Nullable Integer status, @Nullable Integer number, @Nullable byte[] value) {
+        if (kind == SessionEvent.Kind.OPERATION) {
+            throw new IllegalArgumentException("Use recordOperation for operations");
+        }
+        append(kind, address, null, uuid, status, number, value, List.of());
+    }
+
+    /**
+     * Events recorded so far.
+     */
+    public synchronized long events() {
+        return events;
+    }
+
+    /**
+     * Writes buffered events to the file.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private synchronized void append(@NonNull SessionEvent.Kind kind, @NonNull BleDeviceAddress address,
+                                     @Nullable BleOperation.BleOperationType operationType, @Nullable UUID uuid,
+                                     @Nullable Integer status, @Nullable Integer number, @Nullable byte[] value,
+                                     @NonNull List<BleOperation.WritePart> parts) {
+        if (closed) {
+            return;
+        }
+        long micros = Math.max(lastMicros, (nanoClock.getAsLong() - startNanos) / 1_000);
+        int flags = (operationType != null ? HAS_OPERATION_TYPE : 0)
+                | (uuid != null ? HAS_UUID : 0)
+                | (status != null ? HAS_STATUS : 0)
+                | (number != null ? HAS_NUMBER : 0)
+                | (value != null ? HAS_VALUE : 0)
+                | (!parts.isEmpty() ? HAS_PARTS : 0);
+        int size = 1 + MAX_VARLONG + 8 + 1 + 1 + 16 + 2 + MAX_VARINT + valueSize(value) + MAX_VARINT;
+        for (BleOperation.WritePart part : parts) {
+            size += 16 + valueSize(part.value());
+        }
+        try {
+            if (buffer.remaining() < size) {
+                flushBuffer();
+            }
+            ByteBuffer out = size <= buffer.capacity() ? buffer : ByteBuffer.allocate(size);
+            out.put((byte) kind.ordinal());
+            putVarLong(out, micros - lastMicros);
+            out.putLong(address.toLong());
+            out.put((byte) flags);
+            if (operationType != null) out.put((byte) operationType.ordinal());
+            if (uuid != null) putUuid(out, uuid);
+            if (status != null) out.putShort((short) (int) status);
+            if (number != null) putVarLong(out, Integer.toUnsignedLong(number));
+            if (value != null) putValue(out, value);
+            if (!parts.isEmpty()) {
+                putVarLong(out, parts.size());
+                for (BleOperation.WritePart part : parts) {
+                    putUuid(out, part.characteristicUuid());
+                    putValue(out, part.value());
+                }
+            }
+            if (out != buffer) {
+                out.flip();
+                writeFully(out);
+            }
+            lastMicros = micros;
+            events++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(@NonNull IOException e) {
+        BleLog.e(LOG_TAG, "Session recording stopped after {} events", events, e);
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // already failing
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(@NonNull ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static int valueSize(@Nullable byte[] value) {
+        return value != null ? MAX_VARINT + value.length : 0;
+    }
+
+    private static void putUuid(@NonNull ByteBuffer out, @NonNull UUID uuid) {
+        out.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static void putValue(@NonNull ByteBuffer out, @NonNull byte[] value) {
+        putVarLong(out, value.length);
+        out.put(value);
+    }
+
+    static void putVarLong(@NonNull ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
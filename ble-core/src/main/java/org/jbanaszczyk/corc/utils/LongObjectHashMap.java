@@ -0,0 +1,183 @@
+package org.jbanaszczyk.corc.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map from non-negative {@code long} keys to objects.
+ * Linear probing, power-of-two capacity, backward-shift deletion; no boxing and no per-entry allocation.
+ * <p>
+ * Not thread-safe. {@link #get(long)} never throws and always terminates, even when racing with a writer,
+ * so it can be used under an optimistic read (e.g. {@link java.util.concurrent.locks.StampedLock}) as long as
+ * the result is validated afterwards.
+ */
+public final class LongObjectHashMap<V> {
+
+    private static final long FREE = -1L;
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long[] k = keys;
+        Object[] v = values;
+        if (k.length != v.length) return null;
+
+        int mask = k.length - 1;
+        int index = indexFor(key, mask);
+        for (int probes = 0; probes < k.length; probes++) {
+            long candidate = k[index];
+            if (candidate == key) return (V) v[index];
+            if (candidate == FREE) return null;
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+        if (value == null) throw new NullPointerException("value");
+
+        int mask = keys.length - 1;
+        int index = indexFor(key, mask);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > keys.length / 2) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        int index = indexFor(key, mask);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                shiftBack(index);
+                size--;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) action.accept((V) values[i]);
+        }
+    }
+
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEachValue(result::add);
+        return result;
+    }
+
+    // Closes the gap left by a removed slot so that probe chains stay unbroken
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int index = (gap + 1) & mask;
+        while (keys[index] != FREE) {
+            int home = indexFor(keys[index], mask);
+            // Move the entry into the gap unless its home slot lies cyclically in (gap, index]
+            boolean movable = gap <= index
+                    ? home <= gap || home > index
+                    : home <= gap && home > index;
+            if (movable) {
+                keys[gap] = keys[index];
+                values[gap] = values[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int index = indexFor(oldKeys[i], mask);
+            while (keys[index] != FREE) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        long[] newKeys = new long[capacity];
+        Arrays.fill(newKeys, FREE);
+        // A reader racing with a resize may see keys and values of different generations; get() checks lengths
+        values = new Object[capacity];
+        keys = newKeys;
+    }
+
+    private static int indexFor(long key, int mask) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,69 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BleConnectionContextTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+
+    private static GattConnection connection() {
+        return new GattConnection() {
+            @Override
+            public BleDeviceAddress address() {
+                return ADDRESS;
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+    }
+
+    @Test
+    public void testDisconnectResetsRuntimeState() {
+        var ctx = new BleConnectionContext();
+        ctx.transition(GattState.DISCONNECTED, GattState.CONNECTING);
+        ctx.setConnection(connection());
+        ctx.setMtu(247);
+        ctx.setVersion("1.2");
+
+        ctx.moveTo(GattState.DISCONNECTED);
+
+        assertNull(ctx.getConnection());
+        assertEquals(GattConnection.MIN_MTU, ctx.getMtu());
+        assertEquals("unknown", ctx.getVersion());
+    }
+
+    @Test
+    public void testReconnectBetweenDisconnectAndItsResetKeepsTheNewConnection() {
+        // The clock is read right after the CAS: a hook there runs another thread's reconnect in that window
+        Runnable[] afterCas = {null};
+        var ctx = new BleConnectionContext(() -> {
+            Runnable hook = afterCas[0];
+            afterCas[0] = null;
+            if (hook != null) hook.run();
+            return 0;
+        });
+        ctx.transition(GattState.DISCONNECTED, GattState.CONNECTING);
+        ctx.setConnection(connection());
+        ctx.setMtu(247);
+        var reconnected = connection();
+        afterCas[0] = () -> {
+            assertTrue(ctx.transition(GattState.DISCONNECTED, GattState.CONNECTING));
+            ctx.setConnection(reconnected);
+        };
+
+        assertTrue(ctx.moveTo(GattState.DISCONNECTED));
+
+        assertEquals(GattState.CONNECTING, ctx.getState());
+        assertSame(reconnected, ctx.getConnection());
+        // The MTU of the previous link was reset when the new connection left DISCONNECTED
+        assertEquals(GattConnection.MIN_MTU, ctx.getMtu());
+    }
+}
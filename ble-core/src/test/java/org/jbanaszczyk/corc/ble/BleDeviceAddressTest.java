@@ -0,0 +1,28 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BleDeviceAddressTest {
+
+    @Test
+    public void testPackRoundTrip() {
+        long packed = BleDeviceAddress.pack("A1:B2:C3:D4:E5:F6");
+        assertEquals(0xA1B2C3D4E5F6L, packed);
+        assertEquals("A1:B2:C3:D4:E5:F6", BleDeviceAddress.fromLong(packed).getValue());
+        assertEquals(new BleDeviceAddress("A1:B2:C3:D4:E5:F6"), BleDeviceAddress.fromLong(packed));
+    }
+
+    @Test
+    public void testInvalidAddresses() {
+        assertEquals(BleDeviceAddress.INVALID, BleDeviceAddress.pack(null));
+        assertEquals(BleDeviceAddress.INVALID, BleDeviceAddress.pack("a1:b2:c3:d4:e5:f6"));
+        assertEquals(BleDeviceAddress.INVALID, BleDeviceAddress.pack("A1-B2-C3-D4-E5-F6"));
+        assertEquals(BleDeviceAddress.INVALID, BleDeviceAddress.pack("A1:B2:C3:D4:E5"));
+        assertTrue(new BleDeviceAddress("garbage").isEmpty());
+        assertFalse(new BleDeviceAddress("00:00:00:00:00:00").isEmpty());
+    }
+}
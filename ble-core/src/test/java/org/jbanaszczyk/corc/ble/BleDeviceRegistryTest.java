@@ -0,0 +1,164 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BleDeviceRegistryTest {
+
+    private static final int MAX_TRANSIENT = 4;
+    private static final long TTL_MILLIS = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final BleDeviceRegistry registry = new BleDeviceRegistry(MAX_TRANSIENT, TTL_MILLIS, now::get);
+
+    private static BleDeviceAddress address(int i) {
+        return new BleDeviceAddress(String.format("AA:BB:CC:DD:EE:%02X", i));
+    }
+
+    private BleDeviceRegistry.Entry add(int i) {
+        now.incrementAndGet();
+        return registry.getOrCreateEntry(address(i));
+    }
+
+    @Test
+    public void testExpiredTransientDevicesAreEvicted() {
+        add(1);
+        add(2);
+        now.addAndGet(TTL_MILLIS / 2);
+        add(3);
+
+        now.addAndGet(TTL_MILLIS / 2 + 1);
+        assertEquals(2, registry.evictTransient());
+
+        assertNull(registry.findEntry(address(1).toLong()));
+        assertNull(registry.findEntry(address(2).toLong()));
+        assertNotNull(registry.findEntry(address(3).toLong()));
+        assertEquals(new BleDeviceRegistry.Stats(1, 0, 2, 0), registry.stats());
+    }
+
+    @Test
+    public void testLeastRecentlySeenGoFirstAboveCapacity() {
+        for (int i = 1; i <= MAX_TRANSIENT; i++) {
+            add(i);
+        }
+        // Seen again, so no longer the oldest
+        registry.findEntry(address(1).toLong());
+
+        add(5);
+        add(6);
+
+        assertEquals(MAX_TRANSIENT, registry.size());
+        assertNotNull(registry.findEntry(address(1).toLong()));
+        assertNull(registry.findEntry(address(2).toLong()));
+        assertNull(registry.findEntry(address(3).toLong()));
+        var stats = registry.stats();
+        assertEquals(2, stats.capacityEvictions());
+        assertEquals(2, stats.totalEvictions());
+    }
+
+    @Test
+    public void testPersistedAndConnectedDevicesArePinned() {
+        registry.markPersisted(address(1));
+        var connected = add(2);
+        assertTrue(connected.context().transition(GattState.DISCONNECTED, GattState.CONNECTING));
+        add(3);
+
+        now.addAndGet(TTL_MILLIS + 1);
+        assertEquals(1, registry.evictTransient());
+
+        assertTrue(registry.isPersisted(address(1)));
+        assertNotNull(registry.findEntry(address(2).toLong()));
+        assertEquals(new BleDeviceRegistry.Stats(2, 1, 1, 0), registry.stats());
+    }
+
+    @Test
+    public void testPinnedDeviceSurvivesUntilUnpinned() {
+        var entry = add(1);
+        assertTrue(registry.pin(entry));
+
+        now.addAndGet(TTL_MILLIS + 1);
+        assertEquals(0, registry.evictTransient());
+        assertTrue(entry.context().transition(GattState.DISCONNECTED, GattState.CONNECTING));
+        registry.unpin(entry);
+        assertEquals(0, registry.evictTransient());
+
+        assertTrue(entry.context().moveTo(GattState.DISCONNECTED));
+        now.addAndGet(TTL_MILLIS + 1);
+        assertEquals(1, registry.evictTransient());
+        // An evicted entry cannot be pinned; a new lookup creates a fresh one
+        assertFalse(registry.pin(entry));
+        assertNotSame(entry, registry.getOrCreateEntry(address(1)));
+    }
+
+    @Test
+    public void testPersistedDevicesDoNotTriggerCapacityEviction() {
+        for (int i = 1; i <= 2 * MAX_TRANSIENT; i++) {
+            registry.markPersisted(address(i));
+        }
+        for (int i = 100; i < 100 + MAX_TRANSIENT; i++) {
+            add(i);
+        }
+
+        assertEquals(3 * MAX_TRANSIENT, registry.size());
+        assertEquals(0, registry.stats().totalEvictions());
+    }
+
+    @Test
+    public void testDevicesAreRankedStrongestFirst() {
+        add(1).context().recordRssi(-80, now.get());
+        add(2).context().recordRssi(-50, now.get());
+        add(3);
+        add(4).context().recordRssi(-65, now.get());
+
+        var ranked = registry.byProximity().stream().map(BleDevice::getAddress).toList();
+
+        assertEquals(List.of(address(2), address(4), address(1), address(3)), ranked);
+    }
+
+    @Test
+    public void testNearestSkipsOtherStatesAndUnseenDevices() {
+        var connected = add(1);
+        connected.context().recordRssi(-40, now.get());
+        assertTrue(connected.context().transition(GattState.DISCONNECTED, GattState.CONNECTING));
+        add(2).context().recordRssi(-70, now.get());
+        add(3).context().recordRssi(-60, now.get());
+        add(4);
+
+        assertEquals(address(3), registry.nearest(GattState.DISCONNECTED).getAddress());
+        assertEquals(address(1), registry.nearest(GattState.CONNECTING).getAddress());
+        assertNull(registry.nearest(GattState.READY));
+    }
+
+    @Test
+    public void testRankingReadsEachSignalOnce() {
+        List<BleDevice> devices = new ArrayList<>();
+        for (int i = 1; i <= MAX_TRANSIENT; i++) {
+            var entry = add(i);
+            entry.context().recordRssi(-90 + 10 * i, now.get());
+            devices.add(entry.device());
+        }
+        var reads = new AtomicInteger();
+
+        // A scan result arriving on every read would reorder a live comparator mid-sort
+        BleDeviceRegistry.sortBySignalStrength(devices, device -> {
+            reads.incrementAndGet();
+            registry.findEntry(device.getAddress().toLong()).context().recordRssi(-100, now.get());
+            return device;
+        });
+
+        assertEquals(MAX_TRANSIENT, reads.get());
+        assertEquals(address(MAX_TRANSIENT), devices.get(0).getAddress());
+        assertEquals(address(1), devices.get(MAX_TRANSIENT - 1).getAddress());
+    }
+}
@@ -0,0 +1,95 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class BleDevicesSnapshotPublisherTest {
+
+    private static final class ManualScheduler implements Scheduler {
+        final Queue<Runnable> posted = new ArrayDeque<>();
+        final List<Runnable> delayed = new ArrayList<>();
+
+        @Override
+        public void post(Runnable task) { posted.add(task); }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) { delayed.add(task); }
+
+        @Override
+        public void removeCallbacks(Runnable task) { delayed.remove(task); }
+
+        void runPosted() {
+            Runnable task;
+            while ((task = posted.poll()) != null) task.run();
+        }
+
+        void runDelayed() {
+            List<Runnable> due = new ArrayList<>(delayed);
+            delayed.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    public void testBurstOfChangesRebuildsOnce() {
+        var scheduler = new ManualScheduler();
+        var builds = new AtomicLong();
+        var publisher = new BleDevicesSnapshotPublisher(scheduler, () -> {
+            builds.incrementAndGet();
+            return List.of();
+        }, () -> 0L);
+
+        for (int i = 0; i < 10; i++) publisher.invalidate();
+        scheduler.runPosted();
+
+        assertEquals(1, builds.get());
+        assertEquals(1, publisher.current().version());
+    }
+
+    @Test
+    public void testSlowConsumerSeesOnlyLatestSnapshot() {
+        var scheduler = new ManualScheduler();
+        var publisher = new BleDevicesSnapshotPublisher(scheduler, List::of, () -> 0L);
+        Queue<Runnable> consumerThread = new ArrayDeque<>();
+        List<Long> seen = new ArrayList<>();
+        publisher.subscribe(consumerThread::add, 0L, snapshot -> seen.add(snapshot.version()));
+
+        for (int i = 0; i < 5; i++) {
+            publisher.invalidate();
+            scheduler.runPosted();
+        }
+        assertEquals(1, consumerThread.size());
+        consumerThread.poll().run();
+
+        assertEquals(List.of(5L), seen);
+    }
+
+    @Test
+    public void testRateLimitDefersDeliveries() {
+        var scheduler = new ManualScheduler();
+        var clock = new AtomicLong(1_000);
+        var publisher = new BleDevicesSnapshotPublisher(scheduler, List::of, clock::get);
+        List<Long> seen = new ArrayList<>();
+        publisher.subscribe(Runnable::run, 100L, snapshot -> seen.add(snapshot.version()));
+        assertEquals(List.of(0L), seen);
+
+        publisher.invalidate();
+        scheduler.runPosted();
+        publisher.invalidate();
+        scheduler.runPosted();
+        assertEquals(List.of(0L), seen);
+        assertEquals(1, scheduler.delayed.size());
+
+        clock.addAndGet(100);
+        scheduler.runDelayed();
+        assertEquals(List.of(0L, 2L), seen);
+    }
+}
@@ -0,0 +1,148 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CharacteristicCacheTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID BATTERY = UUID.fromString("00002A19-0000-1000-8000-00805F9B34FB");
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final AtomicInteger gattReads = new AtomicInteger();
+    private final CharacteristicCache cache = new CharacteristicCache(now::get);
+
+    private CompletableFuture<byte[]> gattRead(byte value) {
+        gattReads.incrementAndGet();
+        return CompletableFuture.completedFuture(new byte[]{value});
+    }
+
+    @Test
+    public void testFreshValueIsServedWithoutGattRead() {
+        cache.setMaxAge(BATTERY, 5_000);
+        cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 80)).join();
+
+        now.addAndGet(4_000);
+        byte[] cached = cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 70)).join();
+
+        assertArrayEquals(new byte[]{80}, cached);
+        assertEquals(1, gattReads.get());
+
+        now.addAndGet(2_000);
+        assertArrayEquals(new byte[]{70}, cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 70)).join());
+        assertEquals(2, gattReads.get());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(2, cache.stats().misses());
+    }
+
+    @Test
+    public void testNotificationFeedsCache() {
+        cache.setMaxAge(BATTERY, 5_000);
+        cache.onNotification(ADDRESS, BATTERY, new byte[]{42});
+
+        assertArrayEquals(new byte[]{42}, cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 0)).join());
+        assertEquals(0, gattReads.get());
+
+        cache.clear(ADDRESS);
+        cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 0)).join();
+        assertEquals(1, gattReads.get());
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneGattRead() {
+        var pending = new CompletableFuture<byte[]>();
+
+        var first = cache.read(ADDRESS, BATTERY, () -> {
+            gattReads.incrementAndGet();
+            return pending;
+        });
+        var second = cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 0));
+        assertFalse(second.isDone());
+
+        pending.complete(new byte[]{9});
+
+        assertArrayEquals(new byte[]{9}, first.join());
+        assertArrayEquals(new byte[]{9}, second.join());
+        assertTrue(first.join() != second.join());
+        assertEquals(1, gattReads.get());
+        assertEquals(0.5, cache.stats().hitRatio(), 0.0);
+    }
+
+    @Test
+    public void testReadInFlightAcrossInvalidateIsNotCached() {
+        cache.setMaxAge(BATTERY, 5_000);
+        var stale = new CompletableFuture<byte[]>();
+        var first = cache.read(ADDRESS, BATTERY, () -> {
+            gattReads.incrementAndGet();
+            return stale;
+        });
+
+        // Written meanwhile: a later read must not join the old one
+        cache.invalidate(ADDRESS, BATTERY);
+        var fresh = new CompletableFuture<byte[]>();
+        var second = cache.read(ADDRESS, BATTERY, () -> {
+            gattReads.incrementAndGet();
+            return fresh;
+        });
+        assertEquals(2, gattReads.get());
+
+        stale.complete(new byte[]{1});
+        assertArrayEquals(new byte[]{1}, first.join());
+        assertFalse(second.isDone());
+        fresh.complete(new byte[]{2});
+        assertArrayEquals(new byte[]{2}, second.join());
+
+        assertArrayEquals(new byte[]{2}, cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 0)).join());
+        assertEquals(2, gattReads.get());
+    }
+
+    @Test
+    public void testReadInFlightAcrossDisconnectIsNotCached() {
+        cache.setMaxAge(BATTERY, 5_000);
+        var pending = new CompletableFuture<byte[]>();
+        var read = cache.read(ADDRESS, BATTERY, () -> pending);
+
+        cache.clear(ADDRESS);
+        pending.complete(new byte[]{1});
+        assertArrayEquals(new byte[]{1}, read.join());
+
+        assertArrayEquals(new byte[]{3}, cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 3)).join());
+        assertEquals(1, gattReads.get());
+    }
+
+    @Test
+    public void testReadInFlightAcrossNotificationDoesNotOverwriteIt() {
+        cache.setMaxAge(BATTERY, 5_000);
+        var older = new CompletableFuture<byte[]>();
+        var read = cache.read(ADDRESS, BATTERY, () -> {
+            gattReads.incrementAndGet();
+            return older;
+        });
+
+        cache.onNotification(ADDRESS, BATTERY, new byte[]{2});
+        older.complete(new byte[]{1});
+        assertArrayEquals(new byte[]{1}, read.join());
+
+        assertArrayEquals(new byte[]{2}, cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 0)).join());
+        assertEquals(1, gattReads.get());
+    }
+
+    @Test
+    public void testWithoutPolicyEveryReadGoesOverTheAir() {
+        cache.onNotification(ADDRESS, BATTERY, new byte[]{42});
+
+        cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 1)).join();
+        cache.read(ADDRESS, BATTERY, () -> gattRead((byte) 1)).join();
+
+        assertEquals(2, gattReads.get());
+    }
+}
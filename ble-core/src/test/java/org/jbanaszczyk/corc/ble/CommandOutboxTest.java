@@ -0,0 +1,116 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CommandOutboxTest {
+
+    private static final class ManualScheduler implements Scheduler {
+        final List<Runnable> delayed = new ArrayList<>();
+
+        @Override
+        public void post(Runnable task) { task.run(); }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) { delayed.add(task); }
+
+        @Override
+        public void removeCallbacks(Runnable task) { delayed.remove(task); }
+
+        void runDelayed() {
+            List<Runnable> due = new ArrayList<>(delayed);
+            delayed.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+
+    // Echoes the opcode and first payload byte
+    private static final class RecordingSender implements BleCommandSender {
+        final List<String> sent = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<byte[]> send(BleDevice device, byte opcode, byte[] payload) {
+            byte value = payload == null ? 0 : payload[0];
+            sent.add(opcode + ":" + value);
+            return CompletableFuture.completedFuture(new byte[]{opcode, value});
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final RecordingSender sender = new RecordingSender();
+    private final BleDevice device = new BleDevice(
+            new BleDevicePersistent(new BleDeviceAddress("AA:BB:CC:DD:EE:01")), new BleConnectionContext());
+    private boolean ready;
+    private final CommandOutbox outbox = new CommandOutbox(sender, d -> ready, scheduler, 4);
+
+    @Test
+    public void testReadyDeviceIsSentDirectly() {
+        ready = true;
+
+        outbox.submit(device, (byte) 1, new byte[]{7}).join();
+
+        assertEquals(List.of("1:7"), sender.sent);
+        assertEquals(0, outbox.stats().queued());
+    }
+
+    @Test
+    public void testQueuedCommandsReplayInOrderWithCoalescing() {
+        outbox.setPolicy((byte) 2, new CommandOutbox.Policy(1_000, CommandOutbox.Coalescing.LAST_VALUE_WINS));
+
+        var first = outbox.submit(device, (byte) 2, new byte[]{1});
+        outbox.submit(device, (byte) 1, new byte[]{9});
+        var last = outbox.submit(device, (byte) 2, new byte[]{3});
+        assertTrue(sender.sent.isEmpty());
+        assertEquals(2, outbox.pending(device.getAddress()));
+
+        ready = true;
+        outbox.drain(device);
+
+        assertEquals(List.of("2:3", "1:9"), sender.sent);
+        assertEquals(3, first.join()[1]);
+        assertEquals(3, last.join()[1]);
+        var stats = outbox.stats();
+        assertEquals(0, stats.pending());
+        assertEquals(2, stats.replayed());
+        assertEquals(1, stats.coalesced());
+        assertTrue(scheduler.delayed.isEmpty());
+    }
+
+    @Test
+    public void testExpiredCommandFailsAndIsNotReplayed() {
+        var future = outbox.submit(device, (byte) 1, null);
+
+        scheduler.runDelayed();
+        ready = true;
+        outbox.drain(device);
+
+        var thrown = assertThrows(CompletionException.class, future::join);
+        assertTrue(thrown.getCause() instanceof TimeoutException);
+        assertTrue(sender.sent.isEmpty());
+        assertEquals(1, outbox.stats().expired());
+    }
+
+    @Test
+    public void testFullOutboxRejects() {
+        for (int i = 0; i < 4; i++) {
+            assertFalse(outbox.submit(device, (byte) 1, new byte[]{(byte) i}).isDone());
+        }
+
+        var rejected = outbox.submit(device, (byte) 1, null);
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(1, outbox.stats().rejected());
+    }
+}
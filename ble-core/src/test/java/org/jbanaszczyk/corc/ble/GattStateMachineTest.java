@@ -0,0 +1,79 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GattStateMachineTest {
+
+    @Test
+    public void testHappyPathPublishesTimestampedTransitions() {
+        var clock = new AtomicLong(100);
+        var machine = new GattStateMachine(clock::getAndIncrement);
+        List<String> transitions = new ArrayList<>();
+        machine.addListener((from, to, ts) -> transitions.add(from + "->" + to + "@" + ts));
+
+        assertTrue(machine.transition(GattState.DISCONNECTED, GattState.CONNECTING));
+        assertTrue(machine.transition(GattState.CONNECTING, GattState.SERVICES_DISCOVERING));
+        assertTrue(machine.transition(GattState.SERVICES_DISCOVERING, GattState.READY));
+        assertTrue(machine.moveTo(GattState.DISCONNECTED));
+
+        assertEquals(List.of(
+                "DISCONNECTED->CONNECTING@100",
+                "CONNECTING->SERVICES_DISCOVERING@101",
+                "SERVICES_DISCOVERING->READY@102",
+                "READY->DISCONNECTED@103"), transitions);
+    }
+
+    @Test
+    public void testRejectsIllegalTransitions() {
+        var machine = new GattStateMachine();
+        List<GattState> seen = new ArrayList<>();
+        machine.addListener((from, to, ts) -> seen.add(to));
+
+        assertFalse(machine.moveTo(GattState.READY));
+        assertFalse(machine.moveTo(GattState.DISCONNECTED));
+        assertFalse(machine.transition(GattState.DISCONNECTED, GattState.SERVICES_DISCOVERING));
+        assertFalse(machine.transition(GattState.READY, GattState.DISCONNECTED));
+
+        assertEquals(GattState.DISCONNECTED, machine.get());
+        assertTrue(seen.isEmpty());
+    }
+
+    @Test
+    public void testOnlyOneConcurrentConnectWins() throws InterruptedException {
+        var machine = new GattStateMachine();
+        var winners = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (machine.transition(GattState.DISCONNECTED, GattState.CONNECTING)) {
+                    winners.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, winners.get());
+        assertEquals(GattState.CONNECTING, machine.get());
+    }
+}
@@ -0,0 +1,44 @@
+package org.jbanaszczyk.corc.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RssiHistoryTest {
+
+    @Test
+    public void testEmptyHistoryHasNoRssi() {
+        var history = new RssiHistory();
+
+        assertTrue(history.isEmpty());
+        assertEquals(RssiHistory.NO_RSSI, history.getSmoothed());
+    }
+
+    @Test
+    public void testSamplesAreSmoothed() {
+        var history = new RssiHistory();
+        history.record(-80, 1_000);
+        assertFalse(history.isEmpty());
+        assertEquals(-80, history.getSmoothed());
+
+        // 30 % of the newest sample: -80 + 0.3 * 20 = -74, then -74 + 0.3 * 14 = -69.8
+        history.record(-60, 2_000);
+        assertEquals(-74, history.getSmoothed());
+        history.record(-60, 3_000);
+        assertEquals(-70, history.getSmoothed());
+        assertEquals(3_000, history.getLastSeenMillis());
+    }
+
+    @Test
+    public void testSingleOutlierDoesNotFlipTheValue() {
+        var history = new RssiHistory();
+        for (int i = 0; i < 10; i++) {
+            history.record(-50, i);
+        }
+        history.record(-95, 10);
+
+        assertTrue(history.getSmoothed() > -70);
+    }
+}
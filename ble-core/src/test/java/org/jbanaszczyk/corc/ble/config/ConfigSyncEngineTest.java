@@ -0,0 +1,178 @@
+package org.jbanaszczyk.corc.ble.config;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.jbanaszczyk.corc.ble.BleCommandSender;
+import org.jbanaszczyk.corc.ble.BleConnectionContext;
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.core.protocol.BleRemoteException;
+import org.jbanaszczyk.corc.ble.internal.BleDevicePersistent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigSyncEngineTest {
+
+    /**
+     * Peripheral side of the configuration protocol.
+     */
+    private static final class FakePeripheral implements BleCommandSender {
+
+        DeviceConfiguration stored = DeviceConfiguration.EMPTY;
+        int patches;
+        int resets;
+        @Nullable
+        RuntimeException linkFailure;
+
+        @NonNull
+        @Override
+        public CompletableFuture<byte[]> send(@NonNull BleDevice device, byte opcode, @Nullable byte[] payload) {
+            if (linkFailure != null) {
+                return CompletableFuture.failedFuture(linkFailure);
+            }
+            switch (opcode) {
+                case BleOpcode.CONFIG_GET_HASH:
+                    break;
+                case BleOpcode.CONFIG_RESET:
+                    stored = DeviceConfiguration.EMPTY;
+                    resets++;
+                    break;
+                case BleOpcode.CONFIG_PATCH:
+                    patches++;
+                    if (payload == null || ConfigSyncEngine.readHash(payload) != ConfigSyncEngine.hash(stored)) {
+                        return CompletableFuture.failedFuture(new BleRemoteException((byte) 0x05));
+                    }
+                    stored = apply(stored, payload);
+                    break;
+                default:
+                    return CompletableFuture.failedFuture(new BleRemoteException((byte) 0x02));
+            }
+            return CompletableFuture.completedFuture(u32(ConfigSyncEngine.hash(stored)));
+        }
+
+        private static DeviceConfiguration apply(DeviceConfiguration base, byte[] payload) {
+            var builder = base.edit();
+            int pos = ConfigSyncEngine.HASH_SIZE;
+            while (pos < payload.length) {
+                int key = (payload[pos] & 0xFF) | (payload[pos + 1] & 0xFF) << 8;
+                int type = payload[pos + 2] & 0xFF;
+                int length = payload[pos + 3] & 0xFF;
+                byte[] value = Arrays.copyOfRange(payload, pos + 4, pos + 4 + length);
+                if (type == ConfigSyncEngine.OP_DELETE) builder.remove(key);
+                else builder.put(key, DeviceConfiguration.Type.fromCode(type), value);
+                pos += 4 + length;
+            }
+            return builder.build();
+        }
+
+        private static byte[] u32(long value) {
+            return new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)};
+        }
+    }
+
+    private static BleDevice newDevice() {
+        var context = new BleConnectionContext();
+        context.setDataMaxLen(244);
+        return new BleDevice(new BleDevicePersistent(new BleDeviceAddress("AA:BB:CC:DD:EE:01")), context);
+    }
+
+    private static DeviceConfiguration largeConfiguration() {
+        var builder = DeviceConfiguration.builder();
+        for (int key = 0; key < 100; key++) {
+            builder.putString(key, "channel-" + key + "-calibration-table");
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testFirstSyncSendsEverything() {
+        var peripheral = new FakePeripheral();
+        var engine = new ConfigSyncEngine(peripheral);
+        var device = newDevice().setConfiguration(largeConfiguration());
+
+        var result = engine.sync(device).join();
+
+        assertTrue(result.fullResend());
+        assertEquals(device.getConfiguration(), peripheral.stored);
+        assertEquals(ConfigSyncEngine.hash(device.getConfiguration()), result.hash());
+        assertTrue(result.airtimeBytes() > 2_000);
+    }
+
+    @Test
+    public void testEditSendsOnlyDelta() {
+        var peripheral = new FakePeripheral();
+        var engine = new ConfigSyncEngine(peripheral);
+        var device = newDevice().setConfiguration(largeConfiguration());
+        engine.sync(device).join();
+
+        device.setConfiguration(device.getConfiguration().edit().putInt(7, 42).remove(8).build());
+        var result = engine.sync(device).join();
+
+        assertFalse(result.fullResend());
+        assertEquals(1, result.commands());
+        assertTrue("delta airtime " + result.airtimeBytes(), result.airtimeBytes() < 32);
+        assertEquals(device.getConfiguration(), peripheral.stored);
+
+        var unchanged = engine.sync(device).join();
+        assertEquals(0, unchanged.commands());
+    }
+
+    @Test
+    public void testHashMatchOnFirstContactSendsNothingElse() {
+        var peripheral = new FakePeripheral();
+        var device = newDevice().setConfiguration(DeviceConfiguration.builder().putBoolean(1, true).build());
+        peripheral.stored = device.getConfiguration();
+
+        var result = new ConfigSyncEngine(peripheral).sync(device).join();
+
+        assertFalse(result.fullResend());
+        assertEquals(1, result.commands());
+        assertEquals(0, peripheral.patches);
+    }
+
+    @Test
+    public void testDivergedDeviceFallsBackToFullResend() {
+        var peripheral = new FakePeripheral();
+        var engine = new ConfigSyncEngine(peripheral);
+        var device = newDevice().setConfiguration(DeviceConfiguration.builder().putInt(1, 1).build());
+        engine.sync(device).join();
+
+        // Changed behind the engine's back, e.g. by another phone
+        peripheral.stored = DeviceConfiguration.builder().putInt(2, 2).build();
+        device.setConfiguration(device.getConfiguration().edit().putInt(3, 3).build());
+        var result = engine.sync(device).join();
+
+        assertTrue(result.fullResend());
+        assertEquals(device.getConfiguration(), peripheral.stored);
+    }
+
+    @Test
+    public void testTransportFailureIsNotAFullResend() {
+        var peripheral = new FakePeripheral();
+        var engine = new ConfigSyncEngine(peripheral);
+        var device = newDevice().setConfiguration(largeConfiguration());
+        engine.sync(device).join();
+        int resets = peripheral.resets;
+
+        peripheral.linkFailure = new IllegalStateException("Operation timed out");
+        device.setConfiguration(device.getConfiguration().edit().putInt(7, 42).build());
+        var error = assertThrows(CompletionException.class, () -> engine.sync(device).join());
+        assertEquals("Operation timed out", error.getCause().getMessage());
+        assertEquals(resets, peripheral.resets);
+
+        // Link back: the delta still applies
+        peripheral.linkFailure = null;
+        var result = engine.sync(device).join();
+        assertFalse(result.fullResend());
+        assertEquals(device.getConfiguration(), peripheral.stored);
+    }
+}
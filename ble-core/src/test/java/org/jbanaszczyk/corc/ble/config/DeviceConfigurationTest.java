@@ -0,0 +1,90 @@
+package org.jbanaszczyk.corc.ble.config;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceConfigurationTest {
+
+    @Test
+    public void testTypedValuesRoundTrip() {
+        var configuration = DeviceConfiguration.builder()
+                .putInt(10, -7)
+                .putLong(2, 0x1234_5678_9ABC_DEF0L)
+                .putBoolean(300, true)
+                .putString(4, "zażółć")
+                .putBytes(5, new byte[]{1, 2, 3})
+                .build();
+
+        var decoded = DeviceConfiguration.fromBytes(configuration.toByteArray());
+
+        assertEquals(configuration, decoded);
+        assertArrayEquals(new int[]{2, 4, 5, 10, 300}, decoded.keys());
+        assertEquals(-7, decoded.getInt(10, 0));
+        assertEquals(0x1234_5678_9ABC_DEF0L, decoded.getLong(2, 0));
+        assertTrue(decoded.getBoolean(300, false));
+        assertEquals("zażółć", decoded.getString(4));
+        assertSame(decoded.getString(4), decoded.getString(4));
+        assertArrayEquals(new byte[]{1, 2, 3}, decoded.getBytes(5));
+        assertEquals(99, decoded.getInt(11, 99));
+        assertNull(decoded.getString(11));
+    }
+
+    @Test
+    public void testTypeMismatchIsRejected() {
+        var configuration = DeviceConfiguration.builder().putInt(1, 5).build();
+        assertEquals(DeviceConfiguration.Type.INT, configuration.typeOf(1));
+        assertThrows(IllegalArgumentException.class, () -> configuration.getString(1));
+    }
+
+    @Test
+    public void testEditKeepsOtherEntries() {
+        var original = DeviceConfiguration.builder().putInt(1, 5).putString(2, "x").build();
+        var edited = original.edit().putInt(1, 6).remove(2).putBoolean(3, false).build();
+
+        assertEquals(6, edited.getInt(1, 0));
+        assertFalse(edited.contains(2));
+        assertFalse(edited.getBoolean(3, true));
+        assertEquals(5, original.getInt(1, 0));
+    }
+
+    @Test
+    public void testLegacyJsonAndEmpty() {
+        assertSame(DeviceConfiguration.EMPTY, DeviceConfiguration.fromLegacyJson(""));
+        assertSame(DeviceConfiguration.EMPTY, DeviceConfiguration.fromBytes(null));
+        assertEquals("{\"a\":1}", DeviceConfiguration.fromLegacyJson("{\"a\":1}").getLegacyJson());
+    }
+
+    @Test
+    public void testMalformedBytesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> DeviceConfiguration.fromBytes(new byte[]{1, 2, 3, 4, 5}));
+
+        byte[] truncated = DeviceConfiguration.builder().putString(1, "value").build().toByteArray();
+        byte[] cut = Arrays.copyOf(truncated, truncated.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> DeviceConfiguration.fromBytes(cut));
+    }
+
+    @Test
+    public void testSmallerThanEquivalentJson() {
+        var builder = DeviceConfiguration.builder();
+        var json = new StringBuilder("{\"buttons\":[");
+        for (int i = 0; i < 16; i++) {
+            builder.putInt(0x100 + i, 1000 + i);
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"action\":").append(1000 + i).append('}');
+        }
+        json.append("]}");
+
+        int binary = builder.build().byteSize();
+        int text = json.toString().getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(binary + " < " + text, binary < text);
+    }
+}
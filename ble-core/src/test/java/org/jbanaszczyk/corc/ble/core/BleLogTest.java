@@ -0,0 +1,111 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BleLogTest {
+
+    private static final String TAG = "CORC:Test";
+
+    private final List<String> logged = new ArrayList<>();
+
+    private static final class Counted {
+        int formatted;
+
+        @Override
+        public String toString() {
+            formatted++;
+            return "counted";
+        }
+    }
+
+    @After
+    public void tearDown() {
+        BleLog.setSink(null);
+        BleLog.setMinLevel(BleLog.Level.DEBUG);
+        BleLog.setEventRing(0, BleLog.Level.DEBUG);
+    }
+
+    private void installSink() {
+        BleLog.setSink((level, tag, message, throwable) -> logged.add(level + " " + message));
+    }
+
+    @Test
+    public void testParametersAreFormattedIntoPlaceholders() {
+        installSink();
+
+        BleLog.d(TAG, "{} of {}", "a", 2L);
+        BleLog.d(TAG, "magic 0x{x}, opcode {}", 0x2CC0, (byte) -1);
+        BleLog.w(TAG, "{} {}, {} and {}", "x", "y", "z");
+        BleLog.i(TAG, "missing {} and {}", "one");
+        BleLog.e(TAG, "no placeholder", "ignored");
+        BleLog.d(TAG, "{ literal } {}", 1);
+
+        assertEquals(List.of(
+                "DEBUG a of 2",
+                "DEBUG magic 0x2CC0, opcode -1",
+                "WARN x y, z and {}",
+                "INFO missing one and {}",
+                "ERROR no placeholder",
+                "DEBUG { literal } 1"), logged);
+    }
+
+    @Test
+    public void testSuppressedMessagesAreNotFormatted() {
+        installSink();
+        BleLog.setMinLevel(BleLog.Level.WARN);
+        var argument = new Counted();
+
+        BleLog.d(TAG, "value {}", argument);
+        BleLog.i(TAG, "value {}", argument);
+        BleLog.w(TAG, "value {}", argument);
+
+        assertEquals(1, argument.formatted);
+        assertEquals(List.of("WARN value counted"), logged);
+        assertFalse(BleLog.isLoggable(BleLog.Level.INFO));
+        assertTrue(BleLog.isLoggable(BleLog.Level.ERROR));
+    }
+
+    @Test
+    public void testEventRingKeepsLastEventsUnformatted() throws IOException {
+        installSink();
+        BleLog.setMinLevel(BleLog.Level.ERROR);
+        BleLog.setEventRing(4, BleLog.Level.DEBUG);
+        var argument = new Counted();
+
+        for (int i = 0; i < 6; i++) {
+            BleLog.d(TAG, "event {} {}", "immutable", i);
+        }
+        BleLog.w(TAG, "mutable {}", argument);
+        assertEquals(0, argument.formatted);
+        assertTrue(logged.isEmpty());
+
+        var dump = new StringBuilder();
+        BleLog.dumpEvents(dump);
+        String[] lines = dump.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" D CORC:Test: event immutable 3"));
+        assertTrue(lines[2], lines[2].endsWith(" D CORC:Test: event immutable 5"));
+        // Recorded as class and identity, never formatted: its state at dump time says nothing about log time
+        assertTrue(lines[3], lines[3].endsWith(" W CORC:Test: mutable Counted@" + Integer.toHexString(System.identityHashCode(argument))));
+        assertEquals(0, argument.formatted);
+    }
+
+    @Test
+    public void testWithoutSinkOrRingNothingIsLoggable() {
+        assertFalse(BleLog.isLoggable(BleLog.Level.ERROR));
+
+        BleLog.setEventRing(8, BleLog.Level.WARN);
+
+        assertFalse(BleLog.isLoggable(BleLog.Level.INFO));
+        assertTrue(BleLog.isLoggable(BleLog.Level.WARN));
+    }
+}
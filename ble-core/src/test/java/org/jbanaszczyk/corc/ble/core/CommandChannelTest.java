@@ -0,0 +1,96 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.CommandOutbox;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.sim.LinkProfile;
+import org.jbanaszczyk.corc.ble.sim.SimulatedCentral;
+import org.jbanaszczyk.corc.ble.sim.SimulatedPeripheral;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CommandChannelTest {
+
+    private static final BleDeviceAddress FIRST = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final BleDeviceAddress SECOND = new BleDeviceAddress("AA:BB:CC:DD:EE:02");
+    private static final LinkProfile LINK = LinkProfile.DEFAULT.withConnectionInterval(10).withPacketLatency(1);
+    private static final long SLOW_ANSWER_MILLIS = 200;
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final SimulatedCentral central = new SimulatedCentral(scheduler);
+
+    private BleDevice connectSlow(BleDeviceAddress address) {
+        SimulatedPeripheral peripheral = central.newPeripheral(address, LINK);
+        peripheral.setVersion(2, 5, 1);
+        peripheral.setResponseDelay(SLOW_ANSWER_MILLIS);
+        var device = central.connect(peripheral);
+        scheduler.runUntilIdle();
+        return device.join();
+    }
+
+    @Test
+    public void testReplayAlongsideTheDeviceInfoQueriesCompletes() {
+        var device = connectSlow(FIRST);
+        boolean[] ready = {false};
+        var outbox = new CommandOutbox(central::sendCommand, d -> ready[0], scheduler);
+        var replayed = outbox.submit(device, BleOpcode.PING, new byte[]{7});
+
+        // What BleGattClient.onServicesDiscovered and the READY listener start at the same time
+        ready[0] = true;
+        var dataMaxLen = central.sendCommand(device, BleOpcode.VERSION, null)
+                .thenCompose(version -> central.sendCommand(device, BleOpcode.GET_DATA_MAX_LEN, null));
+        outbox.drain(device);
+        scheduler.runUntilIdle();
+
+        assertArrayEquals(new byte[]{7}, replayed.join());
+        assertArrayEquals(new byte[]{(byte) 0xFF}, dataMaxLen.join());
+    }
+
+    @Test
+    public void testCommandsOfDevicesWaitingAtOnceAllComplete() {
+        var first = connectSlow(FIRST);
+        var second = connectSlow(SECOND);
+
+        var firstVersion = central.sendCommand(first, BleOpcode.VERSION, null);
+        var secondPing = central.sendCommand(second, BleOpcode.PING, new byte[]{1});
+        var firstPing = central.sendCommand(first, BleOpcode.PING, new byte[]{2});
+        scheduler.runUntilIdle();
+
+        assertArrayEquals(new byte[]{2, 5, 1}, firstVersion.join());
+        assertArrayEquals(new byte[]{1}, secondPing.join());
+        assertArrayEquals(new byte[]{2}, firstPing.join());
+    }
+
+    @Test
+    public void testUnansweredCommandTimesOut() {
+        SimulatedPeripheral peripheral = central.newPeripheral(FIRST, LINK);
+        var device = central.connect(peripheral);
+        scheduler.runUntilIdle();
+        peripheral.setResponseDelay(CommandChannel.DEFAULT_RESPONSE_TIMEOUT_MILLIS + SLOW_ANSWER_MILLIS);
+
+        CompletableFuture<byte[]> late = central.sendCommand(device.join(), BleOpcode.PING, new byte[]{1});
+        scheduler.advanceBy(CommandChannel.DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+        assertFalse(late.isDone());
+        scheduler.runUntilIdle();
+
+        var error = assertThrows(CompletionException.class, late::join);
+        assertTrue(error.getCause() instanceof TimeoutException);
+
+        // The late answer is dropped, the next command gets its own
+        peripheral.setResponseDelay(0);
+        var next = central.sendCommand(device.join(), BleOpcode.PING, new byte[]{2});
+        scheduler.runUntilIdle();
+        assertArrayEquals(new byte[]{2}, next.join());
+        assertEquals(0, scheduler.pending());
+    }
+}
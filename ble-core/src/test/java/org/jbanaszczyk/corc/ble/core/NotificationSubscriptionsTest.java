@@ -0,0 +1,105 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationSubscriptionsTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID RSP = UUID.fromString("B13A1002-9F2A-4F3B-9C8E-A7D4E3C8B125");
+    private static final UUID SENSOR = UUID.fromString("B13A1003-9F2A-4F3B-9C8E-A7D4E3C8B125");
+
+    // Completes writes only when told to, like the operation queue
+    private final List<String> writes = new ArrayList<>();
+    private final List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+    private final NotificationSubscriptions subscriptions = new NotificationSubscriptions((address, uuid, enable) -> {
+        writes.add((uuid.equals(RSP) ? "rsp" : "sensor") + (enable ? "+" : "-"));
+        var future = new CompletableFuture<Void>();
+        inFlight.add(future);
+        return future;
+    });
+
+    private void completeWrites() {
+        while (!inFlight.isEmpty()) {
+            inFlight.remove(0).complete(null);
+        }
+    }
+
+    @Test
+    public void testOnlyFirstSubscribeAndLastUnsubscribeWriteDescriptor() {
+        subscriptions.onConnected(ADDRESS);
+
+        subscriptions.subscribe(ADDRESS, SENSOR);
+        subscriptions.subscribe(ADDRESS, SENSOR);
+        completeWrites();
+        subscriptions.unsubscribe(ADDRESS, SENSOR);
+        completeWrites();
+
+        assertEquals(List.of("sensor+"), writes);
+        assertTrue(subscriptions.isEnabled(ADDRESS, SENSOR));
+
+        subscriptions.unsubscribe(ADDRESS, SENSOR);
+        completeWrites();
+
+        assertEquals(List.of("sensor+", "sensor-"), writes);
+        assertFalse(subscriptions.isEnabled(ADDRESS, SENSOR));
+    }
+
+    @Test
+    public void testSubscriptionsAreRestoredOnReconnect() {
+        subscriptions.pin(RSP);
+        subscriptions.subscribe(ADDRESS, SENSOR);
+        assertTrue(writes.isEmpty());
+
+        var restored = subscriptions.onConnected(ADDRESS);
+        completeWrites();
+        assertTrue(restored.isDone());
+        assertEquals(2, writes.size());
+
+        subscriptions.onDisconnected(ADDRESS);
+        assertFalse(subscriptions.isEnabled(ADDRESS, SENSOR));
+        subscriptions.onConnected(ADDRESS);
+        completeWrites();
+
+        assertEquals(4, subscriptions.descriptorWrites());
+        assertTrue(subscriptions.isEnabled(ADDRESS, RSP));
+        assertTrue(subscriptions.isEnabled(ADDRESS, SENSOR));
+    }
+
+    @Test
+    public void testQuickSubscribeUnsubscribeEndsDisabled() {
+        subscriptions.onConnected(ADDRESS);
+
+        subscriptions.subscribe(ADDRESS, SENSOR);
+        subscriptions.unsubscribe(ADDRESS, SENSOR);
+        completeWrites();
+        completeWrites();
+
+        assertEquals(List.of("sensor+", "sensor-"), writes);
+        assertFalse(subscriptions.isEnabled(ADDRESS, SENSOR));
+        assertEquals(0, subscriptions.subscribers(ADDRESS, SENSOR));
+    }
+
+    @Test
+    public void testPinnedCharacteristicSurvivesUnsubscribe() {
+        subscriptions.pin(RSP);
+        subscriptions.onConnected(ADDRESS);
+        completeWrites();
+
+        subscriptions.subscribe(ADDRESS, RSP);
+        subscriptions.unsubscribe(ADDRESS, RSP);
+        completeWrites();
+
+        assertEquals(List.of("rsp+"), writes);
+        assertTrue(subscriptions.isEnabled(ADDRESS, RSP));
+    }
+}
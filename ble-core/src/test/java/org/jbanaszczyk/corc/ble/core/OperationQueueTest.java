@@ -0,0 +1,135 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class OperationQueueTest {
+
+    private static final UUID FIRST = UUID.fromString("0000aaaa-0000-1000-8000-00805f9b34fb");
+    private static final UUID SECOND = UUID.fromString("0000bbbb-0000-1000-8000-00805f9b34fb");
+
+    private static final class ManualScheduler implements Scheduler {
+        final List<Runnable> delayed = new ArrayList<>();
+
+        @Override
+        public void post(Runnable task) { task.run(); }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) { delayed.add(task); }
+
+        @Override
+        public void removeCallbacks(Runnable task) { delayed.remove(task); }
+
+        void runDelayed() {
+            List<Runnable> due = new ArrayList<>(delayed);
+            delayed.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+
+    private static final class FakeConnection implements GattConnection {
+        final BleDeviceAddress address;
+        int disconnects;
+
+        FakeConnection(String mac) {
+            this.address = new BleDeviceAddress(mac);
+        }
+
+        @NonNull
+        @Override
+        public BleDeviceAddress address() { return address; }
+
+        @Override
+        public void disconnect() { disconnects++; }
+    }
+
+    // Records what would have been sent to the stack; the test plays the GATT callbacks
+    private static final class RecordingExecutor implements OperationExecutor {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+            calls.add(operation.getType() + "#" + operation.getStep());
+        }
+
+        @Override
+        public void abort(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+            calls.add("ABORT");
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final RecordingExecutor executor = new RecordingExecutor();
+    private final FakeConnection connection = new FakeConnection("AA:BB:CC:DD:EE:01");
+    private final OperationQueue queue = new OperationQueue(scheduler, () -> 1000);
+
+    @Test
+    public void testOperationsRunOneAtATimeInOrder() {
+        CompletableFuture<byte[]> read = queue.enqueue(BleOperation.read(connection.address, FIRST), connection, executor);
+        CompletableFuture<Void> write = queue.enqueue(BleOperation.write(connection.address, SECOND, new byte[]{1}), connection, executor);
+
+        assertEquals(List.of("READ#0"), executor.calls);
+        assertEquals(2, queue.depth(connection.address));
+
+        queue.onOperationFinished(new byte[]{9});
+        assertEquals(9, read.join()[0]);
+        assertEquals(List.of("READ#0", "WRITE#0"), executor.calls);
+
+        queue.onOperationFinished(null);
+        assertTrue(write.isDone());
+        assertEquals(0, queue.depth(connection.address));
+        assertTrue(scheduler.delayed.isEmpty());
+    }
+
+    @Test
+    public void testReliableWriteAdvancesOneStepPerCallback() {
+        var parts = List.of(new BleOperation.WritePart(FIRST, new byte[]{1}), new BleOperation.WritePart(SECOND, new byte[]{2}));
+        CompletableFuture<Void> future = queue.enqueue(BleOperation.reliableWrite(connection.address, parts), connection, executor);
+
+        // One write callback per part, then the execute callback
+        queue.onStepFinished(null);
+        queue.onStepFinished(null);
+        assertFalse(future.isDone());
+        queue.onStepFinished(null);
+
+        assertTrue(future.isDone());
+        assertEquals(List.of("RELIABLE_WRITE#0", "RELIABLE_WRITE#1", "RELIABLE_WRITE#2"), executor.calls);
+    }
+
+    @Test
+    public void testFailureAbortsAndStartsNext() {
+        var parts = List.of(new BleOperation.WritePart(FIRST, new byte[]{1}));
+        CompletableFuture<Void> future = queue.enqueue(BleOperation.reliableWrite(connection.address, parts), connection, executor);
+        queue.enqueue(BleOperation.read(connection.address, SECOND), connection, executor);
+
+        queue.onStepFinished(null);
+        queue.onOperationFailed(new IllegalStateException("write failed"));
+
+        assertThrows(CompletionException.class, future::join);
+        assertEquals(List.of("RELIABLE_WRITE#0", "RELIABLE_WRITE#1", "ABORT", "READ#0"), executor.calls);
+    }
+
+    @Test
+    public void testTimeoutFailsOperationAndDisconnects() {
+        CompletableFuture<byte[]> read = queue.enqueue(BleOperation.read(connection.address, FIRST), connection, executor);
+
+        scheduler.runDelayed();
+
+        assertThrows(CompletionException.class, read::join);
+        assertEquals(1, connection.disconnects);
+        assertEquals(0, queue.depth(connection.address));
+    }
+}
@@ -0,0 +1,119 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+public class VirtualTimeSchedulerTest {
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    public void testTasksRunByDueTimeThenPostOrder() {
+        scheduler.postDelayed(() -> ran.add("b@20"), 20);
+        scheduler.postDelayed(() -> ran.add("a@10"), 10);
+        scheduler.postDelayed(() -> {
+            ran.add("c@20");
+            scheduler.post(() -> ran.add("d@20"));
+        }, 20);
+
+        assertEquals(4, scheduler.runUntilIdle());
+        assertEquals(List.of("a@10", "b@20", "c@20", "d@20"), ran);
+        assertEquals(20, scheduler.now());
+    }
+
+    @Test
+    public void testAdvanceRunsOnlyDueTasks() {
+        Runnable cancelled = () -> ran.add("cancelled");
+        scheduler.postDelayed(() -> {
+            ran.add("first");
+            scheduler.postDelayed(() -> ran.add("chained"), 5);
+        }, 10);
+        scheduler.postDelayed(() -> ran.add("late"), 100);
+        scheduler.postDelayed(cancelled, 15);
+        scheduler.removeCallbacks(cancelled);
+
+        assertEquals(2, scheduler.advanceBy(50));
+        assertEquals(List.of("first", "chained"), ran);
+        assertEquals(50, scheduler.now());
+        assertEquals(100, scheduler.nextDueMillis());
+        assertThrows(IllegalArgumentException.class, () -> scheduler.advanceBy(-1));
+    }
+
+    @Test
+    public void testTraceRecordsVirtualTimestamps() {
+        scheduler.setTracing(true);
+        Runnable task = () -> { };
+        scheduler.advanceBy(7);
+        scheduler.postDelayed(task, 30);
+        scheduler.runUntilIdle();
+
+        var execution = scheduler.trace().get(0);
+        assertEquals(7, execution.postedMillis());
+        assertEquals(37, execution.ranMillis());
+        assertEquals(30, execution.delayMillis());
+        assertEquals(task, execution.task());
+    }
+
+    @Test
+    public void testEndlessReschedulingIsReported() {
+        Runnable tick = new Runnable() {
+            @Override
+            public void run() {
+                scheduler.postDelayed(this, 1_000);
+            }
+        };
+        scheduler.post(tick);
+
+        assertThrows(IllegalStateException.class, () -> scheduler.runUntilIdle(1_000));
+        assertEquals(999_000, scheduler.now());
+    }
+
+    @Test
+    public void testHourOfQueueTrafficWithTimeouts() {
+        var queue = new OperationQueue(scheduler, () -> 2_000);
+        var connection = new GattConnection() {
+            int disconnects;
+
+            @NonNull
+            @Override
+            public BleDeviceAddress address() { return new BleDeviceAddress("AA:BB:CC:DD:EE:01"); }
+
+            @Override
+            public void disconnect() { disconnects++; }
+        };
+        var executed = new AtomicInteger();
+        // Every 100th operation never gets its GATT callback, the others take 20 ms
+        OperationExecutor executor = (conn, operation) -> {
+            if (executed.incrementAndGet() % 100 != 0) {
+                scheduler.postDelayed(() -> queue.onOperationFinished(null), 20);
+            }
+        };
+        var failed = new AtomicInteger();
+        var uuid = UUID.randomUUID();
+        for (int i = 0; i < 10_000; i++) {
+            queue.enqueue(BleOperation.read(connection.address(), uuid), connection, executor)
+                    .exceptionally(t -> {
+                        failed.incrementAndGet();
+                        return null;
+                    });
+            scheduler.runUntilIdle();
+        }
+
+        assertEquals(100, failed.get());
+        assertEquals(100, connection.disconnects);
+        assertEquals(9_900 * 20 + 100 * 2_000, scheduler.now());
+        assertFalse(scheduler.runNextTask());
+    }
+}
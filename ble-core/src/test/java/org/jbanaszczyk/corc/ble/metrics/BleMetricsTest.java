@@ -0,0 +1,108 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.BleOperation.BleOperationType;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.sim.LinkProfile;
+import org.jbanaszczyk.corc.ble.sim.SimulatedCentral;
+import org.jbanaszczyk.corc.ble.sim.SimulatedPeripheral;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class BleMetricsTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID DATA = UUID.fromString("0000aaaa-0000-1000-8000-00805f9b34fb");
+    private static final LinkProfile LINK = LinkProfile.DEFAULT.withConnectionInterval(10).withPacketLatency(1);
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final BleMetrics metrics = new BleMetrics(() -> scheduler.now() * 1_000_000);
+
+    private BleDevice connect(SimulatedCentral central, SimulatedPeripheral peripheral, int mtu) {
+        central.setMetrics(metrics);
+        var device = central.connect(peripheral, mtu);
+        scheduler.runUntilIdle();
+        return device.join();
+    }
+
+    @Test
+    public void testCommandRoundTripAndExecution() {
+        var central = new SimulatedCentral(scheduler);
+        var device = connect(central, central.newPeripheral(ADDRESS, LINK), SimulatedCentral.DEFAULT_MTU);
+
+        var ping = central.sendCommand(device, BleOpcode.PING, new byte[]{1});
+        scheduler.runUntilIdle();
+        ping.join();
+
+        var stats = metrics.snapshot().devices().get(0);
+        assertEquals(ADDRESS, stats.address());
+        assertEquals(0, stats.pending());
+        var command = stats.commands().get(Byte.toUnsignedInt(BleOpcode.PING));
+        assertEquals(1, command.completed());
+        // Write at event 4, RSP notification at event 5, see SimulatedPeripheralTest
+        assertEquals(20_000, command.roundTripMicros().max());
+        var write = stats.operations().get(BleOperationType.WRITE);
+        assertEquals(1, write.completed());
+        assertEquals(0, write.queueWaitMicros().max());
+        assertTrue(write.executionMicros().max() <= command.roundTripMicros().max());
+        assertEquals(1, stats.operations().get(BleOperationType.REQUEST_MTU).completed());
+        assertEquals(1, stats.operations().get(BleOperationType.ENABLE_NOTIFY).completed());
+    }
+
+    @Test
+    public void testQueueWaitAndDepth() {
+        var central = new SimulatedCentral(scheduler);
+        var device = connect(central, central.newPeripheral(ADDRESS, LINK), SimulatedCentral.DEFAULT_MTU);
+
+        for (int i = 0; i < 3; i++) {
+            central.enqueue(device, BleOperation.read(ADDRESS, DATA));
+        }
+        assertEquals(3, metrics.snapshot().devices().get(0).pending());
+        scheduler.runUntilIdle();
+
+        var snapshot = metrics.snapshot();
+        var reads = snapshot.devices().get(0).operations().get(BleOperationType.READ);
+        assertEquals(3, reads.completed());
+        assertEquals(3, reads.queueWaitMicros().count());
+        // The last read waits for both before it
+        assertEquals(2 * reads.executionMicros().max(), reads.queueWaitMicros().max());
+        assertEquals(3, snapshot.maxDepth());
+        assertEquals(3, snapshot.devices().get(0).maxPending());
+        var history = snapshot.depthHistory();
+        assertEquals(0, history.get(history.size() - 1).depth());
+        assertEquals(scheduler.now(), history.get(history.size() - 1).elapsedMillis());
+    }
+
+    @Test
+    public void testTimeoutsAndClearsAreCounted() {
+        var central = new SimulatedCentral(scheduler, 1_000);
+        var device = connect(central, central.newPeripheral(ADDRESS, LINK.withConnectionInterval(100)), GattConnection.MIN_MTU);
+
+        // A long write needs 14 connection events, more than the timeout; the timeout drops the link,
+        // which clears the read still waiting behind it
+        var write = central.enqueue(device, BleOperation.write(ADDRESS, DATA, new byte[100]));
+        var read = central.enqueue(device, BleOperation.read(ADDRESS, DATA));
+        scheduler.runUntilIdle();
+
+        assertThrows(CompletionException.class, write::join);
+        assertThrows(CompletionException.class, read::join);
+        var stats = metrics.snapshot().devices().get(0);
+        assertEquals(1, stats.operations().get(BleOperationType.WRITE).timedOut());
+        assertEquals(0, stats.operations().get(BleOperationType.WRITE).executionMicros().count());
+        assertEquals(1, stats.operations().get(BleOperationType.READ).cleared());
+        assertEquals(0, stats.pending());
+
+        metrics.reset();
+        assertTrue(metrics.snapshot().devices().isEmpty());
+    }
+}
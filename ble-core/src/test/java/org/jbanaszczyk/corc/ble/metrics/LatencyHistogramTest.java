@@ -0,0 +1,81 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguousAndNarrow() {
+        assertEquals(0, LatencyHistogram.lowerBound(0));
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long lower = LatencyHistogram.lowerBound(bucket);
+            assertEquals(LatencyHistogram.upperBound(bucket - 1) + 1, lower);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBound(bucket)));
+            assertTrue(LatencyHistogram.upperBound(bucket) - lower <= lower / 8);
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        var histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1_000; value++) {
+            histogram.record(value);
+        }
+
+        var snapshot = histogram.snapshot();
+        assertEquals(1_000, snapshot.count());
+        assertEquals(1_000, snapshot.max());
+        assertEquals(500.5, snapshot.mean(), 0.0);
+        assertWithin(500, snapshot.p50());
+        assertWithin(900, snapshot.p90());
+        assertWithin(990, snapshot.p99());
+    }
+
+    @Test
+    public void testOutliersAndReset() {
+        var histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.snapshot().p50());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.snapshot().p99());
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().max());
+
+        histogram.reset();
+        assertEquals(LatencyHistogram.Snapshot.EMPTY, histogram.snapshot());
+    }
+
+    @Test
+    public void testConcurrentRecordsAreNotLost() throws InterruptedException {
+        var histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.snapshot().count());
+        assertEquals(4L * 9_999 * 10_000 / 2, histogram.snapshot().sum());
+        assertEquals(9_999, histogram.snapshot().max());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
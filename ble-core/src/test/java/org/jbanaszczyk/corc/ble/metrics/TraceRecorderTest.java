@@ -0,0 +1,136 @@
+package org.jbanaszczyk.corc.ble.metrics;
+
+import androidx.annotation.NonNull;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.sim.LinkProfile;
+import org.jbanaszczyk.corc.ble.sim.SimulatedCentral;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final TraceRecorder tracer = new TraceRecorder(16, () -> scheduler.now() * 1_000_000);
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        tracer.begin(TraceRecorder.Span.CONNECT, ADDRESS);
+        tracer.record(TraceRecorder.Span.SETUP, ADDRESS, 0, 0, 0, 10);
+        tracer.setEnabled(true);
+        tracer.end(TraceRecorder.Span.CONNECT, ADDRESS, 0);
+
+        assertEquals(0, tracer.recorded());
+    }
+
+    @Test
+    public void testExportsQueueAndCommandSpansPerDevice() throws IOException {
+        var central = new SimulatedCentral(scheduler);
+        central.setTracer(tracer);
+        tracer.setEnabled(true);
+        var connecting = central.connect(central.newPeripheral(ADDRESS, LinkProfile.DEFAULT.withConnectionInterval(10).withPacketLatency(1)));
+        scheduler.runUntilIdle();
+        central.sendCommand(connecting.join(), BleOpcode.PING, new byte[]{1});
+        scheduler.runUntilIdle();
+
+        String json = export();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json.contains("\"tid\":1,\"name\":\"thread_name\",\"args\":{\"name\":\"AA:BB:CC:DD:EE:01\"}"));
+        assertTrue(json.contains("\"name\":\"REQUEST_MTU\""));
+        assertTrue(json.contains("\"name\":\"ENABLE_NOTIFY\""));
+        // See SimulatedPeripheralTest: sent at 31 ms, answered at 51 ms
+        assertTrue(json.contains("\"cat\":\"command\",\"name\":\"CMD 0x01\",\"ts\":31000.000,\"dur\":20000.000,\"args\":{\"status\":\"OK\"}"));
+    }
+
+    @Test
+    public void testRingKeepsNewestSpans() throws IOException {
+        tracer.setEnabled(true);
+        for (int i = 0; i < 20; i++) {
+            tracer.record(TraceRecorder.Span.COMMAND, ADDRESS, i, 0, i * 1_000L, i * 1_000L + 500);
+        }
+
+        String json = export();
+        assertEquals(20, tracer.recorded());
+        assertFalse(json.contains("\"CMD 0x03\""));
+        assertTrue(json.contains("\"CMD 0x04\""));
+        assertTrue(json.contains("\"CMD 0x13\",\"ts\":19.000,\"dur\":0.500"));
+    }
+
+    @Test
+    public void testOpenSpansAreMirrored() {
+        List<String> mirrored = new ArrayList<>();
+        tracer.setMirror(new TraceRecorder.Mirror() {
+            @Override
+            public void begin(@NonNull String name, int cookie) {
+                mirrored.add("begin " + name + " " + cookie);
+            }
+
+            @Override
+            public void end(@NonNull String name, int cookie) {
+                mirrored.add("end " + name + " " + cookie);
+            }
+        });
+        tracer.setEnabled(true);
+
+        tracer.begin(TraceRecorder.Span.CONNECT, ADDRESS);
+        scheduler.advanceBy(40);
+        tracer.end(TraceRecorder.Span.DISCOVERY, ADDRESS, 0);
+        tracer.endAll(ADDRESS, 133);
+
+        assertEquals(1, tracer.recorded());
+        assertEquals(2, mirrored.size());
+        assertEquals(mirrored.get(0).replace("begin", "end"), mirrored.get(1));
+        assertTrue(mirrored.get(0).startsWith("begin connectGatt "));
+    }
+
+    @Test
+    public void testExportWhileRecordingSkipsTornSpans() throws Exception {
+        tracer.setEnabled(true);
+        // Operations and commands alternate in every slot; a torn slot would mix an opcode or a GATT status
+        // into an OPERATION span
+        var stop = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            var writer = new Thread(() -> {
+                for (long i = 0; !stop.get(); i++) {
+                    if ((i & 1) == 0) {
+                        tracer.record(TraceRecorder.Span.OPERATION, ADDRESS, 0, 0, i, i + 1);
+                    } else {
+                        tracer.record(TraceRecorder.Span.COMMAND, ADDRESS, 0xFF, 133, i, i + 1);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                assertTrue(export().endsWith("\n]}\n"));
+            }
+        } finally {
+            stop.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    private String export() throws IOException {
+        var out = new StringWriter();
+        tracer.writeChromeTrace(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class SessionRecorderTest {
+
+    private static final BleDeviceAddress DEVICE = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID CHAR_UUID = UUID.fromString("B13A1003-9F2A-4F3B-9C8E-A7D4E3C8B125");
+
+    private final AtomicLong nanos = new AtomicLong(5_000_000_000L);
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("session");
+        file = dir.resolve("gatt.session");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.delete(dir);
+    }
+
+    private SessionRecorder open() throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        return new SessionRecorder(channel, nanos::get, 1_700_000_000_000L);
+    }
+
+    @Test
+    public void testRoundTripKeepsEveryField() throws IOException {
+        var parts = List.of(new BleOperation.WritePart(CHAR_UUID, new byte[]{1, 2}),
+                new BleOperation.WritePart(CHAR_UUID, new byte[]{3}));
+        try (var recorder = open()) {
+            recorder.recordOperation(BleOperation.requestMtu(DEVICE, 263));
+            nanos.addAndGet(1_500_000);
+            recorder.recordCallback(SessionEvent.Kind.MTU_CHANGED, DEVICE, null, 0, 263, null);
+            recorder.recordOperation(BleOperation.reliableWrite(DEVICE, parts));
+            nanos.addAndGet(250_000);
+            recorder.recordCallback(SessionEvent.Kind.CHARACTERISTIC_READ, DEVICE, CHAR_UUID, 133, null, new byte[]{9});
+            recorder.recordCallback(SessionEvent.Kind.CONNECTION_STATE, DEVICE, null, 8, 0, null);
+        }
+
+        var session = SessionReader.read(file);
+
+        assertEquals(1_700_000_000_000L, session.startMillis());
+        var events = session.events();
+        assertEquals(5, events.size());
+
+        var mtu = events.get(0);
+        assertEquals(SessionEvent.Kind.OPERATION, mtu.kind());
+        assertEquals(BleOperation.BleOperationType.REQUEST_MTU, mtu.operationType());
+        assertEquals(263, mtu.number());
+        assertEquals(0, mtu.timeNanos());
+
+        var changed = events.get(1);
+        assertEquals(SessionEvent.Kind.MTU_CHANGED, changed.kind());
+        assertEquals(DEVICE, changed.address());
+        assertEquals(1_500_000, changed.timeNanos());
+        assertNull(changed.uuid());
+
+        var reliable = events.get(2).toOperation();
+        assertEquals(BleOperation.BleOperationType.RELIABLE_WRITE, reliable.getType());
+        assertEquals(2, reliable.getParts().size());
+        assertArrayEquals(new byte[]{1, 2}, reliable.getParts().get(0).value());
+        assertEquals(CHAR_UUID, reliable.getParts().get(1).characteristicUuid());
+
+        var read = events.get(3);
+        assertEquals(1_750_000, read.timeNanos());
+        assertEquals(CHAR_UUID, read.uuid());
+        assertEquals(133, read.status());
+        assertArrayEquals(new byte[]{9}, read.value());
+
+        var state = events.get(4);
+        assertEquals(8, state.status());
+        assertEquals(0, state.number());
+    }
+
+    @Test
+    public void testEventsBeyondOneBufferAreWritten() throws IOException {
+        int count = 2 * SessionRecorder.BUFFER_SIZE / 20;
+        try (var recorder = open()) {
+            for (int i = 0; i < count; i++) {
+                nanos.addAndGet(7_500_000);
+                recorder.recordCallback(SessionEvent.Kind.CHARACTERISTIC_CHANGED, DEVICE, CHAR_UUID, null, null,
+                        new byte[]{(byte) i, 0, 0, 0});
+            }
+            // and one value larger than the buffer itself
+            recorder.recordOperation(BleOperation.write(DEVICE, CHAR_UUID, new byte[SessionRecorder.BUFFER_SIZE + 1]));
+            assertEquals(count + 1, recorder.events());
+        }
+
+        var events = SessionReader.read(file).events();
+
+        assertEquals(count + 1, events.size());
+        assertEquals((byte) (count - 1), events.get(count - 1).value()[0]);
+        assertEquals(count * 7_500_000L, events.get(count - 1).timeNanos());
+        assertEquals(SessionRecorder.BUFFER_SIZE + 1, events.get(count).value().length);
+    }
+
+    @Test
+    public void testTruncatedRecordEndsTheSession() throws IOException {
+        try (var recorder = open()) {
+            recorder.recordOperation(BleOperation.read(DEVICE, CHAR_UUID));
+            recorder.recordCallback(SessionEvent.Kind.CHARACTERISTIC_READ, DEVICE, CHAR_UUID, 0, null, new byte[]{1, 2, 3});
+        }
+        try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertEquals(1, SessionReader.read(file).events().size());
+    }
+
+    @Test
+    public void testForeignFileIsRejected() throws IOException {
+        Files.write(file, new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+
+        assertThrows(IOException.class, () -> SessionReader.read(file));
+    }
+}
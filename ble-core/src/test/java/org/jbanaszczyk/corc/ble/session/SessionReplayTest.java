@@ -0,0 +1,90 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.sim.SimulatedPeripheral;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionReplayTest {
+
+    private static final BleDeviceAddress DEVICE = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID DATA_UUID = UUID.fromString("B13A1003-9F2A-4F3B-9C8E-A7D4E3C8B125");
+    private static final long MS = 1_000_000;
+
+    // Connection setup, one PING command with its response and one read, as BleGattClient records them
+    private static SessionReader.Session session() {
+        byte recordedRequestId = 7;
+        byte[] command = {(byte) 0xC0, 0x2C, recordedRequestId, BleOpcode.PING, 2, 1, 2};
+        byte[] response = {(byte) 0xC0, 0x2C, recordedRequestId, BleOpcode.PING, 0, 2, 1, 2};
+        return new SessionReader.Session(0, List.of(
+                operation(0, BleOperation.requestMtu(DEVICE, 263)),
+                SessionEvent.callback(30 * MS, SessionEvent.Kind.MTU_CHANGED, DEVICE, null, 0, 263, null),
+                operation(40 * MS, BleOperation.enableNotify(DEVICE, SimulatedPeripheral.RSP_CHAR_UUID)),
+                SessionEvent.callback(70 * MS, SessionEvent.Kind.DESCRIPTOR_WRITE, DEVICE, SimulatedPeripheral.RSP_CHAR_UUID, 0, 0, null),
+                operation(100 * MS, BleOperation.write(DEVICE, SimulatedPeripheral.CMD_CHAR_UUID, command)),
+                SessionEvent.callback(130 * MS, SessionEvent.Kind.CHARACTERISTIC_WRITE, DEVICE, SimulatedPeripheral.CMD_CHAR_UUID, 0, 0, null),
+                SessionEvent.callback(160 * MS, SessionEvent.Kind.CHARACTERISTIC_CHANGED, DEVICE, SimulatedPeripheral.RSP_CHAR_UUID, 0, 0, response),
+                operation(200 * MS, BleOperation.read(DEVICE, DATA_UUID)),
+                SessionEvent.callback(240 * MS, SessionEvent.Kind.CHARACTERISTIC_READ, DEVICE, DATA_UUID, 0, 0, new byte[]{42})));
+    }
+
+    private static SessionEvent operation(long timeNanos, BleOperation<?> operation) {
+        return new SessionEvent(timeNanos, SessionEvent.Kind.OPERATION, operation.getAddress(), operation.getType(),
+                operation.getCharacteristicUuid(), 0, operation.getMtu() != null ? operation.getMtu() : 0,
+                operation.getPayload(), operation.getParts());
+    }
+
+    @Test
+    public void testReplayAnswersEveryOperationAndCorrelatesTheCommand() {
+        var scheduler = new VirtualTimeScheduler();
+        var metrics = new BleMetrics(() -> scheduler.now() * 1_000_000);
+        var replay = new SessionReplay(session(), scheduler, 1, 5_000);
+        replay.setMetrics(metrics);
+
+        var result = replay.run();
+
+        assertEquals(4, result.operations());
+        assertEquals(4, result.completed());
+        assertEquals(0, result.failed());
+        assertEquals(1, result.commands());
+        assertEquals(0, result.commandsFailed());
+        assertEquals(1, result.notifications());
+        assertEquals(0, result.unmatchedSteps());
+        assertEquals(240, result.replayMillis());
+        var read = metrics.snapshot().devices().get(0).operations().get(BleOperation.BleOperationType.READ);
+        assertEquals(40_000, read.executionMicros().max());
+    }
+
+    @Test
+    public void testSpeedScalesTheTimeline() {
+        var scheduler = new VirtualTimeScheduler();
+
+        var result = new SessionReplay(session(), scheduler, 2, 5_000).run();
+
+        assertEquals(4, result.completed());
+        assertEquals(0, result.commandsFailed());
+        assertEquals(120, result.replayMillis());
+    }
+
+    @Test
+    public void testRecordedDisconnectFailsTheOperationInFlight() {
+        var scheduler = new VirtualTimeScheduler();
+        var session = new SessionReader.Session(0, List.of(
+                operation(0, BleOperation.read(DEVICE, DATA_UUID)),
+                SessionEvent.callback(50 * MS, SessionEvent.Kind.CONNECTION_STATE, DEVICE, null, 8, 0, null)));
+
+        var result = new SessionReplay(session, scheduler, 1, 5_000).run();
+
+        assertEquals(1, result.failed());
+        assertEquals(1, result.unmatchedSteps());
+        assertEquals(50, result.replayMillis());
+    }
+}
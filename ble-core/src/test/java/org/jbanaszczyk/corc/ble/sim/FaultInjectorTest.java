@@ -0,0 +1,175 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FaultInjectorTest {
+
+    private static final UUID DATA = UUID.fromString("0000aaaa-0000-1000-8000-00805f9b34fb");
+    private static final LinkProfile LINK = LinkProfile.DEFAULT.withConnectionInterval(15).withPacketLatency(1);
+    private static final int DEVICES = 2;
+    private static final long DURATION_MILLIS = 30_000;
+    private static final long READ_INTERVAL_MILLIS = 100;
+    private static final long RECONNECT_DELAY_MILLIS = 200;
+
+    private record Run(FaultInjector.Report report, int issued, int rejected) {
+    }
+
+    // Every device reads every 100 ms; a dropped link comes back after 200 ms, like a reconnect after a scan hit
+    private static Run run(FaultProfile profile, long operationTimeoutMillis) {
+        var scheduler = new VirtualTimeScheduler();
+        var central = new SimulatedCentral(scheduler, operationTimeoutMillis);
+        var faults = new FaultInjector(scheduler, scheduler::now, profile);
+        central.setFaults(faults);
+        List<SimulatedPeripheral> peripherals = new ArrayList<>();
+        List<BleDevice> devices = new ArrayList<>();
+        for (int i = 0; i < DEVICES; i++) {
+            var peripheral = central.newPeripheral(BleDeviceAddress.fromLong(0xC0_2C_00_00_00_10L + i), LINK);
+            peripheral.setValue(DATA, new byte[]{(byte) i});
+            peripherals.add(peripheral);
+            devices.add(central.registry().ensure(peripheral.address()));
+            central.connect(peripheral);
+        }
+        central.setDisconnectListener(address -> scheduler.postDelayed(() -> {
+            for (SimulatedPeripheral peripheral : peripherals) {
+                if (peripheral.address().equals(address)) central.connect(peripheral);
+            }
+        }, RECONNECT_DELAY_MILLIS));
+        int[] issued = {0};
+        int[] rejected = {0};
+        for (BleDevice device : devices) {
+            Runnable[] read = new Runnable[1];
+            read[0] = () -> {
+                if (scheduler.now() >= DURATION_MILLIS) return;
+                issued[0]++;
+                try {
+                    if (central.enqueue(device, BleOperation.read(device.getAddress(), DATA)) == null) rejected[0]++;
+                } catch (IllegalStateException queueFull) {
+                    rejected[0]++;
+                }
+                scheduler.postDelayed(read[0], READ_INTERVAL_MILLIS);
+            };
+            scheduler.postDelayed(read[0], READ_INTERVAL_MILLIS);
+        }
+        scheduler.runUntilIdle();
+        return new Run(faults.report(), issued[0], rejected[0]);
+    }
+
+    @Test
+    public void testNoFaultsLoseNothing() {
+        var run = run(FaultProfile.NONE, 1_000);
+        var report = run.report();
+
+        assertEquals(0, run.rejected());
+        assertEquals(0, report.lost());
+        assertEquals(0, report.recoveries());
+        // Plus MTU exchange and RSP subscription of every device
+        assertEquals(run.issued() + 2 * DEVICES, report.completed());
+    }
+
+    @Test
+    public void testDroppedCallbacksRecoverThroughTimeoutAndReconnect() {
+        var report = run(FaultProfile.NONE.withDrops(0.02), 1_000).report();
+
+        assertTrue(report.dropped() > 0);
+        assertTrue(report.lost() >= report.dropped());
+        assertTrue(report.recoveries() > 0);
+        assertEquals(0, report.unrecovered());
+        // The queue waits out the timeout, drops the link, and the device has to reconnect
+        assertTrue(report.meanRecoveryMillis() >= 1_000 + RECONNECT_DELAY_MILLIS);
+    }
+
+    @Test
+    public void testErrorStatusesRecoverWithTheNextOperation() {
+        var report = run(FaultProfile.NONE.withErrors(0.05, FaultProfile.GATT_ERROR), 1_000).report();
+
+        assertTrue(report.errors() > 0);
+        assertEquals(report.errors(), report.lost());
+        assertEquals(0, report.unrecovered());
+        assertTrue(report.maxRecoveryMillis() < 1_000);
+    }
+
+    @Test
+    public void testSpuriousDisconnectsLoseQueuedOperations() {
+        var run = run(FaultProfile.NONE.withDisconnects(0.01), 1_000);
+        var report = run.report();
+
+        assertTrue(report.disconnects() > 0);
+        assertTrue(report.lost() >= report.disconnects());
+        assertTrue(run.rejected() > 0);
+        assertEquals(0, report.unrecovered());
+        assertTrue(report.meanRecoveryMillis() >= RECONNECT_DELAY_MILLIS);
+    }
+
+    @Test
+    public void testCallbacksLateBeyondTheTimeoutAreStale() {
+        var report = run(FaultProfile.NONE.withDelays(0.05, 3_000), 1_000).report();
+
+        assertTrue(report.delayed() > 0);
+        assertTrue(report.stale() > 0);
+        assertTrue(report.lost() > 0);
+    }
+
+    @Test
+    public void testShorterTimeoutRecoversFasterFromDroppedCallbacks() {
+        var profile = FaultProfile.NONE.withDrops(0.02);
+
+        var shortTimeout = run(profile, 1_000).report();
+        var longTimeout = run(profile, 5_000).report();
+
+        assertTrue(shortTimeout.meanRecoveryMillis() < longTimeout.meanRecoveryMillis());
+        assertTrue(shortTimeout.completed() > longTimeout.completed());
+    }
+
+    @Test
+    public void testFaultsKeepTheMetricsObserver() {
+        var scheduler = new VirtualTimeScheduler();
+        var central = new SimulatedCentral(scheduler);
+        var metrics = new BleMetrics(() -> scheduler.now() * 1_000_000);
+        central.setMetrics(metrics);
+        var faults = new FaultInjector(scheduler, scheduler::now, FaultProfile.NONE);
+        central.setFaults(faults);
+        var peripheral = central.newPeripheral(new BleDeviceAddress("AA:BB:CC:DD:EE:01"), LINK);
+        peripheral.setValue(DATA, new byte[]{1});
+        var device = central.connect(peripheral);
+        scheduler.runUntilIdle();
+
+        central.enqueue(device.join(), BleOperation.read(peripheral.address(), DATA));
+        scheduler.runUntilIdle();
+
+        // MTU exchange, RSP subscription and the read, seen by both observers
+        assertEquals(3, faults.report().completed());
+        var operations = metrics.snapshot().devices().get(0).operations();
+        assertEquals(1, operations.get(BleOperation.BleOperationType.READ).completed());
+    }
+
+    @Test
+    public void testHeldNotificationFollowsTheNextOne() {
+        var scheduler = new VirtualTimeScheduler();
+        var faults = new FaultInjector(scheduler, scheduler::now, FaultProfile.NONE.withReordering(1.0, 50));
+        var address = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+        List<Byte> received = new ArrayList<>();
+        var listener = faults.notifications((device, uuid, value) -> received.add(value[0]));
+
+        listener.onNotification(address, DATA, new byte[]{1});
+        listener.onNotification(address, DATA, new byte[]{2});
+        listener.onNotification(address, DATA, new byte[]{3});
+        assertEquals(List.of((byte) 2, (byte) 1), received);
+
+        scheduler.advanceBy(50);
+
+        assertEquals(List.of((byte) 2, (byte) 1, (byte) 3), received);
+        assertEquals(2, faults.report().reordered());
+    }
+}
@@ -0,0 +1,45 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadScenarioTest {
+
+    @Test
+    public void testLightLoadCompletesEverything() {
+        var report = LoadScenario.run(LoadScenario.Config.builder().devices(1).duration(60_000).build());
+
+        for (LoadScenario.Kind kind : LoadScenario.Kind.values()) {
+            var ops = report.get(kind);
+            assertTrue(kind + " issued", ops.issued() > 0);
+            assertEquals(kind + " completed", ops.issued(), ops.completed());
+            assertTrue(ops.p50() <= ops.p95() && ops.p95() <= ops.p99() && ops.p99() <= ops.max());
+        }
+        // The RSP notification leaves in a later connection event than the command arrived in
+        assertTrue(report.get(LoadScenario.Kind.COMMAND).p50() >= LinkProfile.DEFAULT.connectionIntervalMillis());
+    }
+
+    @Test
+    public void testSameSeedGivesSameReport() {
+        var config = LoadScenario.Config.builder()
+                .devices(3)
+                .duration(20_000)
+                .link(LinkProfile.DEFAULT.withLossRate(0.1, 7))
+                .reconnectStorms(5_000, 50, 300)
+                .build();
+
+        assertEquals(LoadScenario.run(config).toJson(), LoadScenario.run(config).toJson());
+    }
+
+    @Test
+    public void testOverloadFillsTheQueue() {
+        var report = LoadScenario.run(LoadScenario.Config.builder().devices(8).meanInterval(200).duration(30_000).build());
+
+        assertEquals(OperationQueue.QUEUE_CAPACITY + 1, report.maxQueueDepth());
+        assertTrue(report.get(LoadScenario.Kind.READ).rejected() > 0);
+        assertTrue(report.toJson().contains("\"maxQueueDepth\": " + (OperationQueue.QUEUE_CAPACITY + 1)));
+    }
+}
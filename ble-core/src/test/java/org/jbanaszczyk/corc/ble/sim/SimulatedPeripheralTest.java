@@ -0,0 +1,181 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.core.protocol.BleRemoteException;
+import org.jbanaszczyk.corc.ble.core.protocol.BleResult;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatedPeripheralTest {
+
+    private static final BleDeviceAddress ADDRESS = new BleDeviceAddress("AA:BB:CC:DD:EE:01");
+    private static final UUID DATA = UUID.fromString("0000aaaa-0000-1000-8000-00805f9b34fb");
+    private static final LinkProfile LINK = LinkProfile.DEFAULT.withConnectionInterval(10).withPacketLatency(1);
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final SimulatedCentral central = new SimulatedCentral(scheduler);
+
+    private BleDevice connect(SimulatedPeripheral peripheral) {
+        return connect(peripheral, SimulatedCentral.DEFAULT_MTU);
+    }
+
+    private BleDevice connect(SimulatedPeripheral peripheral, int mtu) {
+        var device = central.connect(peripheral, mtu);
+        scheduler.runUntilIdle();
+        return device.join();
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        scheduler.runUntilIdle();
+        return future.join();
+    }
+
+    @Test
+    public void testCommandRoundTripFollowsConnectionEvents() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        var device = connect(peripheral);
+        // MTU exchange at events 0 and 1, CCCD write at events 2 and 3
+        assertEquals(31, scheduler.now());
+        assertEquals(247, peripheral.mtu());
+
+        byte[] echo = await(central.sendCommand(device, BleOpcode.PING, new byte[]{1, 2, 3}));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, echo);
+        // Write at event 4, write response and RSP notification share event 5
+        assertEquals(51, scheduler.now());
+        assertEquals(1, peripheral.stats().commands());
+    }
+
+    @Test
+    public void testFullEventsPushPacketsToTheNextEvent() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK.withMaxPacketsPerEvent(1));
+        var device = connect(peripheral);
+
+        await(central.sendCommand(device, BleOpcode.PING, null));
+
+        assertEquals(61, scheduler.now());
+    }
+
+    @Test
+    public void testDeviceInfoCommands() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        peripheral.setVersion(2, 5, 1);
+        peripheral.setDataMaxLen(180);
+        var device = connect(peripheral);
+
+        assertArrayEquals(new byte[]{2, 5, 1}, await(central.sendCommand(device, BleOpcode.VERSION, null)));
+        assertArrayEquals(new byte[]{(byte) 180}, await(central.sendCommand(device, BleOpcode.GET_DATA_MAX_LEN, null)));
+
+        var unknown = central.sendCommand(device, (byte) 0x7F, null);
+        scheduler.runUntilIdle();
+        var error = assertThrows(CompletionException.class, unknown::join);
+        assertEquals(Optional.of(BleResult.REQUEST_NOT_SUPPORTED), ((BleRemoteException) error.getCause()).getResultCode());
+    }
+
+    @Test
+    public void testResponseLongerThanMtuNeedsMtuExchange() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        var device = connect(peripheral, GattConnection.MIN_MTU);
+        byte[] payload = new byte[200];
+
+        // The command itself goes out as a long write, but the stack cuts the RSP notification to MTU - 3
+        var truncated = central.sendCommand(device, BleOpcode.PING, payload);
+        scheduler.runUntilIdle();
+        var error = assertThrows(CompletionException.class, truncated::join);
+        assertTrue(error.getCause() instanceof TimeoutException);
+
+        assertEquals(247, (int) await(central.enqueue(device, BleOperation.requestMtu(ADDRESS, 517))));
+        assertArrayEquals(payload, await(central.sendCommand(device, BleOpcode.PING, payload)));
+    }
+
+    @Test
+    public void testLongWriteAndRead() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        var device = connect(peripheral, GattConnection.MIN_MTU);
+        byte[] value = new byte[100];
+        value[99] = 7;
+
+        long start = scheduler.now();
+        await(central.enqueue(device, BleOperation.write(ADDRESS, DATA, value)));
+        long longWrite = scheduler.now() - start;
+
+        assertArrayEquals(value, peripheral.getValue(DATA));
+        assertArrayEquals(value, await(central.enqueue(device, BleOperation.read(ADDRESS, DATA))));
+        // 6 prepared chunks of MTU - 5 plus execute, one connection event per packet
+        assertEquals(140, longWrite);
+    }
+
+    @Test
+    public void testReliableWriteAbortsOnRejectedPart() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        var device = connect(peripheral);
+        var parts = List.of(new BleOperation.WritePart(DATA, new byte[]{1, 2, 3}));
+
+        await(central.enqueue(device, BleOperation.reliableWrite(ADDRESS, parts)));
+        assertArrayEquals(new byte[]{1, 2, 3}, peripheral.getValue(DATA));
+
+        peripheral.setRejectPreparedWrites(true);
+        var rejected = central.enqueue(device, BleOperation.reliableWrite(ADDRESS,
+                List.of(new BleOperation.WritePart(DATA, new byte[]{4, 5, 6}))));
+        scheduler.runUntilIdle();
+
+        assertThrows(CompletionException.class, rejected::join);
+        assertEquals(1, peripheral.stats().abortedWrites());
+        assertArrayEquals(new byte[]{1, 2, 3}, peripheral.getValue(DATA));
+    }
+
+    @Test
+    public void testLossIsReproducible() {
+        long lossless = runPings(LINK);
+        long lossy = runPings(LINK.withLossRate(0.3, 42));
+
+        assertTrue(lossy > lossless);
+        assertEquals(lossy, runPings(LINK.withLossRate(0.3, 42)));
+    }
+
+    @Test
+    public void testDisconnectDropsPacketsInFlight() {
+        var peripheral = central.newPeripheral(ADDRESS, LINK);
+        var device = connect(peripheral);
+
+        var read = central.enqueue(device, BleOperation.read(ADDRESS, DATA));
+        scheduler.advanceBy(1);
+        central.disconnect(ADDRESS);
+        scheduler.runUntilIdle();
+
+        assertThrows(CompletionException.class, read::join);
+        assertFalse(peripheral.isNotifying(SimulatedPeripheral.RSP_CHAR_UUID));
+        assertEquals(null, central.enqueue(device, BleOperation.read(ADDRESS, DATA)));
+    }
+
+    private static long runPings(LinkProfile link) {
+        var scheduler = new VirtualTimeScheduler();
+        var central = new SimulatedCentral(scheduler);
+        var connecting = central.connect(central.newPeripheral(ADDRESS, link));
+        scheduler.runUntilIdle();
+        var device = connecting.join();
+        for (int i = 0; i < 20; i++) {
+            var ping = central.sendCommand(device, BleOpcode.PING, new byte[]{(byte) i});
+            scheduler.runUntilIdle();
+            assertEquals(i, ping.join()[0]);
+        }
+        return scheduler.now();
+    }
+}
@@ -0,0 +1,59 @@
+package org.jbanaszczyk.corc.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        var map = new LongObjectHashMap<String>();
+        assertNull(map.put(0xA1B2C3D4E5F6L, "a"));
+        assertNull(map.put(0L, "zero"));
+        assertEquals("a", map.put(0xA1B2C3D4E5F6L, "b"));
+
+        assertEquals("b", map.get(0xA1B2C3D4E5F6L));
+        assertEquals("zero", map.get(0L));
+        assertEquals(2, map.size());
+
+        assertEquals("zero", map.remove(0L));
+        assertNull(map.get(0L));
+        assertNull(map.remove(0L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRejectsNegativeKeys() {
+        var map = new LongObjectHashMap<String>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1L, "x"));
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomChurn() {
+        var map = new LongObjectHashMap<Long>();
+        Map<Long, Long> reference = new HashMap<>();
+        var random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            // Small key space forces collisions, long probe chains and backward shifts
+            long key = random.nextInt(200);
+            if (random.nextBoolean()) {
+                assertEquals(reference.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                assertEquals(reference.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        for (long key = 0; key < 200; key++) {
+            assertEquals(reference.get(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.jbanaszczyk.corc.ble.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * {@link Scheduler} on a virtual clock: nothing runs until the test advances time, and tasks due at the same
+ * time run in the order they were posted. Timeouts, retries and backoff over hours of traffic run in
+ * milliseconds and give the same result every time.
+ * <p>
+ * Not thread-safe: post and advance from the test thread only (tasks run on it, too).
+ */
+public final class VirtualTimeScheduler implements Scheduler {
+
+    /**
+     * Safety net of {@link #runUntilIdle()} against tasks that keep rescheduling themselves.
+     */
+    public static final int DEFAULT_MAX_TASKS = 10_000_000;
+
+    /**
+     * One task that ran, see {@link #setTracing}.
+     *
+     * @param sequence     order in which the task was posted
+     * @param postedMillis virtual time of the post
+     * @param ranMillis    virtual time the task ran at
+     * @param task         the runnable, for identification
+     */
+    public record Execution(long sequence, long postedMillis, long ranMillis, @NonNull Runnable task) {
+        public long delayMillis() {
+            return ranMillis - postedMillis;
+        }
+    }
+
+    private record Task(long dueMillis, long sequence, long postedMillis, @NonNull Runnable runnable)
+            implements Comparable<Task> {
+        @Override
+        public int compareTo(Task other) {
+            int byTime = Long.compare(dueMillis, other.dueMillis);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private final List<Execution> trace = new ArrayList<>();
+    private long nowMillis;
+    private long sequence;
+    private long executed;
+    private boolean tracing;
+
+    public VirtualTimeScheduler() {
+        this(0);
+    }
+
+    public VirtualTimeScheduler(long startMillis) {
+        this.nowMillis = startMillis;
+    }
+
+    public long now() {
+        return nowMillis;
+    }
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        tasks.add(new Task(nowMillis + Math.max(0, delayMillis), sequence++, nowMillis, task));
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        tasks.removeIf(scheduled -> scheduled.runnable == task);
+    }
+
+    /**
+     * Runs everything due within {@code millis} from now, including tasks posted meanwhile, and moves the
+     * clock forward by exactly {@code millis}.
+     *
+     * @return number of tasks run
+     */
+    public int advanceBy(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Time does not go back: " + millis);
+        }
+        return advanceTo(nowMillis + millis);
+    }
+
+    /**
+     * Like {@link #advanceBy}, up to an absolute virtual time.
+     */
+    public int advanceTo(long targetMillis) {
+        int count = 0;
+        while (!tasks.isEmpty() && tasks.peek().dueMillis <= targetMillis) {
+            runNext();
+            count++;
+        }
+        nowMillis = Math.max(nowMillis, targetMillis);
+        return count;
+    }
+
+    /**
+     * Runs tasks, moving the clock to each one, until none is left.
+     *
+     * @return number of tasks run
+     * @throws IllegalStateException after {@link #DEFAULT_MAX_TASKS}, which means something reschedules forever
+     */
+    public int runUntilIdle() {
+        return runUntilIdle(DEFAULT_MAX_TASKS);
+    }
+
+    public int runUntilIdle(int maxTasks) {
+        int count = 0;
+        while (!tasks.isEmpty()) {
+            if (count == maxTasks) {
+                throw new IllegalStateException("Still busy after " + maxTasks + " tasks at " + nowMillis + " ms");
+            }
+            runNext();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Runs only the earliest task, moving the clock to it.
+     *
+     * @return false when nothing was pending
+     */
+    public boolean runNextTask() {
+        if (tasks.isEmpty()) {
+            return false;
+        }
+        runNext();
+        return true;
+    }
+
+    public int pending() {
+        return tasks.size();
+    }
+
+    /**
+     * @return due time of the earliest task, or {@code -1} when idle
+     */
+    public long nextDueMillis() {
+        Task next = tasks.peek();
+        return next == null ? -1 : next.dueMillis;
+    }
+
+    /**
+     * Tasks run since construction.
+     */
+    public long executed() {
+        return executed;
+    }
+
+    /**
+     * Records an {@link Execution} for every task run from now on; off by default because long simulations
+     * run millions of tasks.
+     */
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    @NonNull
+    public List<Execution> trace() {
+        return Collections.unmodifiableList(trace);
+    }
+
+    public void clearTrace() {
+        trace.clear();
+    }
+
+    private void runNext() {
+        Task task = tasks.poll();
+        nowMillis = Math.max(nowMillis, task.dueMillis);
+        executed++;
+        if (tracing) {
+            trace.add(new Execution(task.sequence, task.postedMillis, nowMillis, task.runnable));
+        }
+        task.runnable.run();
+    }
+}
@@ -0,0 +1,329 @@
+package org.jbanaszczyk.corc.ble.session;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.BleDeviceRegistry;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.CommandChannel;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.OperationExecutor;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.sim.SimulatedPeripheral;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plays a recorded session ({@link SessionReader}) through a real {@link OperationQueue},
+ * {@link CommandChannel} and {@link BleCommandResponseManager} on a {@link VirtualTimeScheduler}, so a field
+ * problem can be reproduced and stepped through on the JVM.
+ * <p>
+ * Recorded operations are enqueued at their recorded time. The executor does not talk to a device: each step
+ * it executes is answered with the next recorded completion callback of that device, after the latency the
+ * device had in the recording. Recorded commands are sent again through the command channel and their RSP
+ * notifications are renumbered to the new request ids, so responses are correlated by the current code. A
+ * recorded disconnect clears the device's queue entries.
+ * <p>
+ * {@code speed} divides all recorded times: 2 plays twice as fast. Operation timeouts of the queue are not
+ * scaled (the queue never waits less than a second), so fast replays stay faithful only while the recorded
+ * latencies are well below the timeout.
+ */
+public final class SessionReplay {
+
+    private static final int FRAME_HEADER_SIZE = BleCommandResponseManager.PAYLOAD_HEADER_SIZE;
+    private static final int REQUEST_ID_OFFSET = Short.BYTES;
+    private static final int OPCODE_OFFSET = REQUEST_ID_OFFSET + 1;
+
+    /**
+     * @param operations         recorded operations enqueued again (commands included)
+     * @param completed          of them, completed successfully
+     * @param failed             of them, failed, timed out or cleared
+     * @param commands           recorded commands sent again
+     * @param commandsFailed     of them, failed or still without a correlated response at the end
+     * @param notifications      recorded notifications delivered
+     * @param unmatchedSteps     executed steps for which the recording had no callback left
+     * @param replayMillis       virtual time the replay took
+     */
+    public record Result(int operations, int completed, int failed, int commands, int commandsFailed,
+                         int notifications, int unmatchedSteps, long replayMillis) {
+    }
+
+    // A recorded completion callback with the time the device took to produce it
+    private record Step(long timeNanos, @NonNull SessionEvent callback, long latencyNanos) {
+    }
+
+    private final class Link implements GattConnection {
+        final BleDeviceAddress address;
+
+        Link(@NonNull BleDeviceAddress address) {
+            this.address = address;
+        }
+
+        @NonNull
+        @Override
+        public BleDeviceAddress address() {
+            return address;
+        }
+
+        @Override
+        public void disconnect() {
+            queue.clear(address);
+        }
+    }
+
+    private final SessionReader.Session session;
+    private final VirtualTimeScheduler scheduler;
+    private final double speed;
+    private final OperationQueue queue;
+    private final BleDeviceRegistry registry;
+    private final BleCommandResponseManager responseManager = new BleCommandResponseManager();
+    private final CommandChannel commandChannel;
+    private final Map<BleDeviceAddress, Link> links = new HashMap<>();
+    private final Map<BleDeviceAddress, ArrayDeque<Step>> steps = new HashMap<>();
+    // Recorded request id -> request id of the command sent again
+    private final byte[] requestIds = new byte[256];
+    private final OperationExecutor executor = this::execute;
+    private final CompletableFuture<Result> finished = new CompletableFuture<>();
+
+    private int recordedRequestId = -1;
+    private long startMillis;
+    private int operations;
+    private int completed;
+    private int failed;
+    private int commands;
+    private int commandsAnswered;
+    private int notifications;
+    private int unmatchedSteps;
+    private int pending;
+    private boolean allIssued;
+
+    /**
+     * @param speed                  &gt; 0; 1 plays at the recorded pace
+     * @param operationTimeoutMillis timeout of every queued operation, like the app's
+     */
+    public SessionReplay(@NonNull SessionReader.Session session, @NonNull VirtualTimeScheduler scheduler,
+                         double speed, long operationTimeoutMillis) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        this.session = session;
+        this.scheduler = scheduler;
+        this.speed = speed;
+        this.queue = new OperationQueue(scheduler, () -> operationTimeoutMillis);
+        this.commandChannel = new CommandChannel(responseManager, this::enqueueCommand, scheduler);
+        this.registry = new BleDeviceRegistry(BleDeviceRegistry.DEFAULT_MAX_TRANSIENT_DEVICES,
+                BleDeviceRegistry.DEFAULT_TRANSIENT_TTL_MILLIS, scheduler::now);
+        pairCallbacks();
+    }
+
+    /**
+     * Feeds queue and command metrics; create them on {@code () -> scheduler.now() * 1_000_000}.
+     */
+    public void setMetrics(@NonNull BleMetrics metrics) {
+        queue.setObserver(metrics, metrics.clock());
+        commandChannel.setMetrics(metrics);
+    }
+
+    /**
+     * Schedules the whole session; run the scheduler to play it.
+     *
+     * @return completes when every recorded event was played and every replayed operation has an outcome
+     */
+    @NonNull
+    public CompletableFuture<Result> start() {
+        startMillis = scheduler.now();
+        long lastMillis = 0;
+        for (SessionEvent event : session.events()) {
+            long at = scaled(event.timeNanos());
+            lastMillis = Math.max(lastMillis, at);
+            switch (event.kind()) {
+                case OPERATION -> scheduler.postDelayed(() -> issue(event), at);
+                case CHARACTERISTIC_CHANGED -> scheduler.postDelayed(() -> notification(event), at);
+                case CONNECTION_STATE -> {
+                    if (event.number() == 0) {
+                        scheduler.postDelayed(() -> disconnected(event), at);
+                    }
+                }
+                default -> {
+                    // Completion callbacks are answered by the executor, discovery does not reach the queue
+                }
+            }
+        }
+        scheduler.postDelayed(() -> {
+            allIssued = true;
+            checkFinished();
+        }, lastMillis);
+        return finished;
+    }
+
+    /**
+     * Plays the session as fast as the virtual clock allows.
+     */
+    @NonNull
+    public Result run() {
+        var result = start();
+        scheduler.runUntilIdle();
+        return result.join();
+    }
+
+    /**
+     * Plays the session against the wall clock: each task runs when as much real time has passed as virtual time.
+     */
+    @NonNull
+    public Result runRealTime() throws InterruptedException {
+        var result = start();
+        long wallStart = System.nanoTime();
+        long virtualStart = scheduler.now();
+        long due;
+        while ((due = scheduler.nextDueMillis()) >= 0) {
+            long waitNanos = (due - virtualStart) * 1_000_000 - (System.nanoTime() - wallStart);
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+            scheduler.runNextTask();
+        }
+        return result.join();
+    }
+
+    @NonNull
+    public OperationQueue queue() {
+        return queue;
+    }
+
+    // Attributes every completion callback to the operation the device was working on when it arrived
+    private void pairCallbacks() {
+        Map<BleDeviceAddress, ArrayDeque<SessionEvent>> outstanding = new HashMap<>();
+        long lastCompletion = 0;
+        for (SessionEvent event : session.events()) {
+            var operations = outstanding.computeIfAbsent(event.address(), key -> new ArrayDeque<>());
+            if (event.kind() == SessionEvent.Kind.OPERATION) {
+                operations.add(event);
+            } else if (event.kind().completesOperation()) {
+                SessionEvent operation = operations.peek();
+                // One operation at a time: a step starts when the previous one ended, or when it was enqueued
+                long started = Math.max(lastCompletion, operation != null ? operation.timeNanos() : 0);
+                steps.computeIfAbsent(event.address(), key -> new ArrayDeque<>())
+                        .add(new Step(event.timeNanos(), event, Math.max(0, event.timeNanos() - started)));
+                lastCompletion = event.timeNanos();
+                boolean partWritten = operation != null
+                        && operation.operationType() == BleOperation.BleOperationType.RELIABLE_WRITE
+                        && event.kind() == SessionEvent.Kind.CHARACTERISTIC_WRITE;
+                if (!partWritten || event.status() != 0) {
+                    operations.poll();
+                }
+            } else if (event.kind() == SessionEvent.Kind.CONNECTION_STATE && event.number() == 0) {
+                operations.clear();
+            }
+        }
+    }
+
+    private void issue(@NonNull SessionEvent event) {
+        BleDevice device = registry.ensure(event.address());
+        byte[] frame = event.value();
+        if (event.operationType() == BleOperation.BleOperationType.WRITE
+                && SimulatedPeripheral.CMD_CHAR_UUID.equals(event.uuid())
+                && frame != null && frame.length >= FRAME_HEADER_SIZE) {
+            commands++;
+            recordedRequestId = Byte.toUnsignedInt(frame[REQUEST_ID_OFFSET]);
+            var response = commandChannel.send(device, SimulatedPeripheral.CMD_CHAR_UUID, frame[OPCODE_OFFSET],
+                    Arrays.copyOfRange(frame, FRAME_HEADER_SIZE, frame.length));
+            recordedRequestId = -1;
+            response.thenRun(() -> commandsAnswered++);
+            return;
+        }
+        track(queue.enqueue(event.toOperation(), link(event.address()), executor));
+    }
+
+    @Nullable
+    private CompletableFuture<Void> enqueueCommand(@NonNull BleDevice device, @NonNull BleOperation<Void> write) {
+        if (recordedRequestId >= 0) {
+            requestIds[recordedRequestId] = write.getPayload()[REQUEST_ID_OFFSET];
+        }
+        return track(queue.enqueue(write, link(device.getAddress()), executor));
+    }
+
+    @NonNull
+    private <T> CompletableFuture<T> track(@NonNull CompletableFuture<T> future) {
+        operations++;
+        pending++;
+        future.whenComplete((result, throwable) -> {
+            if (throwable == null) completed++;
+            else failed++;
+            pending--;
+            checkFinished();
+        });
+        return future;
+    }
+
+    private void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+        var recorded = steps.get(connection.address());
+        Step step = recorded != null ? recorded.poll() : null;
+        if (step == null) {
+            // Like a device that never answers: the queue times the operation out
+            unmatchedSteps++;
+            return;
+        }
+        scheduler.postDelayed(() -> deliver(step.callback()), scaled(step.latencyNanos()));
+    }
+
+    // Same mapping as BleGattClient's callbacks
+    private void deliver(@NonNull SessionEvent callback) {
+        if (callback.status() != 0) {
+            queue.onOperationFailed(new RuntimeException("Recorded GATT status: " + callback.status()));
+            return;
+        }
+        switch (callback.kind()) {
+            case CHARACTERISTIC_READ -> queue.onOperationFinished(callback.value());
+            case CHARACTERISTIC_WRITE -> queue.onStepFinished(null);
+            case MTU_CHANGED -> queue.onOperationFinished(callback.number());
+            default -> queue.onOperationFinished(null);
+        }
+    }
+
+    private void notification(@NonNull SessionEvent event) {
+        notifications++;
+        byte[] value = event.value();
+        if (value == null || !SimulatedPeripheral.RSP_CHAR_UUID.equals(event.uuid())) {
+            return;
+        }
+        if (value.length > REQUEST_ID_OFFSET) {
+            value = value.clone();
+            value[REQUEST_ID_OFFSET] = requestIds[Byte.toUnsignedInt(value[REQUEST_ID_OFFSET])];
+        }
+        responseManager.handleNotification(value);
+    }
+
+    private void disconnected(@NonNull SessionEvent event) {
+        // Callbacks the device sent before it went away belong to operations the replay no longer has
+        var recorded = steps.get(event.address());
+        while (recorded != null && !recorded.isEmpty() && recorded.peek().timeNanos() <= event.timeNanos()) {
+            recorded.poll();
+        }
+        queue.clear(event.address());
+    }
+
+    private void checkFinished() {
+        if (allIssued && pending == 0 && !finished.isDone()) {
+            finished.complete(new Result(operations, completed, failed, commands, commands - commandsAnswered, notifications,
+                    unmatchedSteps, scheduler.now() - startMillis));
+        }
+    }
+
+    @NonNull
+    private Link link(@NonNull BleDeviceAddress address) {
+        return links.computeIfAbsent(address, Link::new);
+    }
+
+    private long scaled(long nanos) {
+        return Math.round(nanos / 1_000_000.0 / speed);
+    }
+}
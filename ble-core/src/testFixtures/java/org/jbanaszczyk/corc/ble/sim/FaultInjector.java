@@ -0,0 +1,259 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.OperationExecutor;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Injects the faults of a {@link FaultProfile} between an {@link OperationQueue} and the device: it wraps the
+ * {@link OperationExecutor} (spurious disconnects), the GATT callbacks (delays, drops, error statuses) and the
+ * notification path (out-of-order delivery).
+ * <p>
+ * Installed as the queue's {@link OperationQueue.Observer} it also measures the damage: operations completed
+ * and lost (failed, timed out, cleared), and time to recover, from the first fault hitting a device until an
+ * operation of that device completes again. Callbacks held back past the end of their operation are dropped,
+ * like the late callbacks of a closed GATT.
+ * <p>
+ * {@link SimulatedCentral#setFaults} wires everything. Not thread-safe; drive it from the scheduler.
+ */
+public final class FaultInjector implements OperationQueue.Observer {
+
+    /**
+     * @param delayed            callbacks held back
+     * @param dropped            callbacks that never arrived
+     * @param errors             successful callbacks turned into failures
+     * @param disconnects        links dropped during an operation
+     * @param reordered          notifications delivered after a later one or after the reorder window
+     * @param stale              held-back callbacks discarded because their operation had ended meanwhile
+     * @param completed          operations completed while the injector observed the queue
+     * @param lost               operations failed, timed out or cleared
+     * @param recoveries         devices that completed an operation again after a fault
+     * @param unrecovered        devices still waiting for that
+     * @param meanRecoveryMillis mean time to recover
+     * @param maxRecoveryMillis  longest time to recover
+     */
+    public record Report(long delayed, long dropped, long errors, long disconnects, long reordered, long stale,
+                         long completed, long lost, long recoveries, int unrecovered,
+                         long meanRecoveryMillis, long maxRecoveryMillis) {
+    }
+
+    private static final class Held {
+        final UUID uuid;
+        final byte[] value;
+        Runnable release;
+
+        Held(@NonNull UUID uuid, @NonNull byte[] value) {
+            this.uuid = uuid;
+            this.value = value;
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+    private FaultProfile profile;
+    private Random random;
+    // Operation each device is executing; callbacks that arrive after it ended are stale
+    private final Map<BleDeviceAddress, BleOperation<?>> inFlight = new HashMap<>();
+    private final Map<BleDeviceAddress, Long> faultSince = new HashMap<>();
+    private final Map<BleDeviceAddress, Held> held = new HashMap<>();
+    private long delayed;
+    private long dropped;
+    private long errors;
+    private long disconnects;
+    private long reordered;
+    private long stale;
+    private long completed;
+    private long lost;
+    private long recoveries;
+    private long recoveryMillisTotal;
+    private long recoveryMillisMax;
+
+    /**
+     * @param clock milliseconds on the scheduler's time base
+     */
+    public FaultInjector(@NonNull Scheduler scheduler, @NonNull LongSupplier clock, @NonNull FaultProfile profile) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        setProfile(profile);
+    }
+
+    /**
+     * Switches to {@code profile} from the next decision on and reseeds the generator; counters and open faults
+     * carry over, so a test can change the policy mid-run and compare reports.
+     */
+    public void setProfile(@NonNull FaultProfile profile) {
+        this.profile = profile;
+        this.random = new Random(profile.seed());
+    }
+
+    @NonNull
+    public FaultProfile profile() {
+        return profile;
+    }
+
+    /**
+     * Executes through {@code delegate}, except for the operations during which the link drops.
+     */
+    @NonNull
+    public OperationExecutor executor(@NonNull OperationExecutor delegate) {
+        return new OperationExecutor() {
+            @Override
+            public void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+                inFlight.put(operation.getAddress(), operation);
+                if (roll(profile.disconnectRate())) {
+                    disconnects++;
+                    fault(operation.getAddress());
+                    // Lost while the request is on air; the stack reports the link loss, not the operation
+                    scheduler.post(connection::disconnect);
+                    return;
+                }
+                delegate.execute(connection, operation);
+            }
+
+            @Override
+            public void abort(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+                delegate.abort(connection, operation);
+            }
+        };
+    }
+
+    /**
+     * GATT callbacks of {@code address} on their way to {@code delegate}.
+     */
+    @NonNull
+    public SimulatedPeripheral.Callbacks callbacks(@NonNull BleDeviceAddress address,
+                                                   @NonNull SimulatedPeripheral.Callbacks delegate) {
+        return new SimulatedPeripheral.Callbacks() {
+            @Override
+            public void onOperationFinished(@Nullable Object result) {
+                inject(address, () -> delegate.onOperationFinished(result), delegate);
+            }
+
+            @Override
+            public void onStepFinished(@Nullable Object result) {
+                inject(address, () -> delegate.onStepFinished(result), delegate);
+            }
+
+            @Override
+            public void onOperationFailed(@NonNull Throwable throwable) {
+                inject(address, () -> delegate.onOperationFailed(throwable), null);
+            }
+        };
+    }
+
+    /**
+     * Notifications on their way to {@code delegate}; a held one follows the next notification of its device.
+     */
+    @NonNull
+    public SimulatedPeripheral.NotificationListener notifications(@NonNull SimulatedPeripheral.NotificationListener delegate) {
+        return (address, uuid, value) -> {
+            Held previous = held.remove(address);
+            if (previous == null && roll(profile.reorderRate())) {
+                reordered++;
+                Held hold = new Held(uuid, value);
+                hold.release = () -> {
+                    if (held.remove(address, hold)) {
+                        delegate.onNotification(address, hold.uuid, hold.value);
+                    }
+                };
+                held.put(address, hold);
+                scheduler.postDelayed(hold.release, profile.reorderWindowMillis());
+                return;
+            }
+            delegate.onNotification(address, uuid, value);
+            if (previous != null) {
+                scheduler.removeCallbacks(previous.release);
+                delegate.onNotification(address, previous.uuid, previous.value);
+            }
+        };
+    }
+
+    @Override
+    public void onEnqueued(@NonNull BleOperation<?> operation, int depth) {
+    }
+
+    @Override
+    public void onStarted(@NonNull BleOperation<?> operation, long queueWaitNanos) {
+    }
+
+    @Override
+    public void onFinished(@NonNull BleOperation<?> operation, @NonNull OperationQueue.Outcome outcome, long executionNanos) {
+        BleDeviceAddress address = operation.getAddress();
+        inFlight.remove(address, operation);
+        if (outcome != OperationQueue.Outcome.COMPLETED) {
+            lost++;
+            return;
+        }
+        completed++;
+        Long since = faultSince.remove(address);
+        if (since != null) {
+            long millis = clock.getAsLong() - since;
+            recoveries++;
+            recoveryMillisTotal += millis;
+            recoveryMillisMax = Math.max(recoveryMillisMax, millis);
+        }
+    }
+
+    @Override
+    public void onDepthChanged(int depth) {
+    }
+
+    @NonNull
+    public Report report() {
+        return new Report(delayed, dropped, errors, disconnects, reordered, stale, completed, lost, recoveries,
+                faultSince.size(), recoveries == 0 ? 0 : recoveryMillisTotal / recoveries, recoveryMillisMax);
+    }
+
+    // failTarget is null for callbacks that already report a failure
+    private void inject(@NonNull BleDeviceAddress address, @NonNull Runnable callback,
+                        @Nullable SimulatedPeripheral.Callbacks failTarget) {
+        if (roll(profile.dropRate())) {
+            dropped++;
+            fault(address);
+            return;
+        }
+        Runnable delivery = callback;
+        if (failTarget != null && roll(profile.errorRate())) {
+            errors++;
+            fault(address);
+            int status = profile.errorStatus();
+            delivery = () -> failTarget.onOperationFailed(new RuntimeException("GATT operation failed with status: " + status));
+        }
+        if (profile.maxDelayMillis() > 0 && roll(profile.delayRate())) {
+            delayed++;
+            fault(address);
+            BleOperation<?> operation = inFlight.get(address);
+            int step = operation != null ? operation.getStep() : -1;
+            Runnable late = delivery;
+            scheduler.postDelayed(() -> {
+                if (operation != null && inFlight.get(address) == operation && operation.getStep() == step) {
+                    late.run();
+                } else {
+                    stale++;
+                }
+            }, 1 + random.nextLong(profile.maxDelayMillis()));
+            return;
+        }
+        delivery.run();
+    }
+
+    private void fault(@NonNull BleDeviceAddress address) {
+        faultSince.putIfAbsent(address, clock.getAsLong());
+    }
+
+    private boolean roll(double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+}
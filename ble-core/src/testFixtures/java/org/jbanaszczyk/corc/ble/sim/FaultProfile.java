@@ -0,0 +1,77 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+/**
+ * Faults a {@link FaultInjector} adds between the queue and the device. Rates are probabilities per executed
+ * operation (disconnects), per GATT callback (delays, drops, errors) or per notification (reordering).
+ *
+ * @param delayRate           share of callbacks held back by up to {@code maxDelayMillis}
+ * @param maxDelayMillis      longest extra delay; above the queue timeout a delay turns into a timeout
+ * @param dropRate            share of callbacks that never arrive, so the queue times the operation out
+ * @param errorRate           share of successful callbacks turned into failures with {@code errorStatus}
+ * @param errorStatus         GATT status of injected failures, 133 (GATT_ERROR) by default
+ * @param disconnectRate      share of operations during which the link drops
+ * @param reorderRate         share of notifications held until the next notification of the device
+ * @param reorderWindowMillis longest a notification is held when no other one follows
+ * @param seed                seed of the fault generator, so runs are reproducible
+ */
+public record FaultProfile(double delayRate,
+                           long maxDelayMillis,
+                           double dropRate,
+                           double errorRate,
+                           int errorStatus,
+                           double disconnectRate,
+                           double reorderRate,
+                           long reorderWindowMillis,
+                           long seed) {
+
+    public static final int GATT_ERROR = 133;
+
+    /**
+     * Everything passes unchanged.
+     */
+    public static final FaultProfile NONE = new FaultProfile(0.0, 0, 0.0, 0.0, GATT_ERROR, 0.0, 0.0, 0, 1);
+
+    public FaultProfile {
+        rate("Delay", delayRate);
+        rate("Drop", dropRate);
+        rate("Error", errorRate);
+        rate("Disconnect", disconnectRate);
+        rate("Reorder", reorderRate);
+        if (maxDelayMillis < 0 || reorderWindowMillis < 0) {
+            throw new IllegalArgumentException("Delays must not be negative");
+        }
+        if (errorStatus == 0) {
+            throw new IllegalArgumentException("Error status 0 is GATT_SUCCESS");
+        }
+    }
+
+    public FaultProfile withDelays(double rate, long maxDelayMillis) {
+        return new FaultProfile(rate, maxDelayMillis, dropRate, errorRate, errorStatus, disconnectRate, reorderRate, reorderWindowMillis, seed);
+    }
+
+    public FaultProfile withDrops(double rate) {
+        return new FaultProfile(delayRate, maxDelayMillis, rate, errorRate, errorStatus, disconnectRate, reorderRate, reorderWindowMillis, seed);
+    }
+
+    public FaultProfile withErrors(double rate, int status) {
+        return new FaultProfile(delayRate, maxDelayMillis, dropRate, rate, status, disconnectRate, reorderRate, reorderWindowMillis, seed);
+    }
+
+    public FaultProfile withDisconnects(double rate) {
+        return new FaultProfile(delayRate, maxDelayMillis, dropRate, errorRate, errorStatus, rate, reorderRate, reorderWindowMillis, seed);
+    }
+
+    public FaultProfile withReordering(double rate, long windowMillis) {
+        return new FaultProfile(delayRate, maxDelayMillis, dropRate, errorRate, errorStatus, disconnectRate, rate, windowMillis, seed);
+    }
+
+    public FaultProfile withSeed(long seed) {
+        return new FaultProfile(delayRate, maxDelayMillis, dropRate, errorRate, errorStatus, disconnectRate, reorderRate, reorderWindowMillis, seed);
+    }
+
+    private static void rate(String name, double rate) {
+        if (rate < 0.0 || rate > 1.0) {
+            throw new IllegalArgumentException(name + " rate must be in [0, 1]: " + rate);
+        }
+    }
+}
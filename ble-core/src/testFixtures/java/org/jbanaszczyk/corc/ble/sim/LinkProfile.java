@@ -0,0 +1,64 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+
+/**
+ * Radio link between the phone and a {@link SimulatedPeripheral}.
+ *
+ * @param connectionIntervalMillis time between connection events; packets only move at connection events
+ * @param packetLatencyMillis      time from the connection event until the packet is delivered
+ * @param mtu                      largest ATT MTU the peripheral accepts
+ * @param lossRate                 probability that a packet is lost; the link layer resends it at the next event
+ * @param maxPacketsPerEvent       packets (both directions) that fit into one connection event
+ * @param seed                     seed of the loss generator, so lossy runs are reproducible
+ */
+public record LinkProfile(long connectionIntervalMillis,
+                          long packetLatencyMillis,
+                          int mtu,
+                          double lossRate,
+                          int maxPacketsPerEvent,
+                          long seed) {
+
+    /**
+     * A typical phone connection: 30 ms interval, MTU 247, no loss.
+     */
+    public static final LinkProfile DEFAULT = new LinkProfile(30, 1, 247, 0.0, 4, 1);
+
+    public LinkProfile {
+        if (connectionIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Connection interval must be positive: " + connectionIntervalMillis);
+        }
+        if (packetLatencyMillis < 0) {
+            throw new IllegalArgumentException("Packet latency must not be negative: " + packetLatencyMillis);
+        }
+        if (mtu < GattConnection.MIN_MTU) {
+            throw new IllegalArgumentException("MTU below " + GattConnection.MIN_MTU + ": " + mtu);
+        }
+        if (lossRate < 0.0 || lossRate >= 1.0) {
+            throw new IllegalArgumentException("Loss rate must be in [0, 1): " + lossRate);
+        }
+        if (maxPacketsPerEvent <= 0) {
+            throw new IllegalArgumentException("At least one packet per event is needed: " + maxPacketsPerEvent);
+        }
+    }
+
+    public LinkProfile withConnectionInterval(long millis) {
+        return new LinkProfile(millis, packetLatencyMillis, mtu, lossRate, maxPacketsPerEvent, seed);
+    }
+
+    public LinkProfile withPacketLatency(long millis) {
+        return new LinkProfile(connectionIntervalMillis, millis, mtu, lossRate, maxPacketsPerEvent, seed);
+    }
+
+    public LinkProfile withMtu(int mtu) {
+        return new LinkProfile(connectionIntervalMillis, packetLatencyMillis, mtu, lossRate, maxPacketsPerEvent, seed);
+    }
+
+    public LinkProfile withLossRate(double lossRate, long seed) {
+        return new LinkProfile(connectionIntervalMillis, packetLatencyMillis, mtu, lossRate, maxPacketsPerEvent, seed);
+    }
+
+    public LinkProfile withMaxPacketsPerEvent(int packets) {
+        return new LinkProfile(connectionIntervalMillis, packetLatencyMillis, mtu, lossRate, packets, seed);
+    }
+}
@@ -0,0 +1,120 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link LoadScenario} run; all times are virtual milliseconds.
+ */
+public record LoadReport(@NonNull LoadScenario.Config config,
+                         long elapsedMillis,
+                         int maxQueueDepth,
+                         long packets,
+                         long lostPackets,
+                         @NonNull Map<LoadScenario.Kind, Operations> operations) {
+
+    /**
+     * @param issued    operations started
+     * @param completed finished successfully; latencies cover these only
+     * @param failed    finished with an error (GATT error, queue cleared by a disconnect, remote error)
+     * @param rejected  refused up front: device not connected or queue full
+     * @param timedOut  no result within the scenario's deadline
+     */
+    public record Operations(long issued, long completed, long failed, long rejected, long timedOut,
+                             double throughputPerSecond, long p50, long p95, long p99, long max) {
+    }
+
+    @NonNull
+    public Operations get(@NonNull LoadScenario.Kind kind) {
+        return operations.get(kind);
+    }
+
+    @NonNull
+    public String toJson() {
+        var json = new StringBuilder(512);
+        json.append("{\n");
+        json.append("  \"devices\": ").append(config.devices()).append(",\n");
+        json.append("  \"durationMillis\": ").append(config.durationMillis()).append(",\n");
+        json.append("  \"meanIntervalMillis\": ").append(config.meanIntervalMillis()).append(",\n");
+        json.append("  \"connectionIntervalMillis\": ").append(config.link().connectionIntervalMillis()).append(",\n");
+        json.append("  \"lossRate\": ").append(format(config.link().lossRate())).append(",\n");
+        json.append("  \"seed\": ").append(config.seed()).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(elapsedMillis).append(",\n");
+        json.append("  \"maxQueueDepth\": ").append(maxQueueDepth).append(",\n");
+        json.append("  \"packets\": ").append(packets).append(",\n");
+        json.append("  \"lostPackets\": ").append(lostPackets).append(",\n");
+        json.append("  \"operations\": {");
+        String separator = "\n";
+        for (var entry : operations.entrySet()) {
+            Operations ops = entry.getValue();
+            json.append(separator).append("    \"").append(entry.getKey().name()).append("\": {")
+                    .append("\"issued\": ").append(ops.issued)
+                    .append(", \"completed\": ").append(ops.completed)
+                    .append(", \"failed\": ").append(ops.failed)
+                    .append(", \"rejected\": ").append(ops.rejected)
+                    .append(", \"timedOut\": ").append(ops.timedOut)
+                    .append(", \"throughputPerSecond\": ").append(format(ops.throughputPerSecond))
+                    .append(", \"p50\": ").append(ops.p50)
+                    .append(", \"p95\": ").append(ops.p95)
+                    .append(", \"p99\": ").append(ops.p99)
+                    .append(", \"max\": ").append(ops.max)
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Collects one {@link LoadScenario.Kind}.
+     */
+    static final class Recorder {
+        long issued;
+        long completed;
+        long failed;
+        long rejected;
+        long timedOut;
+        private long[] latencies = new long[256];
+
+        void completed(long latencyMillis) {
+            if (completed == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[(int) completed++] = latencyMillis;
+        }
+
+        Operations summarize(long elapsedMillis) {
+            long[] sorted = Arrays.copyOf(latencies, (int) completed);
+            Arrays.sort(sorted);
+            double seconds = Math.max(1, elapsedMillis) / 1000.0;
+            return new Operations(issued, completed, failed, rejected, timedOut, completed / seconds,
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        }
+
+        // Nearest rank
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    static Map<LoadScenario.Kind, Recorder> recorders() {
+        Map<LoadScenario.Kind, Recorder> recorders = new EnumMap<>(LoadScenario.Kind.class);
+        for (LoadScenario.Kind kind : LoadScenario.Kind.values()) {
+            recorders.put(kind, new Recorder());
+        }
+        return recorders;
+    }
+}
@@ -0,0 +1,304 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Load test on the simulation: N peripherals behind one {@link SimulatedCentral}, each issuing a random mix of
+ * reads, writes and PING commands with exponentially distributed gaps, plus periodic reconnect storms.
+ * Everything runs in virtual time, so an hour of traffic takes seconds and the same seed gives the same report.
+ * Use it to size {@link OperationQueue#QUEUE_CAPACITY}, timeouts and concurrency limits.
+ */
+public final class LoadScenario {
+
+    public enum Kind {
+        READ, WRITE, COMMAND, RECONNECT
+    }
+
+    static final UUID DATA_CHAR_UUID = UUID.fromString("B13A1003-9F2A-4F3B-9C8E-A7D4E3C8B125");
+    private static final long FIRST_ADDRESS = 0xC0_2C_00_00_00_00L;
+    private static final TimeoutException DEADLINE = new TimeoutException("Scenario deadline");
+
+    /**
+     * @param devices              simulated peripherals
+     * @param durationMillis       traffic is generated for this long, then the run drains
+     * @param meanIntervalMillis   mean gap between two operations of one device
+     * @param readWeight           share of reads in the mix
+     * @param writeWeight          share of writes in the mix
+     * @param commandWeight        share of PING commands in the mix
+     * @param payloadSize          bytes per write and per PING
+     * @param stormIntervalMillis  time between reconnect storms; 0 disables them
+     * @param stormPercent         share of devices dropped by a storm
+     * @param reconnectDelayMillis time a dropped device stays away before reconnecting
+     * @param deadlineMillis       operations without result by then count as timed out
+     * @param link                 radio link of every peripheral
+     * @param seed                 seed of the traffic generator
+     */
+    public record Config(int devices, long durationMillis, long meanIntervalMillis,
+                         int readWeight, int writeWeight, int commandWeight, int payloadSize,
+                         long stormIntervalMillis, int stormPercent, long reconnectDelayMillis,
+                         long deadlineMillis, @NonNull LinkProfile link, long seed) {
+
+        public Config {
+            if (devices <= 0 || durationMillis <= 0 || meanIntervalMillis <= 0 || deadlineMillis <= 0) {
+                throw new IllegalArgumentException("Devices, duration, interval and deadline must be positive");
+            }
+            if (readWeight < 0 || writeWeight < 0 || commandWeight < 0 || readWeight + writeWeight + commandWeight == 0) {
+                throw new IllegalArgumentException("Operation mix needs a positive weight");
+            }
+            if (payloadSize < 0 || payloadSize > BleOperation.MAX_ATTRIBUTE_LENGTH) {
+                throw new IllegalArgumentException("Payload size out of range: " + payloadSize);
+            }
+            if (stormIntervalMillis < 0 || stormPercent < 0 || stormPercent > 100 || reconnectDelayMillis < 0) {
+                throw new IllegalArgumentException("Invalid reconnect storm settings");
+            }
+        }
+
+        @NonNull
+        public static Builder builder() {
+            return new Builder();
+        }
+    }
+
+    public static final class Builder {
+        private int devices = 4;
+        private long durationMillis = 60_000;
+        private long meanIntervalMillis = 500;
+        private int readWeight = 1;
+        private int writeWeight = 1;
+        private int commandWeight = 1;
+        private int payloadSize = 16;
+        private long stormIntervalMillis;
+        private int stormPercent = 50;
+        private long reconnectDelayMillis = 1_000;
+        private long deadlineMillis = SimulatedCentral.DEFAULT_OPERATION_TIMEOUT_MILLIS * 2;
+        private LinkProfile link = LinkProfile.DEFAULT;
+        private long seed = 1;
+
+        private Builder() {
+        }
+
+        @NonNull
+        public Builder devices(int devices) {
+            this.devices = devices;
+            return this;
+        }
+
+        @NonNull
+        public Builder duration(long millis) {
+            this.durationMillis = millis;
+            return this;
+        }
+
+        @NonNull
+        public Builder meanInterval(long millis) {
+            this.meanIntervalMillis = millis;
+            return this;
+        }
+
+        @NonNull
+        public Builder mix(int reads, int writes, int commands) {
+            this.readWeight = reads;
+            this.writeWeight = writes;
+            this.commandWeight = commands;
+            return this;
+        }
+
+        @NonNull
+        public Builder payloadSize(int bytes) {
+            this.payloadSize = bytes;
+            return this;
+        }
+
+        @NonNull
+        public Builder reconnectStorms(long intervalMillis, int percent, long reconnectDelayMillis) {
+            this.stormIntervalMillis = intervalMillis;
+            this.stormPercent = percent;
+            this.reconnectDelayMillis = reconnectDelayMillis;
+            return this;
+        }
+
+        @NonNull
+        public Builder deadline(long millis) {
+            this.deadlineMillis = millis;
+            return this;
+        }
+
+        @NonNull
+        public Builder link(@NonNull LinkProfile link) {
+            this.link = link;
+            return this;
+        }
+
+        @NonNull
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        @NonNull
+        public Config build() {
+            return new Config(devices, durationMillis, meanIntervalMillis, readWeight, writeWeight, commandWeight,
+                    payloadSize, stormIntervalMillis, stormPercent, reconnectDelayMillis, deadlineMillis, link, seed);
+        }
+    }
+
+    private final Config config;
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final SimulatedCentral central = new SimulatedCentral(scheduler);
+    private final Random random;
+    private final Map<Kind, LoadReport.Recorder> recorders = LoadReport.recorders();
+    private final List<SimulatedPeripheral> peripherals = new ArrayList<>();
+    private final List<BleDevice> devices = new ArrayList<>();
+    private int maxQueueDepth;
+
+    private LoadScenario(@NonNull Config config) {
+        this.config = config;
+        this.random = new Random(config.seed());
+    }
+
+    @NonNull
+    public static LoadReport run(@NonNull Config config) {
+        return new LoadScenario(config).run();
+    }
+
+    @NonNull
+    private LoadReport run() {
+        central.queue().addChangeListener(this::sampleQueueDepth);
+        for (int i = 0; i < config.devices(); i++) {
+            var address = BleDeviceAddress.fromLong(FIRST_ADDRESS + i);
+            // Each peripheral gets its own loss sequence
+            var peripheral = central.newPeripheral(address, config.link().withLossRate(config.link().lossRate(), config.seed() + i));
+            peripheral.setValue(DATA_CHAR_UUID, new byte[config.payloadSize()]);
+            peripherals.add(peripheral);
+            devices.add(central.registry().ensure(address));
+            connect(i);
+            scheduleNext(i);
+        }
+        if (config.stormIntervalMillis() > 0) {
+            scheduler.postDelayed(this::storm, config.stormIntervalMillis());
+        }
+        scheduler.runUntilIdle();
+
+        long packets = 0;
+        long lostPackets = 0;
+        for (SimulatedPeripheral peripheral : peripherals) {
+            packets += peripheral.stats().packets();
+            lostPackets += peripheral.stats().lostPackets();
+        }
+        Map<Kind, LoadReport.Operations> operations = new EnumMap<>(Kind.class);
+        recorders.forEach((kind, recorder) -> operations.put(kind, recorder.summarize(config.durationMillis())));
+        return new LoadReport(config, scheduler.now(), maxQueueDepth, packets, lostPackets, operations);
+    }
+
+    private boolean generating() {
+        return scheduler.now() < config.durationMillis();
+    }
+
+    private void scheduleNext(int device) {
+        long gap = Math.round(-Math.log(1.0 - random.nextDouble()) * config.meanIntervalMillis());
+        scheduler.postDelayed(() -> {
+            if (!generating()) {
+                return;
+            }
+            issue(device);
+            scheduleNext(device);
+        }, gap);
+    }
+
+    private void issue(int index) {
+        BleDevice device = devices.get(index);
+        int pick = random.nextInt(config.readWeight() + config.writeWeight() + config.commandWeight());
+        Kind kind = pick < config.readWeight() ? Kind.READ
+                : pick < config.readWeight() + config.writeWeight() ? Kind.WRITE
+                : Kind.COMMAND;
+        CompletableFuture<?> future;
+        try {
+            future = switch (kind) {
+                case READ -> central.enqueue(device, BleOperation.read(device.getAddress(), DATA_CHAR_UUID));
+                case WRITE -> central.enqueue(device, BleOperation.write(device.getAddress(), DATA_CHAR_UUID, payload()));
+                default -> central.sendCommand(device, BleOpcode.PING, payload());
+            };
+        } catch (IllegalStateException queueFull) {
+            future = null;
+        }
+        track(kind, future);
+    }
+
+    private byte[] payload() {
+        byte[] payload = new byte[config.payloadSize()];
+        random.nextBytes(payload);
+        return payload;
+    }
+
+    private void connect(int index) {
+        track(Kind.RECONNECT, central.connect(peripherals.get(index)));
+    }
+
+    private void storm() {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < config.devices(); i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        int dropped = Math.max(1, config.devices() * config.stormPercent() / 100);
+        for (int index : order.subList(0, dropped)) {
+            central.disconnect(devices.get(index).getAddress());
+            scheduler.postDelayed(() -> connect(index), config.reconnectDelayMillis());
+        }
+        if (scheduler.now() + config.stormIntervalMillis() < config.durationMillis()) {
+            scheduler.postDelayed(this::storm, config.stormIntervalMillis());
+        }
+    }
+
+    // A null future was rejected up front (not connected, queue full)
+    private void track(@NonNull Kind kind, @Nullable CompletableFuture<?> future) {
+        LoadReport.Recorder recorder = recorders.get(kind);
+        recorder.issued++;
+        if (future == null) {
+            recorder.rejected++;
+            return;
+        }
+        long start = scheduler.now();
+        // Checked on the virtual clock; a late result no longer counts
+        Runnable deadline = () -> {
+            if (future.completeExceptionally(DEADLINE)) {
+                recorder.timedOut++;
+            }
+        };
+        scheduler.postDelayed(deadline, config.deadlineMillis());
+        future.whenComplete((result, throwable) -> {
+            scheduler.removeCallbacks(deadline);
+            if (throwable == null) {
+                recorder.completed(scheduler.now() - start);
+            } else if (throwable != DEADLINE) {
+                recorder.failed++;
+            }
+        });
+    }
+
+    private void sampleQueueDepth() {
+        int depth = 0;
+        for (BleDevice device : devices) {
+            depth += central.queue().depth(device.getAddress());
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, depth);
+    }
+}
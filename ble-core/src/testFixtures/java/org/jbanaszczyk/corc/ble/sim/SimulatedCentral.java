@@ -0,0 +1,224 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDevice;
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.BleDeviceRegistry;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.CommandChannel;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.OperationExecutor;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.jbanaszczyk.corc.ble.core.VirtualTimeScheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
+import org.jbanaszczyk.corc.ble.metrics.BleMetrics;
+import org.jbanaszczyk.corc.ble.metrics.TraceRecorder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Phone side of the simulation, wired like {@code BleGattClient}: one {@link OperationQueue}, one
+ * {@link BleCommandResponseManager} and the same {@link CommandChannel} for all attached peripherals, all on
+ * one {@link VirtualTimeScheduler}.
+ */
+public final class SimulatedCentral {
+
+    public static final long DEFAULT_OPERATION_TIMEOUT_MILLIS = 5_000;
+    // Requested by BleGattClient on every connection: the largest command frame plus the ATT header
+    public static final int DEFAULT_MTU = BleCommandResponseManager.MAX_PAYLOAD_SIZE
+            + BleCommandResponseManager.PAYLOAD_HEADER_SIZE
+            + GattConnection.GATT_WRITE_OVERHEAD;
+
+    private final class Link implements GattConnection {
+        final SimulatedPeripheral peripheral;
+        final OperationExecutor executor;
+        boolean connected = true;
+
+        Link(SimulatedPeripheral peripheral, OperationExecutor executor) {
+            this.peripheral = peripheral;
+            this.executor = executor;
+        }
+
+        @NonNull
+        @Override
+        public BleDeviceAddress address() {
+            return peripheral.address();
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+            peripheral.disconnect();
+            queue.clear(peripheral.address());
+            disconnectListener.accept(peripheral.address());
+        }
+    }
+
+    private final VirtualTimeScheduler scheduler;
+    private final BleDeviceRegistry registry;
+    private final OperationQueue queue;
+    private final BleCommandResponseManager responseManager = new BleCommandResponseManager();
+    private final CommandChannel commandChannel;
+    private final Map<BleDeviceAddress, Link> links = new HashMap<>();
+    @Nullable
+    private FaultInjector faults;
+    @Nullable
+    private BleMetrics metrics;
+    @Nullable
+    private TraceRecorder tracer;
+    private Consumer<BleDeviceAddress> disconnectListener = address -> { };
+
+    public SimulatedCentral(@NonNull VirtualTimeScheduler scheduler) {
+        this(scheduler, DEFAULT_OPERATION_TIMEOUT_MILLIS);
+    }
+
+    public SimulatedCentral(@NonNull VirtualTimeScheduler scheduler, long operationTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.registry = new BleDeviceRegistry(BleDeviceRegistry.DEFAULT_MAX_TRANSIENT_DEVICES,
+                BleDeviceRegistry.DEFAULT_TRANSIENT_TTL_MILLIS, scheduler::now);
+        this.queue = new OperationQueue(scheduler, () -> operationTimeoutMillis);
+        this.commandChannel = new CommandChannel(responseManager, this::enqueue, scheduler);
+    }
+
+    /**
+     * Creates a peripheral on this central's clock; {@link #connect} it before use.
+     */
+    @NonNull
+    public SimulatedPeripheral newPeripheral(@NonNull BleDeviceAddress address, @NonNull LinkProfile link) {
+        return new SimulatedPeripheral(address, link, scheduler, scheduler::now);
+    }
+
+    /**
+     * Connects like {@code BleGattClient} does: MTU exchange, then the RSP channel is subscribed before anything
+     * else is queued. The returned future completes with the device once that is done.
+     */
+    @NonNull
+    public CompletableFuture<BleDevice> connect(@NonNull SimulatedPeripheral peripheral) {
+        return connect(peripheral, DEFAULT_MTU);
+    }
+
+    /**
+     * @param mtu requested MTU; {@link GattConnection#MIN_MTU} skips the exchange
+     */
+    @NonNull
+    public CompletableFuture<BleDevice> connect(@NonNull SimulatedPeripheral peripheral, int mtu) {
+        BleDeviceAddress address = peripheral.address();
+        var callbacks = SimulatedPeripheral.Callbacks.of(queue);
+        if (faults != null) {
+            peripheral.bind(faults.callbacks(address, callbacks), faults.notifications(this::onNotification));
+        } else {
+            peripheral.bind(callbacks, this::onNotification);
+        }
+        OperationExecutor executor = faults != null ? faults.executor(peripheral) : peripheral;
+        Link link = new Link(peripheral, executor);
+        links.put(address, link);
+        BleDevice device = registry.ensure(address);
+        CompletableFuture<?> exchanged = mtu > GattConnection.MIN_MTU
+                ? queue.enqueue(BleOperation.requestMtu(address, mtu), link, executor)
+                : CompletableFuture.completedFuture(null);
+        return exchanged
+                .thenCompose(v -> queue.enqueue(BleOperation.enableNotify(address, SimulatedPeripheral.RSP_CHAR_UUID), link, executor))
+                .thenApply(v -> device);
+    }
+
+    /**
+     * Drops the link as if the peripheral went out of range; queued operations of the device fail.
+     */
+    public void disconnect(@NonNull BleDeviceAddress address) {
+        Link link = links.get(address);
+        if (link != null && link.connected) {
+            link.disconnect();
+        }
+    }
+
+    /**
+     * @return {@code null} when the device is not connected, like {@code BleGattClient.enqueue}
+     */
+    @Nullable
+    public <T> CompletableFuture<T> enqueue(@NonNull BleDevice device, @NonNull BleOperation<T> operation) {
+        Link link = links.get(device.getAddress());
+        if (link == null || !link.connected) {
+            return null;
+        }
+        return queue.enqueue(operation, link, link.executor);
+    }
+
+    @NonNull
+    public CompletableFuture<byte[]> sendCommand(@NonNull BleDevice device, byte opcode, @Nullable byte[] payload) {
+        return commandChannel.send(device, SimulatedPeripheral.CMD_CHAR_UUID, opcode, payload);
+    }
+
+    /**
+     * Feeds queue and command metrics like {@code BleController} does; create them on
+     * {@code () -> scheduler.now() * 1_000_000} to get virtual-time latencies.
+     */
+    public void setMetrics(@NonNull BleMetrics metrics) {
+        this.metrics = metrics;
+        commandChannel.setMetrics(metrics);
+        updateObserver(metrics.clock());
+    }
+
+    /**
+     * Records queue operations and commands into {@code tracer}, next to the metrics and faults already installed.
+     */
+    public void setTracer(@NonNull TraceRecorder tracer) {
+        this.tracer = tracer;
+        commandChannel.setTracer(tracer);
+        updateObserver(tracer::now);
+    }
+
+    /**
+     * Puts {@code faults} between the queue and every peripheral connected from now on and adds it to the queue
+     * observers, next to the metrics and tracer already installed.
+     */
+    public void setFaults(@NonNull FaultInjector faults) {
+        this.faults = faults;
+        updateObserver(() -> scheduler.now() * 1_000_000);
+    }
+
+    /**
+     * Called whenever a link drops: {@link #disconnect}, a queue timeout or an injected fault.
+     */
+    public void setDisconnectListener(@NonNull Consumer<BleDeviceAddress> listener) {
+        this.disconnectListener = listener;
+    }
+
+    @NonNull
+    public OperationQueue queue() {
+        return queue;
+    }
+
+    @NonNull
+    public BleDeviceRegistry registry() {
+        return registry;
+    }
+
+    @NonNull
+    public VirtualTimeScheduler scheduler() {
+        return scheduler;
+    }
+
+    private void onNotification(@NonNull BleDeviceAddress address, @NonNull UUID uuid, @NonNull byte[] value) {
+        if (SimulatedPeripheral.RSP_CHAR_UUID.equals(uuid)) {
+            responseManager.handleNotification(value);
+        }
+    }
+
+    // The queue measures with one clock for all observers: the last one installed, so keep them on one time base
+    private void updateObserver(@NonNull LongSupplier nanoClock) {
+        OperationQueue.Observer observer = null;
+        for (OperationQueue.Observer next : new OperationQueue.Observer[]{metrics, tracer, faults}) {
+            if (next != null) {
+                observer = observer == null ? next : OperationQueue.Observer.both(observer, next);
+            }
+        }
+        queue.setObserver(observer, nanoClock);
+    }
+}
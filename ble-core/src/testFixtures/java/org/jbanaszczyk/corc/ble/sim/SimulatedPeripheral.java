@@ -0,0 +1,417 @@
+package org.jbanaszczyk.corc.ble.sim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jbanaszczyk.corc.ble.BleDeviceAddress;
+import org.jbanaszczyk.corc.ble.core.BleOperation;
+import org.jbanaszczyk.corc.ble.core.GattConnection;
+import org.jbanaszczyk.corc.ble.core.OperationExecutor;
+import org.jbanaszczyk.corc.ble.core.OperationQueue;
+import org.jbanaszczyk.corc.ble.core.Scheduler;
+import org.jbanaszczyk.corc.ble.core.protocol.BleCommandResponseManager;
+import org.jbanaszczyk.corc.ble.core.protocol.BleOpcode;
+import org.jbanaszczyk.corc.ble.core.protocol.BleResult;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * CORC peripheral plus the Bluetooth stack in between, simulated in process. As an {@link OperationExecutor} it
+ * takes the operations of an {@link OperationQueue}, moves every ATT packet over a {@link LinkProfile} on the
+ * given {@link Scheduler} and reports the GATT callbacks back to the queue; notifications go to the
+ * {@link NotificationListener}. Writes to {@link #CMD_CHAR_UUID} are answered on {@link #RSP_CHAR_UUID} like
+ * the firmware does (PING, VERSION, GET_DATA_MAX_LEN, plus anything added with {@link #handle}).
+ * <p>
+ * Packets of both directions share the slots of a connection event. Long reads and writes are split the way
+ * the Android stack does it (read blob, prepare/execute). Not thread-safe; drive it from the scheduler.
+ */
+public final class SimulatedPeripheral implements OperationExecutor {
+
+    // Same characteristics as BleGattClient
+    public static final UUID CMD_CHAR_UUID = UUID.fromString("B13A1001-9F2A-4F3B-9C8E-A7D4E3C8B125");
+    public static final UUID RSP_CHAR_UUID = UUID.fromString("B13A1002-9F2A-4F3B-9C8E-A7D4E3C8B125");
+
+    private static final int MAX_ATTRIBUTE_LENGTH = BleOperation.MAX_ATTRIBUTE_LENGTH;
+    private static final int NOTIFICATION_OVERHEAD = GattConnection.GATT_WRITE_OVERHEAD;
+    private static final int READ_OVERHEAD = 1;
+    private static final int PREPARE_WRITE_OVERHEAD = 5;
+    // ATT "Prepare Queue Full"
+    private static final int PREPARE_QUEUE_FULL = 0x09;
+    private static final int RESPONSE_HEADER_SIZE = BleCommandResponseManager.PAYLOAD_HEADER_SIZE + 1;
+
+    @FunctionalInterface
+    public interface NotificationListener {
+        void onNotification(@NonNull BleDeviceAddress address, @NonNull UUID uuid, @NonNull byte[] value);
+    }
+
+    /**
+     * Where the GATT callbacks of executed operations go; the {@link OperationQueue} unless something like a
+     * {@link FaultInjector} sits in between.
+     */
+    public interface Callbacks {
+        void onOperationFinished(@Nullable Object result);
+
+        void onStepFinished(@Nullable Object result);
+
+        void onOperationFailed(@NonNull Throwable throwable);
+
+        @NonNull
+        static Callbacks of(@NonNull OperationQueue queue) {
+            return new Callbacks() {
+                @Override
+                public void onOperationFinished(@Nullable Object result) {
+                    queue.onOperationFinished(result);
+                }
+
+                @Override
+                public void onStepFinished(@Nullable Object result) {
+                    queue.onStepFinished(result);
+                }
+
+                @Override
+                public void onOperationFailed(@NonNull Throwable throwable) {
+                    queue.onOperationFailed(throwable);
+                }
+            };
+        }
+    }
+
+    public record Stats(long packets, long lostPackets, long commands, long abortedWrites) {
+    }
+
+    private final BleDeviceAddress address;
+    private final LinkProfile link;
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+    private final Random random;
+    private final Map<UUID, byte[]> values = new HashMap<>();
+    private final Set<UUID> notifying = new HashSet<>();
+    private final Map<Byte, UnaryOperator<byte[]>> handlers = new HashMap<>();
+    private Callbacks callbacks;
+    private boolean rejectPreparedWrites;
+    private long responseDelayMillis;
+    private NotificationListener listener = (device, uuid, value) -> { };
+    private int mtu = GattConnection.MIN_MTU;
+    private int dataMaxLen = BleCommandResponseManager.MAX_PAYLOAD_SIZE;
+    private byte[] version = {1, 0, 0};
+    // Deliveries of an earlier connection are dropped
+    private int connectionId;
+    private long lastEvent = -1;
+    private int packetsInEvent;
+    private long packets;
+    private long lostPackets;
+    private long commands;
+    private long abortedWrites;
+
+    public SimulatedPeripheral(@NonNull BleDeviceAddress address,
+                               @NonNull LinkProfile link,
+                               @NonNull Scheduler scheduler,
+                               @NonNull LongSupplier clock) {
+        this.address = address;
+        this.link = link;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.random = new Random(link.seed());
+        handle(BleOpcode.PING, payload -> payload);
+        handle(BleOpcode.VERSION, payload -> version.clone());
+        handle(BleOpcode.GET_DATA_MAX_LEN, payload -> new byte[]{(byte) dataMaxLen});
+    }
+
+    @NonNull
+    public BleDeviceAddress address() {
+        return address;
+    }
+
+    @NonNull
+    public LinkProfile link() {
+        return link;
+    }
+
+    /**
+     * Attaches the central side: GATT callbacks go to {@code queue} (or {@code callbacks}), notifications to
+     * {@code listener}.
+     */
+    public void bind(@NonNull OperationQueue queue, @NonNull NotificationListener listener) {
+        bind(Callbacks.of(queue), listener);
+    }
+
+    public void bind(@NonNull Callbacks callbacks, @NonNull NotificationListener listener) {
+        this.callbacks = callbacks;
+        this.listener = listener;
+    }
+
+    public void setVersion(int major, int minor, int patch) {
+        version = new byte[]{(byte) major, (byte) minor, (byte) patch};
+    }
+
+    public void setDataMaxLen(int dataMaxLen) {
+        this.dataMaxLen = dataMaxLen;
+    }
+
+    /**
+     * Answers {@code opcode} with the handler's payload; a handler that throws answers {@link BleResult#FAILURE}.
+     */
+    public void handle(byte opcode, @NonNull UnaryOperator<byte[]> handler) {
+        handlers.put(opcode, handler);
+    }
+
+    /**
+     * Firmware processing time: every RSP is ready {@code millis} after its command arrived.
+     */
+    public void setResponseDelay(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Response delay must not be negative");
+        this.responseDelayMillis = millis;
+    }
+
+    /**
+     * Answers every prepared write of a reliable write with an error status, like a peripheral out of prepare
+     * queue space; the only failure Android reports for a prepared write.
+     */
+    public void setRejectPreparedWrites(boolean reject) {
+        this.rejectPreparedWrites = reject;
+    }
+
+    public void setValue(@NonNull UUID uuid, @NonNull byte[] value) {
+        values.put(uuid, value.clone());
+    }
+
+    @Nullable
+    public byte[] getValue(@NonNull UUID uuid) {
+        byte[] value = values.get(uuid);
+        return value == null ? null : value.clone();
+    }
+
+    public int mtu() {
+        return mtu;
+    }
+
+    public boolean isNotifying(@NonNull UUID uuid) {
+        return notifying.contains(uuid);
+    }
+
+    /**
+     * Link lost: packets in flight are dropped, MTU and CCCDs go back to their defaults.
+     */
+    public void disconnect() {
+        connectionId++;
+        mtu = GattConnection.MIN_MTU;
+        notifying.clear();
+    }
+
+    /**
+     * Peripheral-initiated notification; dropped when the central has not enabled it.
+     */
+    public void notify(@NonNull UUID uuid, @NonNull byte[] value) {
+        sendNotification(clock.getAsLong(), uuid, value);
+    }
+
+    @NonNull
+    public Stats stats() {
+        return new Stats(packets, lostPackets, commands, abortedWrites);
+    }
+
+    @Override
+    public void execute(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+        if (callbacks == null) {
+            throw new IllegalStateException("Peripheral " + address + " is not bound to a queue");
+        }
+        long now = clock.getAsLong();
+        switch (operation.getType()) {
+            case READ -> {
+                byte[] value = values.getOrDefault(operation.getCharacteristicUuid(), new byte[0]);
+                long done = roundTrips(now, chunks(value.length, mtu - READ_OVERHEAD));
+                deliver(done, () -> callbacks.onOperationFinished(value.clone()));
+            }
+            case WRITE -> {
+                byte[] payload = operation.getPayload();
+                if (payload.length > MAX_ATTRIBUTE_LENGTH) {
+                    throw new IllegalArgumentException("Write of " + payload.length + " bytes exceeds " + MAX_ATTRIBUTE_LENGTH);
+                }
+                long received;
+                long done;
+                if (payload.length <= mtu - GattConnection.GATT_WRITE_OVERHEAD) {
+                    received = transmit(now);
+                    done = transmit(received);
+                } else {
+                    // Long write: prepared chunks, then execute
+                    received = roundTrips(now, chunks(payload.length, mtu - PREPARE_WRITE_OVERHEAD));
+                    received = transmit(received);
+                    done = transmit(received);
+                }
+                UUID uuid = operation.getCharacteristicUuid();
+                values.put(uuid, payload.clone());
+                deliver(done, () -> callbacks.onOperationFinished(null));
+                if (CMD_CHAR_UUID.equals(uuid)) {
+                    onCommand(received, payload);
+                }
+            }
+            case ENABLE_NOTIFY, DISABLE_NOTIFY -> {
+                boolean enable = operation.getType() == BleOperation.BleOperationType.ENABLE_NOTIFY;
+                UUID uuid = operation.getCharacteristicUuid();
+                deliver(roundTrips(now, 1), () -> {
+                    if (enable) notifying.add(uuid);
+                    else notifying.remove(uuid);
+                    callbacks.onOperationFinished(null);
+                });
+            }
+            case REQUEST_MTU -> {
+                int negotiated = Math.max(GattConnection.MIN_MTU, Math.min(operation.getMtu(), link.mtu()));
+                deliver(roundTrips(now, 1), () -> {
+                    mtu = negotiated;
+                    callbacks.onOperationFinished(negotiated);
+                });
+            }
+            case RELIABLE_WRITE -> reliableWriteStep(now, operation);
+        }
+    }
+
+    /**
+     * Prepared writes are only applied on execute, so aborting a reliable write just discards them.
+     */
+    @Override
+    public void abort(@NonNull GattConnection connection, @NonNull BleOperation<?> operation) {
+        if (operation.getType() == BleOperation.BleOperationType.RELIABLE_WRITE) {
+            abortedWrites++;
+        }
+    }
+
+    private void reliableWriteStep(long now, @NonNull BleOperation<?> operation) {
+        List<BleOperation.WritePart> parts = operation.getParts();
+        int step = operation.getStep();
+        if (step < parts.size()) {
+            int length = parts.get(step).value().length;
+            deliver(roundTrips(now, chunks(length, mtu - PREPARE_WRITE_OVERHEAD)), () -> {
+                if (rejectPreparedWrites) {
+                    callbacks.onOperationFailed(new RuntimeException("GATT Write failed with status: " + PREPARE_QUEUE_FULL));
+                } else {
+                    callbacks.onStepFinished(null);
+                }
+            });
+            return;
+        }
+        deliver(roundTrips(now, 1), () -> {
+            for (BleOperation.WritePart part : parts) {
+                values.put(part.characteristicUuid(), part.value().clone());
+            }
+            callbacks.onStepFinished(null);
+        });
+    }
+
+    // A command arrived at the peripheral; the response leaves as an RSP notification
+    private void onCommand(long receivedAt, @NonNull byte[] frame) {
+        if (frame.length < BleCommandResponseManager.PAYLOAD_HEADER_SIZE) {
+            return;
+        }
+        var buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        if (Short.toUnsignedInt(buffer.getShort()) != BleCommandResponseManager.PROTOCOL_MAGIC) {
+            return;
+        }
+        byte requestId = buffer.get();
+        byte opcode = buffer.get();
+        int length = Byte.toUnsignedInt(buffer.get());
+        if (buffer.remaining() < length) {
+            return;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        commands++;
+
+        byte result = BleResult.OK.getValue();
+        byte[] response = new byte[0];
+        UnaryOperator<byte[]> handler = handlers.get(opcode);
+        if (handler == null) {
+            result = BleResult.REQUEST_NOT_SUPPORTED.getValue();
+        } else {
+            try {
+                response = handler.apply(payload);
+            } catch (RuntimeException e) {
+                result = BleResult.FAILURE.getValue();
+            }
+        }
+        byte[] answer = ByteBuffer.allocate(RESPONSE_HEADER_SIZE + response.length)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) BleCommandResponseManager.PROTOCOL_MAGIC)
+                .put(requestId)
+                .put(opcode)
+                .put(result)
+                .put((byte) response.length)
+                .put(response)
+                .array();
+        if (responseDelayMillis == 0) {
+            sendNotification(receivedAt, RSP_CHAR_UUID, answer);
+        } else {
+            // Slots are taken once the answer is ready, so packets sent meanwhile are not pushed behind it
+            long readyAt = receivedAt + responseDelayMillis;
+            deliver(readyAt, () -> sendNotification(readyAt, RSP_CHAR_UUID, answer));
+        }
+    }
+
+    private void sendNotification(long readyAt, @NonNull UUID uuid, @NonNull byte[] value) {
+        if (!notifying.contains(uuid)) {
+            return;
+        }
+        // The stack cuts notifications to MTU - 3
+        byte[] sent = Arrays.copyOf(value, Math.min(value.length, mtu - NOTIFICATION_OVERHEAD));
+        deliver(transmit(readyAt), () -> listener.onNotification(address, uuid, sent));
+    }
+
+    private static int chunks(int length, int chunkSize) {
+        return Math.max(1, (length + chunkSize - 1) / chunkSize);
+    }
+
+    // Request/response pairs, each sent as soon as the previous packet arrived
+    private long roundTrips(long readyAt, int count) {
+        long time = readyAt;
+        for (int i = 0; i < count; i++) {
+            time = transmit(transmit(time));
+        }
+        return time;
+    }
+
+    /**
+     * Reserves a slot in the first connection event at or after {@code readyAt} that has one left; lost
+     * packets are resent in the next event.
+     *
+     * @return time the packet arrives on the other side
+     */
+    private long transmit(long readyAt) {
+        long interval = link.connectionIntervalMillis();
+        long event = Math.max((readyAt + interval - 1) / interval, lastEvent);
+        while (true) {
+            if (event == lastEvent && packetsInEvent >= link.maxPacketsPerEvent()) {
+                event++;
+            }
+            if (event != lastEvent) {
+                lastEvent = event;
+                packetsInEvent = 0;
+            }
+            packetsInEvent++;
+            packets++;
+            if (random.nextDouble() >= link.lossRate()) {
+                return event * interval + link.packetLatencyMillis();
+            }
+            lostPackets++;
+            event++;
+        }
+    }
+
+    private void deliver(long atMillis, @NonNull Runnable callback) {
+        int connection = connectionId;
+        scheduler.postDelayed(() -> {
+            if (connection == connectionId) {
+                callback.run();
+            }
+        }, atMillis - clock.getAsLong());
+    }
+}
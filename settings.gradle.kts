@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "remote-android"
 include(":app")
+include(":ble-core")
+include(":ble-bench")